@@ -26,17 +26,23 @@ import org.apache.openejb.core.InstanceContext;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
 import org.apache.openejb.core.cmp.KeyGenerator;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorInstance;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.ivm.ContextHandler;
 import org.apache.openejb.core.ivm.EjbHomeProxyHandler;
+import org.apache.openejb.core.ivm.IntraVmCopier;
 import org.apache.openejb.core.timer.EjbTimerService;
 import org.apache.openejb.core.transaction.EjbTransactionUtil;
 import org.apache.openejb.core.transaction.TransactionPolicy;
 import org.apache.openejb.core.transaction.TransactionPolicyFactory;
 import org.apache.openejb.core.transaction.TransactionType;
+import org.apache.openejb.loader.Options;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.ManagedMBean;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.util.Duration;
 import org.apache.openejb.util.Index;
 import org.apache.openejb.util.LogCategory;
@@ -77,6 +83,8 @@ import javax.enterprise.inject.spi.AnnotatedType;
 import javax.enterprise.inject.spi.Decorator;
 import javax.enterprise.inject.spi.InterceptionType;
 import javax.enterprise.inject.spi.Interceptor;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.naming.Context;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.SynchronizationType;
@@ -218,6 +226,8 @@ public class BeanContext extends DeploymentContext {
                 }
             }
         }
+
+        resetInterceptorChains();
     }
 
     private boolean isEjbInterceptor(final Interceptor<?> pc) {
@@ -310,6 +320,10 @@ public class BeanContext extends DeploymentContext {
     private Method ejbTimeout;
     private EjbTimerService ejbTimerService;
 
+    private volatile boolean intraVmCopierResolved;
+    private IntraVmCopier intraVmCopier;
+    private ObjectName intraVmCopierName;
+
     private boolean isBeanManagedTransaction;
     private boolean isBeanManagedConcurrency;
     private Container container;
@@ -1132,14 +1146,17 @@ public class BeanContext extends DeploymentContext {
 
     public void addSystemInterceptor(final Object interceptor) {
         systemInterceptors.add(new InterceptorInstance(interceptor));
+        resetInterceptorChains();
     }
 
     public void addFirstSystemInterceptor(final Object interceptor) {
         systemInterceptors.add(0, new InterceptorInstance(interceptor));
+        resetInterceptorChains();
     }
 
     public void addUserInterceptor(final Object interceptor) {
         userInterceptors.add(new InterceptorInstance(interceptor));
+        resetInterceptorChains();
     }
 
     public List<InterceptorInstance> getUserAndSystemInterceptors() {
@@ -1180,12 +1197,26 @@ public class BeanContext extends DeploymentContext {
         this.cdiInterceptors.clear();
         this.cdiInterceptors.addAll(cdiInterceptors);
         this.instanceScopedInterceptors.addAll(cdiInterceptors);
+        resetInterceptorChains();
     }
 
     public List<InterceptorData> getMethodInterceptors(final Method method) {
         return getMethodContext(method).getInterceptors();
     }
 
+    /**
+     * @return the interceptors to call for this method and operation, computed once and shared by all the invocations
+     */
+    public InterceptorChain getInterceptorChain(final Method method, final Operation operation) {
+        return getMethodContext(method).getInterceptorChain(operation);
+    }
+
+    private void resetInterceptorChains() {
+        for (final MethodContext methodContext : methodContextMap.values()) {
+            methodContext.resetInterceptorChains();
+        }
+    }
+
     public List<InterceptorData> getInterceptorData() {
         final List<InterceptorData> datas = new ArrayList<InterceptorData>(getUserAndSystemInterceptors().size());
         for (final InterceptorInstance instance : getUserAndSystemInterceptors()) {
@@ -1895,6 +1926,55 @@ public class BeanContext extends DeploymentContext {
         if (ejbTimerService != null) {
             ejbTimerService.stop();
         }
+        if (intraVmCopierName != null) {
+            try {
+                LocalMBeanServer.get().unregisterMBean(intraVmCopierName);
+            } catch (final Exception e) {
+                logger.debug("Unable to unregister MBean " + intraVmCopierName, e);
+            }
+            intraVmCopierName = null;
+        }
+    }
+
+    /**
+     * @return the copier of the intra-VM remote calls of this bean or null if they are serialized
+     * (see {@link IntraVmCopier#STRATEGY})
+     */
+    public IntraVmCopier getIntraVmCopier() {
+        if (!intraVmCopierResolved) {
+            synchronized (this) {
+                if (!intraVmCopierResolved) {
+                    final Options options = new Options(getProperties(), SystemInstance.get().getOptions());
+                    if (options.get(IntraVmCopier.STRATEGY, IntraVmCopier.Strategy.SERIALIZATION) == IntraVmCopier.Strategy.REFLECTION) {
+                        intraVmCopier = new IntraVmCopier();
+                        registerIntraVmCopier();
+                    }
+                    intraVmCopierResolved = true;
+                }
+            }
+        }
+        return intraVmCopier;
+    }
+
+    private void registerIntraVmCopier() {
+        final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
+        jmxName.set("J2EEServer", "openejb");
+        jmxName.set("J2EEApplication", null);
+        jmxName.set("EJBModule", getModuleID());
+        jmxName.set("name", getEjbName());
+        jmxName.set("j2eeType", "IntraVmCopy");
+
+        try {
+            final MBeanServer server = LocalMBeanServer.get();
+            final ObjectName objectName = jmxName.build();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(new ManagedMBean(intraVmCopier), objectName);
+            intraVmCopierName = objectName;
+        } catch (final Exception e) {
+            logger.error("Unable to register MBean ", e);
+        }
     }
 
     public void addSecurityRoleReference(final String roleName, final String roleLink) {
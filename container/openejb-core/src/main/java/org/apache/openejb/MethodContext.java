@@ -17,6 +17,8 @@
 
 package org.apache.openejb;
 
+import org.apache.openejb.core.Operation;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.timer.ScheduleData;
 import org.apache.openejb.core.transaction.TransactionType;
@@ -25,6 +27,7 @@ import org.apache.openejb.util.Duration;
 import javax.ejb.LockType;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -43,6 +46,7 @@ public class MethodContext {
     private TransactionType transactionType;
     private Duration accessTimeout;
     private boolean asynchronous;
+    private final InterceptorChain[] interceptorChains = new InterceptorChain[Operation.values().length];
 
     public MethodContext(final BeanContext beanContext, final Method beanMethod) {
         this.beanContext = beanContext;
@@ -51,6 +55,7 @@ public class MethodContext {
 
     public void setSelfInterception(final InterceptorData data) {
         self = data;
+        resetInterceptorChains();
     }
 
     public void setAccessTimeout(final Duration accessTimeout) {
@@ -71,11 +76,13 @@ public class MethodContext {
 
     public void addCdiInterceptor(final InterceptorData data) {
         cdiInterceptors.add(data);
+        resetInterceptorChains();
     }
 
     public void setInterceptors(final List<InterceptorData> interceptors) {
         this.interceptors.clear();
         this.interceptors.addAll(interceptors);
+        resetInterceptorChains();
     }
 
     public List<InterceptorData> getInterceptors() {
@@ -89,6 +96,24 @@ public class MethodContext {
         return datas;
     }
 
+    /**
+     * The chain is computed on first use and then shared by all invocations of the method,
+     * it is reset when the interceptors of the method or of the bean change. It also binds
+     * the method handles used to invoke the interceptors and the bean method.
+     */
+    public InterceptorChain getInterceptorChain(final Operation operation) {
+        InterceptorChain chain = interceptorChains[operation.ordinal()];
+        if (chain == null) { // immutable so a concurrent computation is harmless
+            chain = InterceptorChain.create(operation, getInterceptors(), beanMethod);
+            interceptorChains[operation.ordinal()] = chain;
+        }
+        return chain;
+    }
+
+    public void resetInterceptorChains() {
+        Arrays.fill(interceptorChains, null);
+    }
+
     public LockType getLockType() {
         return lockType != null ? lockType : beanContext.getLockType();
     }
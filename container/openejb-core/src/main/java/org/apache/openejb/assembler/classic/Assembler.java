@@ -86,11 +86,13 @@ import org.apache.openejb.core.ivm.naming.JndiUrlReference;
 import org.apache.openejb.core.ivm.naming.LazyObjectReference;
 import org.apache.openejb.core.ivm.naming.Reference;
 import org.apache.openejb.core.security.SecurityContextHandler;
+import org.apache.openejb.core.security.jaas.CredentialCache;
 import org.apache.openejb.core.timer.EjbTimerServiceImpl;
 import org.apache.openejb.core.timer.MemoryTimerStore;
 import org.apache.openejb.core.timer.NullEjbTimerServiceImpl;
 import org.apache.openejb.core.timer.ScheduleData;
 import org.apache.openejb.core.timer.TimerStore;
+import org.apache.openejb.core.timer.TimingWheelEjbTimerService;
 import org.apache.openejb.core.transaction.JtaTransactionPolicyFactory;
 import org.apache.openejb.core.transaction.SimpleBootstrapContext;
 import org.apache.openejb.core.transaction.SimpleWorkManager;
@@ -711,6 +713,8 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
         Extensions.addExtensions(classLoader, appInfo.eventClassesNeedingAppClassloader);
         logger.info("createApplication.start", appInfo.path);
+        final DeploymentTasks tasks = DeploymentTasks.create(appInfo.path);
+        long phase = System.nanoTime();
         final Context containerSystemContext = containerSystem.getJNDIContext();
         
         // To start out, ensure we don't already have any beans deployed with duplicate IDs.  This
@@ -765,6 +769,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             containerSystem.addAppContext(appContext);
 
             appContext.set(AsynchronousPool.class, AsynchronousPool.create(appContext));
+            phase = tasks.mark("jndi", phase);
 
             final Map<String, LazyValidatorFactory> lazyValidatorFactories = new HashMap<String, LazyValidatorFactory>();
             final Map<String, LazyValidator> lazyValidators = new HashMap<String, LazyValidator>();
@@ -836,27 +841,44 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
                 validatorFactories.clear();
             }
+            phase = tasks.mark("validation", phase);
 
             // JPA - Persistence Units MUST be processed first since they will add ClassFileTransformers
             // to the class loader which must be added before any classes are loaded
+            // in parallel mode units are bootstrapped concurrently first then bound in order
             final Map<String, String> units = new HashMap<String, String>();
             final PersistenceBuilder persistenceBuilder = new PersistenceBuilder(persistenceClassLoaderHandler);
-            for (final PersistenceUnitInfo info : appInfo.persistenceUnits) {
-                final ReloadableEntityManagerFactory factory;
-                try {
-                    factory = persistenceBuilder.createEntityManagerFactory(info, classLoader, validatorFactoriesByConfig);
-                    containerSystem.getJNDIContext().bind(PERSISTENCE_UNIT_NAMING_CONTEXT + info.id, factory);
-                    units.put(info.name, PERSISTENCE_UNIT_NAMING_CONTEXT + info.id);
-                } catch (final NameAlreadyBoundException e) {
-                    throw new OpenEJBException("PersistenceUnit already deployed: " + info.persistenceUnitRootUrl);
-                } catch (final Exception e) {
-                    throw new OpenEJBException(e);
+            if (tasks.isParallel()) {
+                final ClassLoader unitsClassLoader = classLoader;
+                final List<DeploymentTasks.Step<ReloadableEntityManagerFactory>> factories = new ArrayList<DeploymentTasks.Step<ReloadableEntityManagerFactory>>();
+                for (final PersistenceUnitInfo info : appInfo.persistenceUnits) {
+                    factories.add(tasks.add("persistence-unit " + info.name, new Callable<ReloadableEntityManagerFactory>() {
+                        @Override
+                        public ReloadableEntityManagerFactory call() throws Exception {
+                            return persistenceBuilder.createEntityManagerFactory(info, unitsClassLoader, validatorFactoriesByConfig);
+                        }
+                    }));
                 }
+                tasks.run();
+                phase = tasks.mark("persistence-units bootstrap", phase);
 
-                factory.register();
+                for (int i = 0; i < factories.size(); i++) {
+                    bindPersistenceUnit(appInfo.persistenceUnits.get(i), factories.get(i).get(), units);
+                }
+            } else {
+                for (final PersistenceUnitInfo info : appInfo.persistenceUnits) {
+                    final ReloadableEntityManagerFactory factory;
+                    try {
+                        factory = persistenceBuilder.createEntityManagerFactory(info, classLoader, validatorFactoriesByConfig);
+                    } catch (final Exception e) {
+                        throw new OpenEJBException(e);
+                    }
+                    bindPersistenceUnit(info, factory, units);
+                }
             }
 
             logger.debug("Loaded peristence units: " + units);
+            phase = tasks.mark("persistence-units", phase);
 
             // Connectors
             for (final ConnectorInfo connector : appInfo.connectors) {
@@ -882,7 +904,10 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                 }
             }
 
+            phase = tasks.mark("connectors", phase);
+
             final List<BeanContext> allDeployments = initEjbs(classLoader, appInfo, appContext, injections, new ArrayList<BeanContext>(), null);
+            phase = tasks.mark("ejbs", phase);
 
             if ("true".equalsIgnoreCase(SystemInstance.get()
                 .getProperty(PROPAGATE_APPLICATION_EXCEPTIONS,
@@ -925,7 +950,10 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                 }
             }
 
+            phase = tasks.mark("cdi", phase);
+
             startEjbs(start, allDeployments);
+            phase = tasks.mark("ejbs start", phase);
 
             // App Client
             for (final ClientInfo clientInfo : appInfo.clients) {
@@ -969,6 +997,8 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
                 }
             }
 
+            phase = tasks.mark("clients", phase);
+
             // WebApp
             final SystemInstance systemInstance = SystemInstance.get();
 
@@ -976,6 +1006,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             if (webAppBuilder != null) {
                 webAppBuilder.deployWebApps(appInfo, classLoader);
             }
+            phase = tasks.mark("webapps", phase);
 
             if (start) {
                 final EjbResolver globalEjbResolver = systemInstance.getComponent(EjbResolver.class);
@@ -1008,6 +1039,8 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             resumePersistentSchedulers(appContext);
 
             systemInstance.fireEvent(new AssemblerAfterApplicationCreated(appInfo, appContext, allDeployments));
+            tasks.mark("mbeans, resources and listeners", phase);
+            tasks.report();
             logger.info("createApplication.success", appInfo.path);
 
             return appContext;
@@ -1359,6 +1392,20 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         }
     }
 
+    private void bindPersistenceUnit(final PersistenceUnitInfo info, final ReloadableEntityManagerFactory factory,
+                                     final Map<String, String> units) throws OpenEJBException {
+        try {
+            containerSystem.getJNDIContext().bind(PERSISTENCE_UNIT_NAMING_CONTEXT + info.id, factory);
+            units.put(info.name, PERSISTENCE_UNIT_NAMING_CONTEXT + info.id);
+        } catch (final NameAlreadyBoundException e) {
+            throw new OpenEJBException("PersistenceUnit already deployed: " + info.persistenceUnitRootUrl);
+        } catch (final Exception e) {
+            throw new OpenEJBException(e);
+        }
+
+        factory.register();
+    }
+
     public List<BeanContext> initEjbs(final ClassLoader classLoader, final AppInfo appInfo, final AppContext appContext,
                                       final Set<Injection> injections, final List<BeanContext> allDeployments, final String webappId) throws OpenEJBException {
         final String globalTimersOn = SystemInstance.get().getProperty(OPENEJB_TIMERS_ON, "true");
@@ -1430,7 +1477,9 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
 
                     if (timerServiceRequired && "true".equalsIgnoreCase(appInfo.properties.getProperty(OPENEJB_TIMERS_ON, globalTimersOn))) {
                         // Create the timer
-                        final EjbTimerServiceImpl timerService = new EjbTimerServiceImpl(beanContext, newTimerStore(beanContext));
+                        final EjbTimerServiceImpl timerService = TimingWheelEjbTimerService.isActive(beanContext)
+                            ? new TimingWheelEjbTimerService(beanContext, newTimerStore(beanContext))
+                            : new EjbTimerServiceImpl(beanContext, newTimerStore(beanContext));
                         //Load auto-start timers
                         final TimerStore timerStore = timerService.getTimerStore();
                         for (final Iterator<Map.Entry<Method, MethodContext>> it = beanContext.iteratorMethodContext(); it.hasNext(); ) {
@@ -1759,6 +1808,8 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
             } catch (final NoClassDefFoundError ncdfe) {
                 // no-op
             }
+            TimingWheelEjbTimerService.shutdown();
+            CredentialCache.clearAll();
 
             logger.debug("Undeploying Applications");
             final Assembler assembler = this;
@@ -3370,7 +3421,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         private final Map<String, List<ClassFileTransformer>> transformers = new TreeMap<String, List<ClassFileTransformer>>();
 
         @Override
-        public void addTransformer(final String unitId, final ClassLoader classLoader, final ClassFileTransformer classFileTransformer) {
+        public synchronized void addTransformer(final String unitId, final ClassLoader classLoader, final ClassFileTransformer classFileTransformer) {
             final Instrumentation instrumentation = Agent.getInstrumentation();
             if (instrumentation != null) {
                 instrumentation.addTransformer(classFileTransformer);
@@ -3389,7 +3440,7 @@ public class Assembler extends AssemblerTool implements org.apache.openejb.spi.A
         }
 
         @Override
-        public void destroy(final String unitId) {
+        public synchronized void destroy(final String unitId) {
             final List<ClassFileTransformer> transformers = this.transformers.remove(unitId);
             if (transformers != null) {
                 final Instrumentation instrumentation = Agent.getInstrumentation();
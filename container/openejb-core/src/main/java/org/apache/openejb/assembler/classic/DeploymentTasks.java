@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.OpenEJBException;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the independent steps of a deployment (module scanning, persistence units bootstrap...)
+ * and keeps the time spent in each step.
+ * <p/>
+ * Steps are added with the steps they depend on then executed by {@link #run()}, in the order
+ * they were added or, when {@link #PARALLEL} is true, concurrently on a fork join pool of
+ * {@link #PARALLELISM} threads: a step only starts once its dependencies are done.
+ * Phases executed by the caller itself are timed with {@link #mark(String, long)}.
+ * <p/>
+ * The timings are logged by {@link #report()} when the parallel mode or {@link #TIMINGS} is active.
+ */
+public class DeploymentTasks {
+    public static final String PARALLEL = "openejb.deployment.parallel";
+    public static final String PARALLELISM = "openejb.deployment.parallelism";
+    public static final String TIMINGS = "openejb.deployment.timings";
+
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_STARTUP, DeploymentTasks.class);
+
+    private final String name;
+    private final boolean parallel;
+    private final int parallelism;
+    private final boolean timings;
+    private final long start = System.nanoTime();
+    private final List<Step<?>> pending = new ArrayList<Step<?>>();
+    private final Queue<Timing> done = new ConcurrentLinkedQueue<Timing>();
+
+    public DeploymentTasks(final String name, final boolean parallel, final int parallelism, final boolean timings) {
+        this.name = name;
+        this.parallel = parallel && parallelism > 1;
+        this.parallelism = Math.max(1, parallelism);
+        this.timings = timings;
+    }
+
+    public static DeploymentTasks create(final String name) {
+        final Options options = SystemInstance.get().getOptions();
+        final boolean parallel = options.get(PARALLEL, false);
+        return new DeploymentTasks(name, parallel,
+            options.get(PARALLELISM, Runtime.getRuntime().availableProcessors()),
+            options.get(TIMINGS, parallel));
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * @param dependencies steps added before to this instance which have to be done before this one starts
+     */
+    public <T> Step<T> add(final String step, final Callable<T> task, final Step<?>... dependencies) {
+        final Step<T> s = new Step<T>(step, task, dependencies);
+        pending.add(s);
+        return s;
+    }
+
+    /**
+     * Executes the steps added since the last run.
+     *
+     * The error of the first failing step is rethrown as it is (checked exceptions other than
+     * {@link OpenEJBException} are wrapped), the other steps are executed except the ones depending on a failed step.
+     *
+     * @throws OpenEJBException if the first failing step threw one
+     */
+    public void run() throws OpenEJBException {
+        final List<Step<?>> steps = new ArrayList<Step<?>>(pending);
+        pending.clear();
+
+        if (!parallel || steps.size() < 2) {
+            for (final Step<?> step : steps) {
+                step.execute();
+            }
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, steps.size()), new DeploymentThreadFactory(name), null, false);
+            try {
+                // submitted from outside so the caller thread just waits and all the workers run steps
+                for (final Step<?> step : steps) {
+                    pool.execute(step.action);
+                }
+                for (final Step<?> step : steps) {
+                    step.action.quietlyJoin();
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        for (final Step<?> step : steps) {
+            if (step.error != null) {
+                if (step.error instanceof OpenEJBException) {
+                    throw (OpenEJBException) step.error;
+                }
+                if (step.error instanceof RuntimeException) {
+                    throw (RuntimeException) step.error;
+                }
+                if (step.error instanceof Error) {
+                    throw (Error) step.error;
+                }
+                throw new OpenEJBException(step.error);
+            }
+        }
+    }
+
+    /**
+     * Records a phase run by the caller.
+     *
+     * @param startNanos when the phase started
+     * @return now, i.e. the start of the next phase
+     */
+    public long mark(final String step, final long startNanos) {
+        final long now = System.nanoTime();
+        done.add(new Timing(step, startNanos, now, Thread.currentThread().getName()));
+        return now;
+    }
+
+    public List<Timing> getTimings() {
+        final List<Timing> list = new ArrayList<Timing>(done);
+        Collections.sort(list, new Comparator<Timing>() {
+            @Override
+            public int compare(final Timing o1, final Timing o2) {
+                return Long.compare(o1.start, o2.start);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Logs the time of each step if enabled.
+     */
+    public void report() {
+        if (!timings) {
+            return;
+        }
+
+        final StringBuilder builder = new StringBuilder()
+            .append("Deployment of ").append(name).append(" took ")
+            .append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).append("ms")
+            .append(parallel ? " (parallel, " + parallelism + " threads)" : "").append(':');
+        for (final Timing timing : getTimings()) {
+            builder.append(String.format("%n    %6dms +%6dms  %-50s [%s]",
+                TimeUnit.NANOSECONDS.toMillis(timing.getDuration()),
+                TimeUnit.NANOSECONDS.toMillis(timing.start - start),
+                timing.step, timing.thread));
+        }
+        LOGGER.info(builder.toString());
+    }
+
+    public static class Timing {
+        private final String step;
+        private final long start;
+        private final long end;
+        private final String thread;
+
+        private Timing(final String step, final long start, final long end, final String thread) {
+            this.step = step;
+            this.start = start;
+            this.end = end;
+            this.thread = thread;
+        }
+
+        public String getStep() {
+            return step;
+        }
+
+        public String getThread() {
+            return thread;
+        }
+
+        public long getDuration() {
+            return end - start;
+        }
+    }
+
+    public final class Step<T> {
+        private final String name;
+        private final Callable<T> task;
+        private final Step<?>[] dependencies;
+        private final ClassLoader loader;
+        private volatile boolean executed;
+        private volatile T value;
+        private volatile Throwable error;
+        private final RecursiveAction action = new RecursiveAction() {
+            @Override
+            protected void compute() {
+                for (final Step<?> dependency : dependencies) {
+                    if (!dependency.executed) {
+                        dependency.action.quietlyJoin();
+                    }
+                }
+                execute();
+            }
+        };
+
+        private Step(final String name, final Callable<T> task, final Step<?>[] dependencies) {
+            this.name = name;
+            this.task = task;
+            this.dependencies = dependencies;
+            this.loader = Thread.currentThread().getContextClassLoader();
+        }
+
+        public T get() {
+            if (!executed) {
+                throw new IllegalStateException("Deployment step '" + name + "' was not executed");
+            }
+            return value;
+        }
+
+        private void execute() {
+            try {
+                for (final Step<?> dependency : dependencies) {
+                    if (dependency.error != null) {
+                        error = dependency.error;
+                        return;
+                    }
+                }
+
+                final Thread thread = Thread.currentThread();
+                final ClassLoader old = thread.getContextClassLoader();
+                thread.setContextClassLoader(loader);
+                final long stepStart = System.nanoTime();
+                try {
+                    value = task.call();
+                } catch (final Throwable e) {
+                    error = e;
+                } finally {
+                    mark(name, stepStart);
+                    thread.setContextClassLoader(old);
+                }
+            } finally {
+                executed = true;
+            }
+        }
+    }
+
+    private static class DeploymentThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final AtomicInteger ids = new AtomicInteger();
+        private final String name;
+
+        private DeploymentThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+            final ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+            };
+            thread.setName("OpenEJB-deployment-" + name + "-" + ids.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
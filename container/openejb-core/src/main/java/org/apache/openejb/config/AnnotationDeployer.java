@@ -22,6 +22,7 @@ import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.api.LocalClient;
 import org.apache.openejb.api.Proxy;
 import org.apache.openejb.api.RemoteClient;
+import org.apache.openejb.assembler.classic.DeploymentTasks;
 import org.apache.openejb.cdi.CdiBeanInfo;
 import org.apache.openejb.config.rules.CheckClasses;
 import org.apache.openejb.core.EmptyResourcesClassLoader;
@@ -259,6 +260,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import static java.util.Arrays.asList;
 
@@ -368,6 +370,7 @@ public class AnnotationDeployer implements DynamicDeployer {
         Thread.currentThread().setContextClassLoader(appModule.getClassLoader());
         setModule(appModule);
         try {
+            createFinders(appModule);
             appModule = discoverAnnotatedBeans.deploy(appModule);
             appModule = envEntriesPropertiesDeployer.deploy(appModule);
             appModule = mergeWebappJndiContext.deploy(appModule);
@@ -383,6 +386,72 @@ public class AnnotationDeployer implements DynamicDeployer {
         }
     }
 
+    /**
+     * In parallel deployment mode the modules without a finder yet are scanned concurrently before being processed,
+     * mainly the ejb jars: DeploymentLoader already scanned the wars (concurrently for the wars of an ear)
+     * and the ear libraries (on their own).
+     * On failure the modules without a finder are scanned again sequentially by their deployment.
+     */
+    private static void createFinders(final AppModule appModule) {
+        final DeploymentTasks tasks = DeploymentTasks.create(appModule.getModuleId() + " scanning");
+        if (!tasks.isParallel()) {
+            return;
+        }
+
+        for (final EjbModule ejbModule : appModule.getEjbModules()) {
+            if (ejbModule.getFinder() == null && (ejbModule.getEjbJar() == null || !ejbModule.getEjbJar().isMetadataComplete())) {
+                tasks.add("scan " + ejbModule.getModuleId(), new ModuleScan(ejbModule) {
+                    @Override
+                    protected void scan() throws Exception {
+                        ejbModule.setFinder(FinderFactory.createFinder(ejbModule));
+                    }
+                });
+            }
+        }
+        for (final WebModule webModule : appModule.getWebModules()) {
+            if (webModule.getFinder() == null && (webModule.getWebApp() == null || !webModule.getWebApp().isMetadataComplete())) {
+                tasks.add("scan " + webModule.getModuleId(), new ModuleScan(webModule) {
+                    @Override
+                    protected void scan() throws Exception {
+                        webModule.setFinder(FinderFactory.createFinder(webModule));
+                    }
+                });
+            }
+        }
+
+        try {
+            tasks.run();
+        } catch (final Exception e) {
+            logger.warning("Parallel scanning of " + appModule.getModuleId() + " failed, modules will be scanned sequentially", e);
+        }
+        tasks.report();
+    }
+
+    private abstract static class ModuleScan implements Callable<Void> {
+        private final DeploymentModule module;
+
+        private ModuleScan(final DeploymentModule module) {
+            this.module = module;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            final Thread thread = Thread.currentThread();
+            final ClassLoader old = thread.getContextClassLoader();
+            thread.setContextClassLoader(module.getClassLoader());
+            setModule(module);
+            try {
+                scan();
+                return null;
+            } finally {
+                removeModule();
+                thread.setContextClassLoader(old);
+            }
+        }
+
+        protected abstract void scan() throws Exception;
+    }
+
     // TODO Remove this section.  It's called by some code in the assembler.
     // The scanning portion should be completed prior to this point
     public void deploy(final CdiBeanInfo beanInfo) throws OpenEJBException {
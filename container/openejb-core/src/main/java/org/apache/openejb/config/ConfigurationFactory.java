@@ -33,6 +33,7 @@ import org.apache.openejb.assembler.classic.ContainerInfo;
 import org.apache.openejb.assembler.classic.ContainerSystemInfo;
 import org.apache.openejb.assembler.classic.DeploymentExceptionManager;
 import org.apache.openejb.assembler.classic.EjbJarInfo;
+import org.apache.openejb.assembler.classic.EnterpriseBeanInfo;
 import org.apache.openejb.assembler.classic.FacilitiesInfo;
 import org.apache.openejb.assembler.classic.HandlerChainInfo;
 import org.apache.openejb.assembler.classic.HandlerInfo;
@@ -146,6 +147,7 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     private final DeploymentLoader deploymentLoader;
     private final boolean offline;
     private final boolean serviceTypeIsAdjustable; // offline is a bit different from this and offline could be off and this on
+    private List<ServiceInfo> installedServices; // only set when precomputing an application
 
     private static final String CLASSPATH_AS_EAR = "openejb.deployments.classpath.ear";
     static final String WEBSERVICES_ENABLED = "openejb.webservices.enabled";
@@ -434,6 +436,9 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     }
 
     protected void install(final ContainerInfo serviceInfo) throws OpenEJBException {
+        if (installedServices != null) {
+            installedServices.add(serviceInfo);
+        }
         if (sys != null) {
             sys.containerSystem.containers.add(serviceInfo);
         } else if (!offline) {
@@ -443,6 +448,9 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     }
 
     protected void install(final ResourceInfo serviceInfo) throws OpenEJBException {
+        if (installedServices != null) {
+            installedServices.add(serviceInfo);
+        }
         if (sys != null) {
             sys.facilities.resources.add(serviceInfo);
         } else if (!offline) {
@@ -828,6 +836,11 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
     public AppInfo configureApplication(final File jarFile) throws OpenEJBException {
         logger.debug("Beginning load: " + jarFile.getAbsolutePath());
 
+        final AppInfo precomputed = configurePrecomputedApplication(jarFile);
+        if (precomputed != null) {
+            return precomputed;
+        }
+
         try {
             final AppModule appModule = deploymentLoader.load(jarFile, null);
             final AppInfo appInfo = configureApplication(appModule);
@@ -957,7 +970,110 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
         return appInfo.webApps.get(0);
     }
 
+    /**
+     * Computes the application like {@link #configureApplication(File)} keeping what is needed to deploy it
+     * without configuring it again, see {@link PrecomputedAppInfo}.
+     */
+    public PrecomputedAppInfo precomputeApplication(final File jarFile) throws OpenEJBException {
+        installedServices = new ArrayList<>();
+        try {
+            final Collection<String> extensions = new HashSet<>();
+            final AppModule appModule = deploymentLoader.load(jarFile, null);
+            final AppInfo appInfo = configureApplication(appModule, extensions);
+            appInfo.paths.add(appInfo.path);
+            appInfo.paths.add(jarFile.getAbsolutePath());
+
+            // the extensions will be added with the application classloader
+            appInfo.eventClassesNeedingAppClassloader.addAll(extensions);
+            return new PrecomputedAppInfo(appInfo, installedServices);
+        } finally {
+            installedServices = null;
+        }
+    }
+
+    /**
+     * @return the application stored in the archive or null if there is none or it can't be used
+     */
+    private AppInfo configurePrecomputedApplication(final File jarFile) throws OpenEJBException {
+        if (!SystemInstance.get().getOptions().get(PrecomputedAppInfo.ACTIVE, false)
+            || !jarFile.isDirectory() && !jarFile.isFile()) {
+            return null;
+        }
+
+        final PrecomputedAppInfo precomputed;
+        try {
+            precomputed = PrecomputedAppInfo.read(jarFile, DeploymentLoader.unpack(jarFile));
+        } catch (final IOException | ClassNotFoundException | ClassCastException e) {
+            logger.warning("Can't read " + PrecomputedAppInfo.LOCATION + " of " + jarFile.getAbsolutePath() + ", deploying it normally", e);
+            return null;
+        }
+        if (precomputed == null) {
+            return null;
+        }
+
+        final AppInfo appInfo = precomputed.getAppInfo();
+        final List<ServiceInfo> missing = new ArrayList<>();
+        final List<String> containerIds = getContainerIds();
+        for (final ServiceInfo service : precomputed.getServices()) {
+            final boolean exists = service instanceof ContainerInfo ? containerIds.contains(service.id) : getResourceInfo(service.id) != null;
+            if (exists) {
+                continue;
+            }
+
+            // auto-created at build time but the server has another one the normal deployment would use
+            if (!service.id.startsWith(appInfo.appId + "/") && hasServiceOfSameType(service)) {
+                logger.info("Ignoring " + PrecomputedAppInfo.LOCATION + " of " + jarFile.getAbsolutePath()
+                    + ", the server configuration provides a replacement for " + service.id);
+                return null;
+            }
+            missing.add(service);
+            if (service instanceof ContainerInfo) {
+                containerIds.add(service.id);
+            }
+        }
+        for (final EjbJarInfo ejbJar : appInfo.ejbJars) {
+            for (final EnterpriseBeanInfo bean : ejbJar.enterpriseBeans) {
+                if (bean.containerId != null && !containerIds.contains(bean.containerId)) {
+                    logger.info("Ignoring " + PrecomputedAppInfo.LOCATION + " of " + jarFile.getAbsolutePath() + ", container " + bean.containerId + " doesn't exist");
+                    return null;
+                }
+            }
+        }
+
+        for (final ServiceInfo service : missing) {
+            if (service instanceof ContainerInfo) {
+                install((ContainerInfo) service);
+            } else {
+                install((ResourceInfo) service);
+            }
+        }
+
+        logger.info("config.configApp", appInfo.path + " (precomputed)");
+        return appInfo;
+    }
+
+    private boolean hasServiceOfSameType(final ServiceInfo service) {
+        if (service instanceof ContainerInfo) {
+            for (final ContainerInfo container : getContainerInfos()) {
+                if (container.getClass() == service.getClass()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (final String type : service.types) {
+            if (!getResourceIds(type).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public AppInfo configureApplication(final AppModule appModule) throws OpenEJBException {
+        return configureApplication(appModule, null);
+    }
+
+    private AppInfo configureApplication(final AppModule appModule, final Collection<String> extensionClasses) throws OpenEJBException {
         try {
             final Collection<Class<?>> extensions = new HashSet<Class<?>>();
             final Collection<String> notLoaded = new HashSet<String>();
@@ -996,6 +1112,11 @@ public class ConfigurationFactory implements OpenEjbConfigurationFactory {
 
             // add it as early as possible, the ones needing the app classloader will be added later
             Extensions.addExtensions(extensions);
+            if (extensionClasses != null) {
+                for (final Class<?> extension : extensions) {
+                    extensionClasses.add(extension.getName());
+                }
+            }
 
             final String location = appModule.getJarLocation();
             logger.info("config.configApp", null != location ? location : appModule.getModuleId());
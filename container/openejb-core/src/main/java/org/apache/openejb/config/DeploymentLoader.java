@@ -22,6 +22,7 @@ import org.apache.openejb.ClassLoaderUtil;
 import org.apache.openejb.OpenEJBException;
 import org.apache.openejb.api.LocalClient;
 import org.apache.openejb.api.RemoteClient;
+import org.apache.openejb.assembler.classic.DeploymentTasks;
 import org.apache.openejb.cdi.CompositeBeans;
 import org.apache.openejb.classloader.ClassLoaderConfigurer;
 import org.apache.openejb.classloader.WebAppEnricher;
@@ -84,6 +85,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -625,14 +627,23 @@ public class DeploymentLoader implements DeploymentFilterable {
             }
 
             // Web modules
+            final Map<String, WebModule> wars = new LinkedHashMap<>();
             for (final String moduleName : webModules.keySet()) {
                 try {
                     final URL warUrl = webModules.get(moduleName);
-                    addWebModule(appModule, warUrl, appClassLoader, webContextRoots.get(moduleName), null);
+                    wars.put(moduleName, createWebModule(appModule.getJarLocation(), warUrl, appClassLoader, webContextRoots.get(moduleName), null, null));
                 } catch (final OpenEJBException e) {
                     logger.error("Unable to load WAR: " + appId + ", module: " + moduleName + ". Exception: " + e.getMessage(), e);
                 }
             }
+            createFinders(appModule, wars.values());
+            for (final Map.Entry<String, WebModule> war : wars.entrySet()) {
+                try {
+                    addWebModule(war.getValue(), appModule);
+                } catch (final OpenEJBException e) {
+                    logger.error("Unable to load WAR: " + appId + ", module: " + war.getKey() + ". Exception: " + e.getMessage(), e);
+                }
+            }
 
 
             addBeansXmls(appModule);
@@ -821,6 +832,37 @@ public class DeploymentLoader implements DeploymentFilterable {
         addWebModule(webModule, appModule);
     }
 
+    /**
+     * In parallel deployment mode the finders of the wars of an ear are created concurrently,
+     * a war failing here is scanned again by {@link #addWebModule(WebModule, AppModule)} which reports the error.
+     */
+    private static void createFinders(final AppModule appModule, final Collection<WebModule> webModules) {
+        final DeploymentTasks tasks = DeploymentTasks.create(appModule.getModuleId() + " web scanning");
+        if (!tasks.isParallel()) {
+            return;
+        }
+
+        for (final WebModule webModule : webModules) {
+            // a metadata-complete web.xml is left to addWebModule, the finder then depends on the ejb-jar.xml
+            if (webModule.getFinder() == null && (webModule.getWebApp() == null || !webModule.getWebApp().isMetadataComplete())) {
+                tasks.add("scan " + webModule.getModuleId(), new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        webModule.setFinder(FinderFactory.createFinder(webModule));
+                        return null;
+                    }
+                });
+            }
+        }
+
+        try {
+            tasks.run();
+        } catch (final Exception e) {
+            logger.warning("Parallel scanning of the wars of " + appModule.getModuleId() + " failed, they will be scanned sequentially", e);
+        }
+        tasks.report();
+    }
+
     public static EjbModule addWebModule(final WebModule webModule, final AppModule appModule) throws OpenEJBException {
         // create and add the WebModule
         appModule.getWebModules().add(webModule);
@@ -106,10 +106,13 @@ public class FinderFactory {
             }
 
             if (module instanceof Module) {
-                final DebugArchive archive = new DebugArchive(new ConfigurableClasspathArchive((Module) module, url));
-                finder = newFinder(archive);
+                Archive archive = new ConfigurableClasspathArchive((Module) module, url);
+                if (!module.getAltDDs().containsKey(ScanConstants.SCAN_XML_NAME)) { // else the scanned classes don't only depend on the jar
+                    archive = ScanIndex.wrap(archive, url);
+                }
+                finder = newFinder(new DebugArchive(archive));
             } else {
-                finder = newFinder(new DebugArchive(new ConfigurableClasspathArchive(module.getClassLoader(), url)));
+                finder = newFinder(new DebugArchive(ScanIndex.wrap(new ConfigurableClasspathArchive(module.getClassLoader(), url), url)));
             }
             finder = useFallbackFinderIfNeededOrLink(module, finder);
         } else {
@@ -0,0 +1,369 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.ServiceInfo;
+import org.apache.openejb.core.ivm.EjbObjectInputStream;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.OpenEjbVersion;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * An {@link AppInfo} computed at build time (tomee-maven-plugin precompute-appinfo goal) and stored
+ * in the archive as {@value #LOCATION} so the deployment doesn't need to read the descriptors and scan the classes.
+ * <p/>
+ * The info tree is serialized and deflated, the strings starting with the path or url of the archive or of its
+ * unpacked folder are stored relative to them so the archive can be moved. The containers and resources the deployment created (auto-created ones and
+ * the ones of the application) are stored with it since they are installed during the configuration.
+ * <p/>
+ * Only used when {@value #ACTIVE} is true: the server configuration and the system properties the info was
+ * computed with are not checked, so it has to be computed with the ones of the server. The stored info is ignored,
+ * and the application deployed normally, if OpenEJB version, archive name or content (paths, sizes and CRCs of
+ * the zip entries, paths, sizes and dates of the files of a folder) changed.
+ * Classes are resolved as for remote calls, blacklisted ones are rejected.
+ */
+public class PrecomputedAppInfo {
+    public static final String ACTIVE = "openejb.precomputed-appinfo";
+    public static final String LOCATION = "META-INF/openejb-appinfo.bin";
+
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_STARTUP_CONFIG, PrecomputedAppInfo.class);
+    private static final int MAGIC = 0x0E1BA1F0;
+    private static final int VERSION = 1;
+    private static final String ARCHIVE = "${openejb.precomputed.archive}";
+    private static final String UNPACKED = "${openejb.precomputed.unpacked}";
+
+    private final AppInfo appInfo;
+    private final List<ServiceInfo> services;
+
+    public PrecomputedAppInfo(final AppInfo appInfo, final List<ServiceInfo> services) {
+        this.appInfo = appInfo;
+        this.services = services;
+    }
+
+    public AppInfo getAppInfo() {
+        return appInfo;
+    }
+
+    /**
+     * @return the containers and resources installed while configuring the application, in installation order
+     */
+    public List<ServiceInfo> getServices() {
+        return services;
+    }
+
+    /**
+     * @param archive  the deployed file or folder
+     * @param unpacked the folder the archive is unpacked to (the archive itself if it is a folder or a jar)
+     */
+    public void write(final File archive, final File unpacked, final OutputStream out) throws IOException {
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeUTF(OpenEjbVersion.get().getVersion());
+        data.writeUTF(archive.getName());
+        data.writeUTF(fingerprint(archive));
+        data.flush();
+
+        final DeflaterOutputStream deflater = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_COMPRESSION));
+        final ObjectOutputStream oos = new RelativeOutputStream(deflater, new Paths(archive, unpacked));
+        oos.writeObject(appInfo);
+        oos.writeObject(new ArrayList<ServiceInfo>(services));
+        oos.flush();
+        deflater.finish();
+    }
+
+    /**
+     * Writes this info in the archive, zip files are rewritten.
+     */
+    public void store(final File archive, final File unpacked) throws IOException {
+        if (archive.isDirectory()) {
+            final File file = new File(archive, LOCATION);
+            if (!file.getParentFile().isDirectory() && !file.getParentFile().mkdirs()) {
+                throw new IOException("Can't create " + file.getParentFile());
+            }
+            final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+            try {
+                write(archive, unpacked, out);
+            } finally {
+                IO.close(out);
+            }
+            return;
+        }
+
+        final File tmp = new File(archive.getParentFile(), archive.getName() + ".tmp");
+        final ZipFile zip = new ZipFile(archive);
+        try {
+            final ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                final Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    final ZipEntry entry = entries.nextElement();
+                    if (LOCATION.equals(entry.getName())) {
+                        continue;
+                    }
+                    final ZipEntry copy = new ZipEntry(entry.getName());
+                    copy.setTime(entry.getTime());
+                    out.putNextEntry(copy);
+                    if (!entry.isDirectory()) {
+                        final InputStream in = zip.getInputStream(entry);
+                        try {
+                            IO.copy(in, out);
+                        } finally {
+                            IO.close(in);
+                        }
+                    }
+                    out.closeEntry();
+                }
+
+                out.putNextEntry(new ZipEntry(LOCATION));
+                write(archive, unpacked, out);
+                out.closeEntry();
+            } finally {
+                IO.close(out);
+            }
+        } finally {
+            zip.close();
+        }
+
+        if (!archive.delete() || !tmp.renameTo(archive)) {
+            throw new IOException("Can't replace " + archive + " by " + tmp);
+        }
+    }
+
+    /**
+     * @return the info stored in the archive or null if there is none or it doesn't match the archive anymore
+     */
+    public static PrecomputedAppInfo read(final File archive, final File unpacked) throws IOException, ClassNotFoundException {
+        ZipFile zip = null;
+        InputStream in = null;
+        try {
+            if (archive.isDirectory()) {
+                final File file = new File(archive, LOCATION);
+                if (!file.isFile()) {
+                    return null;
+                }
+                in = new BufferedInputStream(new FileInputStream(file));
+            } else {
+                zip = new ZipFile(archive);
+                final ZipEntry entry = zip.getEntry(LOCATION);
+                if (entry == null) {
+                    return null;
+                }
+                in = new BufferedInputStream(zip.getInputStream(entry));
+            }
+
+            final DataInputStream data = new DataInputStream(in);
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                LOGGER.warning("Ignoring " + LOCATION + " of " + archive + ", unknown format");
+                return null;
+            }
+            final String version = data.readUTF();
+            if (!OpenEjbVersion.get().getVersion().equals(version)) {
+                LOGGER.info("Ignoring " + LOCATION + " of " + archive + ", computed with OpenEJB " + version);
+                return null;
+            }
+            final String name = data.readUTF();
+            if (!archive.getName().equals(name)) {
+                LOGGER.info("Ignoring " + LOCATION + " of " + archive + ", computed for " + name);
+                return null;
+            }
+            if (!fingerprint(archive).equals(data.readUTF())) {
+                LOGGER.info("Ignoring " + LOCATION + " of " + archive + ", the archive changed");
+                return null;
+            }
+
+            final EjbObjectInputStream ois = new RelativeInputStream(new InflaterInputStream(in), new Paths(archive, unpacked));
+            final AppInfo appInfo = (AppInfo) ois.readObject();
+            @SuppressWarnings("unchecked")
+            final List<ServiceInfo> services = (List<ServiceInfo>) ois.readObject();
+            return new PrecomputedAppInfo(appInfo, services);
+        } finally {
+            IO.close(in);
+            if (zip != null) {
+                zip.close();
+            }
+        }
+    }
+
+    /**
+     * Path, size and CRC of the entries of a zip, path, size and modification date of the files of a folder.
+     */
+    static String fingerprint(final File archive) throws IOException {
+        final TreeSet<String> entries = new TreeSet<String>();
+        if (archive.isDirectory()) {
+            list(archive, "", entries);
+        } else {
+            final ZipFile zip = new ZipFile(archive);
+            try {
+                final Enumeration<? extends ZipEntry> e = zip.entries();
+                while (e.hasMoreElements()) {
+                    final ZipEntry entry = e.nextElement();
+                    if (!entry.isDirectory() && !LOCATION.equals(entry.getName())) {
+                        entries.add(entry.getName() + ':' + entry.getSize() + ':' + entry.getCrc());
+                    }
+                }
+            } finally {
+                zip.close();
+            }
+        }
+
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (final String entry : entries) {
+                digest.update(entry.getBytes("UTF-8"));
+                digest.update((byte) '\n');
+            }
+            return String.format("%040x", new BigInteger(1, digest.digest()));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void list(final File dir, final String prefix, final TreeSet<String> entries) {
+        final File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            final String name = prefix + file.getName();
+            if (file.isDirectory()) {
+                list(file, name + '/', entries);
+            } else if (!LOCATION.equals(name)) {
+                entries.add(name + ':' + file.length() + ':' + file.lastModified());
+            }
+        }
+    }
+
+    /**
+     * Absolute paths and urls of the archive and of its unpacked folder and the markers replacing them.
+     */
+    private static class Paths {
+        private final String[] values;
+        private final String[] markers;
+
+        private Paths(final File archive, final File unpacked) {
+            final File unpackedDir = unpacked == null ? archive : unpacked;
+            String unpackedUri = unpackedDir.toURI().toString();
+            if (!unpackedUri.endsWith("/")) { // not yet created
+                unpackedUri += '/';
+            }
+            final String archiveUri = archive.toURI().toString();
+            values = new String[]{
+                archiveUri, archive.getAbsolutePath(),
+                unpackedUri, unpackedDir.getAbsolutePath()
+            };
+            markers = new String[]{
+                "file:" + ARCHIVE + (archiveUri.endsWith("/") ? "/" : ""), ARCHIVE,
+                "file:" + UNPACKED + '/', UNPACKED
+            };
+        }
+
+        private String relativize(final String value) {
+            return replacePrefix(value, values, markers);
+        }
+
+        private String resolve(final String value) {
+            return replacePrefix(value, markers, values);
+        }
+
+        /**
+         * Only whole paths are replaced: the value, or the url it is nested in, has to start with one
+         * followed by nothing or a separator.
+         */
+        private static String replacePrefix(final String value, final String[] prefixes, final String[] replacements) {
+            final int start = value.startsWith("jar:") ? "jar:".length() : 0;
+            for (int i = 0; i < prefixes.length; i++) {
+                final String prefix = prefixes[i];
+                if (value.startsWith(prefix, start) && isBoundary(value, start + prefix.length(), prefix)) {
+                    return value.substring(0, start) + replacements[i] + value.substring(start + prefix.length());
+                }
+            }
+            return value;
+        }
+
+        private static boolean isBoundary(final String value, final int end, final String prefix) {
+            if (end == value.length() || prefix.endsWith("/")) {
+                return true;
+            }
+            final char next = value.charAt(end);
+            return next == '/' || next == File.separatorChar || next == '!';
+        }
+    }
+
+    private static class RelativeOutputStream extends ObjectOutputStream {
+        private final Paths paths;
+
+        private RelativeOutputStream(final OutputStream out, final Paths paths) throws IOException {
+            super(out);
+            this.paths = paths;
+            enableReplaceObject(true);
+        }
+
+        @Override
+        protected Object replaceObject(final Object obj) throws IOException {
+            if (obj instanceof String) {
+                return paths.relativize((String) obj);
+            }
+            return obj;
+        }
+    }
+
+    private static class RelativeInputStream extends EjbObjectInputStream {
+        private final Paths paths;
+
+        private RelativeInputStream(final InputStream in, final Paths paths) throws IOException {
+            super(in);
+            this.paths = paths;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(final Object obj) throws IOException {
+            if (obj instanceof String) {
+                return paths.resolve((String) obj);
+            }
+            return obj;
+        }
+    }
+}
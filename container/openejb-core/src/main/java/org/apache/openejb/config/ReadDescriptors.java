@@ -54,10 +54,11 @@ import org.apache.openejb.jee.oejb3.OpenejbJar;
 import org.apache.openejb.loader.IO;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.sxc.ApplicationClientXml;
+import org.apache.openejb.sxc.ConnectorXml;
 import org.apache.openejb.sxc.EjbJarXml;
 import org.apache.openejb.sxc.FacesConfigXml;
 import org.apache.openejb.sxc.HandlerChainsXml;
-import org.apache.openejb.sxc.TldTaglibXml;
+import org.apache.openejb.sxc.JavaWsdlMappingXml;
 import org.apache.openejb.sxc.WebXml;
 import org.apache.openejb.sxc.WebservicesXml;
 import org.apache.openejb.util.LengthInputStream;
@@ -784,7 +785,7 @@ public class ReadDescriptors implements DynamicDeployer {
     public static JavaWsdlMapping readJaxrpcMapping(final URL url) throws OpenEJBException {
         final JavaWsdlMapping wsdlMapping;
         try {
-            wsdlMapping = (JavaWsdlMapping) JaxbJavaee.unmarshalJavaee(JavaWsdlMapping.class, IO.read(url));
+            wsdlMapping = JavaWsdlMappingXml.unmarshal(url);
         } catch (final SAXException e) {
             throw new OpenEJBException("Cannot parse the JaxRPC mapping file: " + url.toExternalForm(), e);
         } catch (final JAXBException e) {
@@ -798,6 +799,15 @@ public class ReadDescriptors implements DynamicDeployer {
     }
 
     public static Connector readConnector(final URL url) throws OpenEJBException {
+        try {
+            return ConnectorXml.unmarshal(url);
+        } catch (final Exception e) { // connector 1.0 or invalid descriptor, JAXB handles the former and reports the latter
+            logger.debug("Can't read " + url.toExternalForm() + " without JAXB: " + e.getMessage());
+            return readConnectorWithJaxb(url);
+        }
+    }
+
+    private static Connector readConnectorWithJaxb(final URL url) throws OpenEJBException {
         Connector connector;
         try {
             connector = (Connector) JaxbJavaee.unmarshalJavaee(Connector.class, IO.read(url));
@@ -852,7 +862,7 @@ public class ReadDescriptors implements DynamicDeployer {
         }
 
         try {
-            return TldTaglibXml.unmarshal(url);
+            return TldCache.taglib(url);
         } catch (final SAXException e) {
             final String message = "Cannot parse the JSP tag library definition file: " + url.toExternalForm();
             logger.warning(message);
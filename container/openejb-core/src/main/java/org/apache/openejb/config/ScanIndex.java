@@ -0,0 +1,345 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.URLs;
+import org.apache.xbean.asm5.ClassReader;
+import org.apache.xbean.asm5.ClassWriter;
+import org.apache.xbean.finder.archive.Archive;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On disk index of the scanned jars so warm restarts don't need to read them again.
+ * <p/>
+ * For each jar (identified by its path, size and last modification date) the index keeps the classes
+ * found by the scanning stripped of their code: class, method, field and parameter annotations
+ * (with their values), super class and interfaces are kept which is all the annotation finder reads.
+ * When a jar didn't change the finder reads these small class files instead of opening and inflating the jar,
+ * when it changed only its own index file is rebuilt.
+ * <p/>
+ * Enabled with {@value #ACTIVE}, the index is stored in {@value #DIRECTORY} (java.io.tmpdir/openejb-scan-index by default).
+ * Only jar files are indexed, folders (WEB-INF/classes) are always scanned.
+ */
+public class ScanIndex {
+    public static final String ACTIVE = "openejb.scan.index";
+    public static final String DIRECTORY = "openejb.scan.index.directory";
+
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_STARTUP_CONFIG, ScanIndex.class);
+    private static final int MAGIC = 0x0E1B5CA1;
+    private static final int VERSION = 1;
+    private static final int ASM_FLAGS = ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES;
+
+    private static volatile ScanIndex instance;
+
+    private final File directory;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ScanIndex(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the archive reading the index for this url if the index is active and the url is a jar
+     */
+    public static Archive wrap(final Archive archive, final URL url) {
+        if (!SystemInstance.get().getOptions().get(ACTIVE, false)) {
+            return archive;
+        }
+        ScanIndex index = instance;
+        if (index == null) {
+            synchronized (ScanIndex.class) {
+                index = instance;
+                if (index == null) {
+                    index = new ScanIndex(new File(SystemInstance.get().getOptions().get(DIRECTORY,
+                        new File(System.getProperty("java.io.tmpdir"), "openejb-scan-index").getAbsolutePath())));
+                    instance = index;
+                }
+            }
+        }
+        return index.archive(archive, url);
+    }
+
+    public Archive archive(final Archive archive, final URL url) {
+        if (url == null
+            || !("file".equals(url.getProtocol()) || "jar".equals(url.getProtocol()) && url.getFile().endsWith("!/"))) {
+            return archive;
+        }
+        final File file = URLs.toFile(URLs.toFileUrl(url));
+        if (!file.isFile()) {
+            return archive;
+        }
+        return new IndexedArchive(archive, file);
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the classes of this jar or null if they are not indexed or the jar changed
+     */
+    private Map<String, byte[]> read(final File jar) {
+        final File index = indexFile(jar);
+        if (!index.isFile()) {
+            return null;
+        }
+
+        try {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION
+                    || !jar.getAbsolutePath().equals(in.readUTF())
+                    || in.readLong() != jar.length() || in.readLong() != jar.lastModified()) {
+                    return null;
+                }
+
+                final int size = in.readInt();
+                final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>(size * 4 / 3 + 1);
+                for (int i = 0; i < size; i++) {
+                    final String name = in.readUTF();
+                    final byte[] bytes = new byte[in.readInt()];
+                    in.readFully(bytes);
+                    classes.put(name, bytes);
+                }
+                return classes;
+            } finally {
+                IO.close(in);
+            }
+        } catch (final IOException e) {
+            LOGGER.debug("Can't read scan index " + index + ", " + jar + " will be scanned", e);
+            return null;
+        }
+    }
+
+    private void write(final File jar, final long length, final long lastModified, final Map<String, byte[]> classes) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            LOGGER.warning("Can't create scan index directory " + directory);
+            return;
+        }
+
+        final File index = indexFile(jar);
+        final File tmp = new File(directory, index.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(jar.getAbsolutePath());
+                out.writeLong(length);
+                out.writeLong(lastModified);
+                out.writeInt(classes.size());
+                for (final Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            } finally {
+                IO.close(out);
+            }
+
+            if (index.exists() && !index.delete() || !tmp.renameTo(index)) {
+                LOGGER.debug("Can't update scan index " + index);
+            }
+        } catch (final IOException e) {
+            LOGGER.debug("Can't write scan index " + index, e);
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    private File indexFile(final File jar) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            final byte[] hash = digest.digest(jar.getAbsolutePath().getBytes("UTF-8"));
+            return new File(directory, String.format("%040x", new BigInteger(1, hash)) + ".idx");
+        } catch (final Exception e) { // SHA-1 and UTF-8 are always there
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Keeps what the annotation finder reads: no code, no debug info.
+     */
+    private static byte[] strip(final byte[] bytecode) {
+        final ClassWriter writer = new ClassWriter(0);
+        new ClassReader(bytecode).accept(writer, ASM_FLAGS);
+        return writer.toByteArray();
+    }
+
+    private class IndexedArchive implements Archive {
+        private final Archive delegate;
+        private final File jar;
+
+        private IndexedArchive(final Archive delegate, final File jar) {
+            this.delegate = delegate;
+            this.jar = jar;
+        }
+
+        @Override
+        public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+            return delegate.getBytecode(className);
+        }
+
+        @Override
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            return delegate.loadClass(className);
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            final Map<String, byte[]> classes = read(jar);
+            if (classes != null) {
+                hits.incrementAndGet();
+                return new IndexIterator(classes.entrySet().iterator());
+            }
+
+            misses.incrementAndGet();
+            return new IndexingIterator(delegate.iterator(), jar.length(), jar.lastModified());
+        }
+
+        private class IndexIterator implements Iterator<Entry> {
+            private final Iterator<Map.Entry<String, byte[]>> classes;
+
+            private IndexIterator(final Iterator<Map.Entry<String, byte[]>> classes) {
+                this.classes = classes;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return classes.hasNext();
+            }
+
+            @Override
+            public Entry next() {
+                final Map.Entry<String, byte[]> next = classes.next();
+                return new BytesEntry(next.getKey(), next.getValue());
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+
+        /**
+         * Scans the jar and saves the index once the whole jar was read.
+         */
+        private class IndexingIterator implements Iterator<Entry> {
+            private final Iterator<Entry> entries;
+            private final long length;
+            private final long lastModified;
+            private final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+            private boolean valid = true;
+
+            private IndexingIterator(final Iterator<Entry> entries, final long length, final long lastModified) {
+                this.entries = entries;
+                this.length = length;
+                this.lastModified = lastModified;
+            }
+
+            @Override
+            public boolean hasNext() {
+                final boolean hasNext = entries.hasNext();
+                if (!hasNext && valid) {
+                    valid = false; // saved once
+                    write(jar, length, lastModified, classes);
+                }
+                return hasNext;
+            }
+
+            @Override
+            public Entry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+
+                final Entry entry = entries.next();
+                final byte[] bytecode;
+                try {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    final InputStream in = entry.getBytecode();
+                    try {
+                        IO.copy(in, out);
+                    } finally {
+                        IO.close(in);
+                    }
+                    bytecode = out.toByteArray();
+                    classes.put(entry.getName(), strip(bytecode));
+                } catch (final Exception e) { // let the finder handle it, just don't save an incomplete index
+                    valid = false;
+                    return entry;
+                }
+                return new BytesEntry(entry.getName(), bytecode);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        }
+    }
+
+    private static class BytesEntry implements Archive.Entry {
+        private final String name;
+        private final byte[] bytecode;
+
+        private BytesEntry(final String name, final byte[] bytecode) {
+            this.name = name;
+            this.bytecode = bytecode;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public InputStream getBytecode() throws IOException {
+            return new ByteArrayInputStream(bytecode);
+        }
+    }
+}
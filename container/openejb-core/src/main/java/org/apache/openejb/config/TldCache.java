@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.config;
+
+import org.apache.openejb.jee.TldTaglib;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.sxc.TldTaglibXml;
+import org.apache.openejb.util.URLs;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process wide cache of what is read from tag libraries: the TLD entries of jars and the parsed TLDs.
+ * <p/>
+ * Entries are keyed by the jar (or tld file) identity, its path, size and last modification date,
+ * so webapps sharing a lib folder scan and parse those jars only once while a jar replaced on redeploy
+ * is read again. Jars of an undeployed application are evicted by {@link TldScanner#forceCompleteClean(ClassLoader)}.
+ * <p/>
+ * Parsed TLDs are shared, they must be considered as read only.
+ * Can be deactivated with the {@link #ACTIVE} property.
+ */
+public final class TldCache {
+    public static final String ACTIVE = "openejb.tld.cache";
+
+    private static final ConcurrentMap<String, Entry<Set<URL>>> JARS = new ConcurrentHashMap<String, Entry<Set<URL>>>();
+    private static final ConcurrentMap<String, Entry<TldTaglib>> TAGLIBS = new ConcurrentHashMap<String, Entry<TldTaglib>>();
+
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    private TldCache() {
+        // no-op
+    }
+
+    /**
+     * @return the urls of the TLD entries of the jar (META-INF/**.tld)
+     */
+    public static Set<URL> jarTlds(final File jar) {
+        if (!isActive()) {
+            return TldScanner.scanJarForTagLibs(jar);
+        }
+
+        final String key = jar.getAbsolutePath();
+        final Entry<Set<URL>> entry = JARS.get(key);
+        if (entry != null && entry.isValid()) {
+            HITS.incrementAndGet();
+            return entry.value;
+        }
+
+        MISSES.incrementAndGet();
+        final Entry<Set<URL>> created = new Entry<Set<URL>>(jar); // stamp before reading to not miss a concurrent update
+        created.value = TldScanner.scanJarForTagLibs(jar);
+        JARS.put(key, created);
+        return created.value;
+    }
+
+    /**
+     * @param url a tld file or jar entry
+     * @return the parsed TLD, a failure is not cached
+     */
+    public static TldTaglib taglib(final URL url) throws Exception {
+        final File file = isActive() ? file(url) : null;
+        if (file == null) {
+            return TldTaglibXml.unmarshal(url);
+        }
+
+        final String key = url.toExternalForm();
+        final Entry<TldTaglib> entry = TAGLIBS.get(key);
+        if (entry != null && entry.isValid()) {
+            HITS.incrementAndGet();
+            return entry.value;
+        }
+
+        MISSES.incrementAndGet();
+        final Entry<TldTaglib> created = new Entry<TldTaglib>(file);
+        created.value = read(url);
+        TAGLIBS.put(key, created);
+        return created.value;
+    }
+
+    private static TldTaglib read(final URL url) throws Exception {
+        final URLConnection connection = url.openConnection();
+        connection.setUseCaches(false); // don't keep the jar opened, it can be replaced on redeploy
+        final InputStream is = connection.getInputStream();
+        try {
+            return TldTaglibXml.unmarshal(is);
+        } finally {
+            IO.close(is);
+        }
+    }
+
+    /**
+     * Forgets what was read from these jars or folders.
+     */
+    public static void invalidate(final Collection<URL> urls) {
+        if (JARS.isEmpty() && TAGLIBS.isEmpty()) {
+            return;
+        }
+
+        for (final URL url : urls) {
+            final File file = file(url);
+            if (file != null) {
+                invalidate(file);
+            }
+        }
+    }
+
+    public static void invalidate(final File file) {
+        final String path = file.getAbsolutePath();
+        JARS.remove(path);
+        for (final Iterator<Entry<TldTaglib>> it = TAGLIBS.values().iterator(); it.hasNext(); ) {
+            final File owner = it.next().file;
+            if (owner.equals(file) || owner.getAbsolutePath().startsWith(path + File.separator)) { // jar or tld in a folder
+                it.remove();
+            }
+        }
+    }
+
+    public static void clear() {
+        JARS.clear();
+        TAGLIBS.clear();
+    }
+
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    private static boolean isActive() {
+        return SystemInstance.get().getOptions().get(ACTIVE, true);
+    }
+
+    // the file which changes when the tld changes
+    private static File file(final URL url) {
+        final String protocol = url.getProtocol();
+        if (!"file".equals(protocol) && !"jar".equals(protocol)) {
+            return null;
+        }
+        try {
+            return URLs.toFile(URLs.toFileUrl(url)).getAbsoluteFile();
+        } catch (final RuntimeException e) { // nested jar, not a file...
+            return null;
+        }
+    }
+
+    private static final class Entry<T> {
+        private final File file;
+        private final long lastModified;
+        private final long length;
+        private volatile T value;
+
+        private Entry(final File file) {
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+
+        private boolean isValid() {
+            return file.lastModified() == lastModified && file.length() == length;
+        }
+    }
+}
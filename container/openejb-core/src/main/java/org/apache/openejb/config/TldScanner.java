@@ -226,7 +226,7 @@ public class TldScanner {
             final String location = file.toURI().toURL().toExternalForm();
 
             if (location.endsWith(".jar")) {
-                final Set<URL> urls = scanJarForTagLibs(file);
+                final Set<URL> urls = TldCache.jarTlds(file);
                 tldLocations.addAll(urls);
             } else if (file.getName().endsWith(".tld")) {
                 final URL url = file.toURI().toURL();
@@ -293,7 +293,9 @@ public class TldScanner {
         }
 
         quickClean(loader);
-        cacheByhashCode.remove(hash(urls(loader)));
+        final List<URL> urls = urls(loader);
+        cacheByhashCode.remove(hash(urls));
+        TldCache.invalidate(urls); // jars of the application can be replaced on redeploy
 
         if (loader.getParent() != TldScanner.class.getClassLoader()) { // for ears
             forceCompleteClean(loader.getParent());
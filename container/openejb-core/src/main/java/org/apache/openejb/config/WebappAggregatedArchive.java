@@ -55,7 +55,7 @@ public class WebappAggregatedArchive implements Archive, ScanConstants {
         for (final URL url : urls) {
             final List<String> classes = new ArrayList<String>();
             final Archive archive = new FilteredArchive(
-                    new ConfigurableClasspathArchive(module.getClassLoader(), Arrays.asList(url)), new ScanXmlSaverFilter(scanXmlExists, handler, classes, filter));
+                    ScanIndex.wrap(new ConfigurableClasspathArchive(module.getClassLoader(), Arrays.asList(url)), url), new ScanXmlSaverFilter(scanXmlExists, handler, classes, filter));
             map.put(url, classes);
             archives.add(archive);
         }
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.interceptor;
+
+import org.apache.openejb.core.Operation;
+import org.apache.openejb.util.proxy.DynamicProxyImplFactory;
+
+import javax.interceptor.InvocationContext;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable list of the interceptor methods to call for an operation, computed once
+ * from the {@link InterceptorData} of a bean method.
+ * <p/>
+ * The chain only knows interceptor classes, the instances are bound at invocation time
+ * from the interceptor instances of the bean instance so invoking a method doesn't need
+ * to rebuild the chain. Chains created for a bean method also bind a {@link MethodInvoker}
+ * per interceptor method and for the bean method.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class InterceptorChain {
+    private static final String[] NO_CLASSES = new String[0];
+
+    private final Operation operation;
+    private final String[] interceptorClasses;
+    private final String[] classNames;
+    private final Method[] methods;
+    private final boolean[] invocationContextParameter;
+    private final Object[] instances;
+    private final MethodInvoker[] invokers;
+    private final MethodInvoker target;
+
+    private InterceptorChain(final Operation operation, final String[] interceptorClasses,
+                             final String[] classNames, final Method[] methods, final Object[] instances,
+                             final Method targetMethod) {
+        this.operation = operation;
+        this.interceptorClasses = interceptorClasses;
+        this.classNames = classNames;
+        this.methods = methods;
+        this.instances = instances;
+        this.invocationContextParameter = new boolean[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            final Class<?>[] parameterTypes = methods[i].getParameterTypes();
+            invocationContextParameter[i] = parameterTypes.length == 1 && parameterTypes[0] == InvocationContext.class;
+        }
+
+        if (targetMethod != null) {
+            this.invokers = new MethodInvoker[methods.length];
+            for (int i = 0; i < methods.length; i++) {
+                invokers[i] = MethodInvoker.of(methods[i]);
+            }
+            this.target = MethodInvoker.of(targetMethod);
+        } else {
+            this.invokers = null;
+            this.target = null;
+        }
+    }
+
+    public static InterceptorChain create(final Operation operation, final List<InterceptorData> interceptorDatas) {
+        return create(operation, interceptorDatas, null);
+    }
+
+    /**
+     * @param targetMethod the bean method, when not null method handles are bound for the whole chain
+     *                     so the chain should be cached
+     */
+    public static InterceptorChain create(final Operation operation, final List<InterceptorData> interceptorDatas, final Method targetMethod) {
+        if (interceptorDatas == null) {
+            throw new NullPointerException("interceptorDatas is null");
+        }
+
+        final String[] interceptorClasses = new String[interceptorDatas.size()];
+        int size = 0;
+        for (int i = 0; i < interceptorClasses.length; i++) {
+            final InterceptorData interceptorData = interceptorDatas.get(i);
+            interceptorClasses[i] = interceptorData.getInterceptorClass().getName();
+            size += interceptorData.getMethods(operation).size();
+        }
+
+        final String[] classNames = new String[size];
+        final Method[] methods = new Method[size];
+        int index = 0;
+        for (int i = 0; i < interceptorClasses.length; i++) {
+            for (final Method method : interceptorDatas.get(i).getMethods(operation)) {
+                classNames[index] = interceptorClasses[i];
+                methods[index++] = method;
+            }
+        }
+        return new InterceptorChain(operation, interceptorClasses, classNames, methods, null, targetMethod);
+    }
+
+    /**
+     * Wraps interceptors already bound to their instances.
+     */
+    public static InterceptorChain wrap(final Operation operation, final List<Interceptor> interceptors) {
+        final Method[] methods = new Method[interceptors.size()];
+        final Object[] instances = new Object[interceptors.size()];
+        for (int i = 0; i < methods.length; i++) {
+            final Interceptor interceptor = interceptors.get(i);
+            methods[i] = interceptor.getMethod();
+            instances[i] = interceptor.getInstance();
+        }
+        return new InterceptorChain(operation, NO_CLASSES, NO_CLASSES, methods, instances, null);
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public int size() {
+        return methods.length;
+    }
+
+    public Method getMethod(final int index) {
+        return methods[index];
+    }
+
+    /**
+     * @return true if the interceptor method takes the InvocationContext (around invoke style),
+     * false if it is called with the invocation parameters (lifecycle style)
+     */
+    public boolean isInvocationContextParameter(final int index) {
+        return invocationContextParameter[index];
+    }
+
+    /**
+     * @throws IllegalArgumentException if an interceptor of the chain has no instance
+     */
+    public void validate(final Map<String, Object> interceptorInstances) {
+        for (final String interceptorClass : interceptorClasses) {
+            if (interceptorInstances.get(interceptorClass) == null) {
+                throw new IllegalArgumentException("No interceptor of type " + interceptorClass);
+            }
+        }
+    }
+
+    /**
+     * @return the object the interceptor method at this index has to be invoked on
+     */
+    public Object getInstance(final int index, final Map<String, Object> interceptorInstances) {
+        if (instances != null) {
+            return instances[index];
+        }
+
+        final Object interceptorInstance = interceptorInstances.get(classNames[index]);
+        if (interceptorInstance == null) {
+            throw new IllegalArgumentException("No interceptor of type " + classNames[index]);
+        }
+
+        final Object handler = DynamicProxyImplFactory.realHandler(interceptorInstance);
+        if (handler != null && methods[index].getDeclaringClass().equals(handler.getClass())) { // dynamic impl
+            return handler;
+        }
+        return interceptorInstance;
+    }
+
+    /**
+     * Invokes an around invoke like interceptor method (taking the invocation context).
+     */
+    public Object invoke(final int index, final Object instance, final InvocationContext invocationContext) throws Exception {
+        if (invokers != null) {
+            return invokers[index].invoke(instance, invocationContext);
+        }
+        return methods[index].invoke(instance, invocationContext);
+    }
+
+    /**
+     * Invokes a lifecycle like interceptor method (taking the invocation parameters).
+     */
+    public Object invoke(final int index, final Object instance, final Object[] parameters) throws Exception {
+        if (invokers != null) {
+            return invokers[index].invoke(instance, parameters);
+        }
+        return methods[index].invoke(instance, parameters);
+    }
+
+    /**
+     * Invokes the bean method, reflection is used if this chain was not created for this method.
+     */
+    public Object invokeTarget(final Object bean, final Method method, final Object[] parameters) throws Exception {
+        if (target != null && target.getMethod().equals(method)) {
+            return target.invoke(bean, parameters);
+        }
+        return method.invoke(bean, parameters);
+    }
+}
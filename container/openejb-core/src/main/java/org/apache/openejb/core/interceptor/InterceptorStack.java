@@ -19,61 +19,47 @@ package org.apache.openejb.core.interceptor;
 
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
-import org.apache.openejb.util.proxy.DynamicProxyImplFactory;
 
 import javax.interceptor.InvocationContext;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 /**
  * @version $Rev$ $Date$
  */
 public class InterceptorStack {
     private final Object beanInstance;
-    private final List<Interceptor> interceptors;
+    private final InterceptorChain interceptors;
+    private final Map<String, Object> interceptorInstances;
     private final Method targetMethod;
     private final Operation operation;
 
     public InterceptorStack(final Object beanInstance, final Method targetMethod, final Operation operation, final List<InterceptorData> interceptorDatas, final Map<String, Object> interceptorInstances) {
-        if (interceptorDatas == null) {
-            throw new NullPointerException("interceptorDatas is null");
+        this(beanInstance, targetMethod, operation, InterceptorChain.create(operation, interceptorDatas), interceptorInstances);
+    }
+
+    /**
+     * @param interceptors the chain computed once for the method and operation, see BeanContext#getInterceptorChain
+     */
+    public InterceptorStack(final Object beanInstance, final Method targetMethod, final Operation operation, final InterceptorChain interceptors, final Map<String, Object> interceptorInstances) {
+        if (interceptors == null) {
+            throw new NullPointerException("interceptors is null");
         }
         if (interceptorInstances == null) {
             throw new NullPointerException("interceptorInstances is null");
         }
+        interceptors.validate(interceptorInstances);
+
         this.beanInstance = beanInstance;
         this.targetMethod = targetMethod;
         this.operation = operation;
-
-        interceptors = new ArrayList<Interceptor>(interceptorDatas.size());
-
-        for (final InterceptorData interceptorData : interceptorDatas) {
-            final Class interceptorClass = interceptorData.getInterceptorClass();
-            final Object interceptorInstance = interceptorInstances.get(interceptorClass.getName());
-            if (interceptorInstance == null) {
-                throw new IllegalArgumentException("No interceptor of type " + interceptorClass.getName());
-            }
-
-            final Set<Method> methods = interceptorData.getMethods(operation);
-            for (final Method method : methods) {
-                final Interceptor interceptor;
-                final Object handler = DynamicProxyImplFactory.realHandler(interceptorInstance);
-                if (handler != null && method.getDeclaringClass().equals(handler.getClass())) { // dynamic impl
-                    interceptor = new Interceptor(handler, method);
-                } else {
-                    interceptor = new Interceptor(interceptorInstance, method);
-                }
-                interceptors.add(interceptor);
-            }
-        }
-
+        this.interceptors = interceptors;
+        this.interceptorInstances = interceptorInstances;
     }
 
     public InvocationContext createInvocationContext(final Object... parameters) {
-        return new ReflectionInvocationContext(operation, interceptors, beanInstance, targetMethod, parameters);
+        return new ReflectionInvocationContext(operation, interceptors, interceptorInstances, beanInstance, targetMethod, parameters);
     }
 
     public Object invoke(final Object... parameters) throws Exception {
@@ -92,7 +78,7 @@ public class InterceptorStack {
 
     public Object invoke(final javax.xml.ws.handler.MessageContext messageContext, final Object... parameters) throws Exception {
         try {
-            final InvocationContext invocationContext = new JaxWsInvocationContext(operation, interceptors, beanInstance, targetMethod, messageContext, parameters);
+            final InvocationContext invocationContext = new JaxWsInvocationContext(operation, interceptors, interceptorInstances, beanInstance, targetMethod, messageContext, parameters);
             ThreadContext.getThreadContext().set(InvocationContext.class, invocationContext);
             return invocationContext.proceed();
         } finally {
@@ -102,7 +88,7 @@ public class InterceptorStack {
 
     public Object invoke(final javax.xml.rpc.handler.MessageContext messageContext, final Object... parameters) throws Exception {
         try {
-            final InvocationContext invocationContext = new JaxRpcInvocationContext(operation, interceptors, beanInstance, targetMethod, messageContext, parameters);
+            final InvocationContext invocationContext = new JaxRpcInvocationContext(operation, interceptors, interceptorInstances, beanInstance, targetMethod, messageContext, parameters);
             ThreadContext.getThreadContext().set(InvocationContext.class, invocationContext);
             return invocationContext.proceed();
         } finally {
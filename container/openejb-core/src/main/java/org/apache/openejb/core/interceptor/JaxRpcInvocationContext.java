@@ -22,6 +22,7 @@ import org.apache.openejb.core.Operation;
 import javax.xml.rpc.handler.MessageContext;
 import java.lang.reflect.Method;
 import java.util.List;
+import java.util.Map;
 
 /**
  * We could really get by with usinga plain ReflectionInvocationContext
@@ -36,4 +37,10 @@ public class JaxRpcInvocationContext extends ReflectionInvocationContext {
         super(operation, interceptors, target, method, parameters);
         getContextData().put(MessageContext.class.getName(), messageContext);
     }
+
+    public JaxRpcInvocationContext(final Operation operation, final InterceptorChain interceptors, final Map<String, Object> interceptorInstances,
+                                   final Object target, final Method method, final MessageContext messageContext, final Object... parameters) {
+        super(operation, interceptors, interceptorInstances, target, method, parameters);
+        getContextData().put(MessageContext.class.getName(), messageContext);
+    }
 }
@@ -35,6 +35,12 @@ public class JaxWsInvocationContext extends ReflectionInvocationContext {
         this.messageContext = messageContext;
     }
 
+    public JaxWsInvocationContext(final Operation operation, final InterceptorChain interceptors, final Map<String, Object> interceptorInstances,
+                                  final Object target, final Method method, final MessageContext messageContext, final Object... parameters) {
+        super(operation, interceptors, interceptorInstances, target, method, parameters);
+        this.messageContext = messageContext;
+    }
+
     public Map<String, Object> getContextData() {
         return messageContext;
     }
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.interceptor;
+
+import org.apache.openejb.loader.SystemInstance;
+
+import javax.interceptor.InvocationContext;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Calls a bean or interceptor method through a {@link MethodHandle} bound once when the
+ * interceptor chain of the method is computed, this avoids the access checks and the
+ * argument copy of {@link Method#invoke(Object, Object...)} on each call.
+ * <p/>
+ * The exception contract is the one of {@link Method#invoke(Object, Object...)}: failures of the method are
+ * wrapped in an {@link InvocationTargetException} and invalid targets or arguments are reported by reflection
+ * itself (IllegalArgumentException, NullPointerException) since such calls are delegated to it.
+ * <p/>
+ * Reflection is used when the method can't be unreflected or when
+ * {@value #METHOD_HANDLES} is set to false.
+ *
+ * @version $Rev$ $Date$
+ */
+public final class MethodInvoker {
+    public static final String METHOD_HANDLES = "openejb.invocation.method-handles";
+
+    private static final MethodType CONTEXTUAL = MethodType.methodType(Object.class, Object.class, InvocationContext.class);
+
+    private final Method method;
+    private final int parameterCount;
+    private final Class<?>[] boxedTypes;
+    private final boolean[] primitives;
+    private final MethodHandle spread; // (Object, Object[])Object
+    private final MethodHandle contextual; // (Object, InvocationContext)Object for around invoke like methods
+
+    private MethodInvoker(final Method method, final MethodHandle spread, final MethodHandle contextual) {
+        this.method = method;
+        this.parameterCount = method.getParameterTypes().length;
+        this.boxedTypes = new Class<?>[parameterCount];
+        this.primitives = new boolean[parameterCount];
+        final Class<?>[] types = method.getParameterTypes();
+        for (int i = 0; i < parameterCount; i++) {
+            boxedTypes[i] = box(types[i]);
+            primitives[i] = types[i].isPrimitive();
+        }
+        this.spread = spread;
+        this.contextual = contextual;
+    }
+
+    public static MethodInvoker of(final Method method) {
+        if (Modifier.isStatic(method.getModifiers()) || !SystemInstance.get().getOptions().get(METHOD_HANDLES, true)) {
+            return new MethodInvoker(method, null, null);
+        }
+
+        try {
+            final MethodHandle handle = MethodHandles.lookup().unreflect(method).asFixedArity();
+            final int count = method.getParameterTypes().length;
+            final MethodHandle spread = handle.asType(MethodType.genericMethodType(count + 1)).asSpreader(Object[].class, count);
+
+            MethodHandle contextual = null;
+            if (count == 1 && method.getParameterTypes()[0] == InvocationContext.class) {
+                contextual = handle.asType(CONTEXTUAL);
+            }
+            return new MethodInvoker(method, spread, contextual);
+        } catch (final IllegalAccessException e) { // not accessible, keep reflection and its error reporting
+            return new MethodInvoker(method, null, null);
+        }
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * @throws InvocationTargetException if the method failed
+     * @throws IllegalArgumentException  if the target or the arguments don't match the method
+     */
+    public Object invoke(final Object target, final Object[] args) throws Exception {
+        if (spread == null || !accepts(target, args)) {
+            return method.invoke(target, args);
+        }
+        try {
+            return spread.invokeExact(target, args);
+        } catch (final Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    public Object invoke(final Object target, final InvocationContext invocationContext) throws Exception {
+        if (contextual == null || !method.getDeclaringClass().isInstance(target)) {
+            return invoke(target, new Object[]{invocationContext});
+        }
+        try {
+            return contextual.invokeExact(target, invocationContext);
+        } catch (final Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    /**
+     * @return true if the handle can be called without failing on its own conversions,
+     * other calls let reflection report the error (or apply a widening conversion)
+     */
+    private boolean accepts(final Object target, final Object[] args) {
+        if (!method.getDeclaringClass().isInstance(target)) {
+            return false;
+        }
+        if (args == null) {
+            return parameterCount == 0;
+        }
+        if (args.length != parameterCount) {
+            return false;
+        }
+        for (int i = 0; i < parameterCount; i++) {
+            final Object arg = args[i];
+            if (arg == null ? primitives[i] : !boxedTypes[i].isInstance(arg)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Class<?> box(final Class<?> type) {
+        if (!type.isPrimitive()) {
+            return type;
+        } else if (type == int.class) {
+            return Integer.class;
+        } else if (type == long.class) {
+            return Long.class;
+        } else if (type == boolean.class) {
+            return Boolean.class;
+        } else if (type == double.class) {
+            return Double.class;
+        } else if (type == float.class) {
+            return Float.class;
+        } else if (type == short.class) {
+            return Short.class;
+        } else if (type == byte.class) {
+            return Byte.class;
+        }
+        return Character.class;
+    }
+
+    @Override
+    public String toString() {
+        return method.getDeclaringClass().getName() + "." + method.getName();
+    }
+}
@@ -24,7 +24,7 @@ import javax.interceptor.InvocationContext;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -33,16 +33,29 @@ import java.util.TreeMap;
  * @version $Rev$ $Date$
  */
 public class ReflectionInvocationContext implements InvocationContext {
-    private final Iterator<Interceptor> interceptors;
+    private static final Object[] NO_PARAMETERS = new Object[0];
+
+    private final InterceptorChain interceptors;
+    private final Map<String, Object> interceptorInstances;
     private final Object target;
     private final Method method;
     private final Object[] parameters;
-    private final Map<String, Object> contextData = new TreeMap<String, Object>();
-    private final Class<?>[] parameterTypes;
+    private Map<String, Object> contextData;
+    private Class<?>[] parameterTypes;
+    private int position;
 
     private final Operation operation;
 
     public ReflectionInvocationContext(final Operation operation, final List<Interceptor> interceptors, final Object target, final Method method, final Object... parameters) {
+        this(operation, InterceptorChain.wrap(operation, nonNull(interceptors)), Collections.<String, Object>emptyMap(), target, method, parameters);
+    }
+
+    /**
+     * @param interceptors         the chain of the invoked method, shared by all invocations
+     * @param interceptorInstances the interceptor instances of the target bean instance by class name
+     */
+    public ReflectionInvocationContext(final Operation operation, final InterceptorChain interceptors, final Map<String, Object> interceptorInstances,
+                                       final Object target, final Method method, final Object... parameters) {
         if (operation == null) {
             throw new NullPointerException("operation is null");
         }
@@ -54,16 +67,18 @@ public class ReflectionInvocationContext implements InvocationContext {
         }
 
         this.operation = operation;
-        this.interceptors = interceptors.iterator();
+        this.interceptors = interceptors;
+        this.interceptorInstances = interceptorInstances;
         this.target = target;
         this.method = method;
         this.parameters = parameters;
+    }
 
-        if (method == null) {
-            parameterTypes = new Class[0];
-        } else {
-            parameterTypes = method.getParameterTypes();
+    private static List<Interceptor> nonNull(final List<Interceptor> interceptors) {
+        if (interceptors == null) {
+            throw new NullPointerException("interceptors is null");
         }
+        return interceptors;
     }
 
     @Override
@@ -122,6 +137,9 @@ public class ReflectionInvocationContext implements InvocationContext {
         if (parameters.length != this.parameters.length) {
             throw new IllegalArgumentException("Expected " + this.parameters.length + " parameters, but only got " + parameters.length + " parameters");
         }
+        if (parameterTypes == null) {
+            parameterTypes = method == null ? new Class<?>[0] : method.getParameterTypes();
+        }
         for (int i = 0; i < parameters.length; i++) {
             final Object parameter = parameters[i];
             final Class<?> parameterType = parameterTypes[i];
@@ -147,108 +165,40 @@ public class ReflectionInvocationContext implements InvocationContext {
 
     @Override
     public Map<String, Object> getContextData() {
-        return contextData;
-    }
-
-    private Invocation next() {
-        if (interceptors.hasNext()) {
-            final Interceptor interceptor = interceptors.next();
-            final Object nextInstance = interceptor.getInstance();
-            final Method nextMethod = interceptor.getMethod();
-
-            if (nextMethod.getParameterTypes().length == 1 && nextMethod.getParameterTypes()[0] == InvocationContext.class) {
-                return new InterceptorInvocation(nextInstance, nextMethod, this);
-            } else {
-                return new LifecycleInvocation(nextInstance, nextMethod, this, parameters);
-            }
-        } else if (method != null) {
-            //EJB 3.1, it is allowed that timeout method does not have parameter Timer.class,
-            //However, while invoking the timeout method, the timer value is passed, as it is also required by InnvocationContext.getTimer() method
-            final Object[] methodParameters;
-            if (operation.equals(Operation.TIMEOUT) && method.getParameterTypes().length == 0) {
-                methodParameters = new Object[0];
-            } else {
-                methodParameters = parameters;
-            }
-            return new BeanInvocation(target, method, methodParameters);
-        } else {
-            return new NoOpInvocation();
+        if (contextData == null) { // most invocations never use it
+            contextData = new TreeMap<String, Object>();
         }
+        return contextData;
     }
 
     @Override
     public Object proceed() throws Exception {
         // The bulk of the logic of this method has intentionally been moved
         // out so stepping through a large stack in a debugger can be done quickly.
-        // Simply put one break point on 'next.invoke()' or one inside that method.
+        // Simply put one break point inside InterceptorChain.invoke() or MethodInvoker.invoke().
         try {
-            final Invocation next = next();
-            return next.invoke();
-        } catch (final InvocationTargetException e) {
-            throw unwrapInvocationTargetException(e);
-        }
-    }
-
-    private abstract static class Invocation {
-        private final Method method;
-        private final Object[] args;
-        private final Object target;
-
-        public Invocation(final Object target, final Method method, final Object[] args) {
-            this.target = target;
-            this.method = method;
-            this.args = args;
-        }
+            if (position < interceptors.size()) {
+                final int index = position++;
+                final Object nextInstance = interceptors.getInstance(index, interceptorInstances);
 
-        public Object invoke() throws Exception {
-
-            final Object value = method.invoke(target, args);
-            return value;
-        }
-
-
-        public String toString() {
-            return method.getDeclaringClass().getName() + "." + method.getName();
-        }
-    }
-
-    private static class BeanInvocation extends Invocation {
-        public BeanInvocation(final Object target, final Method method, final Object[] args) {
-            super(target, method, args);
-        }
-    }
-
-    private static class InterceptorInvocation extends Invocation {
-        public InterceptorInvocation(final Object target, final Method method, final InvocationContext invocationContext) {
-            super(target, method, new Object[]{invocationContext});
-        }
-    }
-
-    private static class LifecycleInvocation extends Invocation {
-        private final InvocationContext invocationContext;
-
-        public LifecycleInvocation(final Object target, final Method method, final InvocationContext invocationContext, final Object[] args) {
-            super(target, method, args);
-            this.invocationContext = invocationContext;
-        }
-
-        public Object invoke() throws Exception {
-            // invoke the callback
-            super.invoke();
-
-            // we need to call proceed so callbacks in subclasses get invoked
-            final Object value = invocationContext.proceed();
-            return value;
-        }
-    }
-
-    private static class NoOpInvocation extends Invocation {
-        public NoOpInvocation() {
-            super(null, null, null);
-        }
+                if (interceptors.isInvocationContextParameter(index)) {
+                    return interceptors.invoke(index, nextInstance, this);
+                }
 
-        public Object invoke() throws IllegalAccessException, InvocationTargetException {
+                // invoke the callback then proceed so callbacks in subclasses get invoked
+                interceptors.invoke(index, nextInstance, parameters);
+                return proceed();
+            } else if (method != null) {
+                //EJB 3.1, it is allowed that timeout method does not have parameter Timer.class,
+                //However, while invoking the timeout method, the timer value is passed, as it is also required by InnvocationContext.getTimer() method
+                if (operation.equals(Operation.TIMEOUT) && method.getParameterTypes().length == 0) {
+                    return interceptors.invokeTarget(target, method, NO_PARAMETERS);
+                }
+                return interceptors.invokeTarget(target, method, parameters);
+            }
             return null;
+        } catch (final InvocationTargetException e) {
+            throw unwrapInvocationTargetException(e);
         }
     }
 
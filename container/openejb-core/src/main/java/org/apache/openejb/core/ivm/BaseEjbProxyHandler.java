@@ -561,6 +561,17 @@ public abstract class BaseEjbProxyHandler implements InvocationHandler, Serializ
             return object;
         }
 
+        if (strategy == COPY) {
+            final BeanContext beanContext = beanContextRef.get();
+            final IntraVmCopier copier = beanContext != null ? beanContext.getIntraVmCopier() : null;
+            if (copier != null) {
+                final Object copy = copier.copy(object);
+                if (copy != IntraVmCopier.NOT_COPIED) {
+                    return (T) copy;
+                }
+            }
+        }
+
         final ByteArrayOutputStream baos = new ByteArrayOutputStream(128);
         try {
             final ObjectOutputStream out = new ObjectOutputStream(baos);
@@ -0,0 +1,349 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.ivm;
+
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.openejb.util.proxy.LocalBeanProxyFactory;
+
+import java.io.Externalizable;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies the arguments and return values of intra-VM remote calls without going through object streams.
+ * <p/>
+ * Immutable types (strings, boxed primitives, enums, big numbers, java.time...) are shared, arrays, the usual
+ * collections and plain serializable classes are deep copied field by field following the java serialization
+ * rules (transient fields are reset, shared references and cycles are kept). The way to copy a class is computed
+ * once and cached.
+ * <p/>
+ * When the graph contains anything else (custom serialization, Externalizable, proxies, JDK internals...)
+ * {@link #copy(Object)} returns {@link #NOT_COPIED} and the caller falls back to serialization, these
+ * fallbacks are counted.
+ * <p/>
+ * Only valid when caller and bean share their classes (IntraVmCopyMonitor.State.COPY).
+ * Selected per bean with the {@link #STRATEGY} property, "serialization" (default) or "reflection".
+ */
+public class IntraVmCopier {
+
+    public static final String STRATEGY = "openejb.localcopy.strategy";
+
+    public static final Object NOT_COPIED = new Object();
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, IntraVmCopier.class);
+
+    public enum Strategy {
+        SERIALIZATION, REFLECTION
+    }
+
+    private enum Kind {
+        IMMUTABLE, ARRAY, DATE, COLLECTION, SORTED, MAP, SORTED_MAP, OBJECT, UNSUPPORTED
+    }
+
+    private static final ClassValue<Plan> PLANS = new ClassValue<Plan>() {
+        @Override
+        protected Plan computeValue(final Class<?> type) {
+            return new Plan(type);
+        }
+    };
+
+    @Managed
+    private final AtomicLong copies = new AtomicLong();
+
+    @Managed
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    private volatile String lastFallback;
+
+    @Managed
+    public String getLastFallback() {
+        return lastFallback;
+    }
+
+    public long getCopies() {
+        return copies.get();
+    }
+
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    /**
+     * @param object the argument or return value to copy
+     * @return the copy or {@link #NOT_COPIED} if the object needs to be serialized
+     */
+    public Object copy(final Object object) {
+        try {
+            final Object copy = copy(object, new IdentityHashMap<Object, Object>());
+            copies.incrementAndGet();
+            return copy;
+        } catch (final Unsupported e) {
+            fallbacks.incrementAndGet();
+            lastFallback = e.getMessage();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Serializing " + object.getClass().getName() + " because of " + e.getMessage());
+            }
+            return NOT_COPIED;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copy(final Object object, final Map<Object, Object> copied) throws Unsupported {
+        if (object == null) {
+            return null;
+        }
+
+        final Plan plan = PLANS.get(object.getClass());
+        if (plan.kind == Kind.IMMUTABLE) {
+            return object;
+        }
+        if (plan.kind == Kind.UNSUPPORTED) {
+            throw new Unsupported(plan.type);
+        }
+
+        final Object existing = copied.get(object);
+        if (existing != null) {
+            return existing;
+        }
+
+        switch (plan.kind) {
+            case ARRAY: {
+                final Class<?> component = plan.type.getComponentType();
+                final int length = Array.getLength(object);
+                if (component.isPrimitive()) {
+                    final Object copy = Array.newInstance(component, length);
+                    System.arraycopy(object, 0, copy, 0, length);
+                    copied.put(object, copy);
+                    return copy;
+                }
+
+                final Object[] source = (Object[]) object;
+                final Object[] copy = (Object[]) Array.newInstance(component, length);
+                copied.put(object, copy);
+                for (int i = 0; i < length; i++) {
+                    copy[i] = copy(source[i], copied);
+                }
+                return copy;
+            }
+            case DATE: {
+                final Object copy = ((Date) object).clone();
+                copied.put(object, copy);
+                return copy;
+            }
+            case COLLECTION:
+            case SORTED: {
+                if (plan.kind == Kind.SORTED && ((TreeSet<?>) object).comparator() != null) {
+                    throw new Unsupported(plan.type);
+                }
+
+                final Collection<Object> copy = (Collection<Object>) plan.newInstance();
+                copied.put(object, copy);
+                for (final Object item : (Collection<?>) object) {
+                    copy.add(copy(item, copied));
+                }
+                return copy;
+            }
+            case MAP:
+            case SORTED_MAP: {
+                if (plan.kind == Kind.SORTED_MAP && ((TreeMap<?, ?>) object).comparator() != null) {
+                    throw new Unsupported(plan.type);
+                }
+
+                final Map<Object, Object> copy = (Map<Object, Object>) plan.newInstance();
+                copied.put(object, copy);
+                for (final Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+                    copy.put(copy(entry.getKey(), copied), copy(entry.getValue(), copied));
+                }
+                return copy;
+            }
+            default: {
+                final Object copy = plan.newInstance();
+                copied.put(object, copy);
+                try {
+                    for (final Field field : plan.fields) {
+                        final Class<?> type = field.getType();
+                        if (!type.isPrimitive()) {
+                            field.set(copy, copy(field.get(object), copied));
+                        } else if (type == int.class) {
+                            field.setInt(copy, field.getInt(object));
+                        } else if (type == long.class) {
+                            field.setLong(copy, field.getLong(object));
+                        } else if (type == boolean.class) {
+                            field.setBoolean(copy, field.getBoolean(object));
+                        } else if (type == double.class) {
+                            field.setDouble(copy, field.getDouble(object));
+                        } else if (type == float.class) {
+                            field.setFloat(copy, field.getFloat(object));
+                        } else if (type == short.class) {
+                            field.setShort(copy, field.getShort(object));
+                        } else if (type == byte.class) {
+                            field.setByte(copy, field.getByte(object));
+                        } else {
+                            field.setChar(copy, field.getChar(object));
+                        }
+                    }
+                } catch (final IllegalAccessException e) {
+                    throw new Unsupported(plan.type);
+                }
+                return copy;
+            }
+        }
+    }
+
+    /**
+     * How instances of a class are copied, computed once per class.
+     */
+    private static final class Plan {
+
+        private final Class<?> type;
+        private final Kind kind;
+        private final Field[] fields;
+
+        private Plan(final Class<?> type) {
+            this.type = type;
+
+            final List<Field> copyable = new ArrayList<Field>();
+            Kind k;
+            try {
+                k = kind(type, copyable);
+            } catch (final RuntimeException e) { // inaccessible fields
+                k = Kind.UNSUPPORTED;
+            }
+            this.kind = k;
+            this.fields = copyable.toArray(new Field[copyable.size()]);
+        }
+
+        private static Kind kind(final Class<?> type, final List<Field> fields) {
+            if (isImmutable(type)) {
+                return Kind.IMMUTABLE;
+            }
+            if (type.isArray()) { // items are checked one by one
+                return Kind.ARRAY;
+            }
+            if (type == Date.class) {
+                return Kind.DATE;
+            }
+            if (type == ArrayList.class || type == LinkedList.class || type == HashSet.class || type == LinkedHashSet.class) {
+                return Kind.COLLECTION;
+            }
+            if (type == TreeSet.class) {
+                return Kind.SORTED;
+            }
+            if (type == HashMap.class || type == LinkedHashMap.class) {
+                return Kind.MAP;
+            }
+            if (type == TreeMap.class) {
+                return Kind.SORTED_MAP;
+            }
+            if (!Serializable.class.isAssignableFrom(type) // serialization would fail, let it report it
+                || Externalizable.class.isAssignableFrom(type)
+                || Proxy.isProxyClass(type) || LocalBeanProxyFactory.isProxy(type) || IntraVmProxy.class.isAssignableFrom(type)
+                || type.getName().startsWith("java.") || type.getName().startsWith("javax.")) {
+                return Kind.UNSUPPORTED;
+            }
+
+            for (Class<?> current = type; current != Object.class; current = current.getSuperclass()) {
+                if (!Serializable.class.isAssignableFrom(current) || hasSerializationMethods(current)) {
+                    return Kind.UNSUPPORTED;
+                }
+
+                int index = 0;
+                for (final Field field : current.getDeclaredFields()) {
+                    final int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(index++, field); // keep declaration order, parent fields first
+                }
+            }
+            return Kind.OBJECT;
+        }
+
+        private static boolean isImmutable(final Class<?> type) {
+            return type.isPrimitive()
+                || type == String.class || type == Integer.class || type == Long.class || type == Boolean.class
+                || type == Double.class || type == Float.class || type == Short.class || type == Byte.class
+                || type == Character.class || type == BigDecimal.class || type == BigInteger.class
+                || type == Class.class || type == UUID.class || type == URI.class || type == Locale.class
+                || type.isEnum() || (type.getSuperclass() != null && type.getSuperclass().isEnum())
+                || (type.getName().startsWith("java.time.") && Serializable.class.isAssignableFrom(type) && Modifier.isFinal(type.getModifiers()));
+        }
+
+        private static boolean hasSerializationMethods(final Class<?> type) {
+            for (final Method method : type.getDeclaredMethods()) {
+                final String name = method.getName();
+                if ("writeObject".equals(name) || "readObject".equals(name) || "readObjectNoData".equals(name)
+                    || "writeReplace".equals(name) || "readResolve".equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Object newInstance() throws Unsupported {
+            try {
+                if (this.kind != Kind.OBJECT) {
+                    return this.type.newInstance();
+                }
+                // like serialization: no constructor of a serializable class is called
+                return LocalBeanProxyFactory.Unsafe.allocateInstance(this.type);
+            } catch (final Exception e) {
+                throw new Unsupported(this.type);
+            }
+        }
+    }
+
+    /**
+     * Thrown as soon as the graph can't be copied, no stack trace since it is only a signal.
+     */
+    private static final class Unsupported extends Exception {
+        private Unsupported(final Class<?> type) {
+            super(type.getName());
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
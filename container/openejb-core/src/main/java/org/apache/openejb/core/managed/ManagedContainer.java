@@ -31,6 +31,7 @@ import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.InstanceContext;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.managed.Cache.CacheFilter;
@@ -519,7 +520,7 @@ public class ManagedContainer implements RpcContainer {
                     }
 
                     // Initialize interceptor stack
-                    final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
+                    final InterceptorChain interceptors = beanContext.getInterceptorChain(runMethod, Operation.REMOVE);
                     final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, Operation.REMOVE, interceptors, instance.interceptors);
 
                     // Invoke
@@ -612,7 +613,7 @@ public class ManagedContainer implements RpcContainer {
                 callContext.set(Method.class, runMethod);
 
                 // Initialize interceptor stack
-                final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
+                final InterceptorChain interceptors = beanContext.getInterceptorChain(runMethod, Operation.BUSINESS);
                 final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, Operation.BUSINESS, interceptors, instance.interceptors);
 
                 // Invoke
@@ -27,7 +27,7 @@ import org.apache.openejb.SystemException;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
-import org.apache.openejb.core.interceptor.InterceptorData;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.timer.EjbTimerService;
 import org.apache.openejb.core.transaction.TransactionPolicy;
@@ -57,7 +57,6 @@ import javax.validation.Validator;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
@@ -403,9 +402,9 @@ public class MdbContainer implements RpcContainer {
         ApplicationException {
         final Object returnValue;
         try {
-            final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-            final InterceptorStack interceptorStack = new InterceptorStack(((Instance) instance).bean, runMethod, interfaceType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS,
-                interceptors, ((Instance) instance).interceptors);
+            final Operation operation = interfaceType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS;
+            final InterceptorChain interceptors = beanContext.getInterceptorChain(runMethod, operation);
+            final InterceptorStack interceptorStack = new InterceptorStack(((Instance) instance).bean, runMethod, operation, interceptors, ((Instance) instance).interceptors);
             returnValue = interceptorStack.invoke(args);
             return returnValue;
         } catch (Throwable e) {
@@ -26,9 +26,13 @@ import org.apache.openejb.core.security.jaas.GroupPrincipal;
 import org.apache.openejb.core.security.jacc.BasicJaccProvider;
 import org.apache.openejb.core.security.jacc.BasicPolicyConfiguration;
 import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.ManagedMBean;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
 import org.apache.openejb.spi.CallerPrincipal;
 import org.apache.openejb.spi.SecurityService;
 
+import javax.management.ObjectName;
 import javax.security.auth.Subject;
 import javax.security.auth.login.LoginException;
 import javax.security.jacc.EJBMethodPermission;
@@ -53,6 +57,8 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This security service chooses a UUID as its token as this can be serialized
@@ -61,12 +67,23 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public abstract class AbstractSecurityService implements DestroyableResource, SecurityService<UUID>, ThreadContextListener, BasicPolicyConfiguration.RoleResolver {
 
+    /**
+     * Set to true to cache the decisions of the JACC policy per security context, false to ask the policy
+     * for each call of a secured method. Defaults to true only with the built-in policy, which invalidates
+     * the decisions when it changes: other policies may change their answers without calling refresh.
+     */
+    public static final String AUTHORIZATION_CACHE = "openejb.security.authorization-cache";
+
     private static final Map<Object, Identity> identities = new ConcurrentHashMap<Object, Identity>();
+    private static final AtomicLong policyVersion = new AtomicLong();
     protected static final ThreadLocal<Identity> clientIdentity = new ThreadLocal<Identity>();
     protected String defaultUser = "guest";
     private String realmName = "PropertiesLogin";
     protected Subject defaultSubject;
     protected SecurityContext defaultContext;
+    protected final AuthorizationStats authorizationStats = new AuthorizationStats();
+    private final boolean cacheAuthorizations;
+    private ObjectName authorizationStatsName;
 
     public AbstractSecurityService() {
         this(BasicJaccProvider.class.getName());
@@ -83,11 +100,36 @@ public abstract class AbstractSecurityService implements DestroyableResource, Se
         updateSecurityContext();
 
         SystemInstance.get().setComponent(BasicPolicyConfiguration.RoleResolver.class, this);
+
+        cacheAuthorizations = SystemInstance.get().getOptions().get(AUTHORIZATION_CACHE, isBuiltInPolicy());
+        if (cacheAuthorizations && LocalMBeanServer.isJMXActive()) {
+            final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
+            jmxName.set("J2EEServer", "openejb");
+            jmxName.set("J2EEApplication", null);
+            jmxName.set("j2eeType", "SecurityService");
+            jmxName.set("name", getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(this)));
+            authorizationStatsName = jmxName.build();
+            LocalMBeanServer.registerSilently(new ManagedMBean(authorizationStats), authorizationStatsName);
+        }
     }
 
     @Override
     public void destroyResource() {
-        // no-op
+        if (authorizationStatsName != null) {
+            LocalMBeanServer.unregisterSilently(authorizationStatsName);
+            authorizationStatsName = null;
+        }
+    }
+
+    /**
+     * Forgets the authorization decisions cached by all the security contexts, to call when the policy changed.
+     */
+    public static void invalidateAuthorizations() {
+        policyVersion.incrementAndGet();
+    }
+
+    public AuthorizationStats getAuthorizationStats() {
+        return authorizationStats;
     }
 
     public String getRealmName() {
@@ -164,7 +206,7 @@ public abstract class AbstractSecurityService implements DestroyableResource, Se
 
                 final Identity identity = clientIdentity.get();
                 if (identity != null) {
-                    securityContext = new SecurityContext(identity.subject);
+                    securityContext = identity.getSecurityContext();
                 } else {
                     securityContext = defaultContext;
                 }
@@ -208,10 +250,14 @@ public abstract class AbstractSecurityService implements DestroyableResource, Se
             throw new LoginException("Identity is not currently logged in: " + securityIdentity);
         }
         identities.remove(securityIdentity);
+        identity.invalidate();
     }
 
     protected void unregisterSubject(final Object securityIdentity) {
-        identities.remove(securityIdentity);
+        final Identity identity = identities.remove(securityIdentity);
+        if (identity != null) {
+            identity.invalidate();
+        }
     }
 
     @Override
@@ -259,19 +305,7 @@ public abstract class AbstractSecurityService implements DestroyableResource, Se
             return securityContext != defaultContext; // ie logged in
         }
 
-        final Set<Group> grps = securityContext.subject.getPrincipals(Group.class);
-        for (final Group grp : grps) {
-            if (grp.getName().equals(role)) {
-                return true;
-            }
-        }
-        final Set<GroupPrincipal> grpsp = securityContext.subject.getPrincipals(GroupPrincipal.class);
-        for (final GroupPrincipal grp : grpsp) {
-            if (grp.getName().equals(role)) {
-                return true;
-            }
-        }
-        return false;
+        return securityContext.getRoles().contains(role);
     }
 
     @Override
@@ -317,7 +351,11 @@ public abstract class AbstractSecurityService implements DestroyableResource, Se
             if (currentIdentity == null) {
                 securityContext = threadContext.get(SecurityContext.class);
             } else {
-                securityContext = new SecurityContext(currentIdentity.getSubject());
+                securityContext = currentIdentity.getSecurityContext();
+            }
+
+            if (cacheAuthorizations) {
+                return securityContext.isAuthorized(PolicyContext.getContextID(), ejbName, name, method, authorizationStats);
             }
             securityContext.acc.checkPermission(new EJBMethodPermission(ejbName, name, method));
         } catch (final AccessControlException e) {
@@ -326,6 +364,10 @@ public abstract class AbstractSecurityService implements DestroyableResource, Se
         return true;
     }
 
+    private static boolean isBuiltInPolicy() {
+        return Policy.getPolicy() instanceof JaccProvider.Policy && JaccProvider.get() instanceof BasicJaccProvider;
+    }
+
     protected static void installJacc() {
         final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
 
@@ -399,9 +441,15 @@ public abstract class AbstractSecurityService implements DestroyableResource, Se
 
     public static final class SecurityContext {
 
+        private static final int MAX_DECISIONS = 1024;
+
         public final Subject subject;
         public final AccessControlContext acc;
 
+        // the subject of a context doesn't change so the roles are only computed once
+        private volatile Set<String> roles;
+        private final ConcurrentMap<Decision, Decision> decisions = new ConcurrentHashMap<Decision, Decision>();
+
         @SuppressWarnings("unchecked")
         public SecurityContext(final Subject subject) {
             this.subject = subject;
@@ -412,12 +460,128 @@ public abstract class AbstractSecurityService implements DestroyableResource, Se
                 }
             }, null);
         }
+
+        /**
+         * @return the names of the groups of the subject
+         */
+        public Set<String> getRoles() {
+            Set<String> r = roles;
+            if (r == null) {
+                r = new HashSet<String>();
+                for (final Group grp : subject.getPrincipals(Group.class)) {
+                    r.add(grp.getName());
+                }
+                for (final GroupPrincipal grp : subject.getPrincipals(GroupPrincipal.class)) {
+                    r.add(grp.getName());
+                }
+                r = Collections.unmodifiableSet(r);
+                roles = r;
+            }
+            return r;
+        }
+
+        /**
+         * Checks the {@link EJBMethodPermission} against the policy once per policy version, the decisions of
+         * a context only depend on the method and the policy context since its subject, and so its roles, is fixed.
+         *
+         * @param contextId     the JACC policy context of the bean
+         * @param ejbName       the name of the bean
+         * @param interfaceName the method interface or null
+         * @param method        the called method
+         * @param stats         where to count the hits and the evaluation time
+         * @return true if the subject of this context can call the method
+         */
+        public boolean isAuthorized(final String contextId, final String ejbName, final String interfaceName, final Method method,
+                                    final AuthorizationStats stats) {
+            final long version = policyVersion.get();
+            final Decision cached = decisions.get(new Decision(contextId, ejbName, interfaceName, method, version, false));
+            if (cached != null && cached.version == version) {
+                stats.hit();
+                return cached.granted;
+            }
+
+            final long start = System.nanoTime();
+            boolean granted = true;
+            try {
+                acc.checkPermission(new EJBMethodPermission(ejbName, interfaceName, method));
+            } catch (final AccessControlException e) {
+                granted = false;
+            }
+            stats.miss(System.nanoTime() - start);
+
+            if (cached != null) {
+                stats.invalidated();
+            } else if (decisions.size() >= MAX_DECISIONS) {
+                decisions.clear();
+            }
+            final Decision decision = new Decision(contextId, ejbName, interfaceName, method, version, granted);
+            decisions.put(decision, decision);
+            return granted;
+        }
+
+        /**
+         * Forgets the cached roles and decisions.
+         */
+        public void invalidate() {
+            roles = null;
+            decisions.clear();
+        }
+    }
+
+    /**
+     * A cached decision, equal to the other decisions for the same method whatever the policy version.
+     */
+    private static final class Decision {
+        private final String contextId;
+        private final String ejbName;
+        private final String interfaceName;
+        private final Method method;
+        private final long version;
+        private final boolean granted;
+        private final int hash;
+
+        private Decision(final String contextId, final String ejbName, final String interfaceName, final Method method,
+                         final long version, final boolean granted) {
+            this.contextId = contextId;
+            this.ejbName = ejbName;
+            this.interfaceName = interfaceName;
+            this.method = method;
+            this.version = version;
+            this.granted = granted;
+
+            int h = contextId != null ? contextId.hashCode() : 0;
+            h = 31 * h + (ejbName != null ? ejbName.hashCode() : 0);
+            h = 31 * h + (interfaceName != null ? interfaceName.hashCode() : 0);
+            this.hash = 31 * h + method.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            final Decision other = Decision.class.cast(o);
+            return method.equals(other.method)
+                && (interfaceName != null ? interfaceName.equals(other.interfaceName) : other.interfaceName == null)
+                && (ejbName != null ? ejbName.equals(other.ejbName) : other.ejbName == null)
+                && (contextId != null ? contextId.equals(other.contextId) : other.contextId == null);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 
     protected static class Identity implements Serializable {
 
         private final Subject subject;
         private final UUID token;
+        private transient volatile SecurityContext securityContext;
 
         public Identity(final Subject subject) {
             this.subject = subject;
@@ -436,6 +600,26 @@ public abstract class AbstractSecurityService implements DestroyableResource, Se
         public UUID getToken() {
             return token;
         }
+
+        /**
+         * @return the security context of this identity, shared by its calls to keep the cached authorizations
+         */
+        public SecurityContext getSecurityContext() {
+            SecurityContext context = securityContext;
+            if (context == null) {
+                context = new SecurityContext(subject);
+                securityContext = context;
+            }
+            return context;
+        }
+
+        public void invalidate() {
+            final SecurityContext context = securityContext;
+            if (context != null) {
+                context.invalidate();
+            }
+            securityContext = null;
+        }
     }
 
     public static class Group implements java.security.acl.Group {
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.security;
+
+import org.apache.openejb.monitoring.Managed;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the authorization decisions cache of a security service.
+ */
+@Managed
+public class AuthorizationStats {
+
+    @Managed
+    private final AtomicLong hits = new AtomicLong();
+
+    @Managed
+    private final AtomicLong misses = new AtomicLong();
+
+    @Managed
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong evaluationNanos = new AtomicLong();
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void miss(final long nanos) {
+        misses.incrementAndGet();
+        evaluationNanos.addAndGet(nanos);
+    }
+
+    void invalidated() {
+        invalidations.incrementAndGet();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getInvalidations() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return the ratio of the decisions read from the cache, between 0 and 1
+     */
+    @Managed
+    public double getHitRate() {
+        final long h = hits.get();
+        final long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * @return the time spent asking the policy in ms
+     */
+    @Managed
+    public double getEvaluationTime() {
+        return evaluationNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the mean time of a policy evaluation in microseconds
+     */
+    @Managed
+    public double getEvaluationTimeMean() {
+        final long count = misses.get();
+        return count == 0 ? 0 : evaluationNanos.get() / (double) TimeUnit.MICROSECONDS.toNanos(1) / count;
+    }
+
+    @Managed
+    public void reset() {
+        hits.set(0);
+        misses.set(0);
+        invalidations.set(0);
+        evaluationNanos.set(0);
+    }
+}
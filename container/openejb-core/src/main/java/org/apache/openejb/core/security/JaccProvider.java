@@ -120,6 +120,7 @@ public abstract class JaccProvider {
 
         public void refresh() {
             get().refresh();
+            AbstractSecurityService.invalidateAuthorizations();
         }
 
         public boolean implies(final ProtectionDomain domain, final Permission permission) {
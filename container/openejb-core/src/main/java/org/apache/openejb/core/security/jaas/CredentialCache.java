@@ -0,0 +1,390 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.security.jaas;
+
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.monitoring.ManagedMBean;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.management.ObjectName;
+import javax.security.auth.login.FailedLoginException;
+import javax.security.auth.login.LoginException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the successful logins of a login module configuration so the next logins of a user
+ * don't go to the user store until the entry expires.
+ * <p/>
+ * Only a salted digest of the verified password is kept: a login with another password is always
+ * checked against the store, a failed login is never cached. An entry used after half of its time
+ * to live is reloaded in the background: it is dropped if the user or its stored password changed,
+ * its groups are updated otherwise.
+ * <p/>
+ * Caches are shared by all the instances of a login module with the same configuration and
+ * registered in JMX as j2eeType=CredentialCache with the name, maxSize and timeToLive of the
+ * configuration, so configurations sharing a name but not their limits get distinct MBeans.
+ */
+@Managed
+public class CredentialCache {
+
+    private static final Logger log = Logger.getInstance(LogCategory.OPENEJB_SECURITY, "org.apache.openejb.util.resources");
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final ConcurrentMap<String, CredentialCache> caches = new ConcurrentHashMap<String, CredentialCache>();
+
+    private static volatile ExecutorService refresher;
+
+    private final String name;
+    private final int maxSize;
+    private final long ttl;
+    private final byte[] salt = new byte[16];
+    private final Map<String, Verified> entries;
+    private ObjectName objectName;
+
+    @Managed
+    private final AtomicLong hits = new AtomicLong();
+
+    @Managed
+    private final AtomicLong misses = new AtomicLong();
+
+    @Managed
+    private final AtomicLong refreshes = new AtomicLong();
+
+    @Managed
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Managed
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Loads the stored credentials of a user.
+     */
+    public interface Loader {
+        /**
+         * @return the credentials of the user or null if it doesn't exist
+         */
+        Credentials load(String user) throws Exception;
+
+        /**
+         * @param stored   the password of the store, possibly digested
+         * @param provided the password given by the user
+         */
+        boolean checkPassword(String stored, String provided);
+    }
+
+    public static final class Credentials {
+        private final String password;
+        private final Set<String> groups;
+
+        public Credentials(final String password, final Set<String> groups) {
+            this.password = password;
+            this.groups = Collections.unmodifiableSet(new LinkedHashSet<String>(groups));
+        }
+
+        public String getPassword() {
+            return password;
+        }
+
+        public Set<String> getGroups() {
+            return groups;
+        }
+    }
+
+    public CredentialCache(final String name, final int maxSize, final long ttl) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        new SecureRandom().nextBytes(salt);
+        this.entries = new LinkedHashMap<String, Verified>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Verified> eldest) {
+                if (size() > CredentialCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param name    identifies the configuration of the login module
+     * @param maxSize the maximum number of users kept
+     * @param ttl     how long (ms) a login is remembered
+     * @return the cache of this configuration, created and registered in JMX on first use
+     */
+    public static CredentialCache get(final String name, final int maxSize, final long ttl) {
+        final String key = name + '|' + maxSize + '|' + ttl;
+        CredentialCache cache = caches.get(key);
+        if (cache == null) {
+            final CredentialCache created = new CredentialCache(name, maxSize, ttl);
+            cache = caches.putIfAbsent(key, created);
+            if (cache == null) {
+                cache = created;
+                cache.register();
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Forgets all the caches, mainly for tests and container shutdown.
+     */
+    public static void clearAll() {
+        for (final CredentialCache cache : caches.values()) {
+            cache.unregister();
+        }
+        caches.clear();
+    }
+
+    /**
+     * Checks the password of the user, from the cache if this password was already verified.
+     *
+     * @return the groups of the user
+     * @throws FailedLoginException if the user doesn't exist or the password doesn't match
+     */
+    public Set<String> login(final String user, final String password, final Loader loader) throws LoginException {
+        final byte[] digest = digest(user, password);
+        final long now = System.currentTimeMillis();
+
+        final Verified entry;
+        synchronized (entries) {
+            entry = entries.get(user);
+        }
+        if (entry != null && now - entry.loaded < ttl && MessageDigest.isEqual(entry.digest, digest)) {
+            hits.incrementAndGet();
+            if (now - entry.loaded > ttl / 2) {
+                refresh(user, entry, loader);
+            }
+            return entry.groups;
+        }
+
+        misses.incrementAndGet();
+        final Credentials credentials;
+        try {
+            credentials = loader.load(user);
+        } catch (final LoginException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw (LoginException) new LoginException("Can't load the credentials of " + user).initCause(e);
+        }
+        if (credentials == null) {
+            throw new FailedLoginException("User does not exist");
+        }
+        if (!loader.checkPassword(credentials.password, password)) {
+            throw new FailedLoginException("Password does not match");
+        }
+
+        synchronized (entries) {
+            entries.put(user, new Verified(digest, fingerprint(credentials.password), credentials.groups, now));
+        }
+        return credentials.groups;
+    }
+
+    public void invalidate(final String user) {
+        synchronized (entries) {
+            entries.remove(user);
+        }
+    }
+
+    @Managed
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    @Managed
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Managed
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    @Managed
+    public long getTimeToLive() {
+        return ttl;
+    }
+
+    @Managed
+    public double getHitRate() {
+        final long h = hits.get();
+        final long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getRefreshes() {
+        return refreshes.get();
+    }
+
+    private void refresh(final String user, final Verified entry, final Loader loader) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            refresher().execute(new Runnable() {
+                @Override
+                public void run() {
+                    reload(user, entry, loader);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            entry.refreshing.set(false); // next hit will try again
+        }
+    }
+
+    private void reload(final String user, final Verified entry, final Loader loader) {
+        final Credentials credentials;
+        try {
+            credentials = loader.load(user);
+        } catch (final Exception e) {
+            failures.incrementAndGet();
+            entry.refreshing.set(false); // the entry expires if the store stays down
+            log.warning("Can't refresh the credentials of " + user + " in " + name, e);
+            return;
+        }
+
+        synchronized (entries) {
+            if (entries.get(user) == entry) { // else replaced or removed meanwhile
+                if (credentials == null || !MessageDigest.isEqual(entry.fingerprint, fingerprint(credentials.password))) {
+                    entries.remove(user); // deleted or password changed, check it again at next login
+                } else {
+                    entries.put(user, new Verified(entry.digest, entry.fingerprint, credentials.groups, System.currentTimeMillis()));
+                }
+            }
+        }
+        refreshes.incrementAndGet();
+    }
+
+    private byte[] digest(final String user, final String password) {
+        final MessageDigest md = sha256();
+        md.update(salt);
+        md.update(user.getBytes(UTF8));
+        md.update((byte) 0);
+        if (password != null) {
+            md.update(password.getBytes(UTF8));
+        }
+        return md.digest();
+    }
+
+    private byte[] fingerprint(final String stored) {
+        final MessageDigest md = sha256();
+        md.update(salt);
+        if (stored != null) {
+            md.update(stored.getBytes(UTF8));
+        }
+        return md.digest();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // mandatory algorithm
+        }
+    }
+
+    private static ExecutorService refresher() {
+        ExecutorService executor = refresher;
+        if (executor == null) {
+            synchronized (CredentialCache.class) {
+                executor = refresher;
+                if (executor == null) {
+                    final ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(1000), new DaemonThreadFactory("OpenEJB-CredentialCache"));
+                    pool.allowCoreThreadTimeOut(true);
+                    executor = pool;
+                    refresher = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private void register() {
+        if (!LocalMBeanServer.isJMXActive()) {
+            return;
+        }
+
+        final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
+        jmxName.set("J2EEServer", "openejb");
+        jmxName.set("J2EEApplication", null);
+        jmxName.set("j2eeType", "CredentialCache");
+        jmxName.set("name", ObjectName.quote(name));
+        jmxName.set("maxSize", Integer.toString(maxSize));
+        jmxName.set("timeToLive", Long.toString(ttl));
+        objectName = jmxName.build();
+        LocalMBeanServer.registerSilently(new ManagedMBean(this), objectName);
+    }
+
+    private void unregister() {
+        if (objectName != null) {
+            LocalMBeanServer.unregisterSilently(objectName);
+            objectName = null;
+        }
+    }
+
+    private static final class Verified {
+        private final byte[] digest;
+        private final byte[] fingerprint;
+        private final Set<String> groups;
+        private final long loaded;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Verified(final byte[] digest, final byte[] fingerprint, final Set<String> groups, final long loaded) {
+            this.digest = digest;
+            this.fingerprint = fingerprint;
+            this.groups = groups;
+            this.loaded = loaded;
+        }
+    }
+}
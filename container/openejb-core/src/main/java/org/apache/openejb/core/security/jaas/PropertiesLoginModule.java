@@ -41,12 +41,17 @@ import java.util.Set;
 import static org.apache.openejb.loader.IO.readProperties;
 
 /**
+ * Successful logins can be remembered in a {@link CredentialCache} setting CacheTTL (ms, 0 by default to disable it)
+ * and optionally CacheSize (1000 users by default), the files are then only read for unknown users or passwords.
+ *
  * @version $Rev$ $Date$
  */
 public class PropertiesLoginModule implements LoginModule {
 
     private static final String USER_FILE = "UsersFile";
     private static final String GROUP_FILE = "GroupsFile";
+    private static final String CACHE_TTL = "CacheTTL";
+    private static final String CACHE_SIZE = "CacheSize";
 
     private static final Logger log = Logger.getInstance(LogCategory.OPENEJB_SECURITY, "org.apache.openejb.util.resources");
 
@@ -54,13 +59,13 @@ public class PropertiesLoginModule implements LoginModule {
     private CallbackHandler callbackHandler;
 
     private boolean debug;
-    private Properties users = new Properties();
-    private Properties groups = new Properties();
+    private final Set<String> groups = new LinkedHashSet<String>();
     private String user;
     private final Set principals = new LinkedHashSet();
 
     private URL usersUrl;
     private URL groupsUrl;
+    private CredentialCache cache;
 
     public void initialize(final Subject subject, final CallbackHandler callbackHandler, final Map sharedState, final Map options) {
         this.subject = subject;
@@ -77,21 +82,15 @@ public class PropertiesLoginModule implements LoginModule {
             log.debug("Users file: " + usersUrl.toExternalForm());
             log.debug("Groups file: " + groupsUrl.toExternalForm());
         }
-    }
 
-    public boolean login() throws LoginException {
-        try {
-            users = readProperties(usersUrl);
-        } catch (final IOException ioe) {
-            throw new LoginException("Unable to load user properties file " + usersUrl.getFile());
-        }
-
-        try {
-            groups = readProperties(groupsUrl);
-        } catch (final IOException ioe) {
-            throw new LoginException("Unable to load group properties file " + groupsUrl.getFile());
+        final long cacheTTL = options.containsKey(CACHE_TTL) ? Long.parseLong(String.valueOf(options.get(CACHE_TTL)).trim()) : 0;
+        if (cacheTTL > 0) {
+            final int cacheSize = options.containsKey(CACHE_SIZE) ? Integer.parseInt(String.valueOf(options.get(CACHE_SIZE)).trim()) : 1000;
+            cache = CredentialCache.get("PropertiesLoginModule " + usersUrl.toExternalForm() + " " + groupsUrl.toExternalForm(), cacheSize, cacheTTL);
         }
+    }
 
+    public boolean login() throws LoginException {
         final Callback[] callbacks = new Callback[2];
 
         callbacks[0] = new NameCallback("Username: ");
@@ -110,17 +109,20 @@ public class PropertiesLoginModule implements LoginModule {
             tmpPassword = new char[0];
         }
 
-        final String password = users.getProperty(user);
-
-        if (password == null) {
-            throw new FailedLoginException("User does not exist");
-        }
-        if (!password.equals(new String(tmpPassword))) {
-            throw new FailedLoginException("Password does not match");
+        final String provided = new String(tmpPassword);
+        if (cache != null) {
+            groups.addAll(cache.login(user, provided, files));
+        } else {
+            final CredentialCache.Credentials credentials = files.load(user);
+            if (credentials == null) {
+                throw new FailedLoginException("User does not exist");
+            }
+            if (!files.checkPassword(credentials.getPassword(), provided)) {
+                throw new FailedLoginException("Password does not match");
+            }
+            groups.addAll(credentials.getGroups());
         }
 
-        users.clear();
-
         if (debug) {
             log.debug("Logged in as '" + user + "'");
         }
@@ -129,16 +131,8 @@ public class PropertiesLoginModule implements LoginModule {
 
     public boolean commit() throws LoginException {
         principals.add(new UserPrincipal(user));
-
-        for (final Enumeration enumeration = groups.keys(); enumeration.hasMoreElements(); ) {
-            final String name = (String) enumeration.nextElement();
-            final String[] userList = String.valueOf(groups.getProperty(name)).split(",");
-            for (int i = 0; i < userList.length; i++) {
-                if (user.equals(userList[i])) {
-                    principals.add(new GroupPrincipal(name));
-                    break;
-                }
-            }
+        for (final String group : groups) {
+            principals.add(new GroupPrincipal(group));
         }
 
         subject.getPrincipals().addAll(principals);
@@ -175,4 +169,48 @@ public class PropertiesLoginModule implements LoginModule {
         user = null;
     }
 
+    private final UserFiles files = new UserFiles();
+
+    private final class UserFiles implements CredentialCache.Loader {
+        @Override
+        public CredentialCache.Credentials load(final String name) throws LoginException {
+            final Properties users;
+            try {
+                users = readProperties(usersUrl);
+            } catch (final IOException ioe) {
+                throw new LoginException("Unable to load user properties file " + usersUrl.getFile());
+            }
+
+            final String password = users.getProperty(name);
+            if (password == null) {
+                return null;
+            }
+
+            final Properties groupsByName;
+            try {
+                groupsByName = readProperties(groupsUrl);
+            } catch (final IOException ioe) {
+                throw new LoginException("Unable to load group properties file " + groupsUrl.getFile());
+            }
+
+            final Set<String> userGroups = new LinkedHashSet<String>();
+            for (final Enumeration enumeration = groupsByName.keys(); enumeration.hasMoreElements(); ) {
+                final String group = (String) enumeration.nextElement();
+                final String[] userList = String.valueOf(groupsByName.getProperty(group)).split(",");
+                for (int i = 0; i < userList.length; i++) {
+                    if (name.equals(userList[i])) {
+                        userGroups.add(group);
+                        break;
+                    }
+                }
+            }
+            return new CredentialCache.Credentials(password, userGroups);
+        }
+
+        @Override
+        public boolean checkPassword(final String stored, final String provided) {
+            return stored.equals(provided);
+        }
+    }
+
 }
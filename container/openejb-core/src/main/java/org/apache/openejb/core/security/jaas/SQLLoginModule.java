@@ -71,6 +71,9 @@ import java.util.Set;
  * In other words, the query should look like:
  * <tt>SELECT user, role FROM user_roles WHERE username=?</tt>
  * <p/>
+ * Successful logins can be remembered in a {@link CredentialCache} setting cacheTTL (ms, 0 by default to disable it)
+ * and optionally cacheSize (1000 users by default).
+ * <p/>
  * This login module checks security credentials so the lifecycle methods must return true to indicate success
  * or throw LoginException to indicate failure.
  *
@@ -89,6 +92,7 @@ public class SQLLoginModule implements LoginModule {
     private String groupSelect;
     private String digest;
     private String encoding;
+    private CredentialCache cache;
 
     private boolean loginSucceeded;
     private Subject subject;
@@ -167,6 +171,14 @@ public class SQLLoginModule implements LoginModule {
         } else {
             initError(null, "Neither %s nor %s was specified", Option.DATABASE_POOL_NAME.name, Option.CONNECTION_URL.name);
         }
+
+        final long cacheTTL = Long.parseLong(optionsMap.containsKey(Option.CACHE_TTL) ? optionsMap.get(Option.CACHE_TTL) : "0");
+        if (cacheTTL > 0) {
+            final int cacheSize = Integer.parseInt(optionsMap.containsKey(Option.CACHE_SIZE) ? optionsMap.get(Option.CACHE_SIZE) : "1000");
+            final String store = optionsMap.containsKey(Option.DATABASE_POOL_NAME) ? optionsMap.get(Option.DATABASE_POOL_NAME) : connectionURL;
+            cache = CredentialCache.get("SQLLoginModule " + store + " " + userSelect + " " + groupSelect + " " + digest + " " + encoding,
+                cacheSize, cacheTTL);
+        }
     }
 
     private void initError(final Exception e, final String format, final Object... args) {
@@ -207,74 +219,18 @@ public class SQLLoginModule implements LoginModule {
         cbPassword = provided == null ? null : new String(provided);
 
         try {
-            final Connection conn;
-            if (dataSource != null) {
-                conn = dataSource.getConnection();
-            } else if (driver != null) {
-                conn = driver.connect(connectionURL, properties);
+            if (cache != null) {
+                groups.addAll(cache.login(cbUsername, cbPassword, store));
             } else {
-                conn = DriverManager.getConnection(connectionURL, properties);
-            }
-
-            try {
-                PreparedStatement statement = conn.prepareStatement(userSelect);
-                try {
-                    final int count = statement.getParameterMetaData().getParameterCount();
-                    for (int i = 0; i < count; i++) {
-                        statement.setObject(i + 1, cbUsername);
-                    }
-                    final ResultSet result = statement.executeQuery();
-
-                    try {
-                        boolean found = false;
-                        while (result.next()) {
-                            final String userName = result.getString(1);
-                            final String userPassword = result.getString(2);
-
-                            if (cbUsername.equals(userName)) {
-                                found = true;
-                                if (!checkPassword(userPassword, cbPassword)) {
-                                    throw new FailedLoginException();
-                                }
-                                break;
-                            }
-                        }
-                        if (!found) {
-                            // User does not exist
-                            throw new FailedLoginException();
-                        }
-                    } finally {
-                        result.close();
-                    }
-                } finally {
-                    statement.close();
+                final CredentialCache.Credentials credentials = select(cbUsername);
+                if (credentials == null) {
+                    // User does not exist
+                    throw new FailedLoginException();
                 }
-
-                statement = conn.prepareStatement(groupSelect);
-                try {
-                    final int count = statement.getParameterMetaData().getParameterCount();
-                    for (int i = 0; i < count; i++) {
-                        statement.setObject(i + 1, cbUsername);
-                    }
-                    final ResultSet result = statement.executeQuery();
-
-                    try {
-                        while (result.next()) {
-                            final String userName = result.getString(1);
-                            final String groupName = result.getString(2);
-
-                            if (cbUsername.equals(userName)) {
-                                groups.add(groupName);
-                            }
-                        }
-                    } finally {
-                        result.close();
-                    }
-                } finally {
-                    statement.close();
+                if (!checkPassword(credentials.getPassword(), cbPassword)) {
+                    throw new FailedLoginException();
                 }
-            } finally {
-                conn.close();
+                groups.addAll(credentials.getGroups());
             }
         } catch (final LoginException e) {
             // Clear out the private state
@@ -300,6 +256,93 @@ public class SQLLoginModule implements LoginModule {
         return true;
     }
 
+    /**
+     * Reads the password and the groups of a user.
+     *
+     * @return the credentials or null if the user doesn't exist
+     */
+    private CredentialCache.Credentials select(final String username) throws Exception {
+        final Connection conn;
+        if (dataSource != null) {
+            conn = dataSource.getConnection();
+        } else if (driver != null) {
+            conn = driver.connect(connectionURL, properties);
+        } else {
+            conn = DriverManager.getConnection(connectionURL, properties);
+        }
+
+        try {
+            String userPassword = null;
+            boolean found = false;
+            PreparedStatement statement = conn.prepareStatement(userSelect);
+            try {
+                final int count = statement.getParameterMetaData().getParameterCount();
+                for (int i = 0; i < count; i++) {
+                    statement.setObject(i + 1, username);
+                }
+                final ResultSet result = statement.executeQuery();
+
+                try {
+                    while (result.next()) {
+                        final String userName = result.getString(1);
+                        if (username.equals(userName)) {
+                            found = true;
+                            userPassword = result.getString(2);
+                            break;
+                        }
+                    }
+                } finally {
+                    result.close();
+                }
+            } finally {
+                statement.close();
+            }
+            if (!found) {
+                return null;
+            }
+
+            final Set<String> userGroups = new HashSet<String>();
+            statement = conn.prepareStatement(groupSelect);
+            try {
+                final int count = statement.getParameterMetaData().getParameterCount();
+                for (int i = 0; i < count; i++) {
+                    statement.setObject(i + 1, username);
+                }
+                final ResultSet result = statement.executeQuery();
+
+                try {
+                    while (result.next()) {
+                        final String userName = result.getString(1);
+                        final String groupName = result.getString(2);
+
+                        if (username.equals(userName)) {
+                            userGroups.add(groupName);
+                        }
+                    }
+                } finally {
+                    result.close();
+                }
+            } finally {
+                statement.close();
+            }
+            return new CredentialCache.Credentials(userPassword, userGroups);
+        } finally {
+            conn.close();
+        }
+    }
+
+    private final CredentialCache.Loader store = new CredentialCache.Loader() {
+        @Override
+        public CredentialCache.Credentials load(final String user) throws Exception {
+            return select(user);
+        }
+
+        @Override
+        public boolean checkPassword(final String stored, final String provided) {
+            return SQLLoginModule.this.checkPassword(stored, provided);
+        }
+    };
+
     /**
      * @return true if login succeeded and commit succeeded, or false if login
      * failed but commit succeeded.
@@ -398,7 +441,9 @@ public class SQLLoginModule implements LoginModule {
         DRIVER("jdbcDriver"),
         DATABASE_POOL_NAME("dataSourceName"),
         DIGEST("digest"),
-        ENCODING("encoding");
+        ENCODING("encoding"),
+        CACHE_TTL("cacheTTL"),
+        CACHE_SIZE("cacheSize");
 
         public final String name;
 
@@ -18,6 +18,7 @@
 package org.apache.openejb.core.security.jacc;
 
 import org.apache.openejb.assembler.classic.DelegatePermissionCollection;
+import org.apache.openejb.core.security.AbstractSecurityService;
 import org.apache.openejb.loader.SystemInstance;
 
 import javax.security.jacc.PolicyConfiguration;
@@ -185,6 +186,7 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
 
     public void delete() throws PolicyContextException {
         state = DELETED;
+        AbstractSecurityService.invalidateAuthorizations();
     }
 
     public void commit() throws PolicyContextException {
@@ -192,6 +194,7 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
             throw new UnsupportedOperationException("Not in an open state");
         }
         state = IN_SERVICE;
+        AbstractSecurityService.invalidateAuthorizations();
     }
 
     public boolean inService() throws PolicyContextException {
@@ -208,6 +211,7 @@ public class BasicPolicyConfiguration implements PolicyConfiguration {
             rolePermissionsMap.clear();
             unchecked = null;
             excluded = null;
+            AbstractSecurityService.invalidateAuthorizations();
         }
         state = OPEN;
     }
@@ -27,6 +27,7 @@ import org.apache.openejb.cdi.CurrentCreationalContext;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.timer.EjbTimerService;
@@ -247,12 +248,9 @@ public class SingletonContainer implements RpcContainer {
                     callContext.setCurrentOperation(Operation.BUSINESS_WS);
                     returnValue = invokeWebService(args, beanContext, runMethod, instance);
                 } else {
-                    final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
-                    final InterceptorStack interceptorStack = new InterceptorStack(instance.bean,
-                        runMethod,
-                        callType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS,
-                        interceptors,
-                        instance.interceptors);
+                    final Operation operation = callType == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS;
+                    final InterceptorChain interceptors = beanContext.getInterceptorChain(runMethod, operation);
+                    final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, operation, interceptors, instance.interceptors);
                     returnValue = interceptorStack.invoke(args);
                 }
             } catch (final Throwable e) {// handle reflection exception
@@ -0,0 +1,549 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.stateful;
+
+import org.apache.openejb.SystemException;
+import org.apache.openejb.core.EnvProps;
+import org.apache.openejb.core.ivm.EjbObjectInputStream;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.monitoring.LatencyHistogram;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.apache.openejb.monitoring.Managed;
+import org.apache.openejb.monitoring.ManagedMBean;
+import org.apache.openejb.monitoring.ObjectNameBuilder;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.management.ObjectName;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the passivated state in memory mapped files instead of one file per bean.
+ * <p/>
+ * The files are fixed size segments ({@value #SEGMENT_SIZE}, 16MB by default) created when needed
+ * in the passivation directory. The free space of the segments is indexed by position and by size,
+ * a passivation takes the smallest free extent big enough for the whole batch of beans and writes it at once.
+ * An activation reads the slice of its bean and gives the space back.
+ * <p/>
+ * Passivation and activation counts, bytes and latencies are available over JMX
+ * (j2eeType=Passivation, named after the stateful container once {@link #setContainerId(Object)} was called).
+ * The segments are unmapped and deleted when the passivater is closed, or deleted when the JVM exits.
+ */
+public class MappedPassivater implements PassivationStrategy, Closeable {
+
+    public static final String SEGMENT_SIZE = "openejb.passivation.segment-size";
+
+    private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+    private static final AtomicInteger IDS = new AtomicInteger();
+    private static final int ALIGNMENT = 64;
+    private static final int SEGMENT_BITS = 40; // position = segment index << 40 | offset in the segment
+
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            final Class<?> type = Class.forName("sun.misc.Unsafe");
+            final Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (final Throwable e) {
+            // java 8, see unmap()
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Map<Object, Slice> slices = new ConcurrentHashMap<Object, Slice>();
+    private final String name = "passivation-" + IDS.incrementAndGet();
+
+    // the segments are read and written under the read lock, close() unmaps them under the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private boolean closed;
+
+    // free space, guarded by this
+    private final TreeMap<Long, Long> freeByPosition = new TreeMap<Long, Long>();
+    private final TreeMap<Long, TreeSet<Long>> freeBySize = new TreeMap<Long, TreeSet<Long>>();
+    private volatile Segment[] segments = new Segment[0];
+
+    @Managed
+    private final AtomicLong passivations = new AtomicLong();
+
+    @Managed
+    private final AtomicLong activations = new AtomicLong();
+
+    @Managed
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    @Managed
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final LatencyHistogram passivationTimes = new LatencyHistogram();
+    private final LatencyHistogram activationTimes = new LatencyHistogram();
+
+    private File directory;
+    private int segmentSize;
+    private ObjectName objectName;
+
+    public MappedPassivater() throws SystemException {
+        init(null);
+    }
+
+    @Override
+    public synchronized void init(Properties props) throws SystemException {
+        if (props == null) {
+            props = new Properties();
+        }
+
+        final String dir = props.getProperty(EnvProps.IM_PASSIVATOR_PATH_PREFIX);
+        try {
+            if (dir != null) {
+                directory = SystemInstance.get().getBase().getDirectory(dir);
+            } else {
+                directory = new File(System.getProperty("java.io.tmpdir", File.separator + "tmp"));
+            }
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException("Failed to create session directory: " + directory.getAbsolutePath());
+            }
+        } catch (final IOException e) {
+            throw new SystemException(getClass().getName() + ".init(): can't use directory prefix " + dir + ":" + e, e);
+        }
+
+        segmentSize = align(Integer.parseInt(props.getProperty(SEGMENT_SIZE,
+            Integer.toString(SystemInstance.get().getOptions().get(SEGMENT_SIZE, 16 * 1024 * 1024)))));
+
+        if (objectName == null) {
+            register(name);
+        }
+
+        logger.info("Using memory mapped segments of " + segmentSize + " bytes in " + directory + " for stateful session passivation");
+    }
+
+    /**
+     * Names the JMX statistics after the stateful container using this passivater.
+     */
+    public synchronized void setContainerId(final Object containerId) {
+        if (objectName != null) {
+            LocalMBeanServer.unregisterSilently(objectName);
+            objectName = null;
+        }
+        register(String.valueOf(containerId));
+    }
+
+    private void register(final String mbeanName) {
+        if (LocalMBeanServer.isJMXActive()) {
+            final ObjectNameBuilder jmxName = new ObjectNameBuilder("openejb.management");
+            jmxName.set("J2EEServer", "openejb");
+            jmxName.set("J2EEApplication", null);
+            jmxName.set("j2eeType", "Passivation");
+            jmxName.set("name", mbeanName);
+            objectName = jmxName.build();
+            LocalMBeanServer.registerSilently(new ManagedMBean(this), objectName);
+        }
+    }
+
+    @Override
+    public void passivate(final Map stateTable) throws SystemException {
+        final long start = System.nanoTime();
+
+        // serialize the whole batch first, the storage is only locked to find some space
+        final List<Object> keys = new ArrayList<Object>(stateTable.size());
+        final List<byte[]> states = new ArrayList<byte[]>(stateTable.size());
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        SystemException error = null;
+        long total = 0;
+        for (final Object entry : stateTable.entrySet()) {
+            final Map.Entry<?, ?> e = (Map.Entry<?, ?>) entry;
+            try {
+                buffer.reset();
+                final ObjectOutputStream oos = new ObjectOutputStream(buffer);
+                oos.writeObject(e.getValue());
+                oos.close();
+            } catch (final NotSerializableException nse) {
+                logger.error("Passivation failed ", nse);
+                error = (SystemException) new SystemException("The type " + nse.getMessage() + " is not serializable as mandated by the EJB specification.").initCause(nse);
+                continue;
+            } catch (final IOException ioe) {
+                logger.error("Passivation failed ", ioe);
+                error = new SystemException(ioe);
+                continue;
+            }
+
+            final byte[] bytes = buffer.toByteArray();
+            keys.add(e.getKey());
+            states.add(bytes);
+            total += align(bytes.length);
+        }
+
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                throw new IOException("Passivater closed");
+            }
+            if (total > 0 && total <= segmentSize) { // one contiguous write for the batch
+                long position = allocate(total);
+                for (int i = 0; i < keys.size(); i++) {
+                    final byte[] bytes = states.get(i);
+                    store(keys.get(i), new Slice(position, bytes.length), bytes);
+                    position += align(bytes.length);
+                }
+            } else {
+                for (int i = 0; i < keys.size(); i++) {
+                    final byte[] bytes = states.get(i);
+                    store(keys.get(i), new Slice(allocate(align(bytes.length)), bytes.length), bytes);
+                }
+            }
+        } catch (final IOException e) {
+            logger.error("Passivation failed ", e);
+            throw new SystemException(e);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        passivations.addAndGet(keys.size());
+        passivationTimes.record(System.nanoTime() - start);
+
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    @Override
+    public Object activate(final Object primaryKey) throws SystemException {
+        final Slice slice = slices.remove(primaryKey);
+        if (slice == null) {
+            return null;
+        }
+
+        final long start = System.nanoTime();
+        final byte[] bytes = new byte[slice.length];
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return null;
+            }
+            final ByteBuffer view = segment(slice.position).buffer.duplicate();
+            view.position(offset(slice.position));
+            view.get(bytes);
+            release(slice);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        bytesRead.addAndGet(bytes.length);
+        try {
+            final EjbObjectInputStream ois = new EjbObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return ois.readObject();
+            } finally {
+                ois.close();
+            }
+        } catch (final Exception e) {
+            logger.info("Activation failed ", e);
+            throw new SystemException(e);
+        } finally {
+            activations.incrementAndGet();
+            activationTimes.record(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            synchronized (this) {
+                closed = true;
+                slices.clear();
+                freeByPosition.clear();
+                freeBySize.clear();
+                for (final Segment segment : segments) {
+                    unmap(segment.buffer);
+                    if (!segment.file.delete()) {
+                        segment.file.deleteOnExit();
+                    }
+                }
+                segments = new Segment[0];
+                storedBytes.set(0);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        synchronized (this) {
+            if (objectName != null) {
+                LocalMBeanServer.unregisterSilently(objectName);
+                objectName = null;
+            }
+        }
+    }
+
+    /**
+     * Releases the mapping now instead of when the buffer is garbage collected,
+     * the file can't be deleted on windows while it is mapped.
+     */
+    private static void unmap(final MappedByteBuffer buffer) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                final Method cleaner = buffer.getClass().getMethod("cleaner");
+                cleaner.setAccessible(true);
+                final Object clean = cleaner.invoke(buffer);
+                if (clean != null) {
+                    clean.getClass().getMethod("clean").invoke(clean);
+                }
+            }
+        } catch (final Throwable e) {
+            logger.debug("Can't unmap passivation segment, it will be released by the garbage collector", e);
+        }
+    }
+
+    @Managed
+    public int getStoredBeans() {
+        return slices.size();
+    }
+
+    @Managed
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+
+    @Managed
+    public int getSegments() {
+        return segments.length;
+    }
+
+    @Managed
+    public long getMappedBytes() {
+        long mapped = 0;
+        for (final Segment segment : segments) {
+            mapped += segment.size;
+        }
+        return mapped;
+    }
+
+    @Managed
+    public double getPassivationTime50() {
+        return millis(passivationTimes.snapshot().getPercentile(50));
+    }
+
+    @Managed
+    public double getPassivationTime99() {
+        return millis(passivationTimes.snapshot().getPercentile(99));
+    }
+
+    @Managed
+    public double getPassivationTimeMax() {
+        return millis(passivationTimes.snapshot().getMax());
+    }
+
+    @Managed
+    public double getActivationTime50() {
+        return millis(activationTimes.snapshot().getPercentile(50));
+    }
+
+    @Managed
+    public double getActivationTime99() {
+        return millis(activationTimes.snapshot().getPercentile(99));
+    }
+
+    @Managed
+    public double getActivationTimeMax() {
+        return millis(activationTimes.snapshot().getMax());
+    }
+
+    public long getPassivations() {
+        return passivations.get();
+    }
+
+    public long getActivations() {
+        return activations.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    private void store(final Object key, final Slice slice, final byte[] bytes) {
+        final ByteBuffer view = segment(slice.position).buffer.duplicate();
+        view.position(offset(slice.position));
+        view.put(bytes);
+
+        bytesWritten.addAndGet(bytes.length);
+        final Slice previous = slices.put(key, slice);
+        if (previous != null) { // passivated twice, drop the old state
+            release(previous);
+        }
+    }
+
+    private void release(final Slice slice) {
+        free(slice.position, align(slice.length));
+    }
+
+    private synchronized long allocate(final long length) throws IOException {
+        Map.Entry<Long, TreeSet<Long>> candidates = freeBySize.ceilingEntry(length);
+        if (candidates == null) {
+            addSegment(length);
+            candidates = freeBySize.ceilingEntry(length);
+        }
+
+        final long size = candidates.getKey();
+        final long position = candidates.getValue().first();
+        removeFree(position, size);
+        if (size > length) {
+            addFree(position + length, size - length);
+        }
+        storedBytes.addAndGet(length);
+        return position;
+    }
+
+    private synchronized void free(final long position, final long length) {
+        storedBytes.addAndGet(-length);
+
+        long start = position;
+        long size = length;
+
+        // merge with the free extents around
+        final Map.Entry<Long, Long> before = freeByPosition.lowerEntry(position);
+        if (before != null && before.getKey() + before.getValue() == position) {
+            removeFree(before.getKey(), before.getValue());
+            start = before.getKey();
+            size += before.getValue();
+        }
+        final Long after = freeByPosition.get(position + length);
+        if (after != null) {
+            removeFree(position + length, after);
+            size += after;
+        }
+        addFree(start, size);
+    }
+
+    private void addFree(final long position, final long length) {
+        freeByPosition.put(position, length);
+        TreeSet<Long> positions = freeBySize.get(length);
+        if (positions == null) {
+            positions = new TreeSet<Long>();
+            freeBySize.put(length, positions);
+        }
+        positions.add(position);
+    }
+
+    private void removeFree(final long position, final long length) {
+        freeByPosition.remove(position);
+        final TreeSet<Long> positions = freeBySize.get(length);
+        positions.remove(position);
+        if (positions.isEmpty()) {
+            freeBySize.remove(length);
+        }
+    }
+
+    private void addSegment(final long minSize) throws IOException {
+        final int index = segments.length;
+        final long size = Math.max(segmentSize, minSize);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Can't map " + size + " bytes");
+        }
+
+        final File file = new File(directory, name + "-" + index + ".seg");
+        file.deleteOnExit();
+        final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        final MappedByteBuffer buffer;
+        try {
+            raf.setLength(size);
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            raf.close(); // the mapping stays valid
+        }
+
+        final Segment[] newSegments = Arrays.copyOf(segments, index + 1);
+        newSegments[index] = new Segment(file, buffer, size);
+        segments = newSegments;
+        addFree(((long) index) << SEGMENT_BITS, size);
+    }
+
+    private Segment segment(final long position) {
+        return segments[(int) (position >>> SEGMENT_BITS)];
+    }
+
+    private static int offset(final long position) {
+        return (int) (position & ((1L << SEGMENT_BITS) - 1));
+    }
+
+    private static int align(final int length) {
+        return (length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static double millis(final double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static final class Slice {
+        private final long position;
+        private final int length;
+
+        private Slice(final long position, final int length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+
+    private static final class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final long size;
+
+        private Segment(final File file, final MappedByteBuffer buffer, final long size) {
+            this.file = file;
+            this.buffer = buffer;
+            this.size = size;
+        }
+    }
+}
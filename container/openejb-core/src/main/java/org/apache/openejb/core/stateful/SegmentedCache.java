@@ -0,0 +1,299 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.stateful;
+
+import org.apache.openejb.util.Duration;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Same contract and configuration as {@link SimpleCache} but split in segments selected by the key hash,
+ * each segment being a {@link SimpleCache} with its share of the capacity and of the bulk passivation.
+ * <p/>
+ * Checking a bean in or out only contends with the beans of the same segment and the LRU
+ * of a segment is shorter so moving an entry in or out of it is cheaper. The capacity is global
+ * but approximate since each segment passivates as soon as its own share is exceeded.
+ * <p/>
+ * All the segments share the listener and the passivation strategy, the timeout processing
+ * is scheduled once for the whole cache.
+ */
+public class SegmentedCache<K, V> implements Cache<K, V> {
+    public static final Logger logger = Logger.getInstance(LogCategory.OPENEJB, "org.apache.openejb.util.resources");
+
+    private volatile List<SimpleCache<K, V>> segments;
+
+    private volatile CacheListener<V> listener;
+
+    private volatile PassivationStrategy passivator;
+
+    private volatile int capacity;
+
+    private volatile int bulkPassivate;
+
+    /**
+     * Idle time (in milliseconds) before a bean is removed, -1 for never
+     */
+    private volatile long timeOut = -1;
+
+    private ScheduledExecutorService executor;
+
+    private volatile long frequency = 60 * 1000;
+
+    private ScheduledFuture future;
+
+    public SegmentedCache() {
+        setSegments(16);
+    }
+
+    public SegmentedCache(final CacheListener<V> listener, final PassivationStrategy passivator, final int capacity, final int bulkPassivate, final Duration timeOut) {
+        this.listener = listener;
+        this.passivator = passivator;
+        this.capacity = capacity;
+        this.bulkPassivate = bulkPassivate;
+        this.timeOut = timeOut.getTime(TimeUnit.MILLISECONDS);
+        setSegments(16);
+    }
+
+    public synchronized void init() {
+        if (frequency > 0 && future == null) {
+            initScheduledExecutorService();
+
+            // start any thread in container loader to avoid leaks
+            final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            Thread.currentThread().setContextClassLoader(SegmentedCache.class.getClassLoader());
+            try {
+                future = executor.scheduleWithFixedDelay(new Runnable() {
+                    public void run() {
+                        processLRU();
+                    }
+                }, frequency, frequency, TimeUnit.MILLISECONDS);
+            } finally {
+                Thread.currentThread().setContextClassLoader(loader);
+            }
+        }
+    }
+
+    public synchronized void destroy() {
+        if (future != null) {
+            future.cancel(false);
+        }
+        // the segments share the passivator, close it once
+        if (passivator instanceof Closeable) {
+            try {
+                ((Closeable) passivator).close();
+            } catch (final IOException e) {
+                logger.warning("Can't close the passivation strategy", e);
+            }
+        }
+    }
+
+    private synchronized void initScheduledExecutorService() {
+        if (executor == null) {
+            executor = Executors.newScheduledThreadPool(1, new ThreadFactory() {
+                public Thread newThread(final Runnable runable) {
+                    final Thread t = new Thread(runable, "Stateful cache");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    public CacheListener<V> getListener() {
+        return listener;
+    }
+
+    public void setListener(final CacheListener<V> listener) {
+        this.listener = listener;
+        for (final SimpleCache<K, V> segment : segments) {
+            segment.setListener(listener);
+        }
+    }
+
+    public PassivationStrategy getPassivator() {
+        return passivator;
+    }
+
+    public void setPassivator(final PassivationStrategy passivator) {
+        this.passivator = passivator;
+        for (final SimpleCache<K, V> segment : segments) {
+            segment.setPassivator(passivator);
+        }
+    }
+
+    public void setPassivator(final Class<? extends PassivationStrategy> passivatorClass) throws Exception {
+        setPassivator(passivatorClass.newInstance());
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(final int capacity) {
+        this.capacity = capacity;
+        for (final SimpleCache<K, V> segment : segments) {
+            segment.setCapacity(share(capacity));
+        }
+    }
+
+    // Old configurations use "PoolSize" to configure max cache size
+    public void setPoolSize(final int capacity) {
+        setCapacity(capacity);
+    }
+
+    public int getBulkPassivate() {
+        return bulkPassivate;
+    }
+
+    public void setBulkPassivate(final int bulkPassivate) {
+        this.bulkPassivate = bulkPassivate;
+        for (final SimpleCache<K, V> segment : segments) {
+            segment.setBulkPassivate(share(bulkPassivate));
+        }
+    }
+
+    public long getTimeOut() {
+        return timeOut;
+    }
+
+    public void setTimeOut(final String timeOut) {
+        this.timeOut = ms(timeOut, TimeUnit.MINUTES);
+        for (final SimpleCache<K, V> segment : segments) {
+            segment.setTimeOut(timeOut);
+        }
+    }
+
+    public int getSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Number of segments, rounded to the next power of two.
+     * Has to be set before the cache is used.
+     */
+    public void setSegments(final int segments) {
+        int size = 1;
+        while (size < segments) {
+            size <<= 1;
+        }
+
+        final List<SimpleCache<K, V>> newSegments = new ArrayList<SimpleCache<K, V>>(size);
+        for (int i = 0; i < size; i++) {
+            final SimpleCache<K, V> segment = new SimpleCache<K, V>(listener, passivator,
+                share(capacity, size), share(bulkPassivate, size), new Duration(timeOut, TimeUnit.MILLISECONDS));
+            segment.setFrequency(frequency + " milliseconds");
+            newSegments.add(segment);
+        }
+        this.segments = newSegments;
+    }
+
+    public void setScheduledExecutorService(final ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public ScheduledExecutorService getScheduledExecutorService() {
+        return executor;
+    }
+
+    /**
+     * With a frequency of 0 each segment processes its LRU when a bean is checked in,
+     * otherwise the whole cache is processed at this frequency once {@link #init()} was called.
+     */
+    public void setFrequency(final String frequency) {
+        this.frequency = ms(frequency, TimeUnit.SECONDS);
+        for (final SimpleCache<K, V> segment : segments) {
+            segment.setFrequency(frequency);
+        }
+    }
+
+    public long getFrequency() {
+        return frequency;
+    }
+
+    /**
+     * @return the number of values not in use, this is what the capacity limits
+     */
+    public int getAvailable() {
+        int size = 0;
+        for (final SimpleCache<K, V> segment : segments) {
+            size += segment.getAvailable();
+        }
+        return size;
+    }
+
+    private static long ms(final String durationValue, final TimeUnit defaultTU) {
+        final Duration duration = new Duration(durationValue.trim());
+        if (duration.getUnit() == null) { // old configurations have no unit
+            duration.setUnit(defaultTU);
+        }
+        return duration.getUnit().toMillis(duration.getTime());
+    }
+
+    private int share(final int total) {
+        return share(total, segments.size());
+    }
+
+    private static int share(final int total, final int segments) {
+        return Math.max(1, (total + segments - 1) / segments);
+    }
+
+    private SimpleCache<K, V> segmentFor(final Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        final List<SimpleCache<K, V>> segments = this.segments;
+        return segments.get(h & (segments.size() - 1));
+    }
+
+    public void add(final K key, final V value) {
+        segmentFor(key).add(key, value);
+    }
+
+    public V checkOut(final K key, final boolean loadEntryIfNotFound) throws Exception {
+        return segmentFor(key).checkOut(key, loadEntryIfNotFound);
+    }
+
+    public void checkIn(final K key) {
+        segmentFor(key).checkIn(key);
+    }
+
+    public V remove(final K key) {
+        return segmentFor(key).remove(key);
+    }
+
+    public void removeAll(final CacheFilter<V> filter) {
+        for (final SimpleCache<K, V> segment : segments) {
+            segment.removeAll(filter);
+        }
+    }
+
+    public void processLRU() {
+        for (final SimpleCache<K, V> segment : segments) {
+            segment.processLRU();
+        }
+    }
+}
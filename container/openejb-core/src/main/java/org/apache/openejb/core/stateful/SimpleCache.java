@@ -22,6 +22,8 @@ import org.apache.openejb.util.Duration;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -122,6 +124,13 @@ public class SimpleCache<K, V> implements Cache<K, V> {
         if (future != null) {
             future.cancel(false);
         }
+        if (passivator instanceof Closeable) {
+            try {
+                ((Closeable) passivator).close();
+            } catch (final IOException e) {
+                logger.warning("Can't close the passivation strategy", e);
+            }
+        }
     }
 
     private synchronized void initScheduledExecutorService() {
@@ -169,6 +178,13 @@ public class SimpleCache<K, V> implements Cache<K, V> {
         this.capacity = capacity;
     }
 
+    /**
+     * @return the number of values not in use
+     */
+    int getAvailable() {
+        return lru.size();
+    }
+
     public synchronized int getBulkPassivate() {
         return bulkPassivate;
     }
@@ -465,14 +481,13 @@ public class SimpleCache<K, V> implements Cache<K, V> {
                             continue;
                     }
 
-                    // remove it from the cache
-                    cache.remove(entry.getKey());
-
                     // there is a race condition where the item could get added back into the lru
                     lru.remove(entry);
 
                     // if the entry is actually timed out we just destroy it; otherwise it is written to disk
                     if (entry.isTimedOut()) {
+                        // remove it from the cache
+                        cache.remove(entry.getKey());
                         entry.setState(EntryState.REMOVED);
                         if (listener != null) {
                             try {
@@ -499,6 +514,9 @@ public class SimpleCache<K, V> implements Cache<K, V> {
                     storeEntries(valuesToStore);
                 } finally {
                     for (final Entry entry : entries) {
+                        // removed once stored so a concurrent checkOut waits for the entry and then activates it
+                        cache.remove(entry.getKey(), entry);
+
                         // release the extra passivation lock
                         entry.lock.unlock();
                     }
@@ -107,6 +107,11 @@ public class StatefulContainerFactory {
         if (cache == null) {
             buildCache();
         }
+
+        final PassivationStrategy passivator = getPassivator(cache);
+        if (passivator instanceof MappedPassivater) {
+            ((MappedPassivater) passivator).setContainerId(id);
+        }
         cache.init();
         return new StatefulContainer(
             id, securityService,
@@ -115,6 +120,16 @@ public class StatefulContainerFactory {
             createLockFactory());
     }
 
+    private static PassivationStrategy getPassivator(final Cache<Object, Instance> cache) {
+        if (cache instanceof SimpleCache) {
+            return ((SimpleCache<?, ?>) cache).getPassivator();
+        }
+        if (cache instanceof SegmentedCache) {
+            return ((SegmentedCache<?, ?>) cache).getPassivator();
+        }
+        return null;
+    }
+
     private LockFactory createLockFactory() {
         final Object lockFactory = properties.remove("LockFactory");
         if (lockFactory != null) {
@@ -28,6 +28,7 @@ import org.apache.openejb.cdi.CurrentCreationalContext;
 import org.apache.openejb.core.ExceptionType;
 import org.apache.openejb.core.Operation;
 import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.core.interceptor.InterceptorChain;
 import org.apache.openejb.core.interceptor.InterceptorData;
 import org.apache.openejb.core.interceptor.InterceptorStack;
 import org.apache.openejb.core.timer.EjbTimerService;
@@ -230,8 +231,8 @@ public class StatelessContainer implements org.apache.openejb.RpcContainer, Dest
                 callContext.setCurrentOperation(Operation.BUSINESS_WS);
                 returnValue = invokeWebService(args, beanContext, runMethod, instance);
             } else {
-                final List<InterceptorData> interceptors = beanContext.getMethodInterceptors(runMethod);
                 final Operation operation = type == InterfaceType.TIMEOUT ? Operation.TIMEOUT : Operation.BUSINESS;
+                final InterceptorChain interceptors = beanContext.getInterceptorChain(runMethod, operation);
                 final InterceptorStack interceptorStack = new InterceptorStack(instance.bean, runMethod, operation, interceptors, instance.interceptors);
                 returnValue = interceptorStack.invoke(args);
             }
@@ -130,6 +130,10 @@ public class StatelessContainerFactory {
         pool.setMaxAgeOffset(maxAgeOffset);
     }
 
+    public void setStriped(final boolean striped) {
+        pool.setStriped(striped);
+    }
+
     public void setCloseTimeout(final Duration closeTimeout) {
         this.closeTimeout = closeTimeout;
     }
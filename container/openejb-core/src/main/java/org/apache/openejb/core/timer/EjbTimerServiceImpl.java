@@ -318,6 +318,16 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
     public void stop() {
         cleanTimerData();
         shutdownMyScheduler();
+        stopTimerStore();
+    }
+
+    /**
+     * Stops the background work of the store of the bean timers (database polling).
+     */
+    protected void stopTimerStore() {
+        if (timerStore instanceof JdbcTimerStore) {
+            ((JdbcTimerStore) timerStore).stop(true);
+        }
     }
 
     private void cleanTimerData() {
@@ -557,6 +567,29 @@ public class EjbTimerServiceImpl implements EjbTimerService, Serializable {
         timerStore.removeTimer(timerData.getId());
     }
 
+    /**
+     * Call back from TimerData when a timer is cancelled or stopped and should not fire anymore.
+     *
+     * @param timerData the timer to unschedule
+     * @param stopping  true if the bean is stopped, persistent timers are then only paused
+     */
+    protected void unschedule(final TimerData timerData, final boolean stopping) {
+        final TriggerKey key = timerData.trigger.getKey();
+        try {
+            final Scheduler s = getScheduler();
+
+            if (!s.isShutdown()) {
+                if (stopping && timerData.isPersistent()) {
+                    s.pauseTrigger(key);
+                } else {
+                    s.unscheduleJob(key);
+                }
+            }
+        } catch (final SchedulerException e) {
+            throw new EJBException("fail to cancel the timer", e);
+        }
+    }
+
     /**
      * Returns a timerData to the TimerStore, if a cancel() is rolled back.
      *
@@ -0,0 +1,1061 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.timer;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.MethodContext;
+import org.apache.openejb.core.ivm.EjbObjectInputStream;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.util.DaemonThreadFactory;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.ejb.ScheduleExpression;
+import javax.ejb.TimerConfig;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
+import javax.transaction.Transaction;
+import javax.transaction.TransactionManager;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent timer store sharing the timers of a bean between several nodes through a database.
+ * <p/>
+ * The timers are split in partitions owned by the nodes through {@link TimerLeases}. A node only
+ * schedules the timers of its partitions: the new timers go in a partition of the node creating them
+ * and the due timers of the owned partitions are fetched by batches at each round, a partition whose
+ * lease expired (node down) is taken by another node which then fires its timers. A timer can fire
+ * twice if its node dies between the timeout and the next flush.
+ * <p/>
+ * Creations are written before their transaction commits (a failure rolls it back) or immediately without
+ * transaction (a failure is thrown to the caller). Cancellations are written once their transaction committed
+ * and timeouts updates are queued, both are written in JDBC batches at each round; when a batch fails its
+ * operations are written one by one so a failing one doesn't block the others, and retried a few times.
+ * The memory view of the inherited {@link MemoryTimerStore} keeps the transactional semantic,
+ * {@link #getTimers(String)} only returns the timers of this node.
+ * <p/>
+ * Configured with {@link #DATASOURCE} (a non JTA managed data source since the store commits its batches)
+ * and optionally {@link #NODE}, {@link #TABLE_PREFIX}, {@link #PARTITIONS}, {@link #LEASE} (ms), {@link #POLL} (ms)
+ * and {@link #BATCH}. Selected with timerStore.class=org.apache.openejb.core.timer.JdbcTimerStore.
+ */
+public class JdbcTimerStore extends MemoryTimerStore {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger log = Logger.getInstance(LogCategory.TIMER, "org.apache.openejb.util.resources");
+
+    public static final String DATASOURCE = "openejb.timer.jdbc.datasource";
+    public static final String NODE = "openejb.timer.jdbc.node";
+    public static final String TABLE_PREFIX = "openejb.timer.jdbc.table-prefix";
+    public static final String PARTITIONS = "openejb.timer.jdbc.partitions";
+    public static final String LEASE = "openejb.timer.jdbc.lease";
+    public static final String POLL = "openejb.timer.jdbc.poll";
+    public static final String BATCH = "openejb.timer.jdbc.batch";
+
+    private static final int ID_BLOCK = 100;
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final TransactionManager transactionManager;
+    private final String prefix;
+    private final String node;
+    private final int partitions;
+    private final long lease;
+    private final long poll;
+    private final int batch;
+
+    private final Queue<Operation> pending = new ConcurrentLinkedQueue<Operation>();
+    private final AtomicInteger pendingSize = new AtomicInteger();
+    private final Set<Long> deleting = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+    private final Map<Long, Integer> partitionById = new ConcurrentHashMap<Long, Integer>();
+    private final Map<Transaction, List<Operation>> byTransaction = new ConcurrentHashMap<Transaction, List<Operation>>();
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    private final Object flushLock = new Object();
+
+    private volatile DataSource dataSource;
+    private volatile EjbTimerServiceImpl timerService;
+    private volatile String deploymentId;
+    private volatile TimerLeases leases;
+    private volatile ScheduledExecutorService poller;
+    private volatile boolean deployed;
+
+    private long nextId;
+    private long maxId;
+
+    public JdbcTimerStore(final TransactionManager transactionManager) {
+        this(transactionManager, null, SystemInstance.get().getOptions());
+    }
+
+    private JdbcTimerStore(final TransactionManager transactionManager, final DataSource dataSource, final Options options) {
+        this(transactionManager, dataSource,
+            options.get(NODE, ManagementFactory.getRuntimeMXBean().getName()),
+            options.get(TABLE_PREFIX, "OPENEJB_TIMER"),
+            options.get(PARTITIONS, 64),
+            options.get(LEASE, 30000L),
+            options.get(POLL, 5000L),
+            options.get(BATCH, 500));
+    }
+
+    /**
+     * @param dataSource null to look up {@link #DATASOURCE} in the container
+     */
+    public JdbcTimerStore(final TransactionManager transactionManager, final DataSource dataSource, final String node, final String prefix,
+                          final int partitions, final long lease, final long poll, final int batch) {
+        super(transactionManager);
+        this.transactionManager = transactionManager;
+        this.dataSource = dataSource;
+        this.node = node;
+        this.prefix = prefix;
+        this.partitions = partitions;
+        this.lease = lease;
+        this.poll = poll;
+        this.batch = batch;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    /**
+     * @return the partitions owned by this node or an empty set if the store is not started
+     */
+    public SortedSet<Integer> getOwnedPartitions() {
+        final TimerLeases l = leases;
+        return l == null ? Collections.unmodifiableSortedSet(new TreeSet<Integer>()) : l.getOwned();
+    }
+
+    @Override
+    public Collection<TimerData> loadTimers(final EjbTimerServiceImpl timerService, final String deploymentId) throws TimerStoreException {
+        this.timerService = timerService;
+        this.deploymentId = deploymentId;
+
+        try {
+            final TimerLeases l = new TimerLeases(dataSource(), prefix, deploymentId, node, partitions, lease);
+            l.renew();
+            leases = l;
+        } catch (final SQLException e) {
+            throw new TimerStoreException("Can't get the timer leases of " + deploymentId, e);
+        }
+
+        flush();
+        evict(leases.getOwned(), false);
+        fetch(false);
+
+        synchronized (this) {
+            if (poller == null) {
+                poller = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("OpenEJB-TimerStore-" + deploymentId));
+                poller.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        round();
+                    }
+                }, poll, poll, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return super.loadTimers(timerService, deploymentId);
+    }
+
+    @Override
+    public TimerData createSingleActionTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey,
+                                             final Method timeoutMethod, final Date expiration, final TimerConfig timerConfig) throws TimerStoreException {
+        return created(super.createSingleActionTimer(timerService, deploymentId, primaryKey, timeoutMethod, expiration, timerConfig));
+    }
+
+    @Override
+    public TimerData createIntervalTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Method timeoutMethod,
+                                         final Date initialExpiration, final long intervalDuration, final TimerConfig timerConfig) throws TimerStoreException {
+        return created(super.createIntervalTimer(timerService, deploymentId, primaryKey, timeoutMethod, initialExpiration, intervalDuration, timerConfig));
+    }
+
+    @Override
+    public TimerData createCalendarTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Method timeoutMethod,
+                                         final ScheduleExpression scheduleExpression, final TimerConfig timerConfig, final boolean auto) throws TimerStoreException {
+        if (!auto || timerConfig != null && !timerConfig.isPersistent()) {
+            return created(super.createCalendarTimer(timerService, deploymentId, primaryKey, timeoutMethod, scheduleExpression, timerConfig, auto));
+        }
+
+        // automatic timers are created by all the nodes at deployment, they share an id computed from the schedule
+        final long id = autoId(deploymentId, timeoutMethod, scheduleExpression);
+        final TimerData timerData = new CalendarTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, timerConfig, scheduleExpression, true);
+        super.addTimerData(timerData);
+        partitionById.put(id, partition(id));
+        insertIfAbsent(timerData);
+        return timerData;
+    }
+
+    @Override
+    public void removeTimer(final long id) {
+        super.removeTimer(id);
+        if (partitionById.containsKey(id)) {
+            submit(new Operation(Operation.Type.DELETE, id, null));
+        }
+    }
+
+    @Override
+    public void updateIntervalTimer(final TimerData timerData) {
+        if (partitionById.containsKey(timerData.getId())) {
+            submit(new Operation(Operation.Type.UPDATE, timerData.getId(), timerData));
+        }
+    }
+
+    @Override
+    protected long nextId() throws TimerStoreException {
+        synchronized (flushLock) {
+            if (nextId >= maxId) {
+                allocateIds();
+            }
+            return nextId++;
+        }
+    }
+
+    /**
+     * Writes the pending updates in JDBC batches.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            final List<Operation> operations = new ArrayList<Operation>();
+            Operation operation;
+            while ((operation = pending.poll()) != null) {
+                pendingSize.decrementAndGet();
+                operations.add(operation);
+            }
+            if (operations.isEmpty()) {
+                return;
+            }
+
+            try {
+                write(operations);
+                for (final Operation o : operations) {
+                    written(o);
+                }
+            } catch (final Exception e) {
+                if (operations.size() == 1) {
+                    failed(operations.get(0), e);
+                    return;
+                }
+
+                log.warning("Can't write " + operations.size() + " timer updates in a batch, writing them one by one", e);
+                for (final Operation o : operations) {
+                    try {
+                        write(Collections.singletonList(o));
+                        written(o);
+                    } catch (final Exception error) {
+                        failed(o, error);
+                    }
+                }
+            }
+        }
+    }
+
+    private void written(final Operation operation) {
+        operation.error = null;
+        if (operation.type == Operation.Type.DELETE) {
+            deleting.remove(operation.id);
+        }
+    }
+
+    private void failed(final Operation operation, final Exception error) {
+        operation.error = error;
+        if (++operation.attempts < MAX_ATTEMPTS) {
+            log.warning("Can't write " + operation.type + " of timer " + operation.id + ", will retry", error);
+            pending.add(operation);
+            pendingSize.incrementAndGet();
+        } else {
+            log.error("Giving up writing " + operation.type + " of timer " + operation.id, error);
+            deleting.remove(operation.id);
+        }
+    }
+
+    /**
+     * Stops this node, flushing the pending updates. Called when the timer service of the bean stops.
+     *
+     * @param release true to give the partitions back immediately, otherwise they are taken by the other nodes once the leases expired
+     */
+    public void stop(final boolean release) {
+        final ScheduledExecutorService p;
+        synchronized (this) {
+            p = poller;
+            poller = null;
+        }
+        if (p != null) {
+            p.shutdownNow();
+        }
+
+        flush();
+
+        final TimerLeases l = leases;
+        if (release && l != null) {
+            try {
+                l.releaseAll();
+            } catch (final SQLException e) {
+                log.warning("Can't release the timer leases of " + deploymentId, e);
+            }
+        }
+    }
+
+    /**
+     * One round of the node: writes the pending updates, renews the leases and fetches the due timers.
+     */
+    public void round() {
+        try {
+            if (undeployed()) {
+                stop(true);
+                return;
+            }
+
+            flush();
+            final SortedSet<Integer> owned = leases.renew();
+            evict(owned, true);
+            fetch(true);
+        } catch (final Exception e) {
+            log.warning("Timer store round failed for " + deploymentId, e);
+        }
+    }
+
+    /**
+     * @param name           the name of the timeout method
+     * @param parameterTypes the class names of its parameters
+     * @return the method to call for a timer loaded from the database or null if the bean doesn't have it anymore
+     */
+    protected Method timeoutMethod(final String name, final String[] parameterTypes) {
+        final BeanContext beanContext = beanContext();
+        if (beanContext == null) {
+            return null;
+        }
+
+        for (final Iterator<Map.Entry<Method, MethodContext>> it = beanContext.iteratorMethodContext(); it.hasNext(); ) {
+            final Method method = it.next().getValue().getBeanMethod();
+            if (method != null && method.getName().equals(name) && Arrays.equals(parameterTypes, parameterTypes(method))) {
+                return method;
+            }
+        }
+
+        final Method ejbTimeout = beanContext.getEjbTimeout();
+        if (ejbTimeout != null && ejbTimeout.getName().equals(name) && Arrays.equals(parameterTypes, parameterTypes(ejbTimeout))) {
+            return ejbTimeout;
+        }
+        return null;
+    }
+
+    /**
+     * Schedules a timer loaded from the database.
+     */
+    protected void schedule(final TimerData timerData) {
+        timerData.newTimer();
+    }
+
+    private TimerData created(final TimerData timerData) throws TimerStoreException {
+        if (timerData.isPersistent()) {
+            final long id = timerData.getId();
+            partitionById.put(id, partition(id));
+            final Operation operation = new Operation(Operation.Type.INSERT, id, timerData);
+            if (!submit(operation) && operation.error != null) { // written immediately and failed
+                if (pending.remove(operation)) {
+                    pendingSize.decrementAndGet();
+                }
+                partitionById.remove(id);
+                super.removeTimer(id);
+                throw new TimerStoreException("Can't store timer " + id, operation.error);
+            }
+        }
+        return timerData;
+    }
+
+    private int partition(final long id) {
+        final TimerLeases l = leases;
+        if (id > 0 && l != null) {
+            final Integer[] owned = l.getOwned().toArray(new Integer[0]);
+            if (owned.length > 0) {
+                return owned[(roundRobin.getAndIncrement() & Integer.MAX_VALUE) % owned.length];
+            }
+        }
+        return (int) (((id % partitions) + partitions) % partitions);
+    }
+
+    /**
+     * @return true if the operation is written with its transaction, false if it was queued
+     */
+    private boolean submit(final Operation operation) {
+        final Transaction transaction = transaction();
+        if (transaction != null) {
+            List<Operation> operations = byTransaction.get(transaction);
+            if (operations == null) {
+                operations = new ArrayList<Operation>();
+                try {
+                    transaction.registerSynchronization(new OperationsSynchronization(transaction));
+                    byTransaction.put(transaction, operations);
+                } catch (final Exception e) {
+                    log.warning("Can't register timer store synchronization, writing immediately", e);
+                    accept(operation);
+                    flush();
+                    return false;
+                }
+            }
+            operations.add(operation);
+            return true;
+        }
+
+        accept(operation);
+        if (operation.type == Operation.Type.INSERT || pendingSize.get() >= batch) {
+            flush();
+        }
+        return false;
+    }
+
+    private void accept(final Operation operation) {
+        if (operation.type == Operation.Type.DELETE) {
+            partitionById.remove(operation.id);
+            deleting.add(operation.id);
+        }
+        pending.add(operation);
+        pendingSize.incrementAndGet();
+    }
+
+    private Transaction transaction() {
+        try {
+            final Transaction transaction = transactionManager.getTransaction();
+            if (transaction != null) {
+                final int status = transaction.getStatus();
+                if (status == Status.STATUS_ACTIVE || status == Status.STATUS_MARKED_ROLLBACK) {
+                    return transaction;
+                }
+            }
+        } catch (final SystemException e) {
+            // no-op
+        }
+        return null;
+    }
+
+    private void write(final List<Operation> operations) throws SQLException, IOException, TimerStoreException {
+        final Connection connection = dataSource().getConnection();
+        try {
+            connection.setAutoCommit(false);
+            final PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO " + prefix + " (ID, DEPLOYMENT_ID, PARTITION_ID, NEXT_FIRE, TIMER_DATA) VALUES (?, ?, ?, ?, ?)");
+            final PreparedStatement update = connection.prepareStatement("UPDATE " + prefix + " SET NEXT_FIRE = ? WHERE ID = ?");
+            final PreparedStatement delete = connection.prepareStatement("DELETE FROM " + prefix + " WHERE ID = ?");
+            try {
+                int inserts = 0;
+                int updates = 0;
+                int deletes = 0;
+                for (final Operation operation : operations) {
+                    switch (operation.type) {
+                        case INSERT:
+                            final Integer partition = partitionById.get(operation.id);
+                            if (partition == null) { // already removed
+                                continue;
+                            }
+                            final byte[] data = serialize(operation.timerData);
+                            insert.setLong(1, operation.id);
+                            insert.setString(2, operation.timerData.getDeploymentId());
+                            insert.setInt(3, partition);
+                            insert.setLong(4, nextFire(operation.timerData));
+                            insert.setBinaryStream(5, new ByteArrayInputStream(data), data.length);
+                            insert.addBatch();
+                            inserts++;
+                            break;
+                        case UPDATE:
+                            update.setLong(1, nextFire(operation.timerData));
+                            update.setLong(2, operation.id);
+                            update.addBatch();
+                            updates++;
+                            break;
+                        default:
+                            delete.setLong(1, operation.id);
+                            delete.addBatch();
+                            deletes++;
+                    }
+                }
+
+                // inserts first since a timer can be updated or deleted in the same batch
+                if (inserts > 0) {
+                    insert.executeBatch();
+                }
+                if (updates > 0) {
+                    update.executeBatch();
+                }
+                if (deletes > 0) {
+                    delete.executeBatch();
+                }
+                connection.commit();
+            } finally {
+                insert.close();
+                update.close();
+                delete.close();
+            }
+        } catch (final SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void insertIfAbsent(final TimerData timerData) throws TimerStoreException {
+        try {
+            final byte[] data = serialize(timerData);
+            final Connection connection = dataSource().getConnection();
+            try {
+                connection.setAutoCommit(false);
+                final PreparedStatement select = connection.prepareStatement("SELECT ID FROM " + prefix + " WHERE ID = ?");
+                try {
+                    select.setLong(1, timerData.getId());
+                    final ResultSet rs = select.executeQuery();
+                    try {
+                        if (rs.next()) {
+                            return;
+                        }
+                    } finally {
+                        rs.close();
+                    }
+                } finally {
+                    select.close();
+                }
+
+                final PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO " + prefix + " (ID, DEPLOYMENT_ID, PARTITION_ID, NEXT_FIRE, TIMER_DATA) VALUES (?, ?, ?, ?, ?)");
+                try {
+                    insert.setLong(1, timerData.getId());
+                    insert.setString(2, timerData.getDeploymentId());
+                    insert.setInt(3, partitionById.get(timerData.getId()));
+                    insert.setLong(4, nextFire(timerData));
+                    insert.setBinaryStream(5, new ByteArrayInputStream(data), data.length);
+                    insert.executeUpdate();
+                    connection.commit();
+                } catch (final SQLException e) { // created by another node meanwhile
+                    connection.rollback();
+                } finally {
+                    insert.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (final SQLException | IOException e) {
+            throw new TimerStoreException("Can't store timer " + timerData.getId(), e);
+        }
+    }
+
+    /**
+     * Forgets the timers of the partitions this node doesn't own anymore, the new owner fires them.
+     */
+    private void evict(final Set<Integer> owned, final boolean scheduled) {
+        for (final Map.Entry<Long, Integer> entry : partitionById.entrySet()) {
+            if (owned.contains(entry.getValue())) {
+                continue;
+            }
+
+            final Long id = entry.getKey();
+            final TimerData timerData = getTimer(deploymentId, id);
+            if (timerData != null && scheduled) {
+                try {
+                    timerData.stop();
+                } catch (final RuntimeException e) {
+                    log.warning("Can't stop timer " + id, e);
+                }
+            }
+            super.removeTimer(id);
+            partitionById.remove(id);
+        }
+    }
+
+    /**
+     * Loads and schedules the timers of the owned partitions due before the next rounds.
+     */
+    private void fetch(final boolean schedule) throws TimerStoreException {
+        final SortedSet<Integer> owned = leases.getOwned();
+        if (owned.isEmpty()) {
+            return;
+        }
+
+        final StringBuilder sql = new StringBuilder("SELECT ID, PARTITION_ID, TIMER_DATA FROM ").append(prefix)
+            .append(" WHERE DEPLOYMENT_ID = ? AND NEXT_FIRE <= ? AND ID > ? AND PARTITION_ID IN (");
+        for (int i = 0; i < owned.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") ORDER BY ID");
+
+        final long until = System.currentTimeMillis() + 2 * poll;
+        final Thread thread = Thread.currentThread();
+        final ClassLoader oldLoader = thread.getContextClassLoader();
+        final BeanContext beanContext = beanContext();
+        if (beanContext != null && beanContext.getClassLoader() != null) {
+            thread.setContextClassLoader(beanContext.getClassLoader());
+        }
+        try {
+            final Connection connection = dataSource().getConnection();
+            try {
+                final PreparedStatement select = connection.prepareStatement(sql.toString());
+                try {
+                    select.setMaxRows(batch);
+                    long last = Long.MIN_VALUE;
+                    int rows;
+                    do {
+                        rows = 0;
+                        select.setString(1, deploymentId);
+                        select.setLong(2, until);
+                        select.setLong(3, last);
+                        int index = 4;
+                        for (final Integer partition : owned) {
+                            select.setInt(index++, partition);
+                        }
+
+                        final List<TimerData> loaded = new ArrayList<TimerData>();
+                        final ResultSet rs = select.executeQuery();
+                        try {
+                            while (rs.next()) {
+                                rows++;
+                                last = rs.getLong(1);
+                                if (deleting.contains(last) || getTimer(deploymentId, last) != null) {
+                                    continue;
+                                }
+
+                                final TimerData timerData = deserialize(last, rs.getBinaryStream(3));
+                                if (timerData != null) {
+                                    partitionById.put(last, rs.getInt(2));
+                                    super.addTimerData(timerData);
+                                    loaded.add(timerData);
+                                }
+                            }
+                        } finally {
+                            rs.close();
+                        }
+
+                        if (schedule) {
+                            for (final TimerData timerData : loaded) {
+                                schedule(timerData);
+                            }
+                        }
+                    } while (rows == batch);
+                } finally {
+                    select.close();
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (final SQLException | IOException e) {
+            throw new TimerStoreException("Can't load the timers of " + deploymentId, e);
+        } finally {
+            thread.setContextClassLoader(oldLoader);
+        }
+    }
+
+    private boolean undeployed() {
+        final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+        if (containerSystem == null) {
+            return false;
+        }
+
+        final BeanContext beanContext = containerSystem.getBeanContext(deploymentId);
+        final boolean active = beanContext != null && beanContext.getEjbTimerService() != null
+            && beanContext.getEjbTimerService().getTimerStore() == this;
+        if (active) {
+            deployed = true;
+        }
+        return deployed && !active;
+    }
+
+    private BeanContext beanContext() {
+        final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+        return containerSystem == null ? null : containerSystem.getBeanContext(deploymentId);
+    }
+
+    private DataSource dataSource() throws TimerStoreException {
+        if (dataSource == null) {
+            synchronized (this) {
+                if (dataSource == null) {
+                    final String name = SystemInstance.get().getOptions().get(DATASOURCE, (String) null);
+                    final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+                    if (name == null || containerSystem == null) {
+                        throw new TimerStoreException("No data source configured for timers, set " + DATASOURCE);
+                    }
+                    try {
+                        dataSource = DataSource.class.cast(containerSystem.getJNDIContext().lookup("openejb/Resource/" + name));
+                    } catch (final NamingException e) {
+                        throw new TimerStoreException("Data source " + name + " not found", e);
+                    }
+                }
+            }
+        }
+        createTables(dataSource);
+        return dataSource;
+    }
+
+    private volatile boolean tablesChecked;
+
+    private void createTables(final DataSource ds) throws TimerStoreException {
+        if (tablesChecked) {
+            return;
+        }
+
+        try {
+            final Connection connection = ds.getConnection();
+            try {
+                createTable(connection, prefix,
+                    "(ID BIGINT NOT NULL, DEPLOYMENT_ID VARCHAR(255) NOT NULL, PARTITION_ID INTEGER NOT NULL,"
+                        + " NEXT_FIRE BIGINT NOT NULL, TIMER_DATA BLOB NOT NULL, PRIMARY KEY (ID))",
+                    "CREATE INDEX " + prefix + "_DUE ON " + prefix + " (DEPLOYMENT_ID, NEXT_FIRE)");
+                createTable(connection, prefix + "_LEASE",
+                    "(DEPLOYMENT_ID VARCHAR(255) NOT NULL, PARTITION_ID INTEGER NOT NULL, LEASE_OWNER VARCHAR(255),"
+                        + " LEASE_EPOCH BIGINT NOT NULL, PRIMARY KEY (DEPLOYMENT_ID, PARTITION_ID))", null);
+                createTable(connection, prefix + "_NODE",
+                    "(DEPLOYMENT_ID VARCHAR(255) NOT NULL, NODE VARCHAR(255) NOT NULL, EPOCH BIGINT NOT NULL,"
+                        + " PRIMARY KEY (DEPLOYMENT_ID, NODE))", null);
+                createTable(connection, prefix + "_ID", "(NAME VARCHAR(64) NOT NULL, NEXT_ID BIGINT NOT NULL, PRIMARY KEY (NAME))", null);
+                tablesChecked = true;
+            } finally {
+                connection.close();
+            }
+        } catch (final SQLException e) {
+            throw new TimerStoreException("Can't create the timer tables", e);
+        }
+    }
+
+    private static void createTable(final Connection connection, final String table, final String columns, final String index) throws SQLException {
+        final DatabaseMetaData metaData = connection.getMetaData();
+        for (final String name : new String[]{table, table.toUpperCase(), table.toLowerCase()}) {
+            final ResultSet rs = metaData.getTables(null, null, name, null);
+            try {
+                if (rs.next()) {
+                    return;
+                }
+            } finally {
+                rs.close();
+            }
+        }
+
+        final Statement statement = connection.createStatement();
+        try {
+            statement.executeUpdate("CREATE TABLE " + table + " " + columns);
+            if (index != null) {
+                statement.executeUpdate(index);
+            }
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+        } catch (final SQLException e) {
+            log.debug("Can't create " + table + ", it was probably created by another node: " + e.getMessage());
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void allocateIds() throws TimerStoreException {
+        final String table = prefix + "_ID";
+        try {
+            final Connection connection = dataSource().getConnection();
+            try {
+                connection.setAutoCommit(false);
+                for (int attempt = 0; attempt < 100; attempt++) {
+                    Long current = null;
+                    final PreparedStatement select = connection.prepareStatement("SELECT NEXT_ID FROM " + table + " WHERE NAME = 'timer'");
+                    try {
+                        final ResultSet rs = select.executeQuery();
+                        try {
+                            if (rs.next()) {
+                                current = rs.getLong(1);
+                            }
+                        } finally {
+                            rs.close();
+                        }
+                    } finally {
+                        select.close();
+                    }
+
+                    final PreparedStatement update;
+                    if (current == null) {
+                        current = 1L;
+                        update = connection.prepareStatement("INSERT INTO " + table + " (NEXT_ID, NAME) VALUES (?, 'timer')");
+                        update.setLong(1, current + ID_BLOCK);
+                    } else {
+                        update = connection.prepareStatement("UPDATE " + table + " SET NEXT_ID = ? WHERE NAME = 'timer' AND NEXT_ID = ?");
+                        update.setLong(1, current + ID_BLOCK);
+                        update.setLong(2, current);
+                    }
+                    try {
+                        if (update.executeUpdate() == 1) {
+                            connection.commit();
+                            nextId = current;
+                            maxId = current + ID_BLOCK;
+                            return;
+                        }
+                        connection.rollback();
+                    } catch (final SQLException e) { // concurrent insert, retry
+                        connection.rollback();
+                    } finally {
+                        update.close();
+                    }
+                }
+                throw new TimerStoreException("Can't allocate timer ids");
+            } finally {
+                connection.close();
+            }
+        } catch (final SQLException e) {
+            throw new TimerStoreException("Can't allocate timer ids", e);
+        }
+    }
+
+    private static long nextFire(final TimerData timerData) {
+        final Date next;
+        if (timerData.trigger != null) {
+            next = timerData.trigger.getNextFireTime();
+        } else if (timerData instanceof SingleActionTimerData) {
+            next = ((SingleActionTimerData) timerData).getExpiration();
+        } else if (timerData instanceof IntervalTimerData) {
+            next = ((IntervalTimerData) timerData).getInitialExpiration();
+        } else {
+            next = null; // computed when scheduled, fetch it asap
+        }
+        return next == null ? 0 : next.getTime();
+    }
+
+    private static long autoId(final String deploymentId, final Method method, final ScheduleExpression schedule) throws TimerStoreException {
+        final String key = deploymentId + '#' + method.getName() + Arrays.toString(parameterTypes(method))
+            + '#' + schedule.getSecond() + ' ' + schedule.getMinute() + ' ' + schedule.getHour()
+            + ' ' + schedule.getDayOfMonth() + ' ' + schedule.getMonth() + ' ' + schedule.getDayOfWeek()
+            + ' ' + schedule.getYear() + ' ' + schedule.getTimezone() + ' ' + schedule.getStart() + ' ' + schedule.getEnd();
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xff);
+            }
+            return -(hash & Long.MAX_VALUE) - 1; // generated ids are positive
+        } catch (final NoSuchAlgorithmException | IOException e) {
+            throw new TimerStoreException("Can't compute the id of automatic timer " + key, e);
+        }
+    }
+
+    private static String[] parameterTypes(final Method method) {
+        final Class<?>[] types = method.getParameterTypes();
+        final String[] names = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            names[i] = types[i].getName();
+        }
+        return names;
+    }
+
+    private static byte[] serialize(final TimerData timerData) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(new PersistedTimer(timerData));
+        oos.close();
+        return out.toByteArray();
+    }
+
+    private TimerData deserialize(final long id, final InputStream in) throws IOException {
+        final PersistedTimer persisted;
+        try {
+            final ObjectInputStream ois = new EjbObjectInputStream(in);
+            try {
+                persisted = PersistedTimer.class.cast(ois.readObject());
+            } finally {
+                ois.close();
+            }
+        } catch (final ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+
+        final Method method = timeoutMethod(persisted.method, persisted.parameterTypes);
+        if (method == null) {
+            log.warning("No timeout method " + persisted.method + Arrays.toString(persisted.parameterTypes) + " for timer " + id + " of " + deploymentId);
+            return null;
+        }
+        return persisted.toTimerData(id, timerService, deploymentId, method);
+    }
+
+    private class OperationsSynchronization implements Synchronization {
+        private final Transaction transaction;
+
+        private OperationsSynchronization(final Transaction transaction) {
+            this.transaction = transaction;
+        }
+
+        /**
+         * Writes the created timers, the transaction is rolled back if they can't be stored.
+         */
+        @Override
+        public void beforeCompletion() {
+            final List<Operation> operations = byTransaction.get(transaction);
+            if (operations == null) {
+                return;
+            }
+
+            final List<Operation> inserts = new ArrayList<Operation>();
+            for (final Operation operation : operations) {
+                if (operation.type == Operation.Type.INSERT) {
+                    inserts.add(operation);
+                }
+            }
+            if (inserts.isEmpty()) {
+                return;
+            }
+
+            try {
+                write(inserts);
+            } catch (final Exception e) {
+                throw new IllegalStateException("Can't store the timers created in the transaction", e);
+            }
+            for (final Operation operation : inserts) {
+                operation.written = true;
+            }
+        }
+
+        @Override
+        public void afterCompletion(final int status) {
+            final List<Operation> operations = byTransaction.remove(transaction);
+            if (operations == null) {
+                return;
+            }
+            if (status != Status.STATUS_COMMITTED) {
+                boolean written = false;
+                for (final Operation operation : operations) {
+                    if (operation.type == Operation.Type.INSERT) {
+                        partitionById.remove(operation.id);
+                        if (operation.written) { // the transaction failed after beforeCompletion
+                            accept(new Operation(Operation.Type.DELETE, operation.id, null));
+                            written = true;
+                        }
+                    }
+                }
+                if (written) {
+                    flush();
+                }
+                return;
+            }
+
+            for (final Operation operation : operations) {
+                if (!operation.written) {
+                    accept(operation);
+                }
+            }
+            flush();
+        }
+    }
+
+    private static final class Operation {
+        private enum Type {
+            INSERT, UPDATE, DELETE
+        }
+
+        private final Type type;
+        private final long id;
+        private final TimerData timerData;
+        private int attempts;
+        private boolean written;
+        private volatile Exception error;
+
+        private Operation(final Type type, final long id, final TimerData timerData) {
+            this.type = type;
+            this.id = id;
+            this.timerData = timerData;
+        }
+    }
+
+    /**
+     * What is stored for a timer, the rest is computed from the bean when loaded.
+     */
+    private static final class PersistedTimer implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final TimerType type;
+        private final Object primaryKey;
+        private final String method;
+        private final String[] parameterTypes;
+        private final Serializable info;
+        private final Date expiration;
+        private final long interval;
+        private final ScheduleExpression schedule;
+        private final boolean auto;
+
+        private PersistedTimer(final TimerData timerData) {
+            type = timerData.getType();
+            primaryKey = timerData.getPrimaryKey();
+            method = timerData.getTimeoutMethod().getName();
+            parameterTypes = parameterTypes(timerData.getTimeoutMethod());
+            info = Serializable.class.cast(timerData.getInfo());
+            if (timerData instanceof SingleActionTimerData) {
+                expiration = ((SingleActionTimerData) timerData).getExpiration();
+                interval = 0;
+                schedule = null;
+                auto = false;
+            } else if (timerData instanceof IntervalTimerData) {
+                expiration = ((IntervalTimerData) timerData).getInitialExpiration();
+                interval = ((IntervalTimerData) timerData).getIntervalDuration();
+                schedule = null;
+                auto = false;
+            } else if (timerData instanceof CalendarTimerData) {
+                expiration = null;
+                interval = 0;
+                schedule = ((CalendarTimerData) timerData).getSchedule();
+                auto = ((CalendarTimerData) timerData).isAutoCreated();
+            } else {
+                throw new IllegalArgumentException("Unsupported timer " + timerData);
+            }
+        }
+
+        private TimerData toTimerData(final long id, final EjbTimerServiceImpl timerService, final String deploymentId, final Method timeoutMethod) {
+            final TimerConfig config = new TimerConfig(info, true);
+            switch (type) {
+                case SingleAction:
+                    return new SingleActionTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, config, expiration);
+                case Interval:
+                    return new IntervalTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, config, expiration, interval);
+                default:
+                    return new CalendarTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, config, schedule, auto);
+            }
+        }
+    }
+}
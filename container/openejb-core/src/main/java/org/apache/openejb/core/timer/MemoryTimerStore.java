@@ -40,6 +40,8 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -47,7 +49,8 @@ import java.util.concurrent.locks.ReentrantLock;
 public class MemoryTimerStore implements TimerStore {
     private static final long serialVersionUID = 1L;
     private static final Logger log = Logger.getInstance(LogCategory.TIMER, "org.apache.openejb.util.resources");
-    private final Map<Long, TimerData> taskStore = new ConcurrentHashMap<Long, TimerData>();
+    // sorted by id (creation order) so views don't need to sort on each call
+    private final ConcurrentNavigableMap<Long, TimerData> taskStore = new ConcurrentSkipListMap<Long, TimerData>();
     private final Map<Transaction, TimerDataView> tasksByTransaction = new ConcurrentHashMap<Transaction, TimerDataView>();
     private final AtomicLong counter = new AtomicLong(0);
 
@@ -61,7 +64,7 @@ public class MemoryTimerStore implements TimerStore {
     public TimerData getTimer(final String deploymentId, final long timerId) {
         try {
             final TimerDataView tasks = getTasks();
-            return tasks.getTasks().get(timerId);
+            return tasks.getTimerData(timerId);
         } catch (final TimerStoreException e) {
             return null;
         }
@@ -98,7 +101,7 @@ public class MemoryTimerStore implements TimerStore {
     @Override
     public TimerData createCalendarTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Method timeoutMethod, final ScheduleExpression scheduleExpression, final TimerConfig timerConfig, final boolean auto)
         throws TimerStoreException {
-        final long id = counter.incrementAndGet();
+        final long id = nextId();
         final TimerData timerData = new CalendarTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, timerConfig, scheduleExpression, auto);
         getTasks().addTimerData(timerData);
         return timerData;
@@ -107,7 +110,7 @@ public class MemoryTimerStore implements TimerStore {
     @Override
     public TimerData createIntervalTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Method timeoutMethod, final Date initialExpiration, final long intervalDuration, final TimerConfig timerConfig)
         throws TimerStoreException {
-        final long id = counter.incrementAndGet();
+        final long id = nextId();
         final TimerData timerData = new IntervalTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, timerConfig, initialExpiration, intervalDuration);
         getTasks().addTimerData(timerData);
         return timerData;
@@ -115,12 +118,19 @@ public class MemoryTimerStore implements TimerStore {
 
     @Override
     public TimerData createSingleActionTimer(final EjbTimerServiceImpl timerService, final String deploymentId, final Object primaryKey, final Method timeoutMethod, final Date expiration, final TimerConfig timerConfig) throws TimerStoreException {
-        final long id = counter.incrementAndGet();
+        final long id = nextId();
         final TimerData timerData = new SingleActionTimerData(id, timerService, deploymentId, primaryKey, timeoutMethod, timerConfig, expiration);
         getTasks().addTimerData(timerData);
         return timerData;
     }
 
+    /**
+     * @return the id of a new timer
+     */
+    protected long nextId() throws TimerStoreException {
+        return counter.incrementAndGet();
+    }
+
     @Override
     public void removeTimer(final long id) {
         try {
@@ -161,6 +171,8 @@ public class MemoryTimerStore implements TimerStore {
     private interface TimerDataView {
         Map<Long, TimerData> getTasks();
 
+        TimerData getTimerData(Long timerId);
+
         void addTimerData(TimerData timerData);
 
         void removeTimerData(Long timerId);
@@ -169,7 +181,12 @@ public class MemoryTimerStore implements TimerStore {
     private class LiveTimerDataView implements TimerDataView {
         @Override
         public Map<Long, TimerData> getTasks() {
-            return new TreeMap<Long, TimerData>(taskStore);
+            return Collections.unmodifiableMap(taskStore);
+        }
+
+        @Override
+        public TimerData getTimerData(final Long timerId) {
+            return taskStore.get(timerId);
         }
 
         @Override
@@ -234,6 +251,19 @@ public class MemoryTimerStore implements TimerStore {
             return Collections.unmodifiableMap(allTasks);
         }
 
+        @Override
+        public TimerData getTimerData(final Long timerId) {
+            checkThread();
+            if (remove.contains(timerId)) {
+                return null;
+            }
+            final TimerData timerData = add.get(timerId);
+            if (timerData != null) {
+                return timerData;
+            }
+            return taskStore.get(timerId);
+        }
+
         @Override
         public void addTimerData(final TimerData timerData) {
             checkThread();
@@ -266,6 +296,9 @@ public class MemoryTimerStore implements TimerStore {
         public void afterCompletion(final int status) {
             checkThread();
 
+            // the view is done whatever the outcome was
+            tasksByTransaction.remove(tansactionReference.get());
+
             // if the tx was not committed, there is nothign to update
             if (status != Status.STATUS_COMMITTED) {
                 return;
@@ -275,9 +308,9 @@ public class MemoryTimerStore implements TimerStore {
             taskStore.putAll(add);
 
             // remove work
-            taskStore.keySet().removeAll(remove);
-
-            tasksByTransaction.remove(tansactionReference.get());
+            for (final Long timerId : remove) {
+                taskStore.remove(timerId);
+            }
         }
     }
 }
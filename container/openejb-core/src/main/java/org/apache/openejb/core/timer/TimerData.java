@@ -175,19 +175,7 @@ public abstract class TimerData implements Serializable {
 
     public void stop() {
         if (trigger != null) {
-            try {
-                final Scheduler s = timerService.getScheduler();
-
-                if (!s.isShutdown()) {
-                    if (!isPersistent()) {
-                        s.unscheduleJob(trigger.getKey());
-                    } else {
-                        s.pauseTrigger(trigger.getKey());
-                    }
-                }
-            } catch (final SchedulerException e) {
-                throw new EJBException("fail to cancel the timer", e);
-            }
+            timerService.unschedule(this, true);
         }
         cancelled = true;
         stopped = true;
@@ -242,15 +230,7 @@ public abstract class TimerData implements Serializable {
 
         timerService.cancelled(TimerData.this);
         if (trigger != null) {
-            try {
-                final Scheduler s = timerService.getScheduler();
-
-                if (!s.isShutdown()) {
-                    s.unscheduleJob(trigger.getKey());
-                }
-            } catch (final SchedulerException e) {
-                throw new EJBException("fail to cancel the timer", e);
-            }
+            timerService.unschedule(this, false);
         }
         cancelled = true;
         try {
@@ -353,11 +333,13 @@ public abstract class TimerData implements Serializable {
 
     public Date getNextTimeout() {
 
-        try {
-            // give the trigger 1 ms to init itself to set correct nextTimeout value.
-            Thread.sleep(1);
-        } catch (final InterruptedException e) {
-            log.warning("Interrupted exception when waiting 1ms for the trigger to init", e);
+        if (timerService.getScheduler() != null) { // the trigger is local otherwise
+            try {
+                // give the trigger 1 ms to init itself to set correct nextTimeout value.
+                Thread.sleep(1);
+            } catch (final InterruptedException e) {
+                log.warning("Interrupted exception when waiting 1ms for the trigger to init", e);
+            }
         }
 
         Date nextTimeout = null;
@@ -0,0 +1,350 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.timer;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Splits the timers of a bean in a fixed number of partitions, each partition being owned by a node
+ * through a lease renewed at each round.
+ * <p/>
+ * A node takes its fair share of the partitions (partitions / live nodes) from the free or expired
+ * leases and gives back what it has in excess so a new node gets partitions, the partitions of a
+ * node which stopped renewing its leases are taken by the others once expired.
+ * <p/>
+ * Leases are relative: a lease is an epoch its owner increments at each round, another node considers
+ * it expired once it saw the same epoch for the lease duration on its own monotonic clock, and takes it
+ * only if the epoch didn't change meanwhile. The clocks of the nodes don't need to agree; a node starting
+ * waits one lease duration before taking the partitions of a node which died.
+ * <p/>
+ * Each round is a few statements whatever the number of partitions, updates are sent in JDBC batches.
+ * Nodes also increment a heartbeat row so a node without any partition yet is counted by the others.
+ */
+public class TimerLeases {
+
+    private final DataSource dataSource;
+    private final String table;
+    private final String nodes;
+    private final String deploymentId;
+    private final String node;
+    private final int partitions;
+    private final long duration;
+
+    // epochs seen for the leases and nodes of the others
+    private final Map<Integer, Observation> leaseEpochs = new HashMap<Integer, Observation>();
+    private final Map<String, Observation> nodeEpochs = new HashMap<String, Observation>();
+
+    private volatile SortedSet<Integer> owned = Collections.unmodifiableSortedSet(new TreeSet<Integer>());
+
+    /**
+     * @param prefix   the tables are prefix_LEASE and prefix_NODE
+     * @param duration in milliseconds
+     */
+    public TimerLeases(final DataSource dataSource, final String prefix, final String deploymentId,
+                       final String node, final int partitions, final long duration) {
+        this.dataSource = dataSource;
+        this.table = prefix + "_LEASE";
+        this.nodes = prefix + "_NODE";
+        this.deploymentId = deploymentId;
+        this.node = node;
+        this.partitions = partitions;
+        this.duration = TimeUnit.MILLISECONDS.toNanos(duration);
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @return the partitions owned after the last round
+     */
+    public SortedSet<Integer> getOwned() {
+        return owned;
+    }
+
+    public boolean isOwned(final int partition) {
+        return owned.contains(partition);
+    }
+
+    /**
+     * Renews the owned leases, takes or releases partitions to get the fair share of this node.
+     *
+     * @return the partitions owned now
+     */
+    public synchronized SortedSet<Integer> renew() throws SQLException {
+        final long now = System.nanoTime();
+        final Connection connection = dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            heartbeat(connection);
+
+            final PreparedStatement renew = connection.prepareStatement(
+                "UPDATE " + table + " SET LEASE_EPOCH = LEASE_EPOCH + 1 WHERE DEPLOYMENT_ID = ? AND LEASE_OWNER = ?");
+            try {
+                renew.setString(1, deploymentId);
+                renew.setString(2, node);
+                renew.executeUpdate();
+            } finally {
+                renew.close();
+            }
+            connection.commit();
+
+            final List<Integer> mine = new ArrayList<Integer>();
+            final Map<Integer, Long> free = new HashMap<Integer, Long>();
+            final Set<Integer> existing = read(connection, now, mine, free);
+            if (existing.size() < partitions) {
+                free.putAll(create(connection, existing));
+            }
+
+            final int live = liveNodes(connection, now);
+            final int share = (partitions + live - 1) / live;
+            if (mine.size() < share && !free.isEmpty()) {
+                final List<Integer> candidates = new ArrayList<Integer>(free.keySet());
+                Collections.shuffle(candidates); // don't let all the nodes fight for the same partitions
+                final PreparedStatement take = connection.prepareStatement(
+                    "UPDATE " + table + " SET LEASE_OWNER = ?, LEASE_EPOCH = LEASE_EPOCH + 1 WHERE DEPLOYMENT_ID = ? AND PARTITION_ID = ?"
+                        + " AND LEASE_EPOCH = ?");
+                try {
+                    for (final Integer partition : candidates.subList(0, Math.min(candidates.size(), share - mine.size()))) {
+                        take.setString(1, node);
+                        take.setString(2, deploymentId);
+                        take.setInt(3, partition);
+                        take.setLong(4, free.get(partition));
+                        take.addBatch();
+                    }
+                    take.executeBatch();
+                } finally {
+                    take.close();
+                }
+            } else if (mine.size() > share) {
+                release(connection, mine.subList(share, mine.size()));
+            }
+            connection.commit();
+
+            // drivers don't all report batch update counts so read what we really own
+            mine.clear();
+            read(connection, now, mine, new HashMap<Integer, Long>());
+            connection.commit();
+
+            owned = Collections.unmodifiableSortedSet(new TreeSet<Integer>(mine));
+            return owned;
+        } catch (final SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Gives back all the partitions of this node, the other nodes can take them at their next round.
+     */
+    public synchronized void releaseAll() throws SQLException {
+        final Connection connection = dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            release(connection, new ArrayList<Integer>(owned));
+
+            final PreparedStatement delete = connection.prepareStatement("DELETE FROM " + nodes + " WHERE DEPLOYMENT_ID = ? AND NODE = ?");
+            try {
+                delete.setString(1, deploymentId);
+                delete.setString(2, node);
+                delete.executeUpdate();
+            } finally {
+                delete.close();
+            }
+            connection.commit();
+            owned = Collections.unmodifiableSortedSet(new TreeSet<Integer>());
+        } catch (final SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.close();
+        }
+    }
+
+    private void heartbeat(final Connection connection) throws SQLException {
+        final PreparedStatement update = connection.prepareStatement("UPDATE " + nodes + " SET EPOCH = EPOCH + 1 WHERE DEPLOYMENT_ID = ? AND NODE = ?");
+        try {
+            update.setString(1, deploymentId);
+            update.setString(2, node);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        } finally {
+            update.close();
+        }
+
+        final PreparedStatement insert = connection.prepareStatement("INSERT INTO " + nodes + " (DEPLOYMENT_ID, NODE, EPOCH) VALUES (?, ?, 0)");
+        try {
+            insert.setString(1, deploymentId);
+            insert.setString(2, node);
+            insert.executeUpdate();
+        } finally {
+            insert.close();
+        }
+    }
+
+    private int liveNodes(final Connection connection, final long now) throws SQLException {
+        final Set<String> seen = new HashSet<String>();
+        int live = 0;
+        final PreparedStatement select = connection.prepareStatement("SELECT NODE, EPOCH FROM " + nodes + " WHERE DEPLOYMENT_ID = ?");
+        try {
+            select.setString(1, deploymentId);
+            final ResultSet rs = select.executeQuery();
+            try {
+                while (rs.next()) {
+                    final String name = rs.getString(1);
+                    seen.add(name);
+                    if (node.equals(name) || !expired(nodeEpochs, name, rs.getLong(2), now)) {
+                        live++;
+                    }
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            select.close();
+        }
+        nodeEpochs.keySet().retainAll(seen);
+        return Math.max(1, live);
+    }
+
+    /**
+     * @param free the free or expired partitions with their epoch
+     */
+    private Set<Integer> read(final Connection connection, final long now,
+                              final List<Integer> mine, final Map<Integer, Long> free) throws SQLException {
+        final Set<Integer> existing = new HashSet<Integer>();
+        final PreparedStatement select = connection.prepareStatement(
+            "SELECT PARTITION_ID, LEASE_OWNER, LEASE_EPOCH FROM " + table + " WHERE DEPLOYMENT_ID = ? ORDER BY PARTITION_ID");
+        try {
+            select.setString(1, deploymentId);
+            final ResultSet rs = select.executeQuery();
+            try {
+                while (rs.next()) {
+                    final int partition = rs.getInt(1);
+                    final String owner = rs.getString(2);
+                    final long epoch = rs.getLong(3);
+                    existing.add(partition);
+                    if (partition >= partitions) { // partitions count was reduced
+                        continue;
+                    }
+
+                    if (node.equals(owner)) {
+                        leaseEpochs.remove(partition);
+                        mine.add(partition);
+                    } else if (owner == null || expired(leaseEpochs, partition, epoch, now)) {
+                        free.put(partition, epoch);
+                    }
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            select.close();
+        }
+        leaseEpochs.keySet().retainAll(existing);
+        return existing;
+    }
+
+    private Map<Integer, Long> create(final Connection connection, final Set<Integer> existing) throws SQLException {
+        final Map<Integer, Long> created = new HashMap<Integer, Long>();
+        final PreparedStatement insert = connection.prepareStatement(
+            "INSERT INTO " + table + " (DEPLOYMENT_ID, PARTITION_ID, LEASE_OWNER, LEASE_EPOCH) VALUES (?, ?, NULL, 0)");
+        try {
+            for (int i = 0; i < partitions; i++) {
+                if (existing.contains(i)) {
+                    continue;
+                }
+                insert.setString(1, deploymentId);
+                insert.setInt(2, i);
+                insert.addBatch();
+                created.put(i, 0L);
+            }
+            insert.executeBatch();
+            connection.commit();
+            return created;
+        } catch (final SQLException e) { // another node created them meanwhile, next round will see them
+            connection.rollback();
+            return Collections.emptyMap();
+        } finally {
+            insert.close();
+        }
+    }
+
+    private void release(final Connection connection, final List<Integer> toRelease) throws SQLException {
+        if (toRelease.isEmpty()) {
+            return;
+        }
+
+        final PreparedStatement release = connection.prepareStatement(
+            "UPDATE " + table + " SET LEASE_OWNER = NULL, LEASE_EPOCH = LEASE_EPOCH + 1 WHERE DEPLOYMENT_ID = ? AND PARTITION_ID = ? AND LEASE_OWNER = ?");
+        try {
+            for (final Integer partition : toRelease) {
+                release.setString(1, deploymentId);
+                release.setInt(2, partition);
+                release.setString(3, node);
+                release.addBatch();
+            }
+            release.executeBatch();
+        } finally {
+            release.close();
+        }
+    }
+
+    /**
+     * @return true if the same epoch was seen for the lease duration
+     */
+    private <K> boolean expired(final Map<K, Observation> observations, final K key, final long epoch, final long now) {
+        final Observation observation = observations.get(key);
+        if (observation == null || observation.epoch != epoch) {
+            observations.put(key, new Observation(epoch, now));
+            return false;
+        }
+        return now - observation.since >= duration;
+    }
+
+    private static final class Observation {
+        private final long epoch;
+        private final long since;
+
+        private Observation(final long epoch, final long since) {
+            this.epoch = epoch;
+            this.since = since;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.timer;
+
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical timing wheel: a wheel of {@code size} buckets of {@code tick} ms, each full rotation
+ * being a bucket of the next (lazily created) level.
+ * <p/>
+ * Adding or cancelling a task is O(1), only the non empty buckets are in the delay queue so the
+ * single clock thread wakes up once per expiring bucket and not once per task. Tasks of a higher
+ * level bucket are spread again in the lower levels when the bucket expires, expired tasks are
+ * handed to the executor.
+ */
+public class TimingWheel {
+
+    private static final Logger log = Logger.getInstance(LogCategory.TIMER, "org.apache.openejb.util.resources");
+
+    private final DelayQueue<Bucket> queue = new DelayQueue<Bucket>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Executor executor;
+    private final Level root;
+    private final Thread clock;
+    private volatile boolean running = true;
+
+    public TimingWheel(final long tick, final int size, final Executor executor, final String name) {
+        if (tick < 1) {
+            throw new IllegalArgumentException("tick should be positive: " + tick);
+        }
+        if (size < 2) {
+            throw new IllegalArgumentException("size should be at least 2: " + size);
+        }
+
+        this.executor = executor;
+        this.root = new Level(tick, size, System.currentTimeMillis());
+        this.clock = new Thread(name) {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        advance(100);
+                    } catch (final InterruptedException e) {
+                        Thread.interrupted();
+                    } catch (final RuntimeException e) {
+                        log.error("Timing wheel failed to advance", e);
+                    }
+                }
+            }
+        };
+        this.clock.setDaemon(true);
+        this.clock.start();
+    }
+
+    /**
+     * @param task       what to run
+     * @param expiration when to run it (epoch in ms), a past expiration runs the task immediately
+     * @return the handle to cancel the task
+     */
+    public Task schedule(final Runnable task, final long expiration) {
+        final Task t = new Task(task, expiration);
+        lock.readLock().lock();
+        try {
+            if (root.add(t)) {
+                return t;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        execute(t);
+        return t;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void stop() {
+        running = false;
+        clock.interrupt();
+        try {
+            clock.join(1000);
+        } catch (final InterruptedException e) {
+            Thread.interrupted();
+        }
+    }
+
+    private void advance(final long timeoutMs) throws InterruptedException {
+        Bucket bucket = queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (bucket == null) {
+            return;
+        }
+
+        final List<Task> expired = new ArrayList<Task>();
+        lock.writeLock().lock();
+        try {
+            while (bucket != null) {
+                root.advance(bucket.getExpiration());
+                for (final Task task : bucket.flush()) {
+                    if (!root.add(task)) {
+                        expired.add(task);
+                    }
+                }
+                bucket = queue.poll();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        // outside of the lock since the executor can block and tasks can schedule again
+        for (final Task task : expired) {
+            execute(task);
+        }
+    }
+
+    private void execute(final Task task) {
+        if (task.cancelled) {
+            return;
+        }
+
+        try {
+            executor.execute(task.task);
+        } catch (final RejectedExecutionException e) {
+            log.error("Failed to execute timer task", e);
+        }
+    }
+
+    /**
+     * Handle on a scheduled runnable.
+     */
+    public static final class Task {
+        private final Runnable task;
+        private final long expiration;
+        private volatile boolean cancelled;
+
+        // guarded by the bucket
+        private volatile Bucket bucket;
+        private Task next;
+        private Task previous;
+
+        private Task(final Runnable task, final long expiration) {
+            this.task = task;
+            this.expiration = expiration;
+        }
+
+        public long getExpiration() {
+            return expiration;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void cancel() {
+            cancelled = true;
+
+            // the task can move to another bucket meanwhile
+            Bucket b = bucket;
+            while (b != null && !b.remove(this)) {
+                b = bucket;
+            }
+        }
+    }
+
+    /**
+     * Tasks expiring in the same tick of a level, a doubly linked list to cancel in O(1).
+     */
+    private static final class Bucket implements Delayed {
+        private final AtomicLong expiration = new AtomicLong(-1);
+        private final Task root = new Task(null, -1);
+
+        private Bucket() {
+            root.next = root;
+            root.previous = root;
+        }
+
+        /**
+         * @return true if the expiration changed and the bucket has to be queued again
+         */
+        private boolean setExpiration(final long value) {
+            return expiration.getAndSet(value) != value;
+        }
+
+        private long getExpiration() {
+            return expiration.get();
+        }
+
+        private synchronized void add(final Task task) {
+            task.bucket = this;
+            task.next = root;
+            task.previous = root.previous;
+            root.previous.next = task;
+            root.previous = task;
+        }
+
+        private synchronized boolean remove(final Task task) {
+            if (task.bucket != this) {
+                return false;
+            }
+
+            task.next.previous = task.previous;
+            task.previous.next = task.next;
+            task.next = null;
+            task.previous = null;
+            task.bucket = null;
+            return true;
+        }
+
+        private synchronized List<Task> flush() {
+            final List<Task> tasks = new ArrayList<Task>();
+            Task current = root.next;
+            while (current != root) {
+                final Task next = current.next;
+                remove(current);
+                tasks.add(current);
+                current = next;
+            }
+            expiration.set(-1);
+            return tasks;
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit) {
+            return unit.convert(Math.max(getExpiration() - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(final Delayed o) {
+            final long other = Bucket.class.cast(o).getExpiration();
+            final long mine = getExpiration();
+            return mine < other ? -1 : (mine == other ? 0 : 1);
+        }
+    }
+
+    private final class Level {
+        private final long tick;
+        private final int size;
+        private final long interval;
+        private final Bucket[] buckets;
+        private volatile long currentTime;
+        private volatile Level overflow;
+
+        private Level(final long tick, final int size, final long startTime) {
+            this.tick = tick;
+            this.size = size;
+            this.interval = tick * size;
+            this.buckets = new Bucket[size];
+            for (int i = 0; i < size; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentTime = startTime - (startTime % tick);
+        }
+
+        /**
+         * @return false if the task already expired
+         */
+        private boolean add(final Task task) {
+            final long expiration = task.expiration;
+            if (task.cancelled) {
+                return true;
+            }
+            if (expiration < currentTime + tick) {
+                return false;
+            }
+            if (expiration < currentTime + interval) {
+                final long virtualId = expiration / tick;
+                final Bucket bucket = buckets[(int) (virtualId % size)];
+                bucket.add(task);
+                if (bucket.setExpiration(virtualId * tick)) {
+                    queue.offer(bucket);
+                }
+                return true;
+            }
+            return overflow().add(task);
+        }
+
+        private Level overflow() {
+            Level level = overflow;
+            if (level == null) {
+                synchronized (this) {
+                    level = overflow;
+                    if (level == null) {
+                        level = new Level(interval, size, currentTime);
+                        overflow = level;
+                    }
+                }
+            }
+            return level;
+        }
+
+        private void advance(final long time) {
+            if (time >= currentTime + tick) {
+                currentTime = time - (time % tick);
+                final Level level = overflow;
+                if (level != null) {
+                    level.advance(currentTime);
+                }
+            }
+        }
+    }
+}
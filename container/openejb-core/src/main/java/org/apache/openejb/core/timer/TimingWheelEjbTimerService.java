@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.openejb.core.timer;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.quartz.Scheduler;
+import org.apache.openejb.quartz.Trigger;
+import org.apache.openejb.quartz.impl.triggers.AbstractTrigger;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.util.ExecutorBuilder;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+
+import javax.transaction.TransactionManager;
+import java.io.ObjectStreamException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * EJB timer service firing the timers from a {@link TimingWheel} shared by all the beans instead of
+ * one Quartz trigger per timer.
+ * <p/>
+ * Timers are still created, stored and cancelled through the {@link TimerStore} and {@link TimerData}
+ * so the transactional semantic is the same than the default service: a timer is only scheduled once
+ * the transaction creating it committed and a cancelled timer comes back on rollback. The Quartz
+ * triggers of the timers are only used to compute the next timeouts, a timer is scheduled again after
+ * its timeout callback returned so the same timer never runs concurrently.
+ * <p/>
+ * Selected setting {@link #OPENEJB_TIMER_SERVICE} to {@link #WHEEL} on the bean, module, application
+ * or system properties. The wheel is configured with {@link #OPENEJB_TIMER_WHEEL_TICK} (ms),
+ * {@link #OPENEJB_TIMER_WHEEL_SIZE} and uses {@link DefaultTimerThreadPoolAdapter#OPENEJB_TIMER_POOL_SIZE}
+ * threads to call the beans.
+ */
+public class TimingWheelEjbTimerService extends EjbTimerServiceImpl {
+
+    private static final long serialVersionUID = 1L;
+    private static final Logger log = Logger.getInstance(LogCategory.TIMER, "org.apache.openejb.util.resources");
+
+    public static final String OPENEJB_TIMER_SERVICE = "openejb.timer.service";
+    public static final String WHEEL = "wheel";
+    public static final String OPENEJB_TIMER_WHEEL_TICK = "openejb.timer.wheel.tick";
+    public static final String OPENEJB_TIMER_WHEEL_SIZE = "openejb.timer.wheel.size";
+
+    // same as quartz RAMJobStore
+    private static final long MISFIRE_THRESHOLD = 5000;
+
+    private final String deploymentId;
+    private transient ConcurrentMap<Long, TimingWheel.Task> tasks = new ConcurrentHashMap<Long, TimingWheel.Task>();
+    private transient AtomicBoolean started = new AtomicBoolean();
+
+    public TimingWheelEjbTimerService(final BeanContext deployment, final TimerStore timerStore) {
+        this(deployment, getDefaultTransactionManager(), timerStore, -1);
+    }
+
+    public TimingWheelEjbTimerService(final BeanContext deployment, final TransactionManager transactionManager, final TimerStore timerStore, final int retryAttempts) {
+        super(deployment, transactionManager, timerStore, retryAttempts);
+        this.deploymentId = deployment.getDeploymentID().toString();
+    }
+
+    public static boolean isActive(final BeanContext deployment) {
+        final String value = deployment.getProperties().getProperty(OPENEJB_TIMER_SERVICE,
+            deployment.getModuleContext().getProperties().getProperty(OPENEJB_TIMER_SERVICE,
+                deployment.getModuleContext().getAppContext().getProperties().getProperty(OPENEJB_TIMER_SERVICE,
+                    SystemInstance.get().getProperty(OPENEJB_TIMER_SERVICE, "quartz"))));
+        return WHEEL.equalsIgnoreCase(value.trim());
+    }
+
+    /**
+     * @return the wheel of the container, created on first use
+     */
+    public static TimingWheel getWheel() {
+        synchronized (TimingWheel.class) {
+            final SystemInstance systemInstance = SystemInstance.get();
+            TimingWheel wheel = systemInstance.getComponent(TimingWheel.class);
+            if (wheel == null || !wheel.isRunning()) {
+                final Options options = systemInstance.getOptions();
+                final ThreadPoolExecutor executor = new ExecutorBuilder()
+                    .size(options.get(DefaultTimerThreadPoolAdapter.OPENEJB_TIMER_POOL_SIZE, 3))
+                    .prefix("EjbTimerWheelPool")
+                    .build(options);
+                wheel = new TimingWheel(
+                    options.get(OPENEJB_TIMER_WHEEL_TICK, 1L),
+                    options.get(OPENEJB_TIMER_WHEEL_SIZE, 64),
+                    executor, "EjbTimerWheel");
+                systemInstance.setComponent(TimingWheel.class, wheel);
+                systemInstance.setComponent(WheelExecutor.class, new WheelExecutor(executor));
+            }
+            return wheel;
+        }
+    }
+
+    public static void shutdown() {
+        synchronized (TimingWheel.class) {
+            final SystemInstance systemInstance = SystemInstance.get();
+            final TimingWheel wheel = systemInstance.removeComponent(TimingWheel.class);
+            if (wheel != null) {
+                wheel.stop();
+            }
+            final WheelExecutor executor = systemInstance.removeComponent(WheelExecutor.class);
+            if (executor != null) {
+                executor.executor.shutdown();
+            }
+        }
+    }
+
+    @Override
+    public void start() throws TimerStoreException {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+
+        // load saved timers, they are scheduled once registered as new timers
+        final Collection<TimerData> timerDatas = getTimerStore().loadTimers(this, deploymentId);
+        for (final TimerData timerData : timerDatas) {
+            timerData.newTimer();
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!started.compareAndSet(true, false)) {
+            return;
+        }
+
+        for (final TimerData data : getTimerStore().getTimers(deploymentId)) {
+            data.stop();
+        }
+        for (final TimingWheel.Task task : tasks.values()) {
+            task.cancel();
+        }
+        tasks.clear();
+        stopTimerStore();
+    }
+
+    @Override
+    public boolean isStarted() {
+        return started.get();
+    }
+
+    /**
+     * @return null, no quartz scheduler is used by this service
+     */
+    @Override
+    public Scheduler getScheduler() {
+        return null;
+    }
+
+    @Override
+    public void schedule(final TimerData timerData) throws TimerStoreException {
+        start();
+
+        final Trigger trigger = timerData.getTrigger();
+        if (!AbstractTrigger.class.isInstance(trigger)) {
+            log.warning("Failed to schedule: " + timerData.getInfo());
+            return;
+        }
+
+        final AbstractTrigger<?> atrigger = AbstractTrigger.class.cast(trigger);
+        Date next = atrigger.getNextFireTime();
+        if (next != null && next.getTime() < System.currentTimeMillis() - MISFIRE_THRESHOLD) {
+            atrigger.updateAfterMisfire(null);
+            next = atrigger.getNextFireTime();
+        }
+        if (next == null) {
+            return;
+        }
+
+        final TimingWheel.Task previous = tasks.put(timerData.getId(), getWheel().schedule(new Timeout(timerData, atrigger), next.getTime()));
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    @Override
+    protected void unschedule(final TimerData timerData, final boolean stopping) {
+        final TimingWheel.Task task = tasks.remove(timerData.getId());
+        if (task != null) {
+            task.cancel();
+        }
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+        final ContainerSystem containerSystem = SystemInstance.get().getComponent(ContainerSystem.class);
+        final BeanContext beanContext = containerSystem == null ? null : containerSystem.getBeanContext(deploymentId);
+        if (beanContext != null && TimingWheelEjbTimerService.class.isInstance(beanContext.getEjbTimerService())) {
+            return beanContext.getEjbTimerService(); // the one owning the scheduled tasks
+        }
+
+        tasks = new ConcurrentHashMap<Long, TimingWheel.Task>();
+        started = new AtomicBoolean();
+        return this;
+    }
+
+    private final class Timeout implements Runnable {
+        private final TimerData timerData;
+        private final AbstractTrigger<?> trigger;
+
+        private Timeout(final TimerData timerData, final AbstractTrigger<?> trigger) {
+            this.timerData = timerData;
+            this.trigger = trigger;
+        }
+
+        @Override
+        public void run() {
+            if (timerData.isCancelled()) {
+                return;
+            }
+
+            // move the trigger to the next timeout before the callback as quartz does
+            trigger.triggered(null);
+            try {
+                ejbTimeout(timerData);
+            } finally {
+                if (trigger.getNextFireTime() != null && !timerData.isCancelled() && !timerData.isExpired() && started.get()) {
+                    try {
+                        schedule(timerData);
+                    } catch (final TimerStoreException e) {
+                        log.error("Could not schedule timer " + timerData, e);
+                    }
+                } else {
+                    tasks.remove(timerData.getId());
+                }
+            }
+        }
+    }
+
+    // only there to release the threads of the wheel with the container
+    private static final class WheelExecutor {
+        private final ThreadPoolExecutor executor;
+
+        private WheelExecutor(final ThreadPoolExecutor executor) {
+            this.executor = executor;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.monitoring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with a fixed memory footprint.
+ * <p/>
+ * Durations (in nanoseconds) are counted in log-linear buckets, like HdrHistogram: each power
+ * of 2 is split in 32 sub-buckets so a percentile is known with a relative error under 2%
+ * whatever the tail looks like. Values above {@link #MAX_VALUE} are counted as {@link #MAX_VALUE}.
+ * <p/>
+ * Recording threads are spread over a few stripes (depending on the number of cores) to avoid
+ * contention, the stripes are merged when the histogram is read through a {@link Snapshot}.
+ * Each stripe is around 10kB.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LatencyHistogram {
+    public static final long MAX_VALUE = TimeUnit.HOURS.toNanos(1);
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    public LatencyHistogram() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public LatencyHistogram(final int concurrency) {
+        int size = 1;
+        while (size < Math.min(Math.max(concurrency, 1), 16)) {
+            size <<= 1;
+        }
+        this.mask = size - 1;
+        this.stripes = new AtomicLongArray[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS + 2);
+        }
+    }
+
+    public void record(final long nanos) {
+        final long value = nanos < 0 ? 0 : nanos > MAX_VALUE ? MAX_VALUE : nanos;
+
+        final AtomicLongArray stripe = stripes[stripe()];
+        stripe.incrementAndGet(index(value));
+        stripe.addAndGet(SUM, value);
+        stripe.incrementAndGet(COUNT);
+
+        long current = min.get();
+        while (value < current && !min.compareAndSet(current, value)) {
+            current = min.get();
+        }
+        current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        for (final AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+            count += stripe.get(COUNT);
+            sum += stripe.get(SUM);
+        }
+        return new Snapshot(counts, count, sum, min.get(), max.get());
+    }
+
+    private int stripe() {
+        final long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    static int index(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1); // value >>> shift in [32, 64[
+        return shift * HALF_SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long lowestValue(final int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        final int shift = index / HALF_SUB_BUCKETS - 1;
+        return ((long) (index % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS)) << shift;
+    }
+
+    static long width(final int index) {
+        if (index < SUB_BUCKETS) {
+            return 1;
+        }
+        return 1L << (index / HALF_SUB_BUCKETS - 1);
+    }
+
+    /**
+     * A consistent view of the histogram, values are in nanoseconds.
+     * Statistics other than count, sum, min and max use the middle of the buckets.
+     * Like DescriptiveStatistics an empty snapshot returns NaN.
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(final long[] counts, final long count, final long sum, final long min, final long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return count == 0 ? Double.NaN : sum;
+        }
+
+        public double getMin() {
+            return count == 0 ? Double.NaN : min;
+        }
+
+        public double getMax() {
+            return count == 0 ? Double.NaN : max;
+        }
+
+        public double getMean() {
+            return count == 0 ? Double.NaN : (double) sum / count;
+        }
+
+        /**
+         * @param percentile between 0 (excluded) and 100
+         */
+        public double getPercentile(final double percentile) {
+            if (percentile <= 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile should be in ]0, 100]: " + percentile);
+            }
+            if (count == 0) {
+                return Double.NaN;
+            }
+
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100. * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(Math.max(value(i), min), max);
+                }
+            }
+            return max; // concurrent records, counts and total can be slightly off
+        }
+
+        public double getSumsq() {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            double sumsq = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    final double value = value(i);
+                    sumsq += counts[i] * value * value;
+                }
+            }
+            return sumsq;
+        }
+
+        public double getVariance() {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            if (count == 1) {
+                return 0;
+            }
+            return moment(2) / (count - 1);
+        }
+
+        public double getStandardDeviation() {
+            return Math.sqrt(getVariance());
+        }
+
+        public double getGeometricMean() {
+            if (count == 0) {
+                return Double.NaN;
+            }
+            double logs = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    logs += counts[i] * Math.log(value(i));
+                }
+            }
+            return Math.exp(logs / count);
+        }
+
+        public double getSkewness() {
+            if (count < 3) {
+                return Double.NaN;
+            }
+            final double variance = getVariance();
+            if (variance == 0) {
+                return 0;
+            }
+            final double n = count;
+            return n / ((n - 1) * (n - 2)) * moment(3) / Math.pow(variance, 1.5);
+        }
+
+        public double getKurtosis() {
+            if (count < 4) {
+                return Double.NaN;
+            }
+            final double variance = getVariance();
+            if (variance == 0) {
+                return 0;
+            }
+            final double n = count;
+            return n * (n + 1) / ((n - 1) * (n - 2) * (n - 3)) * moment(4) / (variance * variance)
+                - 3 * (n - 1) * (n - 1) / ((n - 2) * (n - 3));
+        }
+
+        private double moment(final int power) {
+            final double mean = getMean();
+            double moment = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    moment += counts[i] * Math.pow(value(i) - mean, power);
+                }
+            }
+            return moment;
+        }
+
+        private static double value(final int index) {
+            final long width = width(index);
+            return width == 1 ? lowestValue(index) : lowestValue(index) + (width - 1) / 2.;
+        }
+    }
+}
@@ -50,17 +50,31 @@ public class StatsInterceptor {
 
     private static final String DISABLE_STAT_INTERCEPTOR_PROPERTY = "openejb.stats.interceptor.disable";
 
+    /**
+     * How method durations are kept: "window" (default) keeps the last samples (see {@link Monitor#sample()}),
+     * "histogram" counts all of them in a lock free {@link LatencyHistogram}.
+     */
+    public static final String MODE_PROPERTY = "openejb.stats.interceptor.mode";
+
+    public enum Mode {
+        WINDOW, HISTOGRAM
+    }
+
     public static final InterceptorData metadata = InterceptorData.scan(StatsInterceptor.class);
 
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
     private final Map<Method, Stats> map = new ConcurrentHashMap<Method, Stats>();
     private final AtomicLong invocations = new AtomicLong();
     private final AtomicLong invocationTime = new AtomicLong();
 
     private final Monitor monitor;
     private final boolean enabled;
+    private final Mode mode;
 
     public StatsInterceptor(final Class<?> componentClass) {
 
+        mode = SystemInstance.get().getOptions().get(MODE_PROPERTY, Mode.WINDOW);
         monitor = componentClass.getAnnotation(Monitor.class);
         final ClassFinder finder = new ClassFinder(componentClass);
         for (final Method method : finder.findAnnotatedMethods(Monitor.class)) {
@@ -180,10 +194,10 @@ public class StatsInterceptor {
         try {
             return invocationContext.proceed();
         } finally {
-            long time = System.nanoTime() - start;
-            time = millis(time); // do it in 2 steps since otherwise the measure is false (more false)
+            final long nanos = System.nanoTime() - start;
+            final long time = millis(nanos); // do it in 2 steps since otherwise the measure is false (more false)
             if (stats != null) {
-                stats.record(time);
+                stats.recordNanos(nanos);
             }
             invocationTime.addAndGet(time);
         }
@@ -209,9 +223,13 @@ public class StatsInterceptor {
         return stats;
     }
 
+    /**
+     * Durations are in milliseconds, in histogram mode they keep the sub-millisecond part.
+     */
     public class Stats {
         private final AtomicLong count = new AtomicLong();
         private final SynchronizedDescriptiveStatistics samples;
+        private final LatencyHistogram histogram;
 
         // Used as the prefix for the MBeanAttributeInfo
         private final String method;
@@ -221,7 +239,13 @@ public class StatsInterceptor {
 
             final int window = methodAnnotation != null ? methodAnnotation.sample() : classAnnotation != null ? classAnnotation.sample() : 2000;
 
-            this.samples = new SynchronizedDescriptiveStatistics(window);
+            if (mode == Mode.HISTOGRAM) {
+                this.samples = null;
+                this.histogram = new LatencyHistogram();
+            } else {
+                this.samples = new SynchronizedDescriptiveStatistics(window);
+                this.histogram = null;
+            }
             final String s = ",";
 
             final StringBuilder sb = new StringBuilder(method.getName());
@@ -241,11 +265,16 @@ public class StatsInterceptor {
 
         @Managed
         public void setSampleSize(final int i) {
-            samples.setWindowSize(i);
+            if (samples != null) { // a histogram keeps all the samples
+                samples.setWindowSize(i);
+            }
         }
 
         @Managed
         public int getSampleSize() {
+            if (samples == null) {
+                return (int) Math.min(Integer.MAX_VALUE, histogram.snapshot().getCount());
+            }
             return samples.getWindowSize();
         }
 
@@ -254,106 +283,191 @@ public class StatsInterceptor {
             return count.get();
         }
 
+        @Managed
+        public double getPercentile999() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getPercentile(99.9));
+            }
+            return samples.getPercentile(99.9);
+        }
+
         @Managed
         public double getPercentile99() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getPercentile(99.0));
+            }
             return samples.getPercentile(99.0);
         }
 
         @Managed
         public double getPercentile90() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getPercentile(90.0));
+            }
             return samples.getPercentile(90.0);
         }
 
         @Managed
         public double getPercentile75() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getPercentile(75.0));
+            }
             return samples.getPercentile(75.0);
         }
 
         @Managed
         public double getPercentile50() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getPercentile(50.0));
+            }
             return samples.getPercentile(50.0);
         }
 
         @Managed
         public double getPercentile25() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getPercentile(25.0));
+            }
             return samples.getPercentile(25.0);
         }
 
         @Managed
         public double getPercentile10() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getPercentile(10.0));
+            }
             return samples.getPercentile(10.0);
         }
 
         @Managed
         public double getPercentile01() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getPercentile(1.0));
+            }
             return samples.getPercentile(1.0);
         }
 
         @Managed
         public double getStandardDeviation() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getStandardDeviation());
+            }
             return samples.getStandardDeviation();
         }
 
         @Managed
         public double getMean() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getMean());
+            }
             return samples.getMean();
         }
 
         @Managed
         public double getVariance() {
+            if (histogram != null) {
+                return toMillis(toMillis(histogram.snapshot().getVariance()));
+            }
             return samples.getVariance();
         }
 
         @Managed
         public double getGeometricMean() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getGeometricMean());
+            }
             return samples.getGeometricMean();
         }
 
         @Managed
         public double getSkewness() {
+            if (histogram != null) {
+                return histogram.snapshot().getSkewness();
+            }
             return samples.getSkewness();
         }
 
         @Managed
         public double getKurtosis() {
+            if (histogram != null) {
+                return histogram.snapshot().getKurtosis();
+            }
             return samples.getKurtosis();
         }
 
         @Managed
         public double getMax() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getMax());
+            }
             return samples.getMax();
         }
 
         @Managed
         public double getMin() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getMin());
+            }
             return samples.getMin();
         }
 
         @Managed
         public double getSum() {
+            if (histogram != null) {
+                return toMillis(histogram.snapshot().getSum());
+            }
             return samples.getSum();
         }
 
         @Managed
         public double getSumsq() {
+            if (histogram != null) {
+                return toMillis(toMillis(histogram.snapshot().getSumsq()));
+            }
             return samples.getSumsq();
         }
 
         @Managed
         public double[] sortedValues() {
+            if (histogram != null) { // single values are not kept
+                return new double[0];
+            }
             return samples.getSortedValues();
         }
 
         @Managed
         public double[] values() {
+            if (histogram != null) {
+                return new double[0];
+            }
             return samples.getValues();
         }
 
+        /**
+         * @param time in milliseconds
+         */
         public void record(final long time) {
+            if (histogram != null) {
+                recordNanos(TimeUnit.MILLISECONDS.toNanos(time));
+                return;
+            }
             count.incrementAndGet();
             samples.addValue(time);
         }
 
+        public void recordNanos(final long nanos) {
+            if (histogram == null) {
+                record(TimeUnit.NANOSECONDS.toMillis(nanos));
+                return;
+            }
+            count.incrementAndGet();
+            histogram.record(nanos);
+        }
+
+        private double toMillis(final double nanos) {
+            return nanos / NANOS_PER_MILLI;
+        }
+
     }
 
     public static boolean isStatsActivated() {
@@ -18,159 +18,470 @@
 package org.apache.openejb.resource.jdbc.logging;
 
 import org.apache.openejb.core.ObjectInputStreamFiltered;
-import org.apache.openejb.util.Join;
-import org.apache.openejb.util.LogCategory;
-import org.apache.openejb.util.Logger;
 
 import java.io.ByteArrayInputStream;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
+import java.io.InputStream;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.net.URL;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.NClob;
 import java.sql.ParameterMetaData;
 import java.sql.PreparedStatement;
+import java.sql.Ref;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.RowId;
 import java.sql.SQLException;
+import java.sql.SQLXML;
+import java.sql.Time;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.List;
 
-public class LoggingPreparedSqlStatement implements InvocationHandler {
-    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_SQL, LoggingPreparedSqlStatement.class);
-
-    private final PreparedStatement delegate;
+/**
+ * Logs the SQL executed by a prepared statement with its parameters and duration.
+ */
+public class LoggingPreparedSqlStatement extends LoggingSqlStatement implements PreparedStatement {
+    private final PreparedStatement statement;
     private final String sql;
     private final List<Parameter> parameters = new ArrayList<Parameter>();
-    private final String[] packages;
-    private int parameterIndex;
+    private int batchIndex;
 
     public LoggingPreparedSqlStatement(final PreparedStatement result, final String query, final String[] debugPackages) {
-        delegate = result;
+        super(result, debugPackages);
+        statement = result;
         sql = query;
-        parameterIndex = 0;
-        packages = debugPackages;
+        batchIndex = 0;
     }
 
-    @Override
-    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        final String mtdName = method.getName();
-        final boolean execute = mtdName.startsWith("execute");
-
-        final boolean debug = false;
-        if (debug) {
-            LOGGER.info(String.format("PreparedStatement.%s(%s)", method.getName(),
-                (args == null) ? "" :
-                    Join.join(", ", args)
-            ));
-            if (execute) {
-                logDebug();
-            }
-        }
-
-        final TimeWatcherExecutor.TimerWatcherResult result = TimeWatcherExecutor.execute(method, delegate, args, execute);
+    private <T> T executed(final long start, final T result) {
+        return executed(sqlWithParameters(), start, result);
+    }
 
-        if (mtdName.startsWith("set") && args.length >= 2 && (args[0].getClass().equals(Integer.TYPE) || args[0].getClass().equals(Integer.class))) {
-            final Parameter param = new Parameter(mtdName.substring(3), parameterIndex, (Integer) args[0], args[1]);
+    private void failed(final long start, final Throwable failure) {
+        failed(sqlWithParameters(), start, failure);
+    }
 
-            if (debug) {
-                logParam(param);
-            }
+    private void parameter(final String type, final int index, final Object value) {
+        parameters.add(new Parameter(type, batchIndex, index, value));
+    }
 
-            parameters.add(param);
-        } else if (execute) {
-            String str = sql;
-            if (str.contains("?")) {
-                Collections.sort(parameters);
-                int lastBatch = 0;
-                for (int i = 0; i < parameters.size(); i++) {
-                    final Parameter param = parameters.get(i);
-                    if (str.contains("?")) {
-                        try {
-                            String val;
-                            if (ByteArrayInputStream.class.isInstance(param.value)) {
-                                final ByteArrayInputStream bais = ByteArrayInputStream.class.cast(param.value);
-                                try {
-                                    bais.reset(); // already read when arriving here - mainly openjpa case
-                                    val = new ObjectInputStreamFiltered(bais).readObject().toString();
-                                } catch (final Exception e) {
-                                    val = param.value.toString();
-                                }
-                            } else {
+    private String sqlWithParameters() {
+        String str = sql;
+        if (str.contains("?")) {
+            Collections.sort(parameters);
+            int lastBatch = 0;
+            for (int i = 0; i < parameters.size(); i++) {
+                final Parameter param = parameters.get(i);
+                if (str.contains("?")) {
+                    try {
+                        String val;
+                        if (ByteArrayInputStream.class.isInstance(param.value)) {
+                            final ByteArrayInputStream bais = ByteArrayInputStream.class.cast(param.value);
+                            try {
+                                bais.reset(); // already read when arriving here - mainly openjpa case
+                                val = new ObjectInputStreamFiltered(bais).readObject().toString();
+                            } catch (final Exception e) {
                                 val = param.value.toString();
                             }
-                            str = str.replaceFirst("\\?", val);
-                        } catch (final Exception e) {
-                            if (param.value == null) {
-                                str = str.replaceFirst("\\?", "null");
-                            } else {
-                                str = str.replaceFirst("\\?", param.value.getClass().getName());
-                            }
-                        }
-                        lastBatch = param.batchIndex;
-                    } else {
-                        if (lastBatch != param.batchIndex) {
-                            str += ", (";
-                            lastBatch = param.batchIndex;
+                        } else {
+                            val = param.value.toString();
                         }
-
-                        try {
-                            str += param.value.toString();
-                        } catch (final Exception e) {
-                            if (param.value == null) {
-                                str += "null";
-                            } else {
-                                str += param.value.getClass().getName();
-                            }
+                        str = str.replaceFirst("\\?", val);
+                    } catch (final Exception e) {
+                        if (param.value == null) {
+                            str = str.replaceFirst("\\?", "null");
+                        } else {
+                            str = str.replaceFirst("\\?", param.value.getClass().getName());
                         }
+                    }
+                    lastBatch = param.batchIndex;
+                } else {
+                    if (lastBatch != param.batchIndex) {
+                        str += ", (";
+                        lastBatch = param.batchIndex;
+                    }
 
-                        if (i == parameters.size() - 1 || parameters.get(i + 1).batchIndex != lastBatch) {
-                            str += ")";
+                    try {
+                        str += param.value.toString();
+                    } catch (final Exception e) {
+                        if (param.value == null) {
+                            str += "null";
                         } else {
-                            str += ",";
+                            str += param.value.getClass().getName();
                         }
                     }
+
+                    if (i == parameters.size() - 1 || parameters.get(i + 1).batchIndex != lastBatch) {
+                        str += ")";
+                    } else {
+                        str += ",";
+                    }
                 }
             }
-            LOGGER.info(result.format(str) + (packages != null ? " - stack:" + TimeWatcherExecutor.inlineStack(packages) : ""));
-        } else if ("clearParameters".equals(mtdName)) {
-            parameters.clear();
-            parameterIndex = 0;
-        } else if ("addBatch".equals(mtdName)) {
-            parameterIndex++;
         }
+        return str;
+    }
 
-        if (result.getThrowable() != null) {
-            throw result.getThrowable();
+    @Override
+    public int[] executeBatch() throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(start, statement.executeBatch());
+        } catch (final SQLException | RuntimeException e) {
+            failed(start, e);
+            throw e;
         }
-        return result.getResult();
     }
 
-    private void logDebug() {
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        final long start = System.nanoTime();
         try {
-            LOGGER.info("SQL " + sql);
-            for (final Parameter parameter : parameters) {
-                logParam(parameter);
-            }
-        } catch (final SQLException e) {
-            e.printStackTrace();
+            return executed(start, statement.executeQuery());
+        } catch (final SQLException | RuntimeException e) {
+            failed(start, e);
+            throw e;
         }
     }
 
-    private void logParam(final Parameter parameter) throws SQLException {
-        logParam(this.delegate.getParameterMetaData(), parameter);
+    @Override
+    public int executeUpdate() throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(start, statement.executeUpdate());
+        } catch (final SQLException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void setNull(final int parameterIndex, final int sqlType) throws SQLException {
+        statement.setNull(parameterIndex, sqlType);
+        parameter("Null", parameterIndex, null);
+    }
+
+    @Override
+    public void setBoolean(final int parameterIndex, final boolean x) throws SQLException {
+        statement.setBoolean(parameterIndex, x);
+        parameter("Boolean", parameterIndex, x);
+    }
+
+    @Override
+    public void setByte(final int parameterIndex, final byte x) throws SQLException {
+        statement.setByte(parameterIndex, x);
+        parameter("Byte", parameterIndex, x);
+    }
+
+    @Override
+    public void setShort(final int parameterIndex, final short x) throws SQLException {
+        statement.setShort(parameterIndex, x);
+        parameter("Short", parameterIndex, x);
+    }
+
+    @Override
+    public void setInt(final int parameterIndex, final int x) throws SQLException {
+        statement.setInt(parameterIndex, x);
+        parameter("Int", parameterIndex, x);
+    }
+
+    @Override
+    public void setLong(final int parameterIndex, final long x) throws SQLException {
+        statement.setLong(parameterIndex, x);
+        parameter("Long", parameterIndex, x);
+    }
+
+    @Override
+    public void setFloat(final int parameterIndex, final float x) throws SQLException {
+        statement.setFloat(parameterIndex, x);
+        parameter("Float", parameterIndex, x);
+    }
+
+    @Override
+    public void setDouble(final int parameterIndex, final double x) throws SQLException {
+        statement.setDouble(parameterIndex, x);
+        parameter("Double", parameterIndex, x);
+    }
+
+    @Override
+    public void setBigDecimal(final int parameterIndex, final BigDecimal x) throws SQLException {
+        statement.setBigDecimal(parameterIndex, x);
+        parameter("BigDecimal", parameterIndex, x);
+    }
+
+    @Override
+    public void setString(final int parameterIndex, final String x) throws SQLException {
+        statement.setString(parameterIndex, x);
+        parameter("String", parameterIndex, x);
+    }
+
+    @Override
+    public void setBytes(final int parameterIndex, final byte[] x) throws SQLException {
+        statement.setBytes(parameterIndex, x);
+        parameter("Bytes", parameterIndex, x);
+    }
+
+    @Override
+    public void setDate(final int parameterIndex, final Date x) throws SQLException {
+        statement.setDate(parameterIndex, x);
+        parameter("Date", parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(final int parameterIndex, final Time x) throws SQLException {
+        statement.setTime(parameterIndex, x);
+        parameter("Time", parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(final int parameterIndex, final Timestamp x) throws SQLException {
+        statement.setTimestamp(parameterIndex, x);
+        parameter("Timestamp", parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
+        statement.setAsciiStream(parameterIndex, x, length);
+        parameter("AsciiStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setUnicodeStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
+        statement.setUnicodeStream(parameterIndex, x, length);
+        parameter("UnicodeStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(final int parameterIndex, final InputStream x, final int length) throws SQLException {
+        statement.setBinaryStream(parameterIndex, x, length);
+        parameter("BinaryStream", parameterIndex, x);
+    }
+
+    @Override
+    public void clearParameters() throws SQLException {
+        statement.clearParameters();
+        parameters.clear();
+        batchIndex = 0;
+    }
+
+    @Override
+    public void setObject(final int parameterIndex, final Object x, final int targetSqlType) throws SQLException {
+        statement.setObject(parameterIndex, x, targetSqlType);
+        parameter("Object", parameterIndex, x);
     }
 
-    private void logParam(final ParameterMetaData md, final Parameter parameter) throws SQLException {
-        final int i = parameter.key;
-        final String format = String.format(" - PARAM  index=%s, type%s, typeName=%s, className=%s, nullable=%s, mode=%s, precision=%s, value=%s",
-            i,
-            md.getParameterType(i),
-            md.getParameterTypeName(i),
-            md.getParameterClassName(i),
-            md.isNullable(i),
-            md.getParameterMode(i),
-            md.getPrecision(i),
-            parameter.value
-        );
+    @Override
+    public void setObject(final int parameterIndex, final Object x) throws SQLException {
+        statement.setObject(parameterIndex, x);
+        parameter("Object", parameterIndex, x);
+    }
 
-        LOGGER.info(format);
+    @Override
+    public boolean execute() throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(start, statement.execute());
+        } catch (final SQLException | RuntimeException e) {
+            failed(start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        statement.addBatch();
+        batchIndex++;
+    }
+
+    @Override
+    public void setCharacterStream(final int parameterIndex, final Reader reader, final int length) throws SQLException {
+        statement.setCharacterStream(parameterIndex, reader, length);
+        parameter("CharacterStream", parameterIndex, reader);
+    }
+
+    @Override
+    public void setRef(final int parameterIndex, final Ref x) throws SQLException {
+        statement.setRef(parameterIndex, x);
+        parameter("Ref", parameterIndex, x);
+    }
+
+    @Override
+    public void setBlob(final int parameterIndex, final Blob x) throws SQLException {
+        statement.setBlob(parameterIndex, x);
+        parameter("Blob", parameterIndex, x);
+    }
+
+    @Override
+    public void setClob(final int parameterIndex, final Clob x) throws SQLException {
+        statement.setClob(parameterIndex, x);
+        parameter("Clob", parameterIndex, x);
+    }
+
+    @Override
+    public void setArray(final int parameterIndex, final Array x) throws SQLException {
+        statement.setArray(parameterIndex, x);
+        parameter("Array", parameterIndex, x);
+    }
+
+    @Override
+    public ResultSetMetaData getMetaData() throws SQLException {
+        return statement.getMetaData();
+    }
+
+    @Override
+    public void setDate(final int parameterIndex, final Date x, final Calendar cal) throws SQLException {
+        statement.setDate(parameterIndex, x, cal);
+        parameter("Date", parameterIndex, x);
+    }
+
+    @Override
+    public void setTime(final int parameterIndex, final Time x, final Calendar cal) throws SQLException {
+        statement.setTime(parameterIndex, x, cal);
+        parameter("Time", parameterIndex, x);
+    }
+
+    @Override
+    public void setTimestamp(final int parameterIndex, final Timestamp x, final Calendar cal) throws SQLException {
+        statement.setTimestamp(parameterIndex, x, cal);
+        parameter("Timestamp", parameterIndex, x);
+    }
+
+    @Override
+    public void setNull(final int parameterIndex, final int sqlType, final String typeName) throws SQLException {
+        statement.setNull(parameterIndex, sqlType, typeName);
+        parameter("Null", parameterIndex, null);
+    }
+
+    @Override
+    public void setURL(final int parameterIndex, final URL x) throws SQLException {
+        statement.setURL(parameterIndex, x);
+        parameter("URL", parameterIndex, x);
+    }
+
+    @Override
+    public ParameterMetaData getParameterMetaData() throws SQLException {
+        return statement.getParameterMetaData();
+    }
+
+    @Override
+    public void setRowId(final int parameterIndex, final RowId x) throws SQLException {
+        statement.setRowId(parameterIndex, x);
+        parameter("RowId", parameterIndex, x);
+    }
+
+    @Override
+    public void setNString(final int parameterIndex, final String value) throws SQLException {
+        statement.setNString(parameterIndex, value);
+        parameter("NString", parameterIndex, value);
+    }
+
+    @Override
+    public void setNCharacterStream(final int parameterIndex, final Reader value, final long length) throws SQLException {
+        statement.setNCharacterStream(parameterIndex, value, length);
+        parameter("NCharacterStream", parameterIndex, value);
+    }
+
+    @Override
+    public void setNClob(final int parameterIndex, final NClob value) throws SQLException {
+        statement.setNClob(parameterIndex, value);
+        parameter("NClob", parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
+        statement.setClob(parameterIndex, reader, length);
+        parameter("Clob", parameterIndex, reader);
+    }
+
+    @Override
+    public void setBlob(final int parameterIndex, final InputStream inputStream, final long length) throws SQLException {
+        statement.setBlob(parameterIndex, inputStream, length);
+        parameter("Blob", parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setNClob(final int parameterIndex, final Reader reader, final long length) throws SQLException {
+        statement.setNClob(parameterIndex, reader, length);
+        parameter("NClob", parameterIndex, reader);
+    }
+
+    @Override
+    public void setSQLXML(final int parameterIndex, final SQLXML xmlObject) throws SQLException {
+        statement.setSQLXML(parameterIndex, xmlObject);
+        parameter("SQLXML", parameterIndex, xmlObject);
+    }
+
+    @Override
+    public void setObject(final int parameterIndex, final Object x, final int targetSqlType, final int scaleOrLength) throws SQLException {
+        statement.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+        parameter("Object", parameterIndex, x);
+    }
+
+    @Override
+    public void setAsciiStream(final int parameterIndex, final InputStream x, final long length) throws SQLException {
+        statement.setAsciiStream(parameterIndex, x, length);
+        parameter("AsciiStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(final int parameterIndex, final InputStream x, final long length) throws SQLException {
+        statement.setBinaryStream(parameterIndex, x, length);
+        parameter("BinaryStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(final int parameterIndex, final Reader reader, final long length) throws SQLException {
+        statement.setCharacterStream(parameterIndex, reader, length);
+        parameter("CharacterStream", parameterIndex, reader);
+    }
+
+    @Override
+    public void setAsciiStream(final int parameterIndex, final InputStream x) throws SQLException {
+        statement.setAsciiStream(parameterIndex, x);
+        parameter("AsciiStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setBinaryStream(final int parameterIndex, final InputStream x) throws SQLException {
+        statement.setBinaryStream(parameterIndex, x);
+        parameter("BinaryStream", parameterIndex, x);
+    }
+
+    @Override
+    public void setCharacterStream(final int parameterIndex, final Reader reader) throws SQLException {
+        statement.setCharacterStream(parameterIndex, reader);
+        parameter("CharacterStream", parameterIndex, reader);
+    }
+
+    @Override
+    public void setNCharacterStream(final int parameterIndex, final Reader value) throws SQLException {
+        statement.setNCharacterStream(parameterIndex, value);
+        parameter("NCharacterStream", parameterIndex, value);
+    }
+
+    @Override
+    public void setClob(final int parameterIndex, final Reader reader) throws SQLException {
+        statement.setClob(parameterIndex, reader);
+        parameter("Clob", parameterIndex, reader);
+    }
+
+    @Override
+    public void setBlob(final int parameterIndex, final InputStream inputStream) throws SQLException {
+        statement.setBlob(parameterIndex, inputStream);
+        parameter("Blob", parameterIndex, inputStream);
+    }
+
+    @Override
+    public void setNClob(final int parameterIndex, final Reader reader) throws SQLException {
+        statement.setNClob(parameterIndex, reader);
+        parameter("NClob", parameterIndex, reader);
     }
 
     protected static class Parameter implements Comparable<Parameter> {
@@ -22,12 +22,9 @@ import org.apache.openejb.resource.jdbc.DelegatableHandler;
 import javax.sql.CommonDataSource;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 
 public class LoggingSqlDataSource implements DelegatableHandler {
-    private static final Class<?>[] INTERFACES = new Class<?>[]{Connection.class};
-
     private final CommonDataSource delegate;
     private final String[] packages;
 
@@ -50,8 +47,7 @@ public class LoggingSqlDataSource implements DelegatableHandler {
         }
 
         if ("getConnection".equals(method.getName())) {
-            return Proxy.newProxyInstance(delegate.getClass().getClassLoader(),
-                INTERFACES, new LoggingSqlConnection((Connection) result, packages));
+            return new LoggingSqlConnection((Connection) result, packages);
         }
         return result;
     }
@@ -20,11 +20,16 @@ package org.apache.openejb.resource.jdbc.logging;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
 import java.sql.Statement;
 
-public class LoggingSqlStatement implements InvocationHandler {
+/**
+ * Logs the SQL executed by a statement with its duration.
+ */
+public class LoggingSqlStatement implements Statement {
     private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_SQL, LoggingSqlStatement.class);
 
     private final Statement delegate;
@@ -35,19 +40,296 @@ public class LoggingSqlStatement implements InvocationHandler {
         this.packages = debugPackages;
     }
 
+    protected <T> T executed(final String sql, final long start, final T result) {
+        log(sql, start, null);
+        return result;
+    }
+
+    protected void failed(final String sql, final long start, final Throwable failure) {
+        log(sql, start, failure);
+    }
+
+    private void log(final String sql, final long start, final Throwable failure) {
+        LOGGER.info(new TimeWatcherExecutor.TimerWatcherResult(start, null, failure).format(sql)
+            + (packages != null ? " - stack:" + TimeWatcherExecutor.inlineStack(packages) : ""));
+    }
+
+    @Override
+    public ResultSet executeQuery(final String sql) throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(sql, start, delegate.executeQuery(sql));
+        } catch (final SQLException | RuntimeException e) {
+            failed(sql, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public int executeUpdate(final String sql) throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(sql, start, delegate.executeUpdate(sql));
+        } catch (final SQLException | RuntimeException e) {
+            failed(sql, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        delegate.close();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return delegate.getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(final int max) throws SQLException {
+        delegate.setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return delegate.getMaxRows();
+    }
+
+    @Override
+    public void setMaxRows(final int max) throws SQLException {
+        delegate.setMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(final boolean enable) throws SQLException {
+        delegate.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return delegate.getQueryTimeout();
+    }
+
+    @Override
+    public void setQueryTimeout(final int seconds) throws SQLException {
+        delegate.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        delegate.cancel();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return delegate.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        delegate.clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(final String name) throws SQLException {
+        delegate.setCursorName(name);
+    }
+
+    @Override
+    public boolean execute(final String sql) throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(sql, start, delegate.execute(sql));
+        } catch (final SQLException | RuntimeException e) {
+            failed(sql, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return delegate.getResultSet();
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return delegate.getUpdateCount();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return delegate.getMoreResults();
+    }
+
+    @Override
+    public void setFetchDirection(final int direction) throws SQLException {
+        delegate.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return delegate.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(final int rows) throws SQLException {
+        delegate.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return delegate.getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return delegate.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return delegate.getResultSetType();
+    }
+
+    @Override
+    public void addBatch(final String sql) throws SQLException {
+        delegate.addBatch(sql);
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        delegate.clearBatch();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        return delegate.executeBatch();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return delegate.getConnection();
+    }
+
+    @Override
+    public boolean getMoreResults(final int current) throws SQLException {
+        return delegate.getMoreResults(current);
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return delegate.getGeneratedKeys();
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final int autoGeneratedKeys) throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(sql, start, delegate.executeUpdate(sql, autoGeneratedKeys));
+        } catch (final SQLException | RuntimeException e) {
+            failed(sql, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public int executeUpdate(final String sql, final int[] columnIndexes) throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(sql, start, delegate.executeUpdate(sql, columnIndexes));
+        } catch (final SQLException | RuntimeException e) {
+            failed(sql, start, e);
+            throw e;
+        }
+    }
+
     @Override
-    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        final String mtdName = method.getName();
-        final boolean execute = mtdName.startsWith("execute") && args != null && args.length > 0;
+    public int executeUpdate(final String sql, final String[] columnNames) throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(sql, start, delegate.executeUpdate(sql, columnNames));
+        } catch (final SQLException | RuntimeException e) {
+            failed(sql, start, e);
+            throw e;
+        }
+    }
 
-        final TimeWatcherExecutor.TimerWatcherResult result = TimeWatcherExecutor.execute(method, delegate, args, execute);
-        if (execute) {
-            LOGGER.info(result.format((String) args[0]) + (packages != null ? " - stack:" + TimeWatcherExecutor.inlineStack(packages) : ""));
+    @Override
+    public boolean execute(final String sql, final int autoGeneratedKeys) throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(sql, start, delegate.execute(sql, autoGeneratedKeys));
+        } catch (final SQLException | RuntimeException e) {
+            failed(sql, start, e);
+            throw e;
         }
+    }
 
-        if (result.getThrowable() != null) {
-            throw result.getThrowable();
+    @Override
+    public boolean execute(final String sql, final int[] columnIndexes) throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(sql, start, delegate.execute(sql, columnIndexes));
+        } catch (final SQLException | RuntimeException e) {
+            failed(sql, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean execute(final String sql, final String[] columnNames) throws SQLException {
+        final long start = System.nanoTime();
+        try {
+            return executed(sql, start, delegate.execute(sql, columnNames));
+        } catch (final SQLException | RuntimeException e) {
+            failed(sql, start, e);
+            throw e;
         }
-        return result.getResult();
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return delegate.getResultSetHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public void setPoolable(final boolean poolable) throws SQLException {
+        delegate.setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return delegate.isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        delegate.closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return delegate.isCloseOnCompletion();
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return delegate.isWrapperFor(iface);
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
     }
 }
@@ -32,14 +32,33 @@ import javax.transaction.Transaction;
 import javax.transaction.TransactionManager;
 import javax.transaction.TransactionSynchronizationRegistry;
 import javax.transaction.xa.XAResource;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
 import java.sql.SQLException;
-import java.sql.Wrapper;
-
-public class ManagedConnection implements InvocationHandler {
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * Connection given to the application by a {@link ManagedDataSource}: the physical connection is
+ * created on first use and, when there is an active transaction, enlisted in it and shared with
+ * the other connections of the same datasource and credentials for the rest of the transaction.
+ * <p/>
+ * Each call is delegated directly to the physical connection, there is no dynamic proxy on the way.
+ */
+public class ManagedConnection implements Connection {
     private final TransactionManager transactionManager;
     private final Key key;
     private final TransactionSynchronizationRegistry registry;
@@ -66,103 +85,100 @@ public class ManagedConnection implements InvocationHandler {
         return xaResource;
     }
 
-    @Override
-    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
-        // first some Object method management
-        final String mtdName = method.getName();
-        if ("toString".equals(mtdName)) {
-            return "ManagedConnection{" + delegate + "}";
+    /**
+     * @return the connection to call, enlisted in the current transaction if there is one
+     */
+    private Connection delegate() throws SQLException {
+        return delegate(null);
+    }
+
+    /**
+     * @param forbidden name of the method called if it can't be used while the transaction manages the connection
+     */
+    private Connection delegate(final String forbidden) throws SQLException {
+        final Connection connection = managed(transaction());
+        if (connection != null) {
+            if (forbidden != null) {
+                throw forbiddenCall(forbidden);
+            }
+            return connection;
         }
-        if ("hashCode".equals(mtdName)) {
-            return hashCode();
+
+        // shouldn't be used without a transaction but if so just delegate to the actual connection
+        if (delegate == null) {
+            newConnection();
         }
-        if ("equals".equals(mtdName)) {
-            return args[0] == this || (delegate != null && delegate.equals(args[0]));
+        return delegate;
+    }
+
+    private Transaction transaction() throws SQLException {
+        try {
+            return transactionManager.getTransaction();
+        } catch (final SystemException e) {
+            throw new SQLException("Unable to get the current transaction", e);
         }
+    }
 
-        // allow to get delegate if needed by the underlying program
-        if (Wrapper.class == method.getDeclaringClass() && args.length == 1 && Connection.class == args[0]) {
-            if ("isWrapperFor".equals(mtdName)) {
-                return true;
-            }
-            if ("unwrap".equals(mtdName)) {
-                return delegate;
-            }
+    /**
+     * @return the connection bound to the transaction or null if the transaction doesn't manage this connection
+     */
+    private Connection managed(final Transaction transaction) throws SQLException {
+        if (transaction == null) {
+            return null;
         }
 
-        // here the real logic starts
-        try {
-            final Transaction transaction = transactionManager.getTransaction();
-
-            // shouldn't be used without a transaction but if so just delegate to the actual connection
-            if (transaction == null) {
-                if ("close".equals(mtdName)) {
-                    if (delegate == null) { // no need to get a connection
-                        return null;
-                    }
-
-                    closeConnection(xaConnection, delegate);
-                    return null;
-                }
-                if (delegate == null) {
-                    newConnection();
-                }
-                return invoke(method, delegate, args);
+        // if we have a tx check it is the same this connection is linked to
+        if (currentTransaction != null && isUnderTransaction(status(currentTransaction))) {
+            if (!currentTransaction.equals(transaction)) {
+                throw new SQLException("Connection can not be used while enlisted in another transaction");
             }
+            return delegate;
+        }
 
-            // if we have a tx check it is the same this connection is linked to
-            if (currentTransaction != null && isUnderTransaction(currentTransaction.getStatus())) {
-                if (!currentTransaction.equals(transaction)) {
-                    throw new SQLException("Connection can not be used while enlisted in another transaction");
-                }
-                return invokeUnderTransaction(delegate, method, args);
-            }
+        if (!isUnderTransaction(status(transaction))) {
+            return null;
+        }
 
-            // get the already bound connection to the current transaction or enlist this one in the tx
-            if (isUnderTransaction(transaction.getStatus())) {
-                Connection connection = Connection.class.cast(registry.getResource(key));
-                if (connection == null && delegate == null) {
-                    newConnection();
-                    connection = delegate;
-
-                    registry.putResource(key, delegate);
-                    currentTransaction = transaction;
-                    try {
-                        transaction.enlistResource(getXAResource());
-                    } catch (final RollbackException ignored) {
-                        // no-op
-                    } catch (final SystemException e) {
-                        throw new SQLException("Unable to enlist connection the transaction", e);
-                    }
-
-                    transaction.registerSynchronization(new ClosingSynchronization(xaConnection, delegate));
-
-                    try {
-                        setAutoCommit(false);
-                    } catch (final SQLException xae) { // we are alreay in a transaction so this can't be called from a user perspective - some XA DataSource prevents it in their code
-                        final String message = "Can't set auto commit to false cause the XA datasource doesn't support it, this is likely an issue";
-                        final Logger logger = Logger.getInstance(LogCategory.OPENEJB_RESOURCE_JDBC, ManagedConnection.class);
-                        if (logger.isDebugEnabled()) { // we don't want to print the exception by default
-                            logger.warning(message, xae);
-                        } else {
-                            logger.warning(message);
-                        }
-                    }
-                } else if (delegate == null) { // shouldn't happen
-                    delegate = connection;
-                }
-
-                return invokeUnderTransaction(connection, method, args);
+        // get the already bound connection to the current transaction or enlist this one in the tx
+        final Connection connection = Connection.class.cast(registry.getResource(key));
+        if (connection != null) {
+            if (delegate == null) {
+                delegate = connection;
             }
+            return connection;
+        }
 
-            // we shouldn't come here, tempted to just throw an exception
-            if (delegate == null) {
-                newConnection();
+        if (delegate == null) {
+            newConnection();
+        }
+        registry.putResource(key, delegate);
+        currentTransaction = transaction;
+        try {
+            transaction.enlistResource(getXAResource());
+        } catch (final RollbackException ignored) {
+            // no-op
+        } catch (final SystemException e) {
+            throw new SQLException("Unable to enlist connection the transaction", e);
+        }
+
+        try {
+            transaction.registerSynchronization(new ClosingSynchronization(xaConnection, delegate));
+        } catch (final RollbackException | SystemException e) {
+            throw new SQLException("Unable to register the connection in the transaction", e);
+        }
+
+        try {
+            setDelegateAutoCommit(false);
+        } catch (final SQLException xae) { // we are alreay in a transaction so this can't be called from a user perspective - some XA DataSource prevents it in their code
+            final String message = "Can't set auto commit to false cause the XA datasource doesn't support it, this is likely an issue";
+            final Logger logger = Logger.getInstance(LogCategory.OPENEJB_RESOURCE_JDBC, ManagedConnection.class);
+            if (logger.isDebugEnabled()) { // we don't want to print the exception by default
+                logger.warning(message, xae);
+            } else {
+                logger.warning(message);
             }
-            return invoke(method, delegate, args);
-        } catch (final InvocationTargetException ite) {
-            throw ite.getTargetException();
         }
+        return delegate;
     }
 
     protected Object newConnection() throws SQLException {
@@ -180,44 +196,343 @@ public class ManagedConnection implements InvocationHandler {
         return connection;
     }
 
-    protected void setAutoCommit(final boolean value) throws SQLException {
+    protected void setDelegateAutoCommit(final boolean value) throws SQLException {
         if (delegate == null) {
             newConnection();
         }
         delegate.setAutoCommit(value);
     }
 
-    private static Object invoke(final Method method, final Connection delegate, final Object[] args) throws Throwable {
-        try {
-            return method.invoke(delegate, args);
-        } catch (final InvocationTargetException ite) {
-            throw ite.getCause();
+    @Override
+    public void close() throws SQLException {
+        final Transaction transaction = transaction();
+        if (transaction == null) {
+            if (delegate != null) { // else no need to get a connection
+                closeConnection(xaConnection, delegate);
+            }
+            return;
+        }
+
+        if (managed(transaction) != null) {
+            // will be done later
+            // we need to delay it in case of rollback
+            closed = true;
+            return;
         }
+
+        // we shouldn't come here, tempted to just throw an exception
+        if (delegate == null) {
+            newConnection();
+        }
+        delegate.close();
     }
 
-    private Object invokeUnderTransaction(final Connection delegate, final Method method, final Object[] args) throws Exception {
-        final String mtdName = method.getName();
-        if ("setAutoCommit".equals(mtdName)
-            || "commit".equals(mtdName)
-            || "rollback".equals(mtdName)
-            || "setSavepoint".equals(mtdName)
-            || "setReadOnly".equals(mtdName)) {
-            throw forbiddenCall(mtdName);
+    @Override
+    public boolean isClosed() throws SQLException {
+        final Connection connection = managed(transaction());
+        if (connection != null) {
+            return closed || connection.isClosed(); // if !closed let's delegate to the underlying connection
         }
-        if ("close".equals(mtdName)) {
-            return close();
+        if (delegate == null) {
+            newConnection();
+        }
+        return delegate.isClosed();
+    }
+
+    @Override
+    public void setAutoCommit(final boolean autoCommit) throws SQLException {
+        delegate("setAutoCommit").setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        delegate("commit").commit();
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        delegate("rollback").rollback();
+    }
+
+    @Override
+    public void rollback(final Savepoint savepoint) throws SQLException {
+        delegate("rollback").rollback(savepoint);
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        return delegate("setSavepoint").setSavepoint();
+    }
+
+    @Override
+    public Savepoint setSavepoint(final String name) throws SQLException {
+        return delegate("setSavepoint").setSavepoint(name);
+    }
+
+    @Override
+    public void setReadOnly(final boolean readOnly) throws SQLException {
+        delegate("setReadOnly").setReadOnly(readOnly);
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return delegate().createStatement();
+    }
+
+    @Override
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return delegate().createStatement(resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public Statement createStatement(final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return delegate().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql) throws SQLException {
+        return delegate().prepareStatement(sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return delegate().prepareStatement(sql, resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return delegate().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int autoGeneratedKeys) throws SQLException {
+        return delegate().prepareStatement(sql, autoGeneratedKeys);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final int[] columnIndexes) throws SQLException {
+        return delegate().prepareStatement(sql, columnIndexes);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(final String sql, final String[] columnNames) throws SQLException {
+        return delegate().prepareStatement(sql, columnNames);
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql) throws SQLException {
+        return delegate().prepareCall(sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency) throws SQLException {
+        return delegate().prepareCall(sql, resultSetType, resultSetConcurrency);
+    }
+
+    @Override
+    public CallableStatement prepareCall(final String sql, final int resultSetType, final int resultSetConcurrency, final int resultSetHoldability) throws SQLException {
+        return delegate().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+    }
+
+    @Override
+    public String nativeSQL(final String sql) throws SQLException {
+        return delegate().nativeSQL(sql);
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        return delegate().getAutoCommit();
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return delegate().getMetaData();
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        return delegate().isReadOnly();
+    }
+
+    @Override
+    public void setCatalog(final String catalog) throws SQLException {
+        delegate().setCatalog(catalog);
+    }
+
+    @Override
+    public String getCatalog() throws SQLException {
+        return delegate().getCatalog();
+    }
+
+    @Override
+    public void setTransactionIsolation(final int level) throws SQLException {
+        delegate().setTransactionIsolation(level);
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        return delegate().getTransactionIsolation();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return delegate().getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        delegate().clearWarnings();
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        return delegate().getTypeMap();
+    }
+
+    @Override
+    public void setTypeMap(final Map<String, Class<?>> map) throws SQLException {
+        delegate().setTypeMap(map);
+    }
+
+    @Override
+    public void setHoldability(final int holdability) throws SQLException {
+        delegate().setHoldability(holdability);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return delegate().getHoldability();
+    }
+
+    @Override
+    public void releaseSavepoint(final Savepoint savepoint) throws SQLException {
+        delegate().releaseSavepoint(savepoint);
+    }
+
+    @Override
+    public Clob createClob() throws SQLException {
+        return delegate().createClob();
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException {
+        return delegate().createBlob();
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException {
+        return delegate().createNClob();
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        return delegate().createSQLXML();
+    }
+
+    @Override
+    public boolean isValid(final int timeout) throws SQLException {
+        return delegate().isValid(timeout);
+    }
+
+    @Override
+    public void setClientInfo(final String name, final String value) throws SQLClientInfoException {
+        clientInfoDelegate().setClientInfo(name, value);
+    }
+
+    @Override
+    public void setClientInfo(final Properties properties) throws SQLClientInfoException {
+        clientInfoDelegate().setClientInfo(properties);
+    }
+
+    @Override
+    public String getClientInfo(final String name) throws SQLException {
+        return delegate().getClientInfo(name);
+    }
+
+    @Override
+    public Properties getClientInfo() throws SQLException {
+        return delegate().getClientInfo();
+    }
+
+    @Override
+    public Array createArrayOf(final String typeName, final Object[] elements) throws SQLException {
+        return delegate().createArrayOf(typeName, elements);
+    }
+
+    @Override
+    public Struct createStruct(final String typeName, final Object[] attributes) throws SQLException {
+        return delegate().createStruct(typeName, attributes);
+    }
+
+    @Override
+    public void setSchema(final String schema) throws SQLException {
+        delegate().setSchema(schema);
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        return delegate().getSchema();
+    }
+
+    @Override
+    public void abort(final Executor executor) throws SQLException {
+        delegate().abort(executor);
+    }
+
+    @Override
+    public void setNetworkTimeout(final Executor executor, final int milliseconds) throws SQLException {
+        delegate().setNetworkTimeout(executor, milliseconds);
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        return delegate().getNetworkTimeout();
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (Connection.class == iface) { // allow to get delegate if needed by the underlying program
+            return iface.cast(delegate);
         }
-        if ("isClosed".equals(mtdName) && closed) {
-            return true; // if !closed let's delegate to the underlying connection
+        return delegate().unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) throws SQLException {
+        return Connection.class == iface || delegate().isWrapperFor(iface);
+    }
+
+    @Override
+    public String toString() {
+        return "ManagedConnection{" + delegate + "}";
+    }
+
+    @Override
+    public int hashCode() {
+        return super.hashCode();
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj == this || (delegate != null && delegate.equals(obj));
+    }
+
+    private Connection clientInfoDelegate() throws SQLClientInfoException {
+        try {
+            return delegate();
+        } catch (final SQLClientInfoException e) {
+            throw e;
+        } catch (final SQLException e) {
+            throw new SQLClientInfoException(e.getMessage(), null, e);
         }
-        return method.invoke(delegate, args);
     }
 
-    // will be done later
-    // we need to delay it in case of rollback
-    private Object close() {
-        closed = true;
-        return null;
+    private static int status(final Transaction transaction) throws SQLException {
+        try {
+            return transaction.getStatus();
+        } catch (final SystemException e) {
+            throw new SQLException("Unable to get the status of the transaction", e);
+        }
     }
 
     private static boolean isUnderTransaction(final int status) {
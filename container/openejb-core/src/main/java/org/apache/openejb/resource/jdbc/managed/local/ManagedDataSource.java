@@ -20,7 +20,6 @@ package org.apache.openejb.resource.jdbc.managed.local;
 import java.io.ObjectStreamException;
 import java.io.PrintWriter;
 import java.io.Serializable;
-import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
@@ -31,8 +30,6 @@ import javax.transaction.TransactionManager;
 import javax.transaction.TransactionSynchronizationRegistry;
 
 public class ManagedDataSource implements DataSource, Serializable {
-    private static final Class<?>[] CONNECTION_CLASS = new Class<?>[]{Connection.class};
-
     protected final CommonDataSource delegate;
     protected final TransactionManager transactionManager;
     protected final TransactionSynchronizationRegistry registry;
@@ -95,8 +92,7 @@ public class ManagedDataSource implements DataSource, Serializable {
     }
 
     private Connection managed(final String u, final String p) {
-        return (Connection) Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(), CONNECTION_CLASS,
-                new ManagedConnection(delegate, transactionManager, registry, u, p));
+        return new ManagedConnection(delegate, transactionManager, registry, u, p);
     }
 
     public CommonDataSource getDelegate() {
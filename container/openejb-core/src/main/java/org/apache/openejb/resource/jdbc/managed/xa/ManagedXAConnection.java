@@ -41,7 +41,7 @@ public class ManagedXAConnection extends ManagedConnection {
     }
 
     @Override
-    protected void setAutoCommit(final boolean value) throws SQLException {
+    protected void setDelegateAutoCommit(final boolean value) throws SQLException {
         // no-op
     }
 }
@@ -25,6 +25,7 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -40,6 +41,7 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -56,13 +58,17 @@ import static java.util.concurrent.TimeUnit.SECONDS;
  * <p/>
  * To simply fill the pool without a corresponding pop(), the add() method
  * must be used.  This method will attempt to aquire a permit to add to the pool.
+ * <p/>
+ * Idle entries are held either in a single synchronized list (the default) or,
+ * when the pool is built as "striped", in per-thread slots backed by a lock-free
+ * overflow deque.  Permits, sweeping and flushing are identical in both modes.
  *
  * @version $Rev$ $Date$
  */
 @SuppressWarnings("StatementWithEmptyBody")
 public class Pool<T> {
 
-    private final LinkedList<Entry> pool = new LinkedList<>();
+    private final Idle<Entry> pool;
     private final Semaphore instances;
     private final Semaphore available;
     private final Semaphore minimum;
@@ -99,12 +105,19 @@ public class Pool<T> {
     @Managed
     private final boolean garbageCollection;
 
+    @Managed
+    private final boolean striped;
+
     public Pool(final int max, final int min, final boolean strict) {
         this(max, min, strict, 0, 0, 0, null, null, false, -1, false, false);
     }
 
+    public Pool(final int max, final int min, final boolean strict, final long maxAge, final long idleTimeout, final long sweepInterval, final Executor executor, final Supplier<T> supplier, final boolean replaceAged, final double maxAgeOffset, final boolean garbageCollection, final boolean replaceFlushed) {
+        this(max, min, strict, maxAge, idleTimeout, sweepInterval, executor, supplier, replaceAged, maxAgeOffset, garbageCollection, replaceFlushed, false);
+    }
+
     @SuppressWarnings("unchecked")
-    public Pool(final int max, final int min, final boolean strict, final long maxAge, final long idleTimeout, long sweepInterval, final Executor executor, final Supplier<T> supplier, final boolean replaceAged, final double maxAgeOffset, final boolean garbageCollection, final boolean replaceFlushed) {
+    public Pool(final int max, final int min, final boolean strict, final long maxAge, final long idleTimeout, long sweepInterval, final Executor executor, final Supplier<T> supplier, final boolean replaceAged, final double maxAgeOffset, final boolean garbageCollection, final boolean replaceFlushed, final boolean striped) {
         if (min > max) {
             greater("max", max, "min", min);
         }
@@ -127,6 +140,8 @@ public class Pool<T> {
         this.sweeper = new Sweeper(idleTimeout, max);
         this.stats = new Stats(min, max, idleTimeout);
         this.garbageCollection = garbageCollection;
+        this.striped = striped;
+        this.pool = striped ? new StripedIdle<Entry>(Runtime.getRuntime().availableProcessors()) : new LockedIdle<Entry>();
     }
 
     public Pool start() {
@@ -253,12 +268,9 @@ public class Pool<T> {
 
         Entry entry;
         do {
-            synchronized (pool) {
-                try {
-                    entry = pool.removeFirst();
-                } catch (final NoSuchElementException e) {
-                    return null;
-                }
+            entry = pool.poll();
+            if (entry == null) {
+                return null;
             }
 
             final Pool<T>.Entry.Instance instance = entry.soft.get();
@@ -401,9 +413,7 @@ public class Pool<T> {
                     entry.hard.set(obj);
                 }
 
-                synchronized (pool) {
-                    pool.addFirst(entry);
-                }
+                pool.offer(entry);
                 added = true;
             }
         } finally {
@@ -932,6 +942,116 @@ public class Pool<T> {
 
     }
 
+    /**
+     * Holds the entries currently sitting idle in the pool.  Permits are
+     * managed by the pool itself, implementations only store and hand out
+     * entries and must never block.
+     */
+    private interface Idle<E> {
+
+        /**
+         * @return an idle entry or null if none could be found
+         */
+        E poll();
+
+        void offer(E e);
+    }
+
+    /**
+     * Historical behavior, a single LIFO list guarded by its own monitor.
+     */
+    private static final class LockedIdle<E> implements Idle<E> {
+        private final LinkedList<E> list = new LinkedList<>();
+
+        @Override
+        public E poll() {
+            synchronized (list) {
+                try {
+                    return list.removeFirst();
+                } catch (final NoSuchElementException e) {
+                    return null;
+                }
+            }
+        }
+
+        @Override
+        public void offer(final E e) {
+            synchronized (list) {
+                list.addFirst(e);
+            }
+        }
+    }
+
+    /**
+     * Each thread is mapped to a stripe holding at most one entry, so a thread
+     * returning an instance will usually get that same instance back on its
+     * next call without touching shared state.  When its own stripe is empty
+     * a thread looks at the lock-free overflow deque and then steals from the
+     * other stripes.
+     * <p/>
+     * Stripes are spaced out in the backing array to avoid false sharing.
+     */
+    private static final class StripedIdle<E> implements Idle<E> {
+        private static final int SPACING = 4; // 1 << 4 references apart
+
+        private final AtomicReferenceArray<E> stripes;
+        private final int mask;
+        private final ConcurrentLinkedDeque<E> overflow = new ConcurrentLinkedDeque<>();
+
+        private StripedIdle(final int concurrency) {
+            int size = 1;
+            while (size < concurrency) {
+                size <<= 1;
+            }
+            this.mask = size - 1;
+            this.stripes = new AtomicReferenceArray<>(size << SPACING);
+        }
+
+        @Override
+        public E poll() {
+            final int home = stripe();
+
+            E e = take(home);
+            if (e != null) {
+                return e;
+            }
+
+            e = overflow.pollFirst();
+            if (e != null) {
+                return e;
+            }
+
+            for (int i = 1; i <= mask; i++) {
+                e = take((home + i) & mask);
+                if (e != null) {
+                    return e;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public void offer(final E e) {
+            if (!stripes.compareAndSet(stripe() << SPACING, null, e)) {
+                overflow.offerFirst(e);
+            }
+        }
+
+        private E take(final int stripe) {
+            final int index = stripe << SPACING;
+            // read first to avoid an useless write on empty stripes
+            return stripes.get(index) == null ? null : stripes.getAndSet(index, null);
+        }
+
+        private int stripe() {
+            long h = Thread.currentThread().getId();
+            h ^= h >>> 16;
+            h *= 0x85ebca6bL;
+            h ^= h >>> 13;
+            return (int) h & mask;
+        }
+    }
+
     private static class NoSupplier implements Supplier {
         @Override
         public void discard(final Object o, final Event reason) {
@@ -1120,6 +1240,7 @@ public class Pool<T> {
         private boolean replaceAged;
         private boolean replaceFlushed;
         private boolean garbageCollection = true;
+        private boolean striped;
 
         public Builder(final Builder<T> that) {
             this.max = that.max;
@@ -1134,6 +1255,7 @@ public class Pool<T> {
             this.replaceAged = that.replaceAged;
             this.replaceFlushed = that.replaceFlushed;
             this.garbageCollection = that.garbageCollection;
+            this.striped = that.striped;
         }
 
         public Builder() {
@@ -1155,6 +1277,20 @@ public class Pool<T> {
             this.replaceAged = replaceAged;
         }
 
+        public boolean isStriped() {
+            return striped;
+        }
+
+        /**
+         * Use per-thread stripes instead of a single synchronized list
+         * to hold idle instances.
+         *
+         * @param striped boolean
+         */
+        public void setStriped(final boolean striped) {
+            this.striped = striped;
+        }
+
         public void setReplaceFlushed(final boolean replaceFlushed) {
             this.replaceFlushed = replaceFlushed;
         }
@@ -1234,7 +1370,7 @@ public class Pool<T> {
 
         public Pool<T> build() {
             //noinspection unchecked
-            final Pool pool = new Pool(max, min, strict, maxAge.getTime(MILLISECONDS), idleTimeout.getTime(MILLISECONDS), interval.getTime(MILLISECONDS), executor, supplier, replaceAged, maxAgeOffset, this.garbageCollection, replaceFlushed);
+            final Pool pool = new Pool(max, min, strict, maxAge.getTime(MILLISECONDS), idleTimeout.getTime(MILLISECONDS), interval.getTime(MILLISECONDS), executor, supplier, replaceAged, maxAgeOffset, this.garbageCollection, replaceFlushed, striped);
             if (scheduledExecutorService != null) {
                 pool.scheduler.set(scheduledExecutorService);
             }
@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.assembler.classic;
+
+import org.apache.openejb.OpenEJBException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeploymentTasksTest {
+
+    @Test
+    public void sequential() throws OpenEJBException {
+        final DeploymentTasks tasks = new DeploymentTasks("app", false, 4, true);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final List<DeploymentTasks.Step<String>> steps = new ArrayList<DeploymentTasks.Step<String>>();
+        for (int i = 0; i < 5; i++) {
+            steps.add(tasks.add("step" + i, new Record(order, "step" + i)));
+        }
+        tasks.run();
+
+        assertEquals(5, order.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("step" + i, order.get(i));
+            assertEquals("step" + i, steps.get(i).get());
+        }
+        assertEquals(5, tasks.getTimings().size());
+        assertEquals(Thread.currentThread().getName(), tasks.getTimings().get(0).getThread());
+    }
+
+    @Test
+    public void parallel() throws OpenEJBException {
+        final int steps = 4;
+        final DeploymentTasks tasks = new DeploymentTasks("app", true, steps + 1, true);
+        assertTrue(tasks.isParallel());
+
+        // each step waits for all the others so it only works if they run concurrently
+        final CountDownLatch started = new CountDownLatch(steps);
+        final List<DeploymentTasks.Step<Boolean>> independents = new ArrayList<DeploymentTasks.Step<Boolean>>();
+        for (int i = 0; i < steps; i++) {
+            independents.add(tasks.add("independent" + i, new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    started.countDown();
+                    return started.await(1, TimeUnit.MINUTES);
+                }
+            }));
+        }
+
+        final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        final DeploymentTasks.Step<?>[] dependencies = independents.toArray(new DeploymentTasks.Step<?>[steps]);
+        final DeploymentTasks.Step<Integer> last = tasks.add("last", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                assertSame(loader, Thread.currentThread().getContextClassLoader());
+                int done = 0;
+                for (final DeploymentTasks.Step<Boolean> step : independents) {
+                    if (step.get()) {
+                        done++;
+                    }
+                }
+                return done;
+            }
+        }, dependencies);
+        tasks.run();
+
+        assertEquals(steps, last.get().intValue());
+        assertEquals(steps + 1, tasks.getTimings().size());
+        assertEquals("last", tasks.getTimings().get(steps).getStep());
+        assertFalse(Thread.currentThread().getName().equals(tasks.getTimings().get(0).getThread()));
+    }
+
+    @Test
+    public void failure() throws OpenEJBException {
+        final DeploymentTasks tasks = new DeploymentTasks("app", true, 2, false);
+        final AtomicInteger executed = new AtomicInteger();
+        final DeploymentTasks.Step<Object> failing = tasks.add("failing", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                throw new IllegalStateException("failed");
+            }
+        });
+        tasks.add("dependent", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return executed.incrementAndGet();
+            }
+        }, failing);
+        tasks.add("independent", new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return executed.incrementAndGet();
+            }
+        });
+
+        try {
+            tasks.run();
+            fail();
+        } catch (final IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(1, executed.get());
+    }
+
+    @Test
+    public void mark() {
+        final DeploymentTasks tasks = new DeploymentTasks("app", false, 1, true);
+        long phase = System.nanoTime();
+        phase = tasks.mark("first", phase);
+        tasks.mark("second", phase);
+
+        assertEquals(2, tasks.getTimings().size());
+        assertEquals("first", tasks.getTimings().get(0).getStep());
+        assertEquals("second", tasks.getTimings().get(1).getStep());
+        tasks.report();
+    }
+
+    private static class Record implements Callable<String> {
+        private final List<String> order;
+        private final String name;
+
+        private Record(final List<String> order, final String name) {
+            this.order = order;
+            this.name = name;
+        }
+
+        @Override
+        public String call() throws Exception {
+            order.add(name);
+            return name;
+        }
+    }
+}
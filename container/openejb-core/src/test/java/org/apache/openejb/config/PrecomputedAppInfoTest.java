@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.assembler.classic.AppInfo;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.assembler.classic.ResourceInfo;
+import org.apache.openejb.assembler.classic.ServiceInfo;
+import org.apache.openejb.assembler.classic.StatelessSessionContainerInfo;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.SystemInstance;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PrecomputedAppInfoTest {
+
+    @After
+    public void reset() {
+        SystemInstance.reset();
+    }
+
+    @Test
+    public void storeAndRelocate() throws Exception {
+        final File build = Files.mkdirs(new File(Files.tmpdir(), "build"));
+        final File war = zip(new File(build, "app.war"), "WEB-INF/classes/Foo.class", "WEB-INF/lib/bar.jar");
+        final File unpacked = new File(build, "app");
+
+        final AppInfo appInfo = new AppInfo();
+        appInfo.appId = "app";
+        appInfo.path = unpacked.getAbsolutePath();
+        appInfo.paths.add(war.getAbsolutePath());
+        appInfo.libs.add(new File(unpacked, "WEB-INF/lib/bar.jar").toURI().toString());
+        appInfo.properties.setProperty("location", new File(unpacked, "WEB-INF").getAbsolutePath());
+
+        final StatelessSessionContainerInfo container = new StatelessSessionContainerInfo();
+        container.id = "Default Stateless Container";
+        final ResourceInfo resource = new ResourceInfo();
+        resource.id = "app/jdbc/db";
+        new PrecomputedAppInfo(appInfo, Arrays.<ServiceInfo>asList(container, resource)).store(war, unpacked);
+
+        // deployed somewhere else
+        final File server = Files.mkdirs(new File(Files.tmpdir(), "server"));
+        final File deployed = new File(server, "app.war");
+        IO.copy(war, deployed);
+        final File deployedUnpacked = new File(server, "app");
+
+        final PrecomputedAppInfo read = PrecomputedAppInfo.read(deployed, deployedUnpacked);
+        assertNotNull(read);
+        final AppInfo info = read.getAppInfo();
+        assertEquals("app", info.appId);
+        assertEquals(deployedUnpacked.getAbsolutePath(), info.path);
+        assertEquals(deployed.getAbsolutePath(), info.paths.iterator().next());
+        assertEquals(new File(deployedUnpacked, "WEB-INF/lib/bar.jar").toURI().toString(), info.libs.get(0));
+        assertEquals(new File(deployedUnpacked, "WEB-INF").getAbsolutePath(), info.properties.getProperty("location"));
+
+        assertEquals(2, read.getServices().size());
+        assertTrue(read.getServices().get(0) instanceof StatelessSessionContainerInfo);
+        assertEquals("Default Stateless Container", read.getServices().get(0).id);
+        assertEquals("app/jdbc/db", read.getServices().get(1).id);
+    }
+
+    @Test
+    public void onlyWholePathsAreRelocated() throws Exception {
+        final File build = Files.mkdirs(new File(Files.tmpdir(), "build"));
+        final File jar = zip(new File(build, "app.jar"), "Foo.class");
+
+        final AppInfo appInfo = new AppInfo();
+        appInfo.path = jar.getAbsolutePath();
+        appInfo.properties.setProperty("option", "-Dlocation=" + jar.getAbsolutePath());
+        appInfo.properties.setProperty("backup", jar.getAbsolutePath() + ".bak");
+        appInfo.properties.setProperty("entry", "jar:" + jar.toURI() + "!/Foo.class");
+        new PrecomputedAppInfo(appInfo, Arrays.<ServiceInfo>asList()).store(jar, jar);
+
+        final File server = Files.mkdirs(new File(Files.tmpdir(), "server"));
+        final File deployed = new File(server, "app.jar");
+        IO.copy(jar, deployed);
+
+        final AppInfo info = PrecomputedAppInfo.read(deployed, deployed).getAppInfo();
+        assertEquals(deployed.getAbsolutePath(), info.path);
+        assertEquals("-Dlocation=" + jar.getAbsolutePath(), info.properties.getProperty("option"));
+        assertEquals(jar.getAbsolutePath() + ".bak", info.properties.getProperty("backup"));
+        assertEquals("jar:" + deployed.toURI() + "!/Foo.class", info.properties.getProperty("entry"));
+    }
+
+    @Test
+    public void usedByConfigurationFactoryWhenActive() throws Exception {
+        final File jar = new File(Files.tmpdir(), "app.jar");
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            out.putNextEntry(new ZipEntry("META-INF/ejb-jar.xml"));
+            out.write("<ejb-jar/>".getBytes());
+            out.closeEntry();
+        } finally {
+            IO.close(out);
+        }
+
+        final AppInfo stored = new AppInfo();
+        stored.appId = "precomputed";
+        stored.path = jar.getAbsolutePath();
+        new PrecomputedAppInfo(stored, Arrays.<ServiceInfo>asList()).store(jar, jar);
+
+        new Assembler();
+        final ConfigurationFactory factory = new ConfigurationFactory();
+        assertNotEquals("precomputed", factory.configureApplication(jar).appId); // opt-in
+
+        SystemInstance.get().setProperty(PrecomputedAppInfo.ACTIVE, "true");
+        final AppInfo precomputed = factory.configureApplication(jar);
+        assertEquals("precomputed", precomputed.appId);
+        assertEquals(jar.getAbsolutePath(), precomputed.path);
+
+        // stale: a class was added after the computation
+        final File changed = new File(jar.getParentFile(), "changed.jar");
+        final ZipFile zip = new ZipFile(jar);
+        try {
+            final ZipOutputStream changedOut = new ZipOutputStream(new FileOutputStream(changed));
+            try {
+                for (final String name : new String[]{"META-INF/ejb-jar.xml", PrecomputedAppInfo.LOCATION}) {
+                    changedOut.putNextEntry(new ZipEntry(name));
+                    IO.copy(zip.getInputStream(zip.getEntry(name)), changedOut);
+                    changedOut.closeEntry();
+                }
+                changedOut.putNextEntry(new ZipEntry("Foo.class"));
+                changedOut.write("foo".getBytes());
+                changedOut.closeEntry();
+            } finally {
+                IO.close(changedOut);
+            }
+        } finally {
+            zip.close();
+        }
+        assertTrue(jar.delete() && changed.renameTo(jar));
+
+        final AppInfo deployed = factory.configureApplication(jar);
+        assertNotEquals("precomputed", deployed.appId);
+        assertEquals(1, deployed.ejbJars.size());
+    }
+
+    @Test
+    public void ignoredWhenArchiveChanged() throws Exception {
+        final File dir = Files.tmpdir();
+        final File jar = zip(new File(dir, "app.jar"), "Foo.class");
+        new PrecomputedAppInfo(new AppInfo(), Arrays.<ServiceInfo>asList()).store(jar, jar);
+        assertNotNull(PrecomputedAppInfo.read(jar, jar));
+
+        // same stored info but a class was added
+        final File changed = new File(dir, "changed/app.jar");
+        Files.mkdirs(changed.getParentFile());
+        final ZipFile zip = new ZipFile(jar);
+        try {
+            final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(changed));
+            try {
+                for (final String name : new String[]{"Foo.class", "Bar.class", PrecomputedAppInfo.LOCATION}) {
+                    out.putNextEntry(new ZipEntry(name));
+                    IO.copy(zip.getInputStream(zip.getEntry(name.equals("Bar.class") ? "Foo.class" : name)), out);
+                    out.closeEntry();
+                }
+            } finally {
+                IO.close(out);
+            }
+        } finally {
+            zip.close();
+        }
+        assertNull(PrecomputedAppInfo.read(changed, changed));
+    }
+
+    @Test
+    public void ignoredWhenContentChanged() throws Exception {
+        final File dir = Files.tmpdir();
+        final File jar = zip(new File(dir, "app.jar"), "Foo.class");
+        final String fingerprint = PrecomputedAppInfo.fingerprint(jar);
+
+        // same entries and sizes, different content
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+        try {
+            out.putNextEntry(new ZipEntry("Foo.class"));
+            out.write("bar".getBytes());
+            out.closeEntry();
+        } finally {
+            IO.close(out);
+        }
+        assertNotEquals(fingerprint, PrecomputedAppInfo.fingerprint(jar));
+    }
+
+    @Test
+    public void unpackedFolder() throws Exception {
+        final File dir = Files.mkdirs(new File(Files.tmpdir(), "app"));
+        final File foo = new File(dir, "Foo.class");
+        IO.writeString(foo, "foo");
+        final String fingerprint = PrecomputedAppInfo.fingerprint(dir);
+
+        final AppInfo appInfo = new AppInfo();
+        appInfo.path = dir.getAbsolutePath();
+        new PrecomputedAppInfo(appInfo, Arrays.<ServiceInfo>asList()).store(dir, dir);
+        assertTrue(new File(dir, PrecomputedAppInfo.LOCATION).isFile());
+        assertEquals(fingerprint, PrecomputedAppInfo.fingerprint(dir));
+        assertEquals(dir.getAbsolutePath(), PrecomputedAppInfo.read(dir, dir).getAppInfo().path);
+
+        // rewritten file, same size
+        IO.writeString(foo, "bar");
+        assertTrue(foo.setLastModified(foo.lastModified() + 2000));
+        assertNull(PrecomputedAppInfo.read(dir, dir));
+    }
+
+    private static File zip(final File file, final String... entries) throws IOException {
+        final ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (final String entry : entries) {
+                out.putNextEntry(new ZipEntry(entry));
+                out.write("foo".getBytes());
+                out.closeEntry();
+            }
+        } finally {
+            IO.close(out);
+        }
+        return file;
+    }
+}
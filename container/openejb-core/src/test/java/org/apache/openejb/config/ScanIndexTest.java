@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.util.Archives;
+import org.apache.xbean.finder.AnnotationFinder;
+import org.apache.xbean.finder.archive.Archive;
+import org.apache.xbean.finder.archive.ClasspathArchive;
+import org.junit.Test;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ScanIndexTest {
+
+    @Test
+    public void indexIsReused() throws Exception {
+        final File jar = Archives.jarArchive(Green.class, Red.class);
+        final URL url = jar.toURI().toURL();
+        final ClassLoader loader = new URLClassLoader(new URL[]{url}, getClass().getClassLoader());
+        final ScanIndex index = new ScanIndex(Files.mkdirs(new File(Files.tmpdir(), "index")));
+
+        // cold: the jar is scanned and indexed
+        final AnnotationFinder cold = new AnnotationFinder(index.archive(ClasspathArchive.archive(loader, url), url));
+        assertEquals(1, index.getMisses());
+        assertFound(cold);
+
+        // warm: the jar is not read anymore
+        final AnnotationFinder warm = new AnnotationFinder(index.archive(new Unreadable(loader), url));
+        assertEquals(1, index.getHits());
+        assertFound(warm);
+
+        // the jar changed: scanned again
+        assertTrue(jar.setLastModified(jar.lastModified() - 10000));
+        assertFound(new AnnotationFinder(index.archive(ClasspathArchive.archive(loader, url), url)));
+        assertEquals(2, index.getMisses());
+    }
+
+    @Test
+    public void foldersAreNotIndexed() throws Exception {
+        final File folder = Files.tmpdir();
+        final URL url = folder.toURI().toURL();
+        final Archive archive = ClasspathArchive.archive(getClass().getClassLoader(), url);
+        assertSame(archive, new ScanIndex(folder).archive(archive, url));
+    }
+
+    private static void assertFound(final AnnotationFinder finder) {
+        final List<Class<?>> singletons = finder.findAnnotatedClasses(Singleton.class);
+        assertEquals(1, singletons.size());
+        assertEquals(Green.class.getName(), singletons.get(0).getName());
+        assertEquals(1, finder.findAnnotatedMethods(PostConstruct.class).size());
+        assertEquals(1, finder.findSubclasses(Green.class).size());
+    }
+
+    @Singleton
+    public static class Green {
+        @PostConstruct
+        public void init() {
+            // no-op
+        }
+    }
+
+    public static class Red extends Green {
+    }
+
+    /**
+     * Only loads classes, fails if the scanning reads the jar.
+     */
+    private static class Unreadable implements Archive {
+        private final ClassLoader loader;
+
+        private Unreadable(final ClassLoader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public InputStream getBytecode(final String className) throws IOException, ClassNotFoundException {
+            throw new UnsupportedOperationException(className);
+        }
+
+        @Override
+        public Class<?> loadClass(final String className) throws ClassNotFoundException {
+            return loader.loadClass(className);
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
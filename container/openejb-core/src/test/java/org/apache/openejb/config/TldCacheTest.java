@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.config;
+
+import org.apache.openejb.jee.TldTaglib;
+import org.apache.openejb.loader.Files;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TldCacheTest {
+
+    @Test
+    public void sharedUntilTheJarChanges() throws Exception {
+        final File jar = jar("1.0");
+
+        final long misses = TldCache.getMisses();
+        final long hits = TldCache.getHits();
+
+        final Set<URL> tlds = TldCache.jarTlds(jar);
+        assertEquals(1, tlds.size());
+        assertSame(tlds, TldCache.jarTlds(jar));
+
+        final URL url = tlds.iterator().next();
+        final TldTaglib taglib = TldCache.taglib(url);
+        assertEquals("1.0", taglib.getTlibVersion());
+        assertSame(taglib, TldCache.taglib(url));
+
+        assertEquals(misses + 2, TldCache.getMisses());
+        assertEquals(hits + 2, TldCache.getHits());
+
+        // redeployed with another version of the jar
+        assertTrue(jar("1.1-SNAPSHOT").setLastModified(System.currentTimeMillis() + 10000));
+        assertEquals("1.1-SNAPSHOT", TldCache.taglib(url).getTlibVersion());
+        assertEquals(misses + 3, TldCache.getMisses());
+
+        // undeployed
+        final TldTaglib reloaded = TldCache.taglib(url);
+        TldCache.invalidate(Collections.singletonList(jar.toURI().toURL()));
+        assertNotSame(reloaded, TldCache.taglib(url));
+        assertEquals(misses + 4, TldCache.getMisses());
+    }
+
+    private static File jar(final String version) throws IOException {
+        final File jar = new File(Files.mkdirs(new File("target/TldCacheTest")), "taglib.jar");
+        final JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            out.putNextEntry(new JarEntry("META-INF/test.tld"));
+            out.write(("<taglib xmlns=\"http://java.sun.com/xml/ns/javaee\" version=\"2.1\">"
+                + "<tlib-version>" + version + "</tlib-version>"
+                + "<short-name>test</short-name>"
+                + "<uri>http://tomee.apache.org/test</uri>"
+                + "</taglib>").getBytes("UTF-8"));
+            out.closeEntry();
+        } finally {
+            out.close();
+        }
+        return jar;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import org.apache.openejb.core.Operation;
+import org.junit.Test;
+
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.InvocationContext;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class InterceptorChainTest {
+    @Test
+    public void chainIsSharedBetweenInstances() throws Exception {
+        final Method hello = Bean.class.getMethod("hello", String.class);
+        final InterceptorChain chain = InterceptorChain.create(Operation.BUSINESS, Arrays.asList(
+            InterceptorData.scan(First.class), InterceptorData.scan(Second.class), InterceptorData.scan(Third.class)));
+        assertEquals(3, chain.size());
+
+        for (int i = 0; i < 3; i++) {
+            final List<String> calls = new ArrayList<String>();
+            final Object result = new InterceptorStack(new Bean(), hello, Operation.BUSINESS, chain, instances(calls)).invoke("tomee");
+            assertEquals("hello tomee", result);
+            assertEquals(Arrays.asList("first", "second", "third"), calls);
+        }
+    }
+
+    @Test
+    public void methodHandles() throws Exception {
+        final Method add = Bean.class.getMethod("add", int.class, int.class);
+        final InterceptorChain chain = InterceptorChain.create(Operation.BUSINESS, Arrays.asList(InterceptorData.scan(First.class)), add);
+
+        final List<String> calls = new ArrayList<String>();
+        assertEquals(3, new InterceptorStack(new Bean(), add, Operation.BUSINESS, chain, instances(calls)).invoke(1, 2));
+        assertEquals(Arrays.asList("first"), calls);
+
+        final Method fail = Bean.class.getMethod("fail");
+        try {
+            new InterceptorStack(new Bean(), fail, Operation.BUSINESS, InterceptorChain.create(Operation.BUSINESS, new ArrayList<InterceptorData>(), fail), instances(calls)).invoke();
+            fail();
+        } catch (final IOException ioe) { // not wrapped in an InvocationTargetException
+            assertEquals("failed", ioe.getMessage());
+        }
+    }
+
+    @Test
+    public void methodHandlesKeepReflectionErrors() throws Exception {
+        final Method add = Bean.class.getMethod("add", int.class, int.class);
+        final InterceptorChain chain = InterceptorChain.create(Operation.BUSINESS, new ArrayList<InterceptorData>(), add);
+        final List<String> calls = new ArrayList<String>();
+
+        for (final Object[] args : new Object[][]{{1, null}, {1, "2"}, {1}}) {
+            try {
+                new InterceptorStack(new Bean(), add, Operation.BUSINESS, chain, instances(calls)).invoke(args);
+                fail();
+            } catch (final IllegalArgumentException iae) {
+                // same as Method.invoke
+            }
+        }
+
+        // widening is done by reflection
+        assertEquals(3, new InterceptorStack(new Bean(), add, Operation.BUSINESS, chain, instances(calls)).invoke((short) 1, (byte) 2));
+    }
+
+    @Test
+    public void missingInstance() throws Exception {
+        final InterceptorChain chain = InterceptorChain.create(Operation.BUSINESS, Arrays.asList(InterceptorData.scan(First.class)));
+        try {
+            new InterceptorStack(new Bean(), Bean.class.getMethod("hello", String.class), Operation.BUSINESS, chain, new HashMap<String, Object>());
+            fail();
+        } catch (final IllegalArgumentException iae) {
+            assertEquals("No interceptor of type " + First.class.getName(), iae.getMessage());
+        }
+    }
+
+    private static Map<String, Object> instances(final List<String> calls) {
+        final Map<String, Object> instances = new HashMap<String, Object>();
+        instances.put(First.class.getName(), new First(calls));
+        instances.put(Second.class.getName(), new Second(calls));
+        instances.put(Third.class.getName(), new Third(calls));
+        return instances;
+    }
+
+    public static class Bean {
+        public String hello(final String name) {
+            return "hello " + name;
+        }
+
+        public int add(final int a, final int b) {
+            return a + b;
+        }
+
+        public void fail() throws IOException {
+            throw new IOException("failed");
+        }
+    }
+
+    public abstract static class Recorder {
+        private final List<String> calls;
+        private final String name;
+
+        public Recorder(final List<String> calls, final String name) {
+            this.calls = calls;
+            this.name = name;
+        }
+
+        protected Object record(final InvocationContext context) throws Exception {
+            calls.add(name);
+            return context.proceed();
+        }
+    }
+
+    public static class First extends Recorder {
+        public First(final List<String> calls) {
+            super(calls, "first");
+        }
+
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            return record(context);
+        }
+    }
+
+    public static class Second extends Recorder {
+        public Second(final List<String> calls) {
+            super(calls, "second");
+        }
+
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            return record(context);
+        }
+    }
+
+    public static class Third extends Recorder {
+        public Third(final List<String> calls) {
+            super(calls, "third");
+        }
+
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            return record(context);
+        }
+    }
+}
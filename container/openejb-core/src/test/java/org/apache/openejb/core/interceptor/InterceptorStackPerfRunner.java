@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.interceptor;
+
+import org.apache.openejb.core.Operation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.InvocationContext;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Invokes a bean method having 3 interceptors (1 default, 2 at method level) the way
+ * containers did before caching the chain (merging the interceptor lists and building
+ * the stack on each call), with the cached {@link InterceptorChain} using reflection and
+ * with the cached chain bound to method handles as done by MethodContext.
+ * <p/>
+ * Run the main method, the GC profiler reports the allocation per invocation (gc.alloc.rate.norm).
+ * On a JDK 8 laptop it went from ~744 bytes and ~190ns per invocation to ~120 bytes and ~90ns
+ * with the cached chain and ~48 bytes and ~50ns with method handles.
+ */
+@State(Scope.Benchmark)
+public class InterceptorStackPerfRunner {
+    private final Object[] args = {"tomee"};
+
+    private Bean bean;
+    private Method method;
+    private List<InterceptorData> defaultInterceptors;
+    private List<InterceptorData> methodInterceptors;
+    private Map<String, Object> instances;
+    private InterceptorChain chain;
+    private InterceptorChain boundChain;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        bean = new Bean();
+        method = Bean.class.getMethod("hello", String.class);
+        defaultInterceptors = Arrays.asList(InterceptorData.scan(First.class));
+        methodInterceptors = Arrays.asList(InterceptorData.scan(Second.class), InterceptorData.scan(Third.class));
+
+        instances = new HashMap<String, Object>();
+        instances.put(First.class.getName(), new First());
+        instances.put(Second.class.getName(), new Second());
+        instances.put(Third.class.getName(), new Third());
+
+        final List<InterceptorData> all = new ArrayList<InterceptorData>(defaultInterceptors);
+        all.addAll(methodInterceptors);
+        chain = InterceptorChain.create(Operation.BUSINESS, all);
+        boundChain = InterceptorChain.create(Operation.BUSINESS, all, method);
+    }
+
+    @Benchmark
+    public Object rebuilt() throws Exception {
+        final List<InterceptorData> datas = new ArrayList<InterceptorData>(defaultInterceptors);
+        datas.addAll(methodInterceptors);
+        return new InterceptorStack(bean, method, Operation.BUSINESS, datas, instances).invoke(args);
+    }
+
+    @Benchmark
+    public Object cached() throws Exception {
+        return new InterceptorStack(bean, method, Operation.BUSINESS, chain, instances).invoke(args);
+    }
+
+    @Benchmark
+    public Object methodHandles() throws Exception {
+        return new InterceptorStack(bean, method, Operation.BUSINESS, boundChain, instances).invoke(args);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(InterceptorStackPerfRunner.class.getSimpleName())
+                .forks(0)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    public static class Bean {
+        public String hello(final String name) {
+            return "hello " + name;
+        }
+    }
+
+    public static class First {
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            return context.proceed();
+        }
+    }
+
+    public static class Second {
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            return context.proceed();
+        }
+    }
+
+    public static class Third {
+        @AroundInvoke
+        public Object invoke(final InvocationContext context) throws Exception {
+            return context.proceed();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.ivm;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.config.EjbModule;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.jee.oejb3.EjbDeployment;
+import org.apache.openejb.jee.oejb3.OpenejbJar;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.testing.Module;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.ejb.EJB;
+import javax.ejb.Remote;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(ApplicationComposer.class)
+public class IntraVmCopierTest {
+
+    @EJB(beanName = "CopiedBean")
+    private Echo copied;
+
+    @EJB(beanName = "SerializedBean")
+    private Echo serialized;
+
+    @Module
+    public EjbModule module() {
+        final EjbModule module = new EjbModule(new EjbJar(), new OpenejbJar());
+        final StatelessBean copiedBean = module.getEjbJar().addEnterpriseBean(new StatelessBean("CopiedBean", EchoBean.class));
+        module.getEjbJar().addEnterpriseBean(new StatelessBean("SerializedBean", EchoBean.class));
+
+        final EjbDeployment deployment = module.getOpenejbJar().addEjbDeployment(copiedBean);
+        deployment.getProperties().setProperty(IntraVmCopier.STRATEGY, "reflection");
+        return module;
+    }
+
+    @Test
+    public void copy() {
+        final Order order = new Order();
+        order.customer = "tomee";
+        order.total = 12.5;
+        order.cache = "ignored";
+        order.lines.add(new Line("book", 2));
+        order.lines.add(order.lines.get(0)); // shared reference
+        order.self = order;
+
+        final Order result = (Order) copied.echo(order);
+        assertNotSame(order, result);
+        assertEquals("tomee", result.customer);
+        assertEquals(12.5, result.total, 0.);
+        assertNull(result.cache);
+        assertSame(result, result.self);
+        assertEquals(2, result.lines.size());
+        assertNotSame(order.lines.get(0), result.lines.get(0));
+        assertSame(result.lines.get(0), result.lines.get(1));
+        assertEquals("book", result.lines.get(0).item);
+        assertEquals(2, result.lines.get(0).quantity);
+
+        final IntraVmCopier copier = beanContext("CopiedBean").getIntraVmCopier();
+        assertNotNull(copier);
+        assertTrue(copier.getCopies() >= 2); // at least the argument and the returned value
+        assertEquals(0, copier.getFallbacks());
+    }
+
+    @Test
+    public void fallback() {
+        final Custom custom = new Custom();
+        custom.value = "custom";
+
+        final Custom result = (Custom) copied.echo(custom);
+        assertNotSame(custom, result);
+        assertEquals("custom", result.value);
+
+        final IntraVmCopier copier = beanContext("CopiedBean").getIntraVmCopier();
+        assertEquals(2, copier.getFallbacks());
+        assertEquals(Custom.class.getName(), copier.getLastFallback());
+    }
+
+    @Test
+    public void serializationByDefault() {
+        final Order order = new Order();
+        order.customer = "tomee";
+        assertEquals("tomee", ((Order) serialized.echo(order)).customer);
+        assertNull(beanContext("SerializedBean").getIntraVmCopier());
+    }
+
+    private static BeanContext beanContext(final String ejbName) {
+        for (final BeanContext beanContext : SystemInstance.get().getComponent(ContainerSystem.class).deployments()) {
+            if (ejbName.equals(beanContext.getEjbName())) {
+                return beanContext;
+            }
+        }
+        throw new IllegalArgumentException(ejbName);
+    }
+
+    @Remote
+    public static interface Echo {
+        Object echo(Object o);
+    }
+
+    public static class EchoBean implements Echo {
+        @Override
+        public Object echo(final Object o) {
+            return o;
+        }
+    }
+
+    public static class Order implements Serializable {
+        private String customer;
+        private double total;
+        private transient String cache;
+        private Order self;
+        private final List<Line> lines = new ArrayList<Line>();
+    }
+
+    public static class Line implements Serializable {
+        private final String item;
+        private final int quantity;
+
+        public Line(final String item, final int quantity) {
+            this.item = item;
+            this.quantity = quantity;
+        }
+    }
+
+    public static class Custom implements Serializable {
+        private String value;
+
+        private void writeObject(final ObjectOutputStream out) throws IOException {
+            out.defaultWriteObject();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.security;
+
+import org.apache.openejb.core.ThreadContext;
+import org.apache.openejb.jee.EnterpriseBean;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.SecurityService;
+import org.apache.openejb.testing.Module;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.Resource;
+import javax.annotation.security.RolesAllowed;
+import javax.ejb.EJB;
+import javax.ejb.EJBAccessException;
+import javax.ejb.SessionContext;
+import javax.ejb.Singleton;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(ApplicationComposer.class)
+public class AuthorizationCacheTest {
+    @Module
+    public EnterpriseBean bean() {
+        return new SingletonBean(SecuredBean.class).localBean();
+    }
+
+    @EJB
+    private SecuredBean bean;
+
+    private ThreadContext testContext;
+    private AbstractSecurityService securityService;
+    private Object id;
+
+    @Before
+    public void login() throws Exception {
+        testContext = ThreadContext.getThreadContext();
+        testContext.set(AbstractSecurityService.SecurityContext.class, null);
+
+        securityService = AbstractSecurityService.class.cast(SystemInstance.get().getComponent(SecurityService.class));
+        id = securityService.login("jonathan", "secret");
+        securityService.associate(id);
+        securityService.getAuthorizationStats().reset();
+    }
+
+    @After
+    public void logout() throws Exception {
+        securityService.disassociate();
+        securityService.logout(id);
+        ThreadContext.enter(testContext);
+    }
+
+    @Test
+    public void decisionsAreCached() {
+        final AuthorizationStats stats = securityService.getAuthorizationStats();
+        assertTrue(bean.committer());
+        final long misses = stats.getMisses();
+        assertTrue(misses > 0);
+
+        for (int i = 0; i < 9; i++) {
+            assertTrue(bean.committer());
+        }
+        assertEquals(misses, stats.getMisses());
+        assertTrue(stats.getHits() >= 9);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                bean.admin();
+                fail();
+            } catch (final EJBAccessException e) {
+                // ok
+            }
+        }
+        assertEquals(misses + 1, stats.getMisses());
+        assertTrue(stats.getHitRate() > 0.5);
+    }
+
+    @Test
+    public void policyRefreshInvalidates() {
+        final AuthorizationStats stats = securityService.getAuthorizationStats();
+        assertTrue(bean.committer());
+        final long misses = stats.getMisses();
+
+        AbstractSecurityService.invalidateAuthorizations();
+        assertTrue(bean.committer());
+        assertEquals(2 * misses, stats.getMisses());
+        assertEquals(misses, stats.getInvalidations());
+    }
+
+    @Test
+    public void rolesOfTheContext() {
+        assertTrue(bean.inRole("committer"));
+        assertTrue(bean.inRole("community"));
+        assertFalse(bean.inRole("admin"));
+    }
+
+    @Singleton
+    public static class SecuredBean {
+        @Resource
+        private SessionContext ctx;
+
+        @RolesAllowed("committer")
+        public boolean committer() {
+            return true;
+        }
+
+        @RolesAllowed("admin")
+        public void admin() {
+            // no-op
+        }
+
+        public boolean inRole(final String role) {
+            return ctx.isCallerInRole(role);
+        }
+    }
+}
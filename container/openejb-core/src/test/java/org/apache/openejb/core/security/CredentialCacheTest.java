@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.security;
+
+import org.apache.openejb.core.security.jaas.CredentialCache;
+import org.apache.openejb.monitoring.LocalMBeanServer;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import javax.security.auth.login.FailedLoginException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CredentialCacheTest {
+    @Test
+    public void repeatedLoginsAreServedFromMemory() throws Exception {
+        final Store store = new Store();
+        final CredentialCache cache = new CredentialCache("test", 10, 60000);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(set("committer", "community"), cache.login("jonathan", "secret", store));
+        }
+        assertEquals(1, store.loads.get());
+        assertEquals(4, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void otherPasswordsAreAlwaysChecked() throws Exception {
+        final Store store = new Store();
+        final CredentialCache cache = new CredentialCache("test", 10, 60000);
+        cache.login("jonathan", "secret", store);
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                cache.login("jonathan", "wrong", store);
+                fail();
+            } catch (final FailedLoginException e) {
+                // ok
+            }
+        }
+        assertEquals(4, store.loads.get());
+
+        try {
+            cache.login("nobody", "secret", store);
+            fail();
+        } catch (final FailedLoginException e) {
+            // ok
+        }
+
+        // the verified password is still cached
+        cache.login("jonathan", "secret", store);
+        assertEquals(5, store.loads.get());
+    }
+
+    @Test
+    public void entriesExpireAndAreBounded() throws Exception {
+        final Store store = new Store();
+        store.passwords.put("daniel", "password");
+
+        final CredentialCache cache = new CredentialCache("test", 1, 100);
+        cache.login("jonathan", "secret", store);
+        cache.login("daniel", "password", store);
+        assertEquals(1, cache.getSize());
+        cache.login("jonathan", "secret", store);
+        assertEquals(3, store.loads.get());
+
+        Thread.sleep(150);
+        cache.login("jonathan", "secret", store);
+        assertEquals(4, store.loads.get());
+    }
+
+    @Test
+    public void refreshDropsChangedPasswords() throws Exception {
+        final Store store = new Store();
+        final CredentialCache cache = new CredentialCache("test", 10, 1000);
+        cache.login("jonathan", "secret", store);
+
+        Thread.sleep(600);
+        store.passwords.put("jonathan", "changed");
+        cache.login("jonathan", "secret", store); // still valid, refreshed in the background
+
+        for (int i = 0; i < 100 && cache.getRefreshes() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, cache.getRefreshes());
+        assertEquals(0, cache.getSize());
+
+        try {
+            cache.login("jonathan", "secret", store);
+            fail();
+        } catch (final FailedLoginException e) {
+            // ok
+        }
+        assertTrue(cache.login("jonathan", "changed", store).contains("committer"));
+    }
+
+    @Test
+    public void configurationsSharingANameAreRegisteredApart() throws Exception {
+        final ObjectName query = new ObjectName("openejb.management:j2eeType=CredentialCache,name=\"jmx-test\",*");
+        try {
+            CredentialCache.get("jmx-test", 10, 60000);
+            CredentialCache.get("jmx-test", 20, 60000);
+            assertEquals(2, LocalMBeanServer.get().queryNames(query, null).size());
+        } finally {
+            CredentialCache.clearAll();
+        }
+        assertEquals(0, LocalMBeanServer.get().queryNames(query, null).size());
+    }
+
+    private static Set<String> set(final String... values) {
+        return new HashSet<String>(asList(values));
+    }
+
+    private static class Store implements CredentialCache.Loader {
+        private final AtomicInteger loads = new AtomicInteger();
+        private final Map<String, String> passwords = new ConcurrentHashMap<String, String>(Collections.singletonMap("jonathan", "secret"));
+
+        @Override
+        public CredentialCache.Credentials load(final String user) {
+            loads.incrementAndGet();
+            final String password = passwords.get(user);
+            return password == null ? null : new CredentialCache.Credentials(password, set("committer", "community"));
+        }
+
+        @Override
+        public boolean checkPassword(final String stored, final String provided) {
+            return stored.equals(provided);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.security;
+
+import org.apache.openejb.jee.EnterpriseBean;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.SecurityService;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.Module;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.security.RolesAllowed;
+import javax.ejb.EJB;
+import javax.ejb.EJBAccessException;
+import javax.ejb.Singleton;
+import javax.security.jacc.EJBMethodPermission;
+import java.security.Permission;
+import java.security.ProtectionDomain;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A policy which is not the built-in one can change its answers without calling refresh,
+ * its decisions are not cached unless asked.
+ */
+@RunWith(ApplicationComposer.class)
+public class DynamicPolicyAuthorizationTest {
+    private static final AtomicBoolean GRANTED = new AtomicBoolean(true);
+
+    @Configuration
+    public Properties config() {
+        final Properties p = new Properties();
+        p.setProperty("javax.security.jacc.policy.provider", SwitchingPolicy.class.getName());
+        return p;
+    }
+
+    @Module
+    public EnterpriseBean bean() {
+        return new SingletonBean(SecuredBean.class).localBean();
+    }
+
+    @EJB
+    private SecuredBean bean;
+
+    @Test
+    public void answersAreNotCached() {
+        try {
+            GRANTED.set(true);
+            assertTrue(bean.committer());
+
+            GRANTED.set(false);
+            try {
+                bean.committer();
+                fail();
+            } catch (final EJBAccessException e) {
+                // ok
+            }
+
+            GRANTED.set(true);
+            assertTrue(bean.committer());
+        } finally {
+            GRANTED.set(true);
+        }
+
+        final AbstractSecurityService securityService = AbstractSecurityService.class.cast(SystemInstance.get().getComponent(SecurityService.class));
+        assertEquals(0, securityService.getAuthorizationStats().getMisses());
+    }
+
+    public static class SwitchingPolicy extends java.security.Policy {
+        @Override
+        public boolean implies(final ProtectionDomain domain, final Permission permission) {
+            return !(permission instanceof EJBMethodPermission) || GRANTED.get();
+        }
+    }
+
+    @Singleton
+    public static class SecuredBean {
+        @RolesAllowed("committer")
+        public boolean committer() {
+            return true;
+        }
+    }
+}
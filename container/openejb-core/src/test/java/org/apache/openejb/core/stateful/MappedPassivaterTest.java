@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import org.apache.openejb.SystemException;
+import org.apache.openejb.loader.SystemInstance;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedPassivaterTest {
+
+    private MappedPassivater passivater;
+
+    @Before
+    public void init() throws SystemException {
+        SystemInstance.get().setProperty(MappedPassivater.SEGMENT_SIZE, "4096");
+        passivater = new MappedPassivater();
+    }
+
+    @After
+    public void close() {
+        passivater.close();
+        SystemInstance.get().getProperties().remove(MappedPassivater.SEGMENT_SIZE);
+    }
+
+    @Test
+    public void passivateActivate() throws SystemException {
+        final Map<Object, Object> states = new HashMap<Object, Object>();
+        for (int i = 0; i < 10; i++) {
+            states.put("bean" + i, new State("value" + i, i));
+        }
+        passivater.passivate(states);
+
+        assertEquals(10, passivater.getStoredBeans());
+        assertEquals(10, passivater.getPassivations());
+        assertEquals(1, passivater.getSegments());
+        assertTrue(passivater.getBytesWritten() > 0);
+
+        for (int i = 9; i >= 0; i--) {
+            final State state = (State) passivater.activate("bean" + i);
+            assertEquals("value" + i, state.value);
+            assertEquals(i, state.index);
+        }
+        assertNull(passivater.activate("bean0"));
+        assertEquals(0, passivater.getStoredBeans());
+        assertEquals(0, passivater.getStoredBytes());
+        assertEquals(passivater.getBytesWritten(), passivater.getBytesRead());
+    }
+
+    @Test
+    public void spaceIsReused() throws SystemException {
+        for (int round = 0; round < 100; round++) {
+            final Map<Object, Object> states = new HashMap<Object, Object>();
+            for (int i = 0; i < 5; i++) {
+                states.put(round + "-" + i, new State(new String(new char[100]), i));
+            }
+            passivater.passivate(states);
+            for (int i = 0; i < 5; i++) {
+                passivater.activate(round + "-" + i);
+            }
+        }
+        assertEquals(1, passivater.getSegments());
+        assertEquals(500, passivater.getActivations());
+    }
+
+    @Test
+    public void growsAndStoresLargeStates() throws SystemException {
+        final Map<Object, Object> states = new HashMap<Object, Object>();
+        states.put("small", new State("small", 0));
+        states.put("large", new State(new String(new char[10000]), 1));
+        passivater.passivate(states);
+
+        assertTrue(passivater.getSegments() >= 2);
+        assertTrue(passivater.getMappedBytes() > 10000);
+        assertEquals(10000, ((State) passivater.activate("large")).value.length());
+        assertEquals("small", ((State) passivater.activate("small")).value);
+    }
+
+    @Test
+    public void notSerializable() throws SystemException {
+        final Map<Object, Object> states = new HashMap<Object, Object>();
+        states.put("ok", new State("ok", 0));
+        states.put("ko", new Object());
+        try {
+            passivater.passivate(states);
+            fail();
+        } catch (final SystemException e) {
+            // expected
+        }
+        assertEquals("ok", ((State) passivater.activate("ok")).value);
+        assertNull(passivater.activate("ko"));
+    }
+
+    @Test
+    public void closeWhileActivating() throws Exception {
+        final Map<Object, Object> states = new HashMap<Object, Object>();
+        for (int i = 0; i < 1000; i++) {
+            states.put(i, new State("value" + i, i));
+        }
+        passivater.passivate(states);
+
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        final Thread activator = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 1000; i++) {
+                        passivater.activate(i);
+                    }
+                } catch (final Throwable e) {
+                    error.set(e);
+                }
+            }
+        };
+        activator.start();
+        passivater.close();
+        activator.join();
+
+        assertNull(error.get());
+        assertEquals(0, passivater.getSegments());
+        assertNull(passivater.activate(999));
+        try {
+            passivater.passivate(states);
+            fail();
+        } catch (final SystemException e) {
+            // closed
+        }
+    }
+
+    public static class State implements Serializable {
+        private final String value;
+        private final int index;
+
+        public State(final String value, final int index) {
+            this.value = value;
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.stateful;
+
+import org.apache.openejb.util.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SegmentedCacheTest {
+
+    private final MemoryPassivater passivater = new MemoryPassivater();
+    private final Listener listener = new Listener();
+    private SegmentedCache<String, String> cache;
+
+    @Before
+    public void init() {
+        cache = new SegmentedCache<String, String>(listener, passivater, 10, 5, new Duration("1 hour"));
+        cache.setFrequency("0"); // process the lru on each check in
+        cache.setSegments(4);
+        cache.init();
+    }
+
+    @After
+    public void destroy() {
+        cache.destroy();
+    }
+
+    @Test
+    public void checkOutCheckIn() throws Exception {
+        cache.add("a", "value");
+        cache.checkIn("a");
+        assertEquals(1, cache.getAvailable());
+
+        assertEquals("value", cache.checkOut("a", false));
+        assertEquals(0, cache.getAvailable());
+        cache.checkIn("a");
+
+        assertEquals("value", cache.remove("a"));
+        assertNull(cache.checkOut("a", true));
+        assertEquals(0, cache.getAvailable());
+    }
+
+    @Test
+    public void alreadyAdded() {
+        cache.add("a", "value");
+        try {
+            cache.add("a", "other");
+            fail();
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void bulkPassivation() throws Exception {
+        for (int i = 0; i < 30; i++) {
+            cache.add("key" + i, "value" + i);
+            cache.checkIn("key" + i);
+            assertTrue(cache.getAvailable() < 10);
+        }
+        assertTrue(passivater.states.size() >= 20);
+        assertEquals(passivater.states.size(), listener.stored.get());
+
+        // passivated values are loaded back
+        for (int i = 0; i < 30; i++) {
+            assertEquals("value" + i, cache.checkOut("key" + i, true));
+        }
+        assertEquals(listener.stored.get(), listener.loaded.get());
+        assertTrue(passivater.states.isEmpty());
+    }
+
+    @Test
+    public void timeOut() throws Exception {
+        cache.setTimeOut("0");
+        cache.setCapacity(1000);
+        cache.add("a", "value");
+        cache.checkIn("a");
+
+        assertEquals(1, listener.timedOut.get());
+        assertEquals(0, cache.getAvailable());
+        assertNull(cache.checkOut("a", true));
+    }
+
+    @Test
+    public void removeAll() throws Exception {
+        cache.setCapacity(1000);
+        for (int i = 0; i < 6; i++) {
+            cache.add("key" + i, i % 2 == 0 ? "even" : "odd");
+            cache.checkIn("key" + i);
+        }
+        cache.removeAll(new Cache.CacheFilter<String>() {
+            @Override
+            public boolean matches(final String s) {
+                return "even".equals(s);
+            }
+        });
+        assertEquals(3, cache.getAvailable());
+        assertNull(cache.checkOut("key0", false));
+        assertEquals("odd", cache.checkOut("key1", false));
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        final int threads = 8;
+        final ExecutorService es = Executors.newFixedThreadPool(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            es.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            final String key = thread + "-" + (i % 20);
+                            if (i < 20) {
+                                cache.add(key, key);
+                            } else {
+                                assertEquals(key, cache.checkOut(key, true));
+                            }
+                            cache.checkIn(key);
+                        }
+                    } catch (final Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+        es.shutdown();
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+        assertTrue(cache.getAvailable() < 10 + threads);
+    }
+
+    private static class Listener implements Cache.CacheListener<String> {
+        private final AtomicInteger loaded = new AtomicInteger();
+        private final AtomicInteger stored = new AtomicInteger();
+        private final AtomicInteger timedOut = new AtomicInteger();
+
+        @Override
+        public void afterLoad(final String value) throws Exception {
+            loaded.incrementAndGet();
+        }
+
+        @Override
+        public void beforeStore(final String value) throws Exception {
+            stored.incrementAndGet();
+        }
+
+        @Override
+        public void timedOut(final String value) {
+            timedOut.incrementAndGet();
+        }
+    }
+
+    private static class MemoryPassivater implements PassivationStrategy {
+        private final Map<Object, Object> states = new ConcurrentHashMap<Object, Object>();
+
+        @Override
+        public void init(final Properties props) {
+            // no-op
+        }
+
+        @Override
+        public void passivate(final Map stateTable) {
+            states.putAll(stateTable);
+        }
+
+        @Override
+        public Object activate(final Object primaryKey) {
+            return states.remove(primaryKey);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.timer;
+
+import org.apache.geronimo.transaction.manager.GeronimoTransactionManager;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ejb.TimerConfig;
+import javax.sql.DataSource;
+import javax.transaction.TransactionManager;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JdbcTimerStoreTest {
+    private static final String BEAN = "JdbcTimerStoreTestBean";
+    private static final int PARTITION_COUNT = 8;
+    private static final long LEASE_DURATION = 500;
+
+    private TransactionManager transactionManager;
+    private DataSource dataSource;
+    private final List<Node> nodes = new ArrayList<Node>();
+
+    @Before
+    public void init() throws Exception {
+        transactionManager = new GeronimoTransactionManager();
+        final JDBCDataSource ds = new JDBCDataSource();
+        ds.setDatabase("jdbc:hsqldb:mem:timers" + System.nanoTime());
+        ds.setUser("sa");
+        ds.setPassword("");
+        dataSource = ds;
+    }
+
+    @After
+    public void stop() throws Exception {
+        for (final Node node : nodes) {
+            node.stop(true);
+        }
+        final Connection connection = dataSource.getConnection();
+        try {
+            connection.createStatement().execute("SHUTDOWN");
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void partitionsAreSplitBetweenNodes() throws Exception {
+        final Node a = node("a");
+        final Node b = node("b");
+        assertEquals(PARTITION_COUNT, a.getOwnedPartitions().size());
+        assertTrue(b.getOwnedPartitions().isEmpty());
+
+        a.round(); // gives back what is over its share
+        b.round(); // takes the released partitions
+
+        assertEquals(PARTITION_COUNT / 2, a.getOwnedPartitions().size());
+        assertEquals(PARTITION_COUNT / 2, b.getOwnedPartitions().size());
+        final Set<Integer> all = new TreeSet<Integer>(a.getOwnedPartitions());
+        all.addAll(b.getOwnedPartitions());
+        assertEquals(PARTITION_COUNT, all.size());
+    }
+
+    @Test
+    public void timersFailOverWhenLeasesExpire() throws Exception {
+        final Node a = node("a");
+        final Node b = node("b");
+        a.round();
+        b.round();
+
+        final Set<Long> ids = new HashSet<Long>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(a.createSingleActionTimer(null, BEAN, null, timeout(), new Date(System.currentTimeMillis() + 60000), new TimerConfig("timer" + i, true)).getId());
+        }
+        assertEquals(20, rows("1 = 1"));
+        assertTrue(b.getTimers(BEAN).isEmpty());
+
+        a.stop(false); // crash, the leases are still there
+        b.round();
+        assertEquals(PARTITION_COUNT / 2, b.getOwnedPartitions().size());
+        assertTrue(b.scheduled.isEmpty());
+
+        Thread.sleep(LEASE_DURATION + 100);
+        b.round();
+
+        assertEquals(PARTITION_COUNT, b.getOwnedPartitions().size());
+        final Set<Long> loaded = new HashSet<Long>();
+        for (final TimerData timerData : b.getTimers(BEAN)) {
+            loaded.add(timerData.getId());
+            assertEquals(timeout(), timerData.getTimeoutMethod());
+            assertTrue(String.valueOf(timerData.getInfo()).startsWith("timer"));
+        }
+        assertEquals(ids, loaded);
+        assertEquals(20, b.scheduled.size());
+    }
+
+    @Test
+    public void updatesAreWrittenInBatches() throws Exception {
+        final Node a = node("a");
+        final List<TimerData> timers = new ArrayList<TimerData>();
+        for (int i = 0; i < 10; i++) {
+            timers.add(a.createIntervalTimer(null, BEAN, null, timeout(), new Date(System.currentTimeMillis() + 1000), 1000, new TimerConfig(i, true)));
+        }
+        final TimerData transientTimer = a.createSingleActionTimer(null, BEAN, null, timeout(), new Date(), new TimerConfig(null, false));
+        assertEquals(10, rows("1 = 1"));
+
+        for (final TimerData timerData : timers.subList(0, 3)) {
+            a.removeTimer(timerData.getId());
+        }
+        a.removeTimer(transientTimer.getId());
+        assertEquals(10, rows("1 = 1")); // not flushed yet
+
+        a.flush();
+        assertEquals(7, rows("1 = 1"));
+
+        for (final TimerData timerData : timers.subList(3, 7)) { // reaches the batch size
+            a.removeTimer(timerData.getId());
+        }
+        assertEquals(3, rows("1 = 1"));
+    }
+
+    @Test
+    public void createdInTransactionIsWrittenOnCommit() throws Exception {
+        final Node a = node("a");
+
+        transactionManager.begin();
+        a.createSingleActionTimer(null, BEAN, null, timeout(), new Date(System.currentTimeMillis() + 60000), new TimerConfig("rollback", true));
+        transactionManager.rollback();
+        assertEquals(0, rows("1 = 1"));
+
+        transactionManager.begin();
+        final TimerData timerData = a.createSingleActionTimer(null, BEAN, null, timeout(), new Date(System.currentTimeMillis() + 60000), new TimerConfig("commit", true));
+        assertEquals(0, rows("1 = 1"));
+        transactionManager.commit();
+        assertEquals(1, rows("ID = " + timerData.getId()));
+    }
+
+    private Node node(final String name) throws Exception {
+        final Node node = new Node(name);
+        nodes.add(node);
+        node.loadTimers(null, BEAN);
+        return node;
+    }
+
+    private int rows(final String where) throws Exception {
+        final Connection connection = dataSource.getConnection();
+        try {
+            final Statement statement = connection.createStatement();
+            final ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM OPENEJB_TIMER WHERE " + where);
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static Method timeout() {
+        try {
+            return JdbcTimerStoreTest.class.getDeclaredMethod("timeout");
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private class Node extends JdbcTimerStore {
+        private final List<TimerData> scheduled = Collections.synchronizedList(new ArrayList<TimerData>());
+
+        private Node(final String name) {
+            // rounds are triggered by the tests, small batches to fetch by pages
+            super(transactionManager, dataSource, name, "OPENEJB_TIMER", PARTITION_COUNT, LEASE_DURATION, 3600000, 4);
+        }
+
+        @Override
+        protected Method timeoutMethod(final String name, final String[] parameterTypes) {
+            return timeout();
+        }
+
+        @Override
+        protected void schedule(final TimerData timerData) {
+            scheduled.add(timerData);
+        }
+    }
+}
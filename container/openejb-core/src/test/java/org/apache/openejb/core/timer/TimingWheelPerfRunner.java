@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.timer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates and fires 1M timers spread over one second with the {@link TimingWheel} used by
+ * {@link TimingWheelEjbTimerService} and with a ScheduledThreadPoolExecutor (a heap of all
+ * the timers as quartz RAMJobStore) as reference.
+ * <p/>
+ * Run the main method, the time includes the last timeout.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TimingWheelPerfRunner {
+    private static final int TIMERS = 1000000;
+    private static final int SPREAD_MS = 1000;
+
+    private ExecutorService executor;
+    private TimingWheel wheel;
+    private ScheduledThreadPoolExecutor scheduled;
+
+    @Setup
+    public void setup() {
+        executor = Executors.newFixedThreadPool(3);
+        wheel = new TimingWheel(1, 64, executor, "TimingWheelPerfRunner");
+        scheduled = new ScheduledThreadPoolExecutor(3);
+    }
+
+    @TearDown
+    public void tearDown() {
+        wheel.stop();
+        executor.shutdownNow();
+        scheduled.shutdownNow();
+    }
+
+    @Benchmark
+    public long wheel() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(TIMERS);
+        final Runnable timeout = new CountDown(latch);
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < TIMERS; i++) {
+            wheel.schedule(timeout, now + i % SPREAD_MS);
+        }
+        latch.await();
+        return latch.getCount();
+    }
+
+    @Benchmark
+    public long scheduledExecutor() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(TIMERS);
+        final Runnable timeout = new CountDown(latch);
+        for (int i = 0; i < TIMERS; i++) {
+            scheduled.schedule(timeout, i % SPREAD_MS, TimeUnit.MILLISECONDS);
+        }
+        latch.await();
+        return latch.getCount();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(TimingWheelPerfRunner.class.getSimpleName())
+                .forks(1)
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    private static final class CountDown implements Runnable {
+        private final CountDownLatch latch;
+
+        private CountDown(final CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            latch.countDown();
+        }
+    }
+}
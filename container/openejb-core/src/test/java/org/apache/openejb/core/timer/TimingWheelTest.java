@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.core.timer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+    private ExecutorService executor;
+    private TimingWheel wheel;
+
+    @Before
+    public void start() {
+        executor = Executors.newSingleThreadExecutor();
+        wheel = new TimingWheel(1, 8, executor, "TimingWheelTest");
+    }
+
+    @After
+    public void stop() {
+        wheel.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void expirationOrder() throws InterruptedException {
+        final long now = System.currentTimeMillis();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(4);
+        // 8 ticks per level so these use the first three levels
+        for (final int delay : new int[]{300, 5, 150, 40}) {
+            wheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(System.currentTimeMillis() >= now + delay);
+                    order.add(delay);
+                    latch.countDown();
+                }
+            }, now + delay);
+        }
+
+        assertTrue(latch.await(1, TimeUnit.MINUTES));
+        assertEquals(5, order.get(0).intValue());
+        assertEquals(40, order.get(1).intValue());
+        assertEquals(150, order.get(2).intValue());
+        assertEquals(300, order.get(3).intValue());
+    }
+
+    @Test
+    public void expired() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, System.currentTimeMillis() - 1000);
+        assertTrue(latch.await(1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void cancel() throws InterruptedException {
+        final AtomicInteger cancelled = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final long now = System.currentTimeMillis();
+        final TimingWheel.Task task = wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                cancelled.incrementAndGet();
+            }
+        }, now + 50);
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, now + 100);
+        task.cancel();
+
+        assertTrue(task.isCancelled());
+        assertTrue(latch.await(1, TimeUnit.MINUTES));
+        assertEquals(0, cancelled.get());
+    }
+}
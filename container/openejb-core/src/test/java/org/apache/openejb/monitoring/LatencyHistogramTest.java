@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.monitoring;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void buckets() {
+        long previousLowest = -1;
+        for (int i = 0; i <= LatencyHistogram.index(LatencyHistogram.MAX_VALUE); i++) {
+            final long lowest = LatencyHistogram.lowestValue(i);
+            assertTrue(lowest > previousLowest);
+            assertEquals(i, LatencyHistogram.index(lowest));
+            assertEquals(i, LatencyHistogram.index(lowest + LatencyHistogram.width(i) - 1));
+            previousLowest = lowest;
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1), snapshot.getMin(), 0);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(10000), snapshot.getMax(), 0);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(5000) + 500, snapshot.getMean(), 0);
+        assertClose(TimeUnit.MICROSECONDS.toNanos(5000), snapshot.getPercentile(50));
+        assertClose(TimeUnit.MICROSECONDS.toNanos(9900), snapshot.getPercentile(99));
+        assertClose(TimeUnit.MICROSECONDS.toNanos(9990), snapshot.getPercentile(99.9));
+        assertClose(2886.9 * 1000, snapshot.getStandardDeviation());
+    }
+
+    @Test
+    public void longTail() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        for (int i = 0; i < 100; i++) { // 0.1% of very slow calls
+            histogram.record(TimeUnit.SECONDS.toNanos(2));
+        }
+        histogram.record(TimeUnit.HOURS.toNanos(2)); // clamped
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertClose(TimeUnit.MICROSECONDS.toNanos(100), snapshot.getPercentile(99.8));
+        assertClose(TimeUnit.SECONDS.toNanos(2), snapshot.getPercentile(99.95));
+        assertEquals(LatencyHistogram.MAX_VALUE, snapshot.getMax(), 0);
+    }
+
+    @Test
+    public void empty() {
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertTrue(Double.isNaN(snapshot.getPercentile(99)));
+        assertTrue(Double.isNaN(snapshot.getMean()));
+    }
+
+    @Test
+    public void concurrentRecords() throws Exception {
+        final int threads = 8;
+        final int records = 100000;
+        final LatencyHistogram histogram = new LatencyHistogram(threads);
+        final ExecutorService es = Executors.newFixedThreadPool(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            es.submit(new Runnable() {
+                @Override
+                public void run() {
+                    final Random random = new Random();
+                    for (int i = 0; i < records; i++) {
+                        histogram.record(random.nextInt(1000000));
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(1, TimeUnit.MINUTES));
+        es.shutdown();
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(threads * records, snapshot.getCount());
+        assertClose(500000, snapshot.getPercentile(50));
+    }
+
+    private static void assertClose(final double expected, final double actual) {
+        assertTrue(expected + " ~ " + actual, Math.abs(expected - actual) <= expected * 0.02);
+    }
+}
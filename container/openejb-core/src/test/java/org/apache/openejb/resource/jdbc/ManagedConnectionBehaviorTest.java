@@ -54,6 +54,7 @@ import javax.transaction.TransactionManager;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ManagedConnectionBehaviorTest {
     @Test
@@ -126,6 +127,31 @@ public class ManagedConnectionBehaviorTest {
 
     }
 
+    @Test
+    public void transactionOwnsTheConnection() throws Exception {
+        final GeronimoTransactionManager geronimoTransactionManager = new GeronimoTransactionManager((int) TimeUnit.MINUTES.toMillis(10));
+        final TransactionManager mgr = new TransactionManagerWrapper(
+                geronimoTransactionManager, "ManagedConnectionBehaviorTest", new GeronimoTransactionManagerFactory.GeronimoXAResourceWrapper());
+
+        final MyDs myDs = new MyDs();
+        final DataSource ds = new ManagedDataSource(myDs, geronimoTransactionManager, geronimoTransactionManager);
+
+        mgr.begin();
+        final Connection connection = ds.getConnection();
+        try {
+            connection.commit();
+            fail();
+        } catch (final SQLException e) {
+            // ok
+        }
+        connection.close();
+        assertTrue(connection.isClosed());
+        assertFalse(myDs.connections.iterator().next().closed); // closed with the transaction
+        mgr.commit();
+        assertTrue(myDs.connections.iterator().next().closed);
+        assertTrue(myDs.connections.iterator().next().commit);
+    }
+
     public static class MyDs implements DataSource {
         private final Collection<MyConn> connections = new LinkedList<>();
 
@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.resource.jdbc;
+
+import org.apache.geronimo.transaction.manager.GeronimoTransactionManager;
+import org.apache.openejb.resource.jdbc.managed.local.ManagedDataSource;
+import org.hsqldb.jdbc.JDBCDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Runs a small unit of work - 5 primary key lookups with prepared statements in a JTA transaction -
+ * against an in memory HSQLDB:
+ * <ul>
+ *     <li>direct: on the physical connection, the floor</li>
+ *     <li>managed: through {@link ManagedDataSource} and its concrete connection</li>
+ *     <li>proxied: the same managed connection seen through JDK proxies dispatching with reflection,
+ *     the way the managed connection and the SQL logging wrappers were implemented before</li>
+ * </ul>
+ * Run the main method, the GC profiler reports the allocation per unit of work (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+public class ManagedConnectionPerfRunner {
+    private static final int LOOKUPS = 5;
+
+    private GeronimoTransactionManager transactionManager;
+    private JDBCDataSource physical;
+    private DataSource managed;
+    private Connection direct;
+
+    @Setup
+    public void setup() throws Exception {
+        transactionManager = new GeronimoTransactionManager();
+
+        physical = new JDBCDataSource();
+        physical.setDatabase("jdbc:hsqldb:mem:ManagedConnectionPerfRunner");
+        physical.setUser("sa");
+        physical.setPassword("");
+
+        direct = physical.getConnection();
+        final Statement statement = direct.createStatement();
+        statement.execute("CREATE TABLE PERSON (ID INTEGER PRIMARY KEY, NAME VARCHAR(50))");
+        for (int i = 0; i < LOOKUPS; i++) {
+            statement.execute("INSERT INTO PERSON VALUES (" + i + ", 'person" + i + "')");
+        }
+        statement.close();
+
+        managed = new ManagedDataSource(physical, transactionManager, transactionManager);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        direct.createStatement().execute("SHUTDOWN");
+    }
+
+    @Benchmark
+    public int direct() throws Exception {
+        transactionManager.begin();
+        try {
+            return lookups(direct);
+        } finally {
+            transactionManager.commit();
+        }
+    }
+
+    @Benchmark
+    public int managed() throws Exception {
+        transactionManager.begin();
+        try {
+            final Connection connection = managed.getConnection();
+            try {
+                return lookups(connection);
+            } finally {
+                connection.close();
+            }
+        } finally {
+            transactionManager.commit();
+        }
+    }
+
+    @Benchmark
+    public int proxied() throws Exception {
+        transactionManager.begin();
+        try {
+            final Connection connection = Reflective.proxy(Connection.class, managed.getConnection());
+            try {
+                return lookups(connection);
+            } finally {
+                connection.close();
+            }
+        } finally {
+            transactionManager.commit();
+        }
+    }
+
+    private static int lookups(final Connection connection) throws SQLException {
+        int found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            final PreparedStatement statement = connection.prepareStatement("SELECT NAME FROM PERSON WHERE ID = ?");
+            try {
+                statement.setInt(1, i);
+                final ResultSet rs = statement.executeQuery();
+                try {
+                    if (rs.next() && rs.getString(1) != null) {
+                        found++;
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                statement.close();
+            }
+        }
+        return found;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ManagedConnectionPerfRunner.class.getSimpleName())
+                .forks(0)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    // same work per call as the former InvocationHandler wrappers: name checks, reflective call, statement wrapping
+    private static final class Reflective implements InvocationHandler {
+        private final Object delegate;
+
+        private Reflective(final Object delegate) {
+            this.delegate = delegate;
+        }
+
+        private static <T> T proxy(final Class<T> api, final T delegate) {
+            return api.cast(Proxy.newProxyInstance(ManagedConnectionPerfRunner.class.getClassLoader(), new Class<?>[]{api}, new Reflective(delegate)));
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            final String mtdName = method.getName();
+            if ("toString".equals(mtdName) || "hashCode".equals(mtdName) || "equals".equals(mtdName)) {
+                return method.invoke(delegate, args);
+            }
+
+            final Object result;
+            try {
+                result = method.invoke(delegate, args);
+            } catch (final InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+
+            if ("prepareStatement".equals(mtdName)) {
+                return proxy(PreparedStatement.class, (PreparedStatement) result);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.timer;
+
+import org.apache.openejb.BeanContext;
+import org.apache.openejb.core.timer.TimingWheelEjbTimerService;
+import org.apache.openejb.jee.EnterpriseBean;
+import org.apache.openejb.jee.SingletonBean;
+import org.apache.openejb.junit.ApplicationComposer;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.spi.ContainerSystem;
+import org.apache.openejb.testing.Configuration;
+import org.apache.openejb.testing.Module;
+import org.apache.openejb.testng.PropertiesBuilder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Timeout;
+import javax.ejb.Timer;
+import javax.ejb.TimerConfig;
+import javax.ejb.TimerService;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(ApplicationComposer.class)
+public class TimingWheelTimerTest {
+    @Configuration
+    public Properties config() {
+        return new PropertiesBuilder().p(TimingWheelEjbTimerService.OPENEJB_TIMER_SERVICE, TimingWheelEjbTimerService.WHEEL).build();
+    }
+
+    @Module
+    public EnterpriseBean bean() {
+        return new SingletonBean(WheelTimers.class).localBean();
+    }
+
+    @EJB
+    private WheelTimers bean;
+
+    @Test
+    public void timers() throws InterruptedException {
+        final BeanContext beanContext = SystemInstance.get().getComponent(ContainerSystem.class).getBeanContext("WheelTimers");
+        assertTrue(TimingWheelEjbTimerService.class.isInstance(beanContext.getEjbTimerService()));
+
+        final Timer cancelled = bean.single(100, "cancelled");
+        bean.single(100, "single");
+        bean.interval(50, "interval");
+        cancelled.cancel();
+
+        assertTrue(bean.await(1, TimeUnit.MINUTES));
+        Thread.sleep(200);
+        assertEquals(0, bean.cancelled.get());
+        assertEquals(1, bean.single.get());
+        assertTrue(bean.interval.get() >= 3);
+        assertTrue(bean.schedule.get() >= 1);
+    }
+
+    @Singleton
+    @Lock(LockType.READ)
+    public static class WheelTimers {
+        private final AtomicInteger cancelled = new AtomicInteger();
+        private final AtomicInteger single = new AtomicInteger();
+        private final AtomicInteger interval = new AtomicInteger();
+        private final AtomicInteger schedule = new AtomicInteger();
+        private final CountDownLatch latch = new CountDownLatch(5);
+
+        @Resource
+        private TimerService timerService;
+
+        public Timer single(final long duration, final String info) {
+            return timerService.createSingleActionTimer(duration, new TimerConfig(info, false));
+        }
+
+        public Timer interval(final long interval, final String info) {
+            return timerService.createIntervalTimer(interval, interval, new TimerConfig(info, false));
+        }
+
+        public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+            return latch.await(timeout, unit);
+        }
+
+        @Schedule(hour = "*", minute = "*", second = "*", persistent = false)
+        public void everySecond() {
+            schedule.incrementAndGet();
+            latch.countDown();
+        }
+
+        @Timeout
+        public void timeout(final Timer timer) {
+            if ("cancelled".equals(timer.getInfo())) {
+                cancelled.incrementAndGet();
+            } else if ("single".equals(timer.getInfo())) {
+                single.incrementAndGet();
+                latch.countDown();
+            } else if ("interval".equals(timer.getInfo())) {
+                if (interval.incrementAndGet() == 3) {
+                    timer.cancel();
+                    latch.countDown();
+                    latch.countDown();
+                    latch.countDown();
+                }
+            }
+        }
+    }
+}
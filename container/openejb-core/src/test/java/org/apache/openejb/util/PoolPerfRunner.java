@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Compares the synchronized and the striped idle storage of {@link Pool}
+ * with a pop/push cycle as done by the stateless container on each call.
+ * <p/>
+ * Run the main method, it executes the benchmark from 1 to 2 * cores threads.
+ */
+@State(Scope.Benchmark)
+public class PoolPerfRunner {
+    @Param({"false", "true"})
+    private boolean striped;
+
+    private Pool<Object> pool;
+
+    @Setup
+    public void setup() {
+        final Pool.Builder<Object> builder = new Pool.Builder<Object>();
+        builder.setPoolSize(Runtime.getRuntime().availableProcessors() * 2);
+        builder.setStriped(striped);
+        pool = builder.build();
+        while (pool.add(new Object())) {
+            // fill
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pool.close(1, TimeUnit.SECONDS);
+    }
+
+    @Benchmark
+    public Object popPush() throws InterruptedException, TimeoutException {
+        final Pool<Object>.Entry entry = pool.pop(1, TimeUnit.MINUTES);
+        if (entry == null) {
+            final Object instance = new Object();
+            pool.push(instance);
+            return instance;
+        }
+        final Object instance = entry.get();
+        pool.push(entry);
+        return instance;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final int max = Runtime.getRuntime().availableProcessors() * 2;
+        for (int threads = 1; threads <= max; threads *= 2) {
+            new Runner(new OptionsBuilder()
+                    .include(PoolPerfRunner.class.getSimpleName())
+                    .forks(0)
+                    .warmupIterations(5)
+                    .measurementIterations(5)
+                    .threads(threads)
+                    .build())
+                    .run();
+        }
+    }
+}
@@ -56,6 +56,14 @@ public class PoolTest extends TestCase {
         exerciseStrictPool(5, 5);
     }
 
+    public void testStripedBasics() throws Exception {
+        System.out.println("PoolTest.testStripedBasics");
+        exerciseStrictPool(1, 0, true);
+        exerciseStrictPool(3, 0, true);
+        exerciseStrictPool(4, 2, true);
+        exerciseStrictPool(5, 5, true);
+    }
+
     public void testEmptyPool() throws Exception {
         System.out.println("PoolTest.testEmptyPool");
         final int max = 4;
@@ -165,9 +173,13 @@ public class PoolTest extends TestCase {
     }
 
     private void exerciseStrictPool(final int max, final int min) throws InterruptedException {
+        exerciseStrictPool(max, min, false);
+    }
+
+    private void exerciseStrictPool(final int max, final int min, final boolean striped) throws InterruptedException {
         Bean.instances.set(0);
 
-        final Pool<String> pool = new Pool<String>(max, min, true);
+        final Pool<String> pool = new Pool<String>(max, min, true, 0, 0, 0, null, null, false, -1, false, false, striped);
 
         // Fill the pool
         for (int i = 0; i < max; i++) {
@@ -213,9 +225,21 @@ public class PoolTest extends TestCase {
 
     public void testStrictMultiThreaded() throws Exception {
         System.out.println("PoolTest.testStrictMultiThreaded");
+        exerciseStrictMultiThreaded(new Pool(10, 5, true));
+    }
+
+    public void testStripedMultiThreaded() throws Exception {
+        System.out.println("PoolTest.testStripedMultiThreaded");
+        final Pool.Builder builder = new Pool.Builder();
+        builder.setPoolSize(10);
+        builder.setMinSize(5);
+        builder.setStriped(true);
+        exerciseStrictMultiThreaded(builder.build());
+    }
+
+    private void exerciseStrictMultiThreaded(final Pool pool) throws Exception {
         final int threadCount = 200;
 
-        final Pool pool = new Pool(10, 5, true);
         final CountDownLatch startPistol = new CountDownLatch(1);
         final CountDownLatch startingLine = new CountDownLatch(10);
         final CountDownLatch finishingLine = new CountDownLatch(threadCount);
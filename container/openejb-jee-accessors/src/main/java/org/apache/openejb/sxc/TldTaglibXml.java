@@ -19,7 +19,6 @@ package org.apache.openejb.sxc;
 import org.apache.openejb.jee.TldTaglib;
 import org.apache.openejb.jee.TldTaglib$JAXB;
 import org.apache.openejb.loader.IO;
-import org.metatype.sxc.util.XoXMLStreamReaderImpl;
 
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.util.StreamReaderDelegate;
@@ -34,14 +33,14 @@ import java.net.URL;
 public class TldTaglibXml {
 
     public static TldTaglib unmarshal(final InputStream inputStream) throws Exception {
-        return Sxc.unmarshalJavaee(new TldTaglib$JAXB(), inputStream);
+        final XMLStreamReader filter = new TaglibNamespaceFilter(Sxc.prepareReader(inputStream));
+        return Sxc.unmarhsal(new TldTaglib$JAXB(), filter);
     }
 
     public static TldTaglib unmarshal(final URL url) throws Exception {
         final InputStream inputStream = IO.read(url);
         try {
-            final XMLStreamReader filter = new TaglibNamespaceFilter(Sxc.prepareReader(inputStream));
-            return Sxc.unmarhsal(new TldTaglib$JAXB(), new XoXMLStreamReaderImpl(filter));
+            return unmarshal(inputStream);
         } finally {
             IO.close(inputStream);
         }
@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+    * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.sxc;
+
+import junit.framework.TestCase;
+import org.apache.openejb.jee.Connector;
+import org.apache.openejb.jee.JaxbJavaee;
+import org.apache.openejb.loader.IO;
+
+import java.io.InputStream;
+import java.net.URL;
+
+public class ConnectorXmlTest extends TestCase {
+
+    public void testSameAsJaxb() throws Exception {
+        final URL resource = getClass().getClassLoader().getResource("connector-1.6-example.xml");
+
+        final Connector connector = ConnectorXml.unmarshal(resource);
+        final Connector expected;
+        final InputStream is = IO.read(resource);
+        try {
+            expected = (Connector) JaxbJavaee.unmarshalJavaee(Connector.class, is);
+        } finally {
+            IO.close(is);
+        }
+
+        assertEquals("vendor-name0", connector.getVendorName());
+        assertEquals(expected.getVendorName(), connector.getVendorName());
+        assertEquals(expected.getEisType(), connector.getEisType());
+        assertEquals(expected.getVersion(), connector.getVersion());
+        assertEquals(expected.getResourceAdapter().getResourceAdapterClass(), connector.getResourceAdapter().getResourceAdapterClass());
+        assertEquals(expected.getResourceAdapter().getOutboundResourceAdapter().getConnectionDefinition().size(),
+            connector.getResourceAdapter().getOutboundResourceAdapter().getConnectionDefinition().size());
+    }
+}
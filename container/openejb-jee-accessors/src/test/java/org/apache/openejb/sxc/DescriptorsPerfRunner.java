@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+    * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.sxc;
+
+import org.apache.openejb.jee.Application;
+import org.apache.openejb.jee.ApplicationClient;
+import org.apache.openejb.jee.Connector;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.FacesConfig;
+import org.apache.openejb.jee.HandlerChains;
+import org.apache.openejb.jee.JaxbJavaee;
+import org.apache.openejb.jee.TldTaglib;
+import org.apache.openejb.jee.WebApp;
+import org.apache.openejb.loader.IO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the descriptors of a small application (ejb-jar.xml, web.xml, a TLD, ra.xml, application.xml,
+ * application-client.xml, handler chains and faces-config.xml) the way deployments did with JAXB contexts
+ * and with the generated accessors (sxc, StAX without JAXBContext).
+ * <p/>
+ * Each iteration is a single shot in a fresh fork so the time includes what a server boot pays: creating
+ * the JAXB contexts (reflection over the whole model) or loading the accessor classes. Run the main method,
+ * add -bm avgt with warmup iterations to compare the steady state once the contexts are cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DescriptorsPerfRunner {
+    private byte[] ejbJar;
+    private byte[] webApp;
+    private byte[] taglib;
+    private byte[] connector;
+    private byte[] application;
+    private byte[] applicationClient;
+    private byte[] handlerChains;
+    private byte[] facesConfig;
+
+    @Setup
+    public void setup() throws IOException {
+        ejbJar = read("daytrader-ejb-jar.xml");
+        webApp = read("web-example.xml");
+        taglib = read("tld-example.xml");
+        connector = read("connector-1.6-example.xml");
+        application = read("application-example.xml");
+        applicationClient = read("application-client-example.xml");
+        handlerChains = read("handler.xml");
+        facesConfig = read("a-faces-config-22.xml");
+    }
+
+    @Benchmark
+    public void jaxb(final Blackhole blackhole) throws Exception {
+        blackhole.consume(JaxbJavaee.unmarshalJavaee(EjbJar.class, in(ejbJar)));
+        blackhole.consume(JaxbJavaee.unmarshalJavaee(WebApp.class, in(webApp)));
+        blackhole.consume(JaxbJavaee.unmarshalTaglib(TldTaglib.class, in(taglib)));
+        blackhole.consume(JaxbJavaee.unmarshalJavaee(Connector.class, in(connector)));
+        blackhole.consume(JaxbJavaee.unmarshalJavaee(Application.class, in(application)));
+        blackhole.consume(JaxbJavaee.unmarshalJavaee(ApplicationClient.class, in(applicationClient)));
+        blackhole.consume(JaxbJavaee.unmarshalHandlerChains(HandlerChains.class, in(handlerChains)));
+        blackhole.consume(JaxbJavaee.unmarshalJavaee(FacesConfig.class, in(facesConfig)));
+    }
+
+    @Benchmark
+    public void sxc(final Blackhole blackhole) throws Exception {
+        blackhole.consume(EjbJarXml.unmarshal(in(ejbJar)));
+        blackhole.consume(WebXml.unmarshal(in(webApp)));
+        blackhole.consume(TldTaglibXml.unmarshal(in(taglib)));
+        blackhole.consume(ConnectorXml.unmarshal(in(connector)));
+        blackhole.consume(ApplicationXml.unmarshal(in(application)));
+        blackhole.consume(ApplicationClientXml.unmarshal(in(applicationClient)));
+        blackhole.consume(HandlerChainsXml.unmarshal(in(handlerChains)));
+        blackhole.consume(FacesConfigXml.unmarshal(in(facesConfig)));
+    }
+
+    private static InputStream in(final byte[] descriptor) {
+        return new ByteArrayInputStream(descriptor);
+    }
+
+    private static byte[] read(final String resource) throws IOException {
+        return IO.slurp(DescriptorsPerfRunner.class.getClassLoader().getResource(resource)).getBytes("UTF-8");
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DescriptorsPerfRunner.class.getSimpleName())
+                .forks(10)
+                .warmupIterations(0)
+                .measurementIterations(1)
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -24,11 +24,12 @@ import java.io.OutputStream;
 import java.io.Reader;
 import java.net.URL;
 import java.util.AbstractMap;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
@@ -62,7 +63,7 @@ import org.xml.sax.helpers.XMLFilterImpl;
 public class JaxbJavaee {
     public static final ThreadLocal<Set<String>> currentPublicId = new ThreadLocal<Set<String>>();
 
-    private static final Map<Class<?>, JAXBContext> jaxbContexts = new HashMap<Class<?>, JAXBContext>();
+    private static final ConcurrentMap<Class<?>, JAXBContext> jaxbContexts = new ConcurrentHashMap<Class<?>, JAXBContext>();
 
     public static <T> String marshal(final Class<T> type, final Object object) throws JAXBException {
         final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -85,7 +86,10 @@ public class JaxbJavaee {
         JAXBContext jaxbContext = jaxbContexts.get(type);
         if (jaxbContext == null) {
             jaxbContext = JAXBContextFactory.newInstance(type);
-            jaxbContexts.put(type, jaxbContext);
+            final JAXBContext existing = jaxbContexts.putIfAbsent(type, jaxbContext);
+            if (existing != null) {
+                jaxbContext = existing;
+            }
         }
         return jaxbContext;
     }
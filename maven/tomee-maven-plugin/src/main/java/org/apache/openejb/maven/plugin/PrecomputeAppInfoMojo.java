@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *  
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.apache.openejb.maven.plugin;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.openejb.assembler.classic.OpenEjbConfiguration;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.config.DeploymentLoader;
+import org.apache.openejb.config.PrecomputedAppInfo;
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.SystemInstance;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Computes the deployment of the application (descriptors, scanning, auto-configuration) and stores it
+ * in the archive so the server doesn't do it again at startup.
+ * <p/>
+ * The server configuration (openejb.xml/tomee.xml) used in production should be provided with config
+ * since the containers and resources it defines are used to resolve the references of the application.
+ * The server only uses the stored deployment with openejb.precomputed-appinfo=true.
+ */
+@Mojo(name = "precompute-appinfo", defaultPhase = LifecyclePhase.PACKAGE, requiresDependencyResolution = ResolutionScope.RUNTIME)
+public class PrecomputeAppInfoMojo extends AbstractMojo {
+    @Parameter(property = "tomee-plugin.precompute.archive", defaultValue = "${project.build.directory}/${project.build.finalName}.${project.packaging}")
+    protected File archive;
+
+    @Parameter(property = "tomee-plugin.precompute.config")
+    protected File config;
+
+    @Parameter(property = "tomee-plugin.precompute.work", defaultValue = "${project.build.directory}/precompute-appinfo")
+    protected File workDir;
+
+    @Parameter
+    protected Map<String, String> systemVariables = new HashMap<String, String>();
+
+    @Parameter(property = "tomee-plugin.precompute.skip", defaultValue = "false")
+    protected boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Skipping AppInfo precomputation");
+            return;
+        }
+        if (!archive.exists()) {
+            throw new MojoFailureException(archive.getAbsolutePath() + " doesn't exist");
+        }
+
+        final Properties properties = new Properties();
+        properties.putAll(systemVariables);
+        properties.setProperty("openejb.base", Files.mkdirs(workDir).getAbsolutePath());
+        properties.setProperty("openejb.home", workDir.getAbsolutePath());
+        properties.setProperty("tomee.unpack.dir", "unpacked"); // relative to openejb.base, don't touch target/<finalName>
+        properties.setProperty("openejb.deployments.classpath", "false");
+        properties.setProperty(PrecomputedAppInfo.ACTIVE, "false");
+        if (config != null) {
+            properties.setProperty("openejb.configuration", config.getAbsolutePath());
+        }
+
+        try {
+            SystemInstance.init(properties);
+
+            final OpenEjbConfiguration configuration = new ConfigurationFactory(true).getOpenEjbConfiguration();
+            final PrecomputedAppInfo precomputed = new ConfigurationFactory(true, configuration).precomputeApplication(archive);
+            precomputed.store(archive, DeploymentLoader.unpack(archive));
+
+            getLog().info("Stored " + PrecomputedAppInfo.LOCATION + " in " + archive.getAbsolutePath());
+        } catch (final Exception e) {
+            throw new MojoExecutionException("Can't precompute the AppInfo of " + archive.getAbsolutePath() + ": " + e.getMessage(), e);
+        } finally {
+            SystemInstance.reset();
+        }
+    }
+}
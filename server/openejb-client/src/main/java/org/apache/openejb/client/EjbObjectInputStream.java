@@ -34,8 +34,20 @@ public class EjbObjectInputStream extends ObjectInputStream {
 
     @Override
     protected Class<?> resolveClass(final ObjectStreamClass classDesc) throws IOException, ClassNotFoundException {
-        final String n = DEFAULT.check(classDesc.getName());
-        final ClassLoader classloader = getClassloader();
+        return resolveClass(classDesc.getName(), getClassloader());
+    }
+
+    /**
+     * Resolves a class read from a stream applying the serialization whitelist and blacklist.
+     *
+     * @param name        the class name read from the stream
+     * @param classloader the loader to try first
+     * @return the class
+     * @throws ClassNotFoundException if neither the loader nor the runtime knows the class
+     * @throws SecurityException      if the class isn't allowed to be deserialized
+     */
+    public static Class<?> resolveClass(final String name, final ClassLoader classloader) throws ClassNotFoundException {
+        final String n = DEFAULT.check(name);
         try {
             return Class.forName(n, false, classloader);
         } catch (ClassNotFoundException e) {
@@ -29,7 +29,7 @@ import java.util.List;
  * Where strategy and urlList are variables
  * <p/>
  * strategy = the ConnectionStrategy name, such as "sticky", "round-robin",
- * or "random".  This parameter is optional.
+ * "random" or "latency".  This parameter is optional.
  * <p/>
  * urlList = a comma separated list connection URIs.  There must be a
  * ConnectionFactory installed for the associated URI.
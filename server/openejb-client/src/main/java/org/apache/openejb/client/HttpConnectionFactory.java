@@ -17,33 +17,199 @@
  */
 package org.apache.openejb.client;
 
+import org.apache.openejb.client.event.ConnectionOpened;
+import org.apache.openejb.client.event.ConnectionPoolCreated;
+import org.apache.openejb.client.event.ConnectionPoolTimeout;
+
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.CookieHandler;
 import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
 
 /**
+ * Requests are sent over HTTP/1.1 keep-alive sockets pooled per server uri: a pool opens at most
+ * {@link #PROPERTY_POOL_SIZE} connections, a caller waits {@link #PROPERTY_POOL_TIMEOUT} ms for one
+ * of them and sockets idle for more than {@link #PROPERTY_POOL_IDLE} ms are not reused. There is no
+ * background thread: idle sockets are closed when the pool of their server is used again, a socket
+ * the server closed meanwhile is detected when it is taken. Requests up to {@link #PROPERTY_REQUEST_BUFFER}
+ * bytes are sent with a Content-Length, bigger ones are streamed in chunks while they are written.
+ * <p/>
+ * Cookies go through the default {@link CookieHandler} and a host name the certificate doesn't match
+ * is checked by the default {@link javax.net.ssl.HostnameVerifier}, as with HttpURLConnection.
+ * Redirects and {@link java.net.Authenticator} challenges are not followed by the pooled connections
+ * so pooling is only used when {@link #PROPERTY_POOLED} or the uri parameter pooled is true.
+ * <p/>
+ * The uri parameters poolSize, poolTimeout, idleTimeout and compression override these settings per
+ * server. Without pooling, or with a proxy selected for the uri, a HttpURLConnection is used per request.
+ *
  * @version $Revision$ $Date$
  */
 public class HttpConnectionFactory implements ConnectionFactory {
+
+    public static final String PROPERTY_POOLED = "openejb.client.http.pooled";
+    public static final String PROPERTY_POOL_SIZE = "openejb.client.http.pool.size";
+    public static final String PROPERTY_POOL_TIMEOUT = "openejb.client.http.pool.timeout";
+    public static final String PROPERTY_POOL_IDLE = "openejb.client.http.pool.idle";
+    public static final String PROPERTY_REQUEST_BUFFER = "openejb.client.http.request.buffer";
+
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+    private static final byte[] TRANSFER_ENCODING_CHUNKED = "Transfer-Encoding: chunked\r\n\r\n".getBytes(ISO_8859_1);
+    private static final int MAX_LINE = 8192;
+
     // this map only ensures JVM keep alive socket caching works properly
     private final ConcurrentMap<URI, SSLSocketFactory> socketFactoryMap = new ConcurrentHashMap<>();
+    private final ConcurrentMap<URI, Pool> pools = new ConcurrentHashMap<>();
+    private final Set<URI> notPooled = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
+
+    private final boolean pooled;
+    private final int size;
+    private final long timeoutPool;
+    private final long timeoutIdle;
+    private final int requestBuffer;
+
+    public HttpConnectionFactory() {
+        final Properties p = System.getProperties();
+        this.pooled = Boolean.parseBoolean(p.getProperty(PROPERTY_POOLED, "false"));
+        this.size = SocketConnectionFactory.getInt(p, PROPERTY_POOL_SIZE, 10);
+        this.timeoutPool = SocketConnectionFactory.getLong(p, PROPERTY_POOL_TIMEOUT, 10000);
+        this.timeoutIdle = SocketConnectionFactory.getLong(p, PROPERTY_POOL_IDLE, 15000);
+        this.requestBuffer = SocketConnectionFactory.getInt(p, PROPERTY_REQUEST_BUFFER, 65536);
+    }
 
     @Override
     public Connection getConnection(final URI uri) throws IOException {
+        if (!notPooled.contains(uri)) {
+            final Pool pool = getPool(uri);
+            if (pool != null) {
+                return new PooledHttpConnection(pool);
+            }
+        }
         return new HttpConnection(uri, socketFactoryMap);
     }
 
+    private Pool getPool(final URI uri) {
+        Pool pool = pools.get(uri);
+        if (pool != null) {
+            return pool;
+        }
+
+        final Map<String, String> params = parameters(uri);
+        if (!Boolean.parseBoolean(value(params, "pooled", Boolean.toString(pooled))) || !isDirect(uri)) {
+            notPooled.add(uri);
+            return null;
+        }
+
+        final Pool created = new Pool(uri, params,
+            Integer.parseInt(value(params, "poolSize", Integer.toString(size))),
+            Long.parseLong(value(params, "poolTimeout", Long.toString(timeoutPool))),
+            Long.parseLong(value(params, "idleTimeout", Long.toString(timeoutIdle))),
+            requestBuffer,
+            sslSocketFactory(uri, params, socketFactoryMap));
+        pool = pools.putIfAbsent(uri, created);
+        if (pool == null) {
+            pool = created;
+            Client.fireEvent(new ConnectionPoolCreated(uri, pool.size, pool.timeout, pool.timeUnit));
+        }
+        return pool;
+    }
+
+    private static boolean isDirect(final URI uri) {
+        final ProxySelector selector = ProxySelector.getDefault();
+        if (selector == null) {
+            return true;
+        }
+        final List<Proxy> proxies = selector.select(uri);
+        return proxies == null || proxies.isEmpty() || proxies.get(0).type() == Proxy.Type.DIRECT;
+    }
+
+    private static Map<String, String> parameters(final URI uri) {
+        try {
+            return MulticastConnectionFactory.URIs.parseParamters(uri);
+        } catch (final URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid uri " + uri.toString(), e);
+        }
+    }
+
+    private static String value(final Map<String, String> params, final String name, final String defaultValue) {
+        final String value = params.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static SSLSocketFactory sslSocketFactory(final URI uri, final Map<String, String> params,
+                                                     final ConcurrentMap<URI, SSLSocketFactory> socketFactoryMap) {
+        if (!params.containsKey("sslKeyStore") && !params.containsKey("sslTrustStore")) {
+            return "https".equalsIgnoreCase(uri.getScheme()) ? HttpsURLConnection.getDefaultSSLSocketFactory() : null;
+        }
+
+        try {
+            SSLSocketFactory sslSocketFactory = socketFactoryMap.get(uri);
+            if (sslSocketFactory == null) {
+                sslSocketFactory = new SSLContextBuilder(params).build().getSocketFactory();
+                final SSLSocketFactory existing = socketFactoryMap.putIfAbsent(uri, sslSocketFactory);
+                if (existing != null) {
+                    sslSocketFactory = existing;
+                }
+            }
+            return sslSocketFactory;
+        } catch (final NoSuchAlgorithmException | KeyManagementException e) {
+            throw new ClientRuntimeException(e.getMessage(), e);
+        }
+    }
+
+    private static String readLine(final InputStream in) throws IOException {
+        final StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                throw new EOFException("Unexpected end of the response");
+            }
+            if (c != '\r') {
+                if (line.length() == MAX_LINE) {
+                    throw new IOException("Response line longer than " + MAX_LINE + " characters");
+                }
+                line.append((char) c);
+            }
+        }
+        return line.toString();
+    }
+
     public static class HttpConnection implements Connection {
         private final ConcurrentMap<URI, SSLSocketFactory> socketFactoryMap;
 
@@ -57,12 +223,7 @@ public class HttpConnectionFactory implements ConnectionFactory {
             this.socketFactoryMap = socketFactoryMap;
             final URL url = uri.toURL();
 
-            final Map<String, String> params;
-            try {
-                params = MulticastConnectionFactory.URIs.parseParamters(uri);
-            } catch (final URISyntaxException e) {
-                throw new IllegalArgumentException("Invalid uri " + uri.toString(), e);
-            }
+            final Map<String, String> params = parameters(uri);
 
             httpURLConnection = (HttpURLConnection) url.openConnection();
             httpURLConnection.setDoOutput(true);
@@ -81,20 +242,7 @@ public class HttpConnectionFactory implements ConnectionFactory {
             }
 
             if (params.containsKey("sslKeyStore") || params.containsKey("sslTrustStore")) {
-                try {
-                    SSLSocketFactory sslSocketFactory = socketFactoryMap.get(uri);
-                    if (sslSocketFactory == null) {
-                        sslSocketFactory = new SSLContextBuilder(params).build().getSocketFactory();
-                        final SSLSocketFactory existing = socketFactoryMap.putIfAbsent(uri, sslSocketFactory);
-                        if (existing != null) {
-                            sslSocketFactory = existing;
-                        }
-                    }
-
-                    ((HttpsURLConnection) httpURLConnection).setSSLSocketFactory(sslSocketFactory);
-                } catch (final NoSuchAlgorithmException | KeyManagementException e) {
-                    throw new ClientRuntimeException(e.getMessage(), e);
-                }
+                ((HttpsURLConnection) httpURLConnection).setSSLSocketFactory(sslSocketFactory(uri, params, socketFactoryMap));
             }
 
             try {
@@ -164,4 +312,643 @@ public class HttpConnectionFactory implements ConnectionFactory {
         }
     }
 
+    /**
+     * Borrows a keep-alive socket of the pool until it is closed. The request is sent when the
+     * response is asked for, unless it got bigger than the request buffer and is already streaming.
+     */
+    private static final class PooledHttpConnection implements Connection {
+
+        private final Pool pool;
+        private PooledSocket socket;
+        private boolean reused;
+        private RequestOutputStream request;
+        private ResponseInputStream response;
+        private InputStream body;
+        private boolean released;
+
+        private PooledHttpConnection(final Pool pool) throws IOException {
+            this.pool = pool;
+            this.socket = pool.get();
+            this.reused = socket.lastUsed > 0;
+        }
+
+        @Override
+        public void discard() {
+            if (released) {
+                return;
+            }
+            released = true;
+            socket.close();
+            pool.put(null);
+        }
+
+        @Override
+        public URI getURI() {
+            return pool.uri;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (released) {
+                return;
+            }
+            released = true;
+
+            if (response != null && response.keepAlive && response.drain(pool.requestBuffer)) {
+                pool.put(socket);
+            } else {
+                socket.close();
+                pool.put(null);
+            }
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            if (released) {
+                throw new IOException("Connection to " + pool.uri + " already closed");
+            }
+            if (request == null) {
+                request = new RequestOutputStream();
+            }
+            return request;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (body != null) {
+                return body;
+            }
+            if (released) {
+                throw new IOException("Connection to " + pool.uri + " already closed");
+            }
+
+            try {
+                send();
+                awaitResponse();
+            } catch (final SocketTimeoutException e) {
+                throw e;
+            } catch (final IOException e) {
+                if (!reused || request != null && request.chunked) {
+                    throw e;
+                }
+
+                // the server closed the kept alive socket before reading the request, send it on a new one
+                socket.close();
+                socket = pool.connect();
+                reused = false;
+                send();
+                awaitResponse();
+            }
+
+            response = new ResponseInputStream(socket.in);
+            pool.storeCookies(response.cookies);
+            if (response.status >= 400) {
+                response.keepAlive = false;
+                throw new IOException("Server returned HTTP response code: " + response.status + " for URL: " + pool.uri);
+            }
+
+            body = response.gzip ? new GZIPInputStream(response) : response;
+            return body;
+        }
+
+        private void send() throws IOException {
+            if (request == null) {
+                socket.out.write(pool.getHead);
+                pool.writeCookies(socket.out);
+                socket.out.write(CRLF);
+            } else {
+                request.finish();
+            }
+            socket.out.flush();
+        }
+
+        private void awaitResponse() throws IOException {
+            final InputStream in = socket.in;
+            in.mark(1);
+            if (in.read() < 0) {
+                throw new EOFException("Connection closed by " + pool.uri);
+            }
+            in.reset();
+        }
+
+        private final class RequestOutputStream extends OutputStream {
+            private final byte[] buffer = new byte[pool.requestBuffer];
+            private int count;
+            private boolean chunked;
+            private boolean sent;
+
+            @Override
+            public void write(final int b) throws IOException {
+                if (count == buffer.length) {
+                    flushChunk();
+                }
+                buffer[count++] = (byte) b;
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                if (count + len > buffer.length) {
+                    flushChunk();
+                    if (len >= buffer.length) {
+                        writeChunk(b, off, len);
+                        return;
+                    }
+                }
+                System.arraycopy(b, off, buffer, count, len);
+                count += len;
+            }
+
+            /**
+             * Only a streaming request is flushed, a small one waits for the response to be sent in one piece.
+             */
+            @Override
+            public void flush() throws IOException {
+                if (chunked) {
+                    flushChunk();
+                    socket.out.flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                // the request ends when the response is read
+            }
+
+            private void flushChunk() throws IOException {
+                if (sent) {
+                    throw new IOException("Request to " + pool.uri + " already sent");
+                }
+                if (!chunked) {
+                    chunked = true;
+                    socket.out.write(pool.postHead);
+                    pool.writeCookies(socket.out);
+                    socket.out.write(TRANSFER_ENCODING_CHUNKED);
+                }
+                if (count > 0) {
+                    writeChunk(buffer, 0, count);
+                    count = 0;
+                }
+            }
+
+            private void writeChunk(final byte[] b, final int off, final int len) throws IOException {
+                final OutputStream out = socket.out;
+                out.write(Integer.toHexString(len).getBytes(ISO_8859_1));
+                out.write(CRLF);
+                out.write(b, off, len);
+                out.write(CRLF);
+            }
+
+            private void finish() throws IOException {
+                if (chunked) {
+                    flushChunk();
+                    socket.out.write(LAST_CHUNK);
+                } else {
+                    socket.out.write(pool.postHead);
+                    pool.writeCookies(socket.out);
+                    socket.out.write(("Content-Length: " + count + "\r\n\r\n").getBytes(ISO_8859_1));
+                    socket.out.write(buffer, 0, count);
+                }
+                sent = true;
+            }
+        }
+    }
+
+    /**
+     * The body of a response, delimited by its Content-Length, its chunks or the end of the connection.
+     */
+    private static final class ResponseInputStream extends InputStream {
+
+        private final InputStream in;
+        private final int status;
+        private final boolean gzip;
+        private final Map<String, List<String>> cookies = new HashMap<>();
+        private boolean keepAlive;
+        private boolean chunked;
+        private boolean inChunk;
+        private long remaining = -1;
+        private boolean eof;
+
+        private ResponseInputStream(final InputStream in) throws IOException {
+            this.in = in;
+
+            String statusLine;
+            int code;
+            boolean compressed;
+            do {
+                // HTTP/1.1 200 OK, 1xx informational responses are skipped
+                statusLine = readLine(in);
+                if (!statusLine.startsWith("HTTP/") || statusLine.length() < 12) {
+                    throw new IOException("Invalid HTTP status line: " + statusLine);
+                }
+                try {
+                    code = Integer.parseInt(statusLine.substring(9, 12));
+                } catch (final NumberFormatException e) {
+                    throw new IOException("Invalid HTTP status line: " + statusLine);
+                }
+
+                keepAlive = statusLine.startsWith("HTTP/1.1");
+                compressed = false;
+                String header;
+                while (!(header = readLine(in)).isEmpty()) {
+                    final int colon = header.indexOf(':');
+                    if (colon <= 0) {
+                        continue;
+                    }
+                    final String name = header.substring(0, colon).trim();
+                    final String value = header.substring(colon + 1).trim();
+                    if ("Content-Length".equalsIgnoreCase(name)) {
+                        try {
+                            remaining = Long.parseLong(value);
+                        } catch (final NumberFormatException e) {
+                            throw new IOException("Invalid Content-Length: " + value);
+                        }
+                    } else if ("Transfer-Encoding".equalsIgnoreCase(name)) {
+                        chunked = value.toLowerCase().contains("chunked");
+                    } else if ("Connection".equalsIgnoreCase(name)) {
+                        if ("close".equalsIgnoreCase(value)) {
+                            keepAlive = false;
+                        } else if ("keep-alive".equalsIgnoreCase(value)) {
+                            keepAlive = true;
+                        }
+                    } else if ("Content-Encoding".equalsIgnoreCase(name)) {
+                        compressed = "gzip".equalsIgnoreCase(value);
+                    } else if ("Set-Cookie".equalsIgnoreCase(name) || "Set-Cookie2".equalsIgnoreCase(name)) {
+                        List<String> values = cookies.get(name);
+                        if (values == null) {
+                            values = new ArrayList<>();
+                            cookies.put(name, values);
+                        }
+                        values.add(value);
+                    }
+                }
+            } while (code / 100 == 1);
+
+            status = code;
+            gzip = compressed;
+            if (chunked) {
+                remaining = 0;
+            } else if (status == 204 || status == 304 || remaining == 0) {
+                eof = true;
+            } else if (remaining < 0) {
+                keepAlive = false; // ends with the connection
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (eof) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (chunked && remaining == 0 && !nextChunk()) {
+                return -1;
+            }
+
+            final int n = in.read(b, off, remaining < 0 ? len : (int) Math.min(len, remaining));
+            if (n < 0) {
+                if (remaining < 0) {
+                    eof = true;
+                    return -1;
+                }
+                throw new EOFException("Unexpected end of the response");
+            }
+            if (remaining > 0) {
+                remaining -= n;
+                if (remaining == 0 && !chunked) {
+                    eof = true;
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            if (eof) {
+                return 0;
+            }
+            final int available = in.available();
+            return remaining < 0 ? available : (int) Math.min(available, remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // the connection reads what is left before going back to the pool
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (inChunk) {
+                readLine(in); // CRLF ending the previous chunk
+            }
+
+            final String line = readLine(in);
+            final int extension = line.indexOf(';');
+            try {
+                remaining = Long.parseLong((extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+            } catch (final NumberFormatException e) {
+                throw new IOException("Invalid chunk size: " + line);
+            }
+
+            if (remaining == 0) {
+                while (!readLine(in).isEmpty()) {
+                    // trailers
+                }
+                eof = true;
+                return false;
+            }
+            inChunk = true;
+            return true;
+        }
+
+        /**
+         * @return true if the end of the body was reached reading at most max bytes
+         */
+        private boolean drain(final int max) {
+            final byte[] skipped = new byte[Math.min(max, 8192)];
+            int total = 0;
+            try {
+                int n;
+                while (total <= max && (n = read(skipped, 0, skipped.length)) >= 0) {
+                    total += n;
+                }
+                return eof && total <= max;
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private static final class PooledSocket {
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private long lastUsed;
+
+        private PooledSocket(final Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        private boolean isStale(final long now, final long idleTimeout) {
+            if (now - lastUsed > idleTimeout || socket.isClosed()) {
+                return true;
+            }
+            try {
+                return in.available() > 0; // nothing is expected between two responses
+            } catch (final IOException e) {
+                return true;
+            }
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (final IOException e) {
+                //Ignore
+            }
+        }
+    }
+
+    private static final class Pool {
+
+        private final URI uri;
+        private final String host;
+        private final int port;
+        private final SSLSocketFactory sslSocketFactory;
+        private final int connectTimeout;
+        private final int readTimeout;
+        private final byte[] postHead;
+        private final byte[] getHead;
+        private final int requestBuffer;
+        private final int size;
+        private final long timeout;
+        private final long idleTimeout;
+        private final TimeUnit timeUnit = TimeUnit.MILLISECONDS;
+        private final Semaphore semaphore;
+        private final Deque<PooledSocket> idle = new ArrayDeque<>();
+        private volatile boolean verifyHostname; // the certificate doesn't match the host name
+
+        private Pool(final URI uri, final Map<String, String> params, final int size, final long timeout, final long idleTimeout,
+                     final int requestBuffer, final SSLSocketFactory sslSocketFactory) {
+            this.uri = uri;
+            this.host = uri.getHost();
+            this.port = uri.getPort() > 0 ? uri.getPort() : sslSocketFactory != null ? 443 : 80;
+            this.sslSocketFactory = sslSocketFactory;
+            this.connectTimeout = Integer.parseInt(value(params, "connectTimeout", "10000"));
+            this.readTimeout = Integer.parseInt(value(params, "readTimeout", "0"));
+            this.requestBuffer = requestBuffer;
+            this.size = size;
+            this.timeout = timeout;
+            this.idleTimeout = idleTimeout;
+            this.semaphore = new Semaphore(size);
+
+            final String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            final StringBuilder head = new StringBuilder(" ").append(path);
+            if (uri.getRawQuery() != null) {
+                head.append('?').append(uri.getRawQuery());
+            }
+            head.append(" HTTP/1.1\r\nHost: ").append(host);
+            if (uri.getPort() > 0) {
+                head.append(':').append(port);
+            }
+            head.append("\r\n");
+            if (Boolean.parseBoolean(value(params, "compression", "false"))) {
+                head.append("Accept-Encoding: gzip\r\n");
+            }
+            this.getHead = ("GET" + head).getBytes(ISO_8859_1);
+            this.postHead = ("POST" + head + "Content-Type: application/octet-stream\r\n").getBytes(ISO_8859_1);
+        }
+
+        private PooledSocket get() throws IOException {
+            try {
+                if (!this.semaphore.tryAcquire(this.timeout, this.timeUnit)) {
+                    final ConnectionPoolTimeoutException exception = new ConnectionPoolTimeoutException("No connections available in pool (size " +
+                        this.size +
+                        ").  Waited for " +
+                        this.timeout +
+                        " milliseconds for a connection.");
+                    Client.fireEvent(new ConnectionPoolTimeout(this.uri, this.size, this.timeout, this.timeUnit, exception));
+                    throw exception;
+                }
+            } catch (final InterruptedException e) {
+                Thread.interrupted();
+                throw new ConnectionPoolTimeoutException("Interrupted while waiting for a connection to " + this.uri);
+            }
+
+            final long now = System.currentTimeMillis();
+            synchronized (this.idle) {
+                PooledSocket socket;
+                while ((socket = this.idle.pollFirst()) != null) {
+                    if (!socket.isStale(now, this.idleTimeout)) {
+                        return socket;
+                    }
+                    socket.close();
+                }
+            }
+
+            try {
+                return connect();
+            } catch (final IOException | RuntimeException e) {
+                this.semaphore.release();
+                throw e;
+            }
+        }
+
+        private PooledSocket connect() throws IOException {
+            final PooledSocket pooled;
+            if (this.sslSocketFactory == null) {
+                pooled = new PooledSocket(open());
+            } else if (this.verifyHostname) {
+                pooled = new PooledSocket(verify(handshake(false), null));
+            } else {
+                SSLSocket sslSocket;
+                try {
+                    sslSocket = handshake(true);
+                } catch (final SSLHandshakeException e) {
+                    // as HttpsURLConnection, a host the certificate doesn't match can be accepted by the default HostnameVerifier
+                    try {
+                        sslSocket = verify(handshake(false), e);
+                    } catch (final IOException ignored) {
+                        throw e;
+                    }
+                    this.verifyHostname = true;
+                }
+                pooled = new PooledSocket(sslSocket);
+            }
+
+            Client.fireEvent(new ConnectionOpened(this.uri));
+            return pooled;
+        }
+
+        private Socket open() throws IOException {
+            final Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.connect(new InetSocketAddress(this.host, this.port), this.connectTimeout);
+                socket.setSoTimeout(this.readTimeout);
+                return socket;
+            } catch (final IOException | RuntimeException e) {
+                close(socket);
+                throw e;
+            }
+        }
+
+        /**
+         * @param identify true to check the host name against the certificate during the handshake
+         */
+        private SSLSocket handshake(final boolean identify) throws IOException {
+            final Socket socket = open();
+            try {
+                final SSLSocket sslSocket = (SSLSocket) this.sslSocketFactory.createSocket(socket, this.host, this.port, true);
+                if (identify) {
+                    final SSLParameters parameters = sslSocket.getSSLParameters();
+                    parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                    sslSocket.setSSLParameters(parameters);
+                }
+                sslSocket.startHandshake();
+                return sslSocket;
+            } catch (final IOException | RuntimeException e) {
+                close(socket);
+                throw e;
+            }
+        }
+
+        /**
+         * @param cause the failure of the host name identification if any
+         * @return the socket if the default HostnameVerifier accepts its session
+         */
+        private SSLSocket verify(final SSLSocket sslSocket, final SSLHandshakeException cause) throws IOException {
+            if (HttpsURLConnection.getDefaultHostnameVerifier().verify(this.host, sslSocket.getSession())) {
+                return sslSocket;
+            }
+            close(sslSocket);
+            if (cause != null) {
+                throw cause;
+            }
+            throw new SSLPeerUnverifiedException("Hostname " + this.host + " not verified");
+        }
+
+        private static void close(final Socket socket) {
+            try {
+                socket.close();
+            } catch (final IOException ignored) {
+                //Ignore
+            }
+        }
+
+        /**
+         * Writes the Cookie headers the default cookie handler has for this server.
+         */
+        private void writeCookies(final OutputStream out) throws IOException {
+            final CookieHandler handler = CookieHandler.getDefault();
+            if (handler == null) {
+                return;
+            }
+
+            final Map<String, List<String>> headers = handler.get(this.uri, Collections.<String, List<String>>emptyMap());
+            for (final Map.Entry<String, List<String>> header : headers.entrySet()) {
+                final String name = header.getKey();
+                final List<String> values = header.getValue();
+                if (!("Cookie".equalsIgnoreCase(name) || "Cookie2".equalsIgnoreCase(name)) || values == null || values.isEmpty()) {
+                    continue;
+                }
+
+                final StringBuilder line = new StringBuilder(name).append(": ");
+                for (int i = 0; i < values.size(); i++) {
+                    if (i > 0) {
+                        line.append("; ");
+                    }
+                    line.append(values.get(i));
+                }
+                out.write(line.append("\r\n").toString().getBytes(ISO_8859_1));
+            }
+        }
+
+        private void storeCookies(final Map<String, List<String>> cookies) throws IOException {
+            if (cookies.isEmpty()) {
+                return;
+            }
+            final CookieHandler handler = CookieHandler.getDefault();
+            if (handler != null) {
+                handler.put(this.uri, cookies);
+            }
+        }
+
+        /**
+         * @param socket the socket to keep alive, null if it was closed
+         */
+        private void put(final PooledSocket socket) {
+            if (socket != null) {
+                final long now = System.currentTimeMillis();
+                socket.lastUsed = now;
+                synchronized (this.idle) {
+                    this.idle.addFirst(socket);
+
+                    PooledSocket eldest;
+                    while ((eldest = this.idle.peekLast()) != null && now - eldest.lastUsed > this.idleTimeout) {
+                        this.idle.pollLast().close();
+                    }
+                }
+            }
+            this.semaphore.release();
+        }
+
+        @Override
+        public String toString() {
+            return "Pool{" +
+                "size=" + this.size +
+                ", available=" + this.semaphore.availablePermits() +
+                ", uri=" + this.uri +
+                '}';
+        }
+    }
 }
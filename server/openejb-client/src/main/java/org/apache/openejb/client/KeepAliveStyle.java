@@ -17,10 +17,21 @@
 package org.apache.openejb.client;
 
 /**
+ * The first byte a client writes for each request on a kept alive connection.
+ * <p/>
+ * MULTIPLEX is only written once, right after the connection is opened, and is followed
+ * by the client ProtocolMetaData. If the server answers with a protocol of at least 4.7 the
+ * connection then carries [int correlation id][int length][request bytes] frames in both
+ * directions, responses can come back in any order. A response frame with a length of
+ * {@link #MULTIPLEX_ERROR} is followed by a UTF message and means the server failed the request.
+ *
  * @version $Rev$ $Date$
  */
 public enum KeepAliveStyle {
     PING,
     PING_PONG,
-    PING_PING
+    PING_PING,
+    MULTIPLEX;
+
+    public static final int MULTIPLEX_ERROR = -1;
 }
@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client;
+
+import org.apache.openejb.client.event.ConnectionFailed;
+import org.apache.openejb.client.event.FailoverSelection;
+import org.apache.openejb.client.event.LatencyAwareFailoverSelection;
+import org.apache.openejb.client.event.Observes;
+import org.apache.openejb.client.event.RequestFailed;
+import org.apache.openejb.client.event.ServerEjected;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Selects the server expected to answer first.
+ * <p/>
+ * Each server has a score: the exponentially weighted moving average of the time its connections were
+ * used, and a failure rate raised by the {@link ConnectionFailed} and {@link RequestFailed} events.
+ * Both fade with {@link #PROPERTY_DECAY} ms so a server slow or failing a while ago is tried again.
+ * A connection compares two random servers, power of two choices style, and uses the one with the
+ * lowest latency weighted by its requests in progress and its failure rate: slow servers are avoided
+ * without sending all the load to the fastest one.
+ * <p/>
+ * A server failing {@link #PROPERTY_EJECT_FAILURES} times in a row is ejected for
+ * {@link #PROPERTY_EJECT_TIME} ms, it is only tried when all the others failed.
+ * <p/>
+ * The strategy observes the client events from its first use only. A strategy is shared by all the
+ * clusters using its name so the scores of servers no cluster listed for a while, and without
+ * connection in progress, are dropped rather than tracked per cluster.
+ *
+ * @version $Rev$ $Date$
+ */
+public class LatencyAwareConnectionStrategy extends AbstractConnectionStrategy {
+
+    public static final String PROPERTY_DECAY = "openejb.client.connection.latency.decay";
+    public static final String PROPERTY_EJECT_FAILURES = "openejb.client.connection.eject.failures";
+    public static final String PROPERTY_EJECT_TIME = "openejb.client.connection.eject.time";
+
+    private static final double ALPHA = 0.3; // weight of a new sample in the averages
+    private static final double FAILURE_PENALTY = 10;
+
+    private final ConcurrentMap<URI, Score> scores = new ConcurrentHashMap<URI, Score>();
+    private final Random random = new Random();
+    private final AtomicBoolean observing = new AtomicBoolean();
+    private final AtomicLong lastPrune = new AtomicLong(System.nanoTime());
+    private final double decay;
+    private final int ejectFailures;
+    private final long ejectTime;
+
+    public LatencyAwareConnectionStrategy() {
+        this(SocketConnectionFactory.getLong(System.getProperties(), PROPERTY_DECAY, 10000),
+            SocketConnectionFactory.getInt(System.getProperties(), PROPERTY_EJECT_FAILURES, 3),
+            SocketConnectionFactory.getLong(System.getProperties(), PROPERTY_EJECT_TIME, 30000));
+    }
+
+    /**
+     * @param decay         time (ms) for the scores of an unused server to fade by e
+     * @param ejectFailures consecutive failures ejecting a server
+     * @param ejectTime     how long (ms) an ejected server is avoided
+     */
+    public LatencyAwareConnectionStrategy(final long decay, final int ejectFailures, final long ejectTime) {
+        this.decay = TimeUnit.MILLISECONDS.toNanos(decay);
+        this.ejectFailures = ejectFailures;
+        this.ejectTime = ejectTime;
+    }
+
+    public void connectionFailed(@Observes final ConnectionFailed event) {
+        failed(event.getUri());
+    }
+
+    public void requestFailed(@Observes final RequestFailed event) {
+        failed(event.getServer());
+    }
+
+    /**
+     * @return the average latency of the server in ms, -1 if it was never used
+     */
+    public double getLatency(final URI uri) {
+        final Score score = scores.get(uri);
+        return score == null ? -1 : score.latency() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public boolean isEjected(final URI uri) {
+        final Score score = scores.get(uri);
+        return score != null && score.isEjected(System.nanoTime());
+    }
+
+    @Override
+    protected FailoverSelection createFailureEvent(final Set<URI> remaining, final Set<URI> failed, final URI uri) {
+        return new LatencyAwareFailoverSelection(remaining, failed, uri);
+    }
+
+    @Override
+    protected Iterable<URI> createIterable(final ClusterMetaData cluster) {
+        observe();
+        return new LatencyAwareIterable(cluster);
+    }
+
+    @Override
+    protected Connection connect(final ClusterMetaData cluster, final URI uri) throws IOException {
+        observe();
+        final Score score = score(uri);
+        final long start = System.nanoTime();
+        score.lastSeen = start;
+        score.active.incrementAndGet();
+        try {
+            return new ScoredConnection(super.connect(cluster, uri), score, start);
+        } catch (final IOException | RuntimeException e) {
+            score.active.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void failed(final URI uri) {
+        final Score score = uri == null ? null : scores.get(uri);
+        if (score != null && score.failed(System.nanoTime(), decay, ejectFailures, TimeUnit.MILLISECONDS.toNanos(ejectTime))) {
+            Client.fireEvent(new ServerEjected(uri, ejectFailures, ejectTime, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void observe() {
+        if (!observing.get() && observing.compareAndSet(false, true)) {
+            Client.addEventObserver(this);
+        }
+    }
+
+    private Score score(final URI uri) {
+        Score score = scores.get(uri);
+        if (score == null) {
+            final Score created = new Score();
+            score = scores.putIfAbsent(uri, created);
+            if (score == null) {
+                score = created;
+            }
+        }
+        return score;
+    }
+
+    private List<URI> select(final URI[] locations) {
+        final long now = System.nanoTime();
+        final List<Candidate> available = new ArrayList<Candidate>(locations.length);
+        final List<URI> ejected = new ArrayList<URI>();
+        for (final URI uri : locations) {
+            final Score score = score(uri);
+            score.lastSeen = now;
+            if (score.isEjected(now)) {
+                ejected.add(uri);
+            } else {
+                available.add(new Candidate(uri, score.cost(now, decay)));
+            }
+        }
+
+        final List<URI> selected = new ArrayList<URI>(locations.length);
+        if (available.size() > 1) {
+            final int a = random.nextInt(available.size());
+            int b = random.nextInt(available.size() - 1);
+            if (b >= a) {
+                b++;
+            }
+            selected.add(available.remove(available.get(b).cost < available.get(a).cost ? b : a).uri);
+        }
+
+        // failover goes to the next best ones, the ejected servers are the last resort
+        Collections.sort(available, Candidate.BY_COST);
+        for (final Candidate candidate : available) {
+            selected.add(candidate.uri);
+        }
+        selected.addAll(ejected);
+
+        prune(now);
+        return selected;
+    }
+
+    /**
+     * Drops the servers which left the clusters, at most once per retention period.
+     */
+    private void prune(final long now) {
+        final long retention = Math.max((long) decay, TimeUnit.MILLISECONDS.toNanos(ejectTime));
+        final long last = lastPrune.get();
+        if (now - last < retention || !lastPrune.compareAndSet(last, now)) {
+            return;
+        }
+
+        for (final Map.Entry<URI, Score> entry : scores.entrySet()) {
+            final Score score = entry.getValue();
+            if (score.active.get() == 0 && now - score.lastSeen > retention) {
+                scores.remove(entry.getKey(), score);
+            }
+        }
+    }
+
+    private class LatencyAwareIterable implements Iterable<URI> {
+
+        private final ClusterMetaData cluster;
+
+        private LatencyAwareIterable(final ClusterMetaData cluster) {
+            this.cluster = cluster;
+        }
+
+        @Override
+        public Iterator<URI> iterator() {
+            return Collections.unmodifiableList(select(cluster.getLocations())).iterator();
+        }
+    }
+
+    private static final class Candidate {
+
+        private static final Comparator<Candidate> BY_COST = new Comparator<Candidate>() {
+            @Override
+            public int compare(final Candidate o1, final Candidate o2) {
+                return Double.compare(o1.cost, o2.cost);
+            }
+        };
+
+        private final URI uri;
+        private final double cost;
+
+        private Candidate(final URI uri, final double cost) {
+            this.uri = uri;
+            this.cost = cost;
+        }
+    }
+
+    private static final class Score {
+
+        private final AtomicInteger active = new AtomicInteger();
+        private volatile long lastSeen = System.nanoTime();
+        private boolean sampled;
+        private double latency; // ns
+        private double failures; // between 0 and 1
+        private boolean updated;
+        private long lastUpdate;
+        private int consecutiveFailures;
+        private boolean ejected;
+        private long ejectedUntil;
+
+        private synchronized double cost(final long now, final double decay) {
+            final double fade = fade(now, decay);
+            // never used servers look the fastest so they get a first sample
+            return (latency * fade + 1) * (active.get() + 1) * (1 + FAILURE_PENALTY * failures * fade);
+        }
+
+        private synchronized double latency() {
+            return sampled ? latency : -TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        private synchronized boolean isEjected(final long now) {
+            return ejected && ejectedUntil - now > 0;
+        }
+
+        private synchronized void succeeded(final long now, final double decay, final long nanos) {
+            fadeTo(now, decay);
+            latency = sampled ? latency + ALPHA * (nanos - latency) : nanos;
+            failures -= ALPHA * failures;
+            sampled = true;
+            consecutiveFailures = 0;
+            ejected = false;
+        }
+
+        /**
+         * @return true if the server is ejected by this failure
+         */
+        private synchronized boolean failed(final long now, final double decay, final int ejectFailures, final long ejectTime) {
+            fadeTo(now, decay);
+            failures += ALPHA * (1 - failures);
+            consecutiveFailures++;
+
+            // after the ejection a single failure is enough to eject the server again
+            if (consecutiveFailures >= ejectFailures && !isEjected(now)) {
+                ejected = true;
+                ejectedUntil = now + ejectTime;
+                return true;
+            }
+            return false;
+        }
+
+        private double fade(final long now, final double decay) {
+            return updated ? Math.exp(-(now - lastUpdate) / decay) : 1;
+        }
+
+        private void fadeTo(final long now, final double decay) {
+            final double fade = fade(now, decay);
+            latency *= fade;
+            failures *= fade;
+            updated = true;
+            lastUpdate = now;
+        }
+    }
+
+    /**
+     * Measures the time the connection is used until its close, a discarded connection failed
+     * and is counted by the {@link RequestFailed} event.
+     */
+    private class ScoredConnection implements Connection {
+
+        private final Connection delegate;
+        private final Score score;
+        private final long start;
+        private boolean done;
+
+        private ScoredConnection(final Connection delegate, final Score score, final long start) {
+            this.delegate = delegate;
+            this.score = score;
+            this.start = start;
+        }
+
+        @Override
+        public void discard() {
+            if (!done) {
+                done = true;
+                score.active.decrementAndGet();
+            }
+            delegate.discard();
+        }
+
+        @Override
+        public URI getURI() {
+            return delegate.getURI();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!done) {
+                done = true;
+                score.active.decrementAndGet();
+                final long now = System.nanoTime();
+                score.succeeded(now, decay, now - start);
+            }
+            delegate.close();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return delegate.getInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return delegate.getOutputStream();
+        }
+    }
+}
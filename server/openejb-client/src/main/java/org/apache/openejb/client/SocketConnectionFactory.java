@@ -24,20 +24,29 @@ import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.StreamCorruptedException;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Stack;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.GZIPInputStream;
@@ -54,8 +63,13 @@ public class SocketConnectionFactory implements ConnectionFactory {
     private static final String PROPERTY_POOL_SIZE2 = "openejb.client.connectionpool.size";
     public static final String PROPERTY_KEEPALIVE = "openejb.client.keepalive";
     public static final String ENABLED_CIPHER_SUITES = "openejb.client.enabledCipherSuites";
+    public static final String PROPERTY_MULTIPLEX = "openejb.client.connection.multiplex";
+    public static final String PROPERTY_MULTIPLEX_RETRY = "openejb.client.connection.multiplex.retry";
+    public static final String PROPERTY_MULTIPLEX_MAX_FRAME = "openejb.client.connection.multiplex.max-frame";
 
     private static final Map<URI, Pool> connections = new ConcurrentHashMap<URI, Pool>();
+    private static final ConcurrentMap<URI, Multiplexer> multiplexers = new ConcurrentHashMap<URI, Multiplexer>();
+    private static final ConcurrentMap<URI, Long> notMultiplexed = new ConcurrentHashMap<URI, Long>();
     private int size = 5;
     private long timeoutPool = 1000;
     private int timeoutConnect = 1000;
@@ -153,6 +167,13 @@ public class SocketConnectionFactory implements ConnectionFactory {
     @Override
     public Connection getConnection(final URI uri) throws java.io.IOException {
 
+        if (isMultiplexed(uri)) {
+            final Connection multiplexed = this.getMultiplexedConnection(uri);
+            if (multiplexed != null) {
+                return multiplexed;
+            }
+        }
+
         final Pool pool = this.getPool(uri);
 
         SocketConnection conn = pool.get();
@@ -209,6 +230,104 @@ public class SocketConnectionFactory implements ConnectionFactory {
         return conn;
     }
 
+    private Socket connect(final URI uri) throws IOException {
+        final InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort());
+        final String scheme = uri.getScheme();
+
+        final Socket socket;
+        if (scheme.equalsIgnoreCase("ejbds") || scheme.equalsIgnoreCase("zejbds")) {
+            final SSLSocket sslSocket = (SSLSocket) SSLSocketFactory.getDefault().createSocket();
+            sslSocket.setEnabledCipherSuites(this.enabledCipherSuites);
+            socket = sslSocket;
+        } else {
+            socket = new Socket();
+        }
+
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoLinger(true, this.timeoutLinger);
+            socket.connect(address, this.timeoutConnect);
+
+            //Four hours default
+            socket.setSoTimeout(this.timeoutRead);
+        } catch (IOException e) {
+            close(socket);
+            throw e;
+        } catch (RuntimeException e) {
+            close(socket);
+            throw e;
+        }
+
+        Client.fireEvent(new ConnectionOpened(uri));
+        return socket;
+    }
+
+    private static void close(final Socket socket) {
+        try {
+            socket.close();
+        } catch (Throwable e) {
+            //Ignore
+        }
+    }
+
+    private static boolean isMultiplexed(final URI uri) {
+        if (!Boolean.getBoolean(PROPERTY_MULTIPLEX) || uri.getScheme().startsWith("z")) {
+            return false;
+        }
+
+        final Long retry = notMultiplexed.get(uri);
+        if (retry == null) {
+            return true;
+        }
+        if (retry > System.currentTimeMillis()) {
+            return false;
+        }
+        notMultiplexed.remove(uri, retry);
+        return true;
+    }
+
+    /**
+     * @return a connection sharing the multiplexed socket of this uri or null if the server doesn't support it
+     */
+    private Connection getMultiplexedConnection(final URI uri) throws IOException {
+        Multiplexer multiplexer = multiplexers.get(uri);
+        if (multiplexer == null || multiplexer.closed) {
+            synchronized (multiplexers) {
+                multiplexer = multiplexers.get(uri);
+                if (multiplexer == null || multiplexer.closed) {
+                    multiplexer = new Multiplexer(uri);
+                    final Boolean supported = multiplexer.open();
+                    if (supported == null) {
+                        // no clear answer, maybe a transient failure so try again later
+                        final long retry = getLong(System.getProperties(), PROPERTY_MULTIPLEX_RETRY, 60000);
+                        notMultiplexed.put(uri, System.currentTimeMillis() + retry);
+                        return null;
+                    } else if (!supported) {
+                        notMultiplexed.put(uri, Long.MAX_VALUE);
+                        return null;
+                    }
+                    multiplexers.put(uri, multiplexer);
+                }
+            }
+        }
+        return new MultiplexedConnection(multiplexer, this.getReadTimeout(uri));
+    }
+
+    /**
+     * @return the readTimeout parameter of the uri or the default socket read timeout
+     */
+    private int getReadTimeout(final URI uri) {
+        try {
+            final String value = MulticastConnectionFactory.URIs.parseParamters(uri).get("readTimeout");
+            if (value != null) {
+                return Integer.parseInt(value);
+            }
+        } catch (final Exception e) {
+            //Ignore
+        }
+        return this.timeoutRead;
+    }
+
     private Pool getPool(final URI uri) {
         Pool pool = connections.get(uri);
         if (pool == null) {
@@ -278,31 +397,9 @@ public class SocketConnectionFactory implements ConnectionFactory {
             /*-----------------------*/
             /* Open socket to server */
             /*-----------------------*/
-            final InetSocketAddress address = new InetSocketAddress(uri.getHost(), uri.getPort());
-
             try {
-                final String scheme = uri.getScheme();
-                if (scheme.equalsIgnoreCase("ejbds") || scheme.equalsIgnoreCase("zejbds")) {
-                    final SSLSocket sslSocket = (SSLSocket) SSLSocketFactory.getDefault().createSocket();
-                    this.socket = sslSocket;
-                    sslSocket.setEnabledCipherSuites(SocketConnectionFactory.this.enabledCipherSuites);
-
-                } else {
-                    this.socket = new Socket();
-                }
-
-                if (scheme.startsWith("z")) {
-                    this.gzip = true;
-                }
-
-                this.socket.setTcpNoDelay(true);
-                this.socket.setSoLinger(true, SocketConnectionFactory.this.timeoutLinger);
-                this.socket.connect(address, SocketConnectionFactory.this.timeoutConnect);
-
-                //Four hours default
-                this.socket.setSoTimeout(SocketConnectionFactory.this.timeoutRead);
-
-                Client.fireEvent(new ConnectionOpened(uri));
+                this.socket = SocketConnectionFactory.this.connect(uri);
+                this.gzip = uri.getScheme().startsWith("z");
 
             } catch (ConnectException e) {
                 throw this.failure("Cannot connect to server '" + uri.toString() + "'.  Check that the server is started and that the specified serverURL is correct.", e);
@@ -414,6 +511,213 @@ public class SocketConnectionFactory implements ConnectionFactory {
         }
     }
 
+    /**
+     * A single socket shared by all the concurrent requests to one server.
+     * <p/>
+     * Requests are written as [id][length][bytes] frames as soon as they are complete, a reader
+     * thread hands each response frame to the connection waiting for that id. The request and
+     * response bytes are exactly what a classic connection would carry so the server processes
+     * them with the usual handlers. A response frame bigger than {@link #PROPERTY_MULTIPLEX_MAX_FRAME}
+     * bytes closes the connection.
+     */
+    private class Multiplexer implements Runnable {
+
+        private final URI uri;
+        private final AtomicInteger ids = new AtomicInteger();
+        private final Map<Integer, MultiplexedConnection> pending = new ConcurrentHashMap<Integer, MultiplexedConnection>();
+        private final int maxFrameSize = getInt(System.getProperties(), PROPERTY_MULTIPLEX_MAX_FRAME, 64 * 1024 * 1024);
+        private volatile boolean closed;
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        private Multiplexer(final URI uri) {
+            this.uri = uri;
+        }
+
+        /**
+         * @return true if the connection is multiplexed, false if the server answered it doesn't support it
+         * and null if the handshake failed without a clear answer (older servers hang up)
+         * @throws IOException if the server can't be reached at all
+         */
+        private Boolean open() throws IOException {
+            this.socket = SocketConnectionFactory.this.connect(this.uri);
+            try {
+                this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+                this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+
+                this.out.write(KeepAliveStyle.MULTIPLEX.ordinal());
+                new ProtocolMetaData().writeExternal(this.out);
+
+                // servers not knowing MULTIPLEX hang up
+                final ProtocolMetaData server = new ProtocolMetaData();
+                server.readExternal(this.in);
+                if (!server.isAtLeast(4, 7)) {
+                    close(this.socket);
+                    return false;
+                }
+            } catch (IOException e) {
+                close(this.socket);
+                return null;
+            }
+
+            final Thread thread = new Thread(this, "OpenEJB.Client.Multiplexer " + this.uri);
+            thread.setDaemon(true);
+            thread.start();
+            return true;
+        }
+
+        private void send(final MultiplexedConnection connection) throws IOException {
+            if (this.closed) {
+                throw new IOException("Multiplexed connection to " + this.uri + " is closed");
+            }
+
+            this.pending.put(connection.id, connection);
+            if (this.closed) {
+                // closed while registering, nobody would complete it
+                this.pending.remove(connection.id);
+                throw new IOException("Multiplexed connection to " + this.uri + " is closed");
+            }
+
+            try {
+                synchronized (this.out) {
+                    this.out.writeInt(connection.id);
+                    this.out.writeInt(connection.request.size());
+                    connection.request.writeTo(this.out);
+                    this.out.flush();
+                }
+            } catch (IOException e) {
+                this.pending.remove(connection.id);
+                this.shutdown(e);
+                throw e;
+            }
+        }
+
+        @Override
+        public void run() {
+            IOException error = null;
+            try {
+                while (!this.closed) {
+                    final int id = this.in.readInt();
+                    final int length = this.in.readInt();
+                    if (length == KeepAliveStyle.MULTIPLEX_ERROR) {
+                        // the server couldn't process the request, the socket is still fine
+                        final String message = this.in.readUTF();
+                        final MultiplexedConnection connection = this.pending.remove(id);
+                        if (connection != null) {
+                            connection.complete(null, new IOException("Request to " + this.uri + " failed on the server: " + message));
+                        }
+                        continue;
+                    }
+                    if (length < 0 || length > this.maxFrameSize) {
+                        throw new IOException("Invalid frame length " + length + ", the maximum is " + this.maxFrameSize);
+                    }
+
+                    final byte[] response = new byte[length];
+                    this.in.readFully(response);
+
+                    final MultiplexedConnection connection = this.pending.remove(id);
+                    if (connection != null) {
+                        connection.complete(response, null);
+                    }
+                }
+            } catch (IOException e) {
+                error = e;
+            } finally {
+                this.shutdown(error);
+            }
+        }
+
+        private void shutdown(final IOException cause) {
+            this.closed = true;
+            multiplexers.remove(this.uri, this);
+            close(this.socket);
+
+            final IOException error = new IOException("Multiplexed connection to " + this.uri + " closed", cause);
+            for (final MultiplexedConnection connection : this.pending.values()) {
+                connection.complete(null, error);
+            }
+            this.pending.clear();
+        }
+    }
+
+    /**
+     * One request/response exchange over a {@link Multiplexer}, the request is buffered
+     * and sent once the client asks for the response stream.
+     */
+    private class MultiplexedConnection implements Connection {
+
+        private final Multiplexer multiplexer;
+        private final int id;
+        private final int timeoutRead;
+        private final ByteArrayOutputStream request = new ByteArrayOutputStream();
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile byte[] response;
+        private volatile IOException error;
+
+        private MultiplexedConnection(final Multiplexer multiplexer, final int timeoutRead) {
+            this.multiplexer = multiplexer;
+            this.timeoutRead = timeoutRead;
+            this.id = multiplexer.ids.incrementAndGet();
+        }
+
+        private void complete(final byte[] response, final IOException error) {
+            this.response = response;
+            this.error = error;
+            this.done.countDown();
+        }
+
+        @Override
+        public void discard() {
+            this.multiplexer.pending.remove(this.id);
+        }
+
+        @Override
+        public URI getURI() {
+            return this.multiplexer.uri;
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (this.done.getCount() > 0) {
+                this.multiplexer.send(this);
+                try {
+                    if (!this.await()) {
+                        this.discard();
+                        throw new SocketTimeoutException("No response from " + this.multiplexer.uri + " after " + this.timeoutRead + "ms");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.interrupted();
+                    this.discard();
+                    throw new InterruptedIOException("Interrupted waiting for a response from " + this.multiplexer.uri);
+                }
+            }
+
+            if (this.error != null) {
+                throw this.error;
+            }
+            return new ByteArrayInputStream(this.response);
+        }
+
+        private boolean await() throws InterruptedException {
+            if (this.timeoutRead <= 0) {
+                // same as a socket read timeout of 0
+                this.done.await();
+                return true;
+            }
+            return this.done.await(this.timeoutRead, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            return this.request;
+        }
+    }
+
     public class Input extends java.io.FilterInputStream {
 
         public Input(final InputStream in) {
@@ -32,6 +32,14 @@ public class ConnectionFailed {
         this.cause = cause;
     }
 
+    public URI getUri() {
+        return uri;
+    }
+
+    public Throwable getCause() {
+        return cause;
+    }
+
     @Override
     public String toString() {
         return "ConnectionFailed{" +
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.client.event;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server failed too many times in a row and is not selected until the time is elapsed,
+ * unless no other server is left.
+ *
+ * @version $Rev$ $Date$
+ */
+@Log(Log.Level.WARNING)
+public class ServerEjected {
+
+    private final URI server;
+    private final int failures;
+    private final long time;
+    private final TimeUnit timeUnit;
+
+    public ServerEjected(final URI server, final int failures, final long time, final TimeUnit timeUnit) {
+        this.server = server;
+        this.failures = failures;
+        this.time = time;
+        this.timeUnit = timeUnit;
+    }
+
+    public URI getServer() {
+        return server;
+    }
+
+    public int getFailures() {
+        return failures;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerEjected{" +
+            "server=" + server +
+            ", failures=" + failures +
+            ", time='" + time + " " + timeUnit + "'" +
+            '}';
+    }
+}
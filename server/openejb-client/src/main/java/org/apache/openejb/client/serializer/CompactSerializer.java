@@ -0,0 +1,897 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client.serializer;
+
+import org.apache.openejb.client.EjbObjectInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary EJBDSerializer.
+ * <p/>
+ * Primitives, strings, dates, enums, arrays and the common collections are written with a one byte tag
+ * and variable length integers, other objects are written field by field without any ObjectOutputStream
+ * header or class descriptor. The field layout of a class is computed once and cached, each payload only
+ * carries the class name the first time the class is used, then an index. Shared references and cycles
+ * are kept.
+ * <p/>
+ * Classes relying on custom serialization (writeObject, readResolve, Externalizable...) and the JDK classes
+ * which aren't handled natively fall back to plain java serialization for that object only.
+ * <p/>
+ * As with java serialization only Serializable objects are accepted, and class names are resolved with
+ * {@link EjbObjectInputStream#resolveClass(String, ClassLoader)} so the tomee.serialization.class.whitelist
+ * and tomee.serialization.class.blacklist filters apply.
+ * <p/>
+ * Usage: set "serializer" to this class on the ejbd service and {@link org.apache.openejb.client.JNDIContext#SERIALIZER}
+ * on the client. The write buffer is reused per thread.
+ */
+public class CompactSerializer implements EJBDSerializer {
+
+    private static final byte NULL = 0;
+    private static final byte REFERENCE = 1;
+    private static final byte TRUE = 2;
+    private static final byte FALSE = 3;
+    private static final byte BYTE = 4;
+    private static final byte SHORT = 5;
+    private static final byte INT = 6;
+    private static final byte LONG = 7;
+    private static final byte FLOAT = 8;
+    private static final byte DOUBLE = 9;
+    private static final byte CHAR = 10;
+    private static final byte STRING = 11;
+    private static final byte BYTES = 12;
+    private static final byte DATE = 13;
+    private static final byte ENUM = 14;
+    private static final byte ARRAY = 15;
+    private static final byte COLLECTION = 16;
+    private static final byte MAP = 17;
+    private static final byte OBJECT = 18;
+    private static final byte JAVA = 19;
+
+    private static final int TYPE_OBJECT = 0;
+    private static final int TYPE_BOOLEAN = 1;
+    private static final int TYPE_BYTE = 2;
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_CHAR = 4;
+    private static final int TYPE_INT = 5;
+    private static final int TYPE_LONG = 6;
+    private static final int TYPE_FLOAT = 7;
+    private static final int TYPE_DOUBLE = 8;
+
+    private static final int INITIAL_BUFFER = 512;
+    private static final int MAX_RETAINED_BUFFER = 1024 * 1024;
+
+    private static final ClassValue<Descriptor> DESCRIPTORS = new ClassValue<Descriptor>() {
+        @Override
+        protected Descriptor computeValue(final Class<?> type) {
+            return new Descriptor(type);
+        }
+    };
+
+    private static final ThreadLocal<Writer> WRITERS = new ThreadLocal<Writer>() {
+        @Override
+        protected Writer initialValue() {
+            return new Writer();
+        }
+    };
+
+    private static final Object UNSAFE;
+    private static final Method ALLOCATE_INSTANCE;
+
+    static {
+        Object unsafe = null;
+        Method allocateInstance = null;
+        try {
+            final Class<?> type = Class.forName("sun.misc.Unsafe");
+            final Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            allocateInstance = type.getMethod("allocateInstance", Class.class);
+        } catch (final Throwable e) {
+            // classes without a no-arg constructor will use java serialization
+        }
+        UNSAFE = unsafe;
+        ALLOCATE_INSTANCE = allocateInstance;
+    }
+
+    @Override
+    public Serializable serialize(final Object o) {
+        Writer writer = WRITERS.get();
+        if (writer.busy) { // re-entrant call from a java serialization fallback
+            writer = new Writer();
+        }
+
+        writer.busy = true;
+        try {
+            writer.writeObject(o);
+            return writer.toByteArray();
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("Can't serialize " + o.getClass().getName(), e);
+        } finally {
+            writer.reset();
+        }
+    }
+
+    @Override
+    public Object deserialize(final Serializable o, final Class<?> clazz) {
+        if (!byte[].class.isInstance(o)) {
+            throw new IllegalArgumentException("Expected bytes written by " + CompactSerializer.class.getName() + " but got " + o);
+        }
+
+        ClassLoader loader = clazz != null ? clazz.getClassLoader() : null;
+        if (loader == null) {
+            loader = Thread.currentThread().getContextClassLoader();
+        }
+
+        try {
+            return new Reader(byte[].class.cast(o), loader).readObject();
+        } catch (final IOException e) {
+            throw new IllegalArgumentException("Can't deserialize " + (clazz != null ? clazz.getName() : "payload"), e);
+        } catch (final ClassNotFoundException e) {
+            throw new IllegalArgumentException("Can't deserialize " + (clazz != null ? clazz.getName() : "payload"), e);
+        }
+    }
+
+    private static int typeOf(final Class<?> type) {
+        if (!type.isPrimitive()) {
+            return TYPE_OBJECT;
+        } else if (type == boolean.class) {
+            return TYPE_BOOLEAN;
+        } else if (type == byte.class) {
+            return TYPE_BYTE;
+        } else if (type == short.class) {
+            return TYPE_SHORT;
+        } else if (type == char.class) {
+            return TYPE_CHAR;
+        } else if (type == int.class) {
+            return TYPE_INT;
+        } else if (type == long.class) {
+            return TYPE_LONG;
+        } else if (type == float.class) {
+            return TYPE_FLOAT;
+        }
+        return TYPE_DOUBLE;
+    }
+
+    private static boolean isNativeCollection(final Class<?> type) {
+        return type == ArrayList.class || type == LinkedList.class || type == HashSet.class || type == LinkedHashSet.class;
+    }
+
+    private static boolean isNativeMap(final Class<?> type) {
+        return type == HashMap.class || type == LinkedHashMap.class;
+    }
+
+    /**
+     * How instances of a class are written, computed once per class.
+     */
+    private static final class Descriptor {
+
+        private final Field[] fields;
+        private final int[] types;
+        private final Constructor<?> constructor;
+        private final boolean java;
+
+        private Descriptor(final Class<?> type) {
+            Constructor<?> noArg = null;
+            try {
+                noArg = type.getDeclaredConstructor();
+                noArg.setAccessible(true);
+            } catch (final Throwable e) {
+                noArg = null;
+            }
+            this.constructor = noArg;
+
+            final List<Field> all = new ArrayList<Field>();
+            boolean custom = Externalizable.class.isAssignableFrom(type) || type.isInterface() || Modifier.isAbstract(type.getModifiers());
+            try {
+                for (Class<?> current = type; current != null && current != Object.class && !custom; current = current.getSuperclass()) {
+                    custom = hasCustomSerialization(current);
+
+                    final List<Field> declared = new ArrayList<Field>();
+                    for (final Field field : current.getDeclaredFields()) {
+                        final int modifiers = field.getModifiers();
+                        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                            continue;
+                        }
+                        field.setAccessible(true);
+                        declared.add(field);
+                    }
+                    all.addAll(0, declared); // parent fields first
+                }
+            } catch (final RuntimeException e) { // inaccessible (JDK internals)
+                custom = true;
+            }
+
+            final String name = type.getName();
+            this.java = custom
+                || (noArg == null && ALLOCATE_INSTANCE == null)
+                || (Serializable.class.isAssignableFrom(type) && (name.startsWith("java.") || name.startsWith("javax.")));
+
+            this.fields = all.toArray(new Field[all.size()]);
+            this.types = new int[this.fields.length];
+            for (int i = 0; i < this.fields.length; i++) {
+                this.types[i] = typeOf(this.fields[i].getType());
+            }
+        }
+
+        private static boolean hasCustomSerialization(final Class<?> type) {
+            for (final Method method : type.getDeclaredMethods()) {
+                final String name = method.getName();
+                final int params = method.getParameterTypes().length;
+                if ((params == 1 && ("writeObject".equals(name) || "readObject".equals(name)))
+                    || (params == 0 && ("writeReplace".equals(name) || "readResolve".equals(name)))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Object newInstance(final Class<?> type) throws IOException {
+            try {
+                if (this.constructor != null) {
+                    return this.constructor.newInstance();
+                }
+                return ALLOCATE_INSTANCE.invoke(UNSAFE, type);
+            } catch (final Exception e) {
+                throw new IOException("Can't instantiate " + type.getName(), e);
+            }
+        }
+    }
+
+    private static final class Writer {
+
+        private byte[] buffer = new byte[INITIAL_BUFFER];
+        private int count;
+        private boolean busy;
+        private final Map<Class<?>, Integer> classes = new IdentityHashMap<Class<?>, Integer>();
+        private final Map<Object, Integer> references = new IdentityHashMap<Object, Integer>();
+
+        private void reset() {
+            this.count = 0;
+            this.busy = false;
+            this.classes.clear();
+            this.references.clear();
+            if (this.buffer.length > MAX_RETAINED_BUFFER) {
+                this.buffer = new byte[INITIAL_BUFFER];
+            }
+        }
+
+        private byte[] toByteArray() {
+            final byte[] bytes = new byte[this.count];
+            System.arraycopy(this.buffer, 0, bytes, 0, this.count);
+            return bytes;
+        }
+
+        private void ensure(final int size) {
+            if (this.count + size > this.buffer.length) {
+                final byte[] bigger = new byte[Math.max(this.buffer.length << 1, this.count + size)];
+                System.arraycopy(this.buffer, 0, bigger, 0, this.count);
+                this.buffer = bigger;
+            }
+        }
+
+        private void writeByte(final int b) {
+            this.ensure(1);
+            this.buffer[this.count++] = (byte) b;
+        }
+
+        private void writeBytes(final byte[] bytes) {
+            this.writeVarInt(bytes.length);
+            this.ensure(bytes.length);
+            System.arraycopy(bytes, 0, this.buffer, this.count, bytes.length);
+            this.count += bytes.length;
+        }
+
+        private void writeVarInt(int value) {
+            this.ensure(5);
+            while ((value & ~0x7F) != 0) {
+                this.buffer[this.count++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            this.buffer[this.count++] = (byte) value;
+        }
+
+        private void writeVarLong(long value) {
+            this.ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                this.buffer[this.count++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            this.buffer[this.count++] = (byte) value;
+        }
+
+        private void writeZigZagInt(final int value) {
+            this.writeVarInt((value << 1) ^ (value >> 31));
+        }
+
+        private void writeZigZagLong(final long value) {
+            this.writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        private void writeFixedInt(final int value) {
+            this.ensure(4);
+            this.buffer[this.count++] = (byte) (value >>> 24);
+            this.buffer[this.count++] = (byte) (value >>> 16);
+            this.buffer[this.count++] = (byte) (value >>> 8);
+            this.buffer[this.count++] = (byte) value;
+        }
+
+        private void writeFixedLong(final long value) {
+            this.writeFixedInt((int) (value >>> 32));
+            this.writeFixedInt((int) value);
+        }
+
+        private void writeString(final String value) {
+            final int length = value.length();
+            this.writeVarInt(length);
+            this.ensure(length);
+            for (int i = 0; i < length; i++) {
+                final char c = value.charAt(i);
+                if (c < 0x80) {
+                    this.buffer[this.count++] = (byte) c;
+                } else {
+                    this.writeVarInt(c);
+                    this.ensure(length - i);
+                }
+            }
+        }
+
+        private void writeClass(final Class<?> type) {
+            final Integer index = this.classes.get(type);
+            if (index != null) {
+                this.writeVarInt(index + 1);
+            } else {
+                this.classes.put(type, this.classes.size());
+                this.writeVarInt(0);
+                this.writeString(type.getName());
+            }
+        }
+
+        private void writeObject(final Object o) throws IOException {
+            if (o == null) {
+                this.writeByte(NULL);
+                return;
+            }
+
+            final Class<?> type = o.getClass();
+            if (type == String.class) {
+                this.writeByte(STRING);
+                this.writeString((String) o);
+            } else if (type == Integer.class) {
+                this.writeByte(INT);
+                this.writeZigZagInt((Integer) o);
+            } else if (type == Long.class) {
+                this.writeByte(LONG);
+                this.writeZigZagLong((Long) o);
+            } else if (type == Boolean.class) {
+                this.writeByte((Boolean) o ? TRUE : FALSE);
+            } else if (type == Double.class) {
+                this.writeByte(DOUBLE);
+                this.writeFixedLong(Double.doubleToRawLongBits((Double) o));
+            } else if (type == Float.class) {
+                this.writeByte(FLOAT);
+                this.writeFixedInt(Float.floatToRawIntBits((Float) o));
+            } else if (type == Short.class) {
+                this.writeByte(SHORT);
+                this.writeZigZagInt((Short) o);
+            } else if (type == Byte.class) {
+                this.writeByte(BYTE);
+                this.writeByte((Byte) o);
+            } else if (type == Character.class) {
+                this.writeByte(CHAR);
+                this.writeVarInt((Character) o);
+            } else {
+                final Integer reference = this.references.get(o);
+                if (reference != null) {
+                    this.writeByte(REFERENCE);
+                    this.writeVarInt(reference);
+                    return;
+                }
+                this.references.put(o, this.references.size());
+
+                if (type == byte[].class) {
+                    this.writeByte(BYTES);
+                    this.writeBytes((byte[]) o);
+                } else if (type == Date.class) {
+                    this.writeByte(DATE);
+                    this.writeZigZagLong(((Date) o).getTime());
+                } else if (o instanceof Enum) {
+                    this.writeByte(ENUM);
+                    this.writeClass(((Enum<?>) o).getDeclaringClass());
+                    this.writeString(((Enum<?>) o).name());
+                } else if (type.isArray()) {
+                    this.writeArray(o, type.getComponentType());
+                } else if (isNativeCollection(type)) {
+                    final Collection<?> collection = (Collection<?>) o;
+                    this.writeByte(COLLECTION);
+                    this.writeClass(type);
+                    this.writeVarInt(collection.size());
+                    for (final Object item : collection) {
+                        this.writeObject(item);
+                    }
+                } else if (isNativeMap(type)) {
+                    final Map<?, ?> map = (Map<?, ?>) o;
+                    this.writeByte(MAP);
+                    this.writeClass(type);
+                    this.writeVarInt(map.size());
+                    for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                        this.writeObject(entry.getKey());
+                        this.writeObject(entry.getValue());
+                    }
+                } else if (!Serializable.class.isInstance(o)) {
+                    throw new IOException(type.getName() + " is not serializable");
+                } else {
+                    final Descriptor descriptor = DESCRIPTORS.get(type);
+                    if (descriptor.java) {
+                        this.writeJava(o);
+                    } else {
+                        this.writeByte(OBJECT);
+                        this.writeClass(type);
+                        this.writeFields(o, descriptor);
+                    }
+                }
+            }
+        }
+
+        private void writeArray(final Object array, final Class<?> component) throws IOException {
+            final int length = Array.getLength(array);
+            this.writeByte(ARRAY);
+            this.writeClass(component);
+            this.writeVarInt(length);
+            switch (typeOf(component)) {
+                case TYPE_BOOLEAN:
+                    for (final boolean value : (boolean[]) array) {
+                        this.writeByte(value ? 1 : 0);
+                    }
+                    break;
+                case TYPE_SHORT:
+                    for (final short value : (short[]) array) {
+                        this.writeZigZagInt(value);
+                    }
+                    break;
+                case TYPE_CHAR:
+                    for (final char value : (char[]) array) {
+                        this.writeVarInt(value);
+                    }
+                    break;
+                case TYPE_INT:
+                    for (final int value : (int[]) array) {
+                        this.writeZigZagInt(value);
+                    }
+                    break;
+                case TYPE_LONG:
+                    for (final long value : (long[]) array) {
+                        this.writeZigZagLong(value);
+                    }
+                    break;
+                case TYPE_FLOAT:
+                    for (final float value : (float[]) array) {
+                        this.writeFixedInt(Float.floatToRawIntBits(value));
+                    }
+                    break;
+                case TYPE_DOUBLE:
+                    for (final double value : (double[]) array) {
+                        this.writeFixedLong(Double.doubleToRawLongBits(value));
+                    }
+                    break;
+                default: // byte[] has its own tag
+                    for (final Object value : (Object[]) array) {
+                        this.writeObject(value);
+                    }
+            }
+        }
+
+        private void writeFields(final Object o, final Descriptor descriptor) throws IOException {
+            try {
+                for (int i = 0; i < descriptor.fields.length; i++) {
+                    final Field field = descriptor.fields[i];
+                    switch (descriptor.types[i]) {
+                        case TYPE_BOOLEAN:
+                            this.writeByte(field.getBoolean(o) ? 1 : 0);
+                            break;
+                        case TYPE_BYTE:
+                            this.writeByte(field.getByte(o));
+                            break;
+                        case TYPE_SHORT:
+                            this.writeZigZagInt(field.getShort(o));
+                            break;
+                        case TYPE_CHAR:
+                            this.writeVarInt(field.getChar(o));
+                            break;
+                        case TYPE_INT:
+                            this.writeZigZagInt(field.getInt(o));
+                            break;
+                        case TYPE_LONG:
+                            this.writeZigZagLong(field.getLong(o));
+                            break;
+                        case TYPE_FLOAT:
+                            this.writeFixedInt(Float.floatToRawIntBits(field.getFloat(o)));
+                            break;
+                        case TYPE_DOUBLE:
+                            this.writeFixedLong(Double.doubleToRawLongBits(field.getDouble(o)));
+                            break;
+                        default:
+                            this.writeObject(field.get(o));
+                    }
+                }
+            } catch (final IllegalAccessException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private void writeJava(final Object o) throws IOException {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(o);
+            out.close();
+
+            this.writeByte(JAVA);
+            this.writeBytes(bytes.toByteArray());
+        }
+    }
+
+    private static final class Reader {
+
+        private final byte[] buffer;
+        private final ClassLoader loader;
+        private int position;
+        private final List<Class<?>> classes = new ArrayList<Class<?>>();
+        private final List<Object> references = new ArrayList<Object>();
+
+        private Reader(final byte[] buffer, final ClassLoader loader) {
+            this.buffer = buffer;
+            this.loader = loader;
+        }
+
+        private int readByte() throws IOException {
+            if (this.position >= this.buffer.length) {
+                throw new IOException("Unexpected end of data");
+            }
+            return this.buffer[this.position++];
+        }
+
+        /**
+         * Reads the length of a string, array or collection, each item takes at least one byte.
+         */
+        private int readLength() throws IOException {
+            final int length = this.readVarInt();
+            if (length < 0 || length > this.buffer.length - this.position) {
+                throw new IOException("Invalid length " + length);
+            }
+            return length;
+        }
+
+        private byte[] readBytes() throws IOException {
+            final int length = this.readLength();
+            final byte[] bytes = new byte[length];
+            System.arraycopy(this.buffer, this.position, bytes, 0, length);
+            this.position += length;
+            return bytes;
+        }
+
+        private int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                final int b = this.readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable length int");
+        }
+
+        private long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                final int b = this.readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed variable length long");
+        }
+
+        private int readZigZagInt() throws IOException {
+            final int value = this.readVarInt();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private long readZigZagLong() throws IOException {
+            final long value = this.readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private int readFixedInt() throws IOException {
+            return (this.readByte() & 0xFF) << 24 | (this.readByte() & 0xFF) << 16 | (this.readByte() & 0xFF) << 8 | (this.readByte() & 0xFF);
+        }
+
+        private long readFixedLong() throws IOException {
+            return ((long) this.readFixedInt() << 32) | (this.readFixedInt() & 0xFFFFFFFFL);
+        }
+
+        private String readString() throws IOException {
+            final int length = this.readLength();
+            final char[] chars = new char[length];
+            for (int i = 0; i < length; i++) {
+                chars[i] = (char) this.readVarInt();
+            }
+            return new String(chars);
+        }
+
+        private Class<?> readClass() throws IOException, ClassNotFoundException {
+            final int index = this.readVarInt();
+            if (index > 0) {
+                if (index > this.classes.size()) {
+                    throw new IOException("Invalid class index " + index);
+                }
+                return this.classes.get(index - 1);
+            }
+
+            final Class<?> type = EjbObjectInputStream.resolveClass(this.readString(), this.loader);
+            this.classes.add(type);
+            return type;
+        }
+
+        private int reference(final Object o) {
+            this.references.add(o);
+            return this.references.size() - 1;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object readObject() throws IOException, ClassNotFoundException {
+            final int tag = this.readByte();
+            switch (tag) {
+                case NULL:
+                    return null;
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case BYTE:
+                    return (byte) this.readByte();
+                case SHORT:
+                    return (short) this.readZigZagInt();
+                case INT:
+                    return this.readZigZagInt();
+                case LONG:
+                    return this.readZigZagLong();
+                case FLOAT:
+                    return Float.intBitsToFloat(this.readFixedInt());
+                case DOUBLE:
+                    return Double.longBitsToDouble(this.readFixedLong());
+                case CHAR:
+                    return (char) this.readVarInt();
+                case STRING:
+                    return this.readString();
+                case REFERENCE: {
+                    final int index = this.readVarInt();
+                    if (index < 0 || index >= this.references.size()) {
+                        throw new IOException("Invalid reference " + index);
+                    }
+                    return this.references.get(index);
+                }
+                case BYTES: {
+                    final byte[] bytes = this.readBytes();
+                    this.reference(bytes);
+                    return bytes;
+                }
+                case DATE: {
+                    final Date date = new Date(this.readZigZagLong());
+                    this.reference(date);
+                    return date;
+                }
+                case ENUM: {
+                    final Class<?> type = this.readClass();
+                    if (!type.isEnum()) {
+                        throw new IOException(type.getName() + " is not an enum");
+                    }
+                    final Object value = Enum.valueOf((Class<? extends Enum>) type, this.readString());
+                    this.reference(value);
+                    return value;
+                }
+                case ARRAY:
+                    return this.readArray();
+                case COLLECTION: {
+                    final Class<?> type = this.readClass();
+                    final Collection<Object> collection = (Collection<Object>) this.newInstance(type);
+                    this.reference(collection);
+                    final int size = this.readLength();
+                    for (int i = 0; i < size; i++) {
+                        collection.add(this.readObject());
+                    }
+                    return collection;
+                }
+                case MAP: {
+                    final Class<?> type = this.readClass();
+                    final Map<Object, Object> map = (Map<Object, Object>) this.newInstance(type);
+                    this.reference(map);
+                    final int size = this.readLength();
+                    for (int i = 0; i < size; i++) {
+                        map.put(this.readObject(), this.readObject());
+                    }
+                    return map;
+                }
+                case OBJECT: {
+                    final Class<?> type = this.readClass();
+                    if (!Serializable.class.isAssignableFrom(type)) {
+                        throw new IOException(type.getName() + " is not serializable");
+                    }
+                    final Descriptor descriptor = DESCRIPTORS.get(type);
+                    if (descriptor.java) {
+                        throw new IOException(type.getName() + " must use java serialization");
+                    }
+                    final Object o = descriptor.newInstance(type);
+                    this.reference(o);
+                    this.readFields(o, descriptor);
+                    return o;
+                }
+                case JAVA: {
+                    final int index = this.reference(null);
+                    final ObjectInputStream in = new EjbObjectInputStream(new ByteArrayInputStream(this.readBytes()));
+                    try {
+                        final Object o = in.readObject();
+                        this.references.set(index, o);
+                        return o;
+                    } finally {
+                        in.close();
+                    }
+                }
+                default:
+                    throw new IOException("Unknown tag " + tag);
+            }
+        }
+
+        private Object newInstance(final Class<?> type) throws IOException {
+            if (!isNativeCollection(type) && !isNativeMap(type)) {
+                throw new IOException("Unexpected collection type " + type.getName());
+            }
+            try {
+                return type.newInstance();
+            } catch (final Exception e) {
+                throw new IOException("Can't instantiate " + type.getName(), e);
+            }
+        }
+
+        private Object readArray() throws IOException, ClassNotFoundException {
+            final Class<?> component = this.readClass();
+            final int length = this.readLength();
+
+            final Object array = Array.newInstance(component, length);
+            this.reference(array);
+            switch (typeOf(component)) {
+                case TYPE_BOOLEAN: {
+                    final boolean[] values = (boolean[]) array;
+                    for (int i = 0; i < length; i++) {
+                        values[i] = this.readByte() != 0;
+                    }
+                    break;
+                }
+                case TYPE_SHORT: {
+                    final short[] values = (short[]) array;
+                    for (int i = 0; i < length; i++) {
+                        values[i] = (short) this.readZigZagInt();
+                    }
+                    break;
+                }
+                case TYPE_CHAR: {
+                    final char[] values = (char[]) array;
+                    for (int i = 0; i < length; i++) {
+                        values[i] = (char) this.readVarInt();
+                    }
+                    break;
+                }
+                case TYPE_INT: {
+                    final int[] values = (int[]) array;
+                    for (int i = 0; i < length; i++) {
+                        values[i] = this.readZigZagInt();
+                    }
+                    break;
+                }
+                case TYPE_LONG: {
+                    final long[] values = (long[]) array;
+                    for (int i = 0; i < length; i++) {
+                        values[i] = this.readZigZagLong();
+                    }
+                    break;
+                }
+                case TYPE_FLOAT: {
+                    final float[] values = (float[]) array;
+                    for (int i = 0; i < length; i++) {
+                        values[i] = Float.intBitsToFloat(this.readFixedInt());
+                    }
+                    break;
+                }
+                case TYPE_DOUBLE: {
+                    final double[] values = (double[]) array;
+                    for (int i = 0; i < length; i++) {
+                        values[i] = Double.longBitsToDouble(this.readFixedLong());
+                    }
+                    break;
+                }
+                default: {
+                    final Object[] values = (Object[]) array;
+                    for (int i = 0; i < length; i++) {
+                        values[i] = this.readObject();
+                    }
+                }
+            }
+            return array;
+        }
+
+        private void readFields(final Object o, final Descriptor descriptor) throws IOException, ClassNotFoundException {
+            try {
+                for (int i = 0; i < descriptor.fields.length; i++) {
+                    final Field field = descriptor.fields[i];
+                    switch (descriptor.types[i]) {
+                        case TYPE_BOOLEAN:
+                            field.setBoolean(o, this.readByte() != 0);
+                            break;
+                        case TYPE_BYTE:
+                            field.setByte(o, (byte) this.readByte());
+                            break;
+                        case TYPE_SHORT:
+                            field.setShort(o, (short) this.readZigZagInt());
+                            break;
+                        case TYPE_CHAR:
+                            field.setChar(o, (char) this.readVarInt());
+                            break;
+                        case TYPE_INT:
+                            field.setInt(o, this.readZigZagInt());
+                            break;
+                        case TYPE_LONG:
+                            field.setLong(o, this.readZigZagLong());
+                            break;
+                        case TYPE_FLOAT:
+                            field.setFloat(o, Float.intBitsToFloat(this.readFixedInt()));
+                            break;
+                        case TYPE_DOUBLE:
+                            field.setDouble(o, Double.longBitsToDouble(this.readFixedLong()));
+                            break;
+                        default:
+                            field.set(o, this.readObject());
+                    }
+                }
+            } catch (final IllegalAccessException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
@@ -25,15 +25,24 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.net.CookieHandler;
+import java.net.CookieManager;
+import java.net.CookiePolicy;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class HttpConnectionTest {
     private HttpServer server;
+    private final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
 
     @Before
     public void init() throws Exception {
@@ -49,6 +58,33 @@ public class HttpConnectionTest {
                 responseBody.close();
             }
         });
+        server.createContext("/echo", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                final byte[] body = read(exchange.getRequestBody());
+                exchange.sendResponseHeaders(200, 0);
+
+                final OutputStream responseBody = exchange.getResponseBody();
+                responseBody.write(body);
+                responseBody.close();
+            }
+        });
+        server.createContext("/sticky", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                final String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+                if (cookie == null) {
+                    exchange.getResponseHeaders().add("Set-Cookie", "ROUTE=node1; Path=/");
+                }
+                read(exchange.getRequestBody());
+                exchange.sendResponseHeaders(200, 0);
+
+                final OutputStream responseBody = exchange.getResponseBody();
+                responseBody.write(String.valueOf(cookie).getBytes());
+                responseBody.close();
+            }
+        });
         server.start();
     }
 
@@ -88,4 +124,81 @@ public class HttpConnectionTest {
             Assert.assertTrue("should contain", sb.toString().contains("secure"));
         }
     }
+
+    @Test
+    public void keptAliveConnectionsAreReused() throws Exception {
+        final HttpConnectionFactory factory = new HttpConnectionFactory();
+        final URI uri = new URI("http://localhost:" + server.getAddress().getPort() + "/echo?pooled=true");
+        for (int i = 0; i < 5; i++) {
+            Assert.assertArrayEquals(("request " + i).getBytes(), echo(factory, uri, ("request " + i).getBytes()));
+        }
+        Assert.assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void bigRequestsAreStreamed() throws Exception {
+        final HttpConnectionFactory factory = new HttpConnectionFactory();
+        final URI uri = new URI("http://localhost:" + server.getAddress().getPort() + "/echo?pooled=true");
+        final byte[] request = new byte[200 * 1024];
+        for (int i = 0; i < request.length; i++) {
+            request[i] = (byte) i;
+        }
+        for (int i = 0; i < 2; i++) {
+            Assert.assertArrayEquals(request, echo(factory, uri, request));
+        }
+        Assert.assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void poolSizeIsBounded() throws Exception {
+        final HttpConnectionFactory factory = new HttpConnectionFactory();
+        final URI uri = new URI("http://localhost:" + server.getAddress().getPort() + "/echo?pooled=true&poolSize=1&poolTimeout=100");
+        final Connection connection = factory.getConnection(uri);
+        try {
+            factory.getConnection(uri);
+            Assert.fail();
+        } catch (final ConnectionPoolTimeoutException e) {
+            // ok
+        }
+        connection.discard();
+        Assert.assertArrayEquals("free".getBytes(), echo(factory, uri, "free".getBytes()));
+    }
+
+    @Test
+    public void cookiesGoThroughTheDefaultHandler() throws Exception {
+        final CookieHandler old = CookieHandler.getDefault();
+        CookieHandler.setDefault(new CookieManager(null, CookiePolicy.ACCEPT_ALL));
+        try {
+            final HttpConnectionFactory factory = new HttpConnectionFactory();
+            final URI uri = new URI("http://localhost:" + server.getAddress().getPort() + "/sticky?pooled=true");
+            Assert.assertEquals("null", new String(echo(factory, uri, "first".getBytes())));
+            Assert.assertEquals("ROUTE=node1", new String(echo(factory, uri, "second".getBytes())));
+        } finally {
+            CookieHandler.setDefault(old);
+        }
+    }
+
+    private static byte[] echo(final HttpConnectionFactory factory, final URI uri, final byte[] request) throws IOException {
+        final Connection connection = factory.getConnection(uri);
+        try {
+            final OutputStream out = connection.getOutputStream();
+            for (int i = 0; i < request.length; i += 1000) {
+                out.write(request, i, Math.min(1000, request.length - i));
+                out.flush();
+            }
+            return read(connection.getInputStream());
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static byte[] read(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
 }
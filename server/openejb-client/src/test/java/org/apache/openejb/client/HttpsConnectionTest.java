@@ -21,6 +21,9 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSession;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
@@ -51,7 +54,10 @@ public class HttpsConnectionTest {
 
     @After
     public void close() {
-        httpsSimpleServer = null;
+        if (httpsSimpleServer != null) {
+            httpsSimpleServer.stop();
+            httpsSimpleServer = null;
+        }
         dropKeyStore();
     }
 
@@ -87,6 +93,47 @@ public class HttpsConnectionTest {
         Assert.assertTrue("should contain", sb.toString().contains("secure"));
     }
 
+    @Test
+    public void pooledConnectionsUseTheDefaultHostnameVerifier() throws Exception {
+        final HttpConnectionFactory factory = new HttpConnectionFactory();
+        final URI uri = new URI("https://127.0.0.1:" + SERVER_PORT + "/secure?pooled=true" +
+            "&sslTrustStore=" + STORE_PATH + "&sslTrustStorePassword=" + STORE_PWD);
+        try {
+            read(factory.getConnection(uri));
+            Assert.fail("the certificate is issued for " + SERVER);
+        } catch (final IOException e) {
+            // ok
+        }
+
+        final HostnameVerifier old = HttpsURLConnection.getDefaultHostnameVerifier();
+        HttpsURLConnection.setDefaultHostnameVerifier(new HostnameVerifier() {
+            @Override
+            public boolean verify(final String hostname, final SSLSession session) {
+                return "127.0.0.1".equals(hostname);
+            }
+        });
+        try {
+            Assert.assertTrue(read(factory.getConnection(uri)).contains("secure"));
+            Assert.assertTrue(read(factory.getConnection(uri)).contains("secure"));
+        } finally {
+            HttpsURLConnection.setDefaultHostnameVerifier(old);
+        }
+    }
+
+    private static String read(final Connection connection) throws IOException {
+        try {
+            final BufferedReader br = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+            final StringBuilder sb = new StringBuilder();
+            String line;
+            while ((line = br.readLine()) != null) {
+                sb.append(line);
+            }
+            return sb.toString();
+        } finally {
+            connection.close();
+        }
+    }
+
     private File createKeyStore() throws ClassNotFoundException, NoSuchMethodException, InvocationTargetException, IllegalAccessException {
         dropKeyStore();
         File keyStore = new File(STORE_PATH);
@@ -31,6 +31,8 @@ import java.util.concurrent.Executors;
 
 public class HttpsSimpleServer {
 
+    private final HttpsServer server;
+
     public HttpsSimpleServer(int serverPort, final String storePath, final String storePassword) throws IOException, KeyManagementException, NoSuchAlgorithmException {
         final Map<String, String> params = new HashMap<String, String>() {
             {
@@ -41,7 +43,7 @@ public class HttpsSimpleServer {
             }
         };
 
-        HttpsServer server = HttpsServer.create(new InetSocketAddress(serverPort), 5);
+        server = HttpsServer.create(new InetSocketAddress(serverPort), 5);
         SSLContext sslContext = new SSLContextBuilder(params).build();
 
         final SSLEngine m_engine = sslContext.createSSLEngine();
@@ -58,6 +60,10 @@ public class HttpsSimpleServer {
         server.start();
     }
 
+    public void stop() {
+        server.stop(0);
+    }
+
 
     class MyHandler implements HttpHandler {
         public void handle(HttpExchange exchange) throws IOException {
@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.client.serializer;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CompactSerializerTest {
+
+    private final CompactSerializer serializer = new CompactSerializer();
+
+    @Test
+    public void simpleTypes() {
+        for (final Object value : new Object[]{
+            null, true, false, (byte) -3, (short) 300, -42, Integer.MAX_VALUE, Long.MIN_VALUE, 1.5f, -2.25d, 'x', '\u20AC',
+            "", "hello", "h\u00E9llo \u4E16\u754C", new Date(123456789L), TimeUnit.SECONDS, new BigDecimal("12.34")}) {
+            assertEquals(value, roundTrip(value));
+        }
+    }
+
+    @Test
+    public void arraysAndCollections() {
+        assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) roundTrip(new byte[]{1, 2, 3}));
+        assertArrayEquals(new int[]{-1, 0, 1 << 30}, (int[]) roundTrip(new int[]{-1, 0, 1 << 30}));
+        assertArrayEquals(new double[]{0.1, -7}, (double[]) roundTrip(new double[]{0.1, -7}), 0);
+        assertArrayEquals(new String[]{"a", null, "c"}, (String[]) roundTrip(new String[]{"a", null, "c"}));
+
+        final List<Object> list = new ArrayList<Object>(Arrays.<Object>asList("a", 1, null, 2L));
+        assertEquals(list, roundTrip(list));
+
+        final LinkedHashSet<String> set = new LinkedHashSet<String>(Arrays.asList("z", "y", "x"));
+        assertEquals(new ArrayList<String>(set), new ArrayList<Object>((LinkedHashSet<?>) roundTrip(set)));
+
+        final Map<String, Object> map = new HashMap<String, Object>();
+        map.put("one", 1);
+        map.put("list", list);
+        assertEquals(map, roundTrip(map));
+    }
+
+    @Test
+    public void dto() {
+        final Order order = Order.sample();
+        final Order copy = (Order) roundTrip(order);
+        assertEquals(order, copy);
+        assertSame(copy.lines.get(0).order, copy); // cycle kept
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notSerializable() {
+        serializer.serialize(new NotSerializable("cloud"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notSerializableFromPayload() {
+        final String name = NotSerializable.class.getName();
+        final byte[] payload = new byte[3 + name.length()];
+        payload[0] = 18; // OBJECT
+        payload[1] = 0; // new class
+        payload[2] = (byte) name.length();
+        for (int i = 0; i < name.length(); i++) {
+            payload[3 + i] = (byte) name.charAt(i);
+        }
+        serializer.deserialize(payload, Object.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLength() {
+        // STRING claiming 2^28 - 1 chars
+        serializer.deserialize(new byte[]{11, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F}, String.class);
+    }
+
+    @Test
+    public void smallerThanJavaSerialization() throws Exception {
+        final Order order = Order.sample();
+        final ByteArrayOutputStream java = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(java);
+        out.writeObject(order);
+        out.close();
+
+        final int compact = ((byte[]) serializer.serialize(order)).length;
+        assertTrue(compact + " vs " + java.size(), compact < java.size());
+    }
+
+    private Object roundTrip(final Object value) {
+        final Serializable data = serializer.serialize(value);
+        return serializer.deserialize(data, value == null ? Object.class : value.getClass());
+    }
+
+    public static class NotSerializable {
+        private final String name;
+
+        public NotSerializable(final String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Order implements Serializable {
+        private long id;
+        private String customer;
+        private Date created;
+        private boolean paid;
+        private TimeUnit unit;
+        private List<Line> lines = new ArrayList<Line>();
+
+        public static Order sample() {
+            final Order order = new Order();
+            order.id = 1234567L;
+            order.customer = "ACME Corporation";
+            order.created = new Date(1000L);
+            order.paid = true;
+            order.unit = TimeUnit.DAYS;
+            for (int i = 0; i < 10; i++) {
+                final Line line = new Line();
+                line.order = order;
+                line.product = "product-" + i;
+                line.quantity = i;
+                line.price = 9.99 * i;
+                line.tags = new String[]{"tag", Integer.toString(i)};
+                order.lines.add(line);
+            }
+            return order;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!Order.class.isInstance(o)) {
+                return false;
+            }
+            final Order other = Order.class.cast(o);
+            return id == other.id && customer.equals(other.customer) && created.equals(other.created)
+                && paid == other.paid && unit == other.unit && lines.equals(other.lines);
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) id;
+        }
+    }
+
+    public static class Line implements Serializable {
+        private Order order;
+        private String product;
+        private int quantity;
+        private double price;
+        private String[] tags;
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!Line.class.isInstance(o)) {
+                return false;
+            }
+            final Line other = Line.class.cast(o);
+            return product.equals(other.product) && quantity == other.quantity && price == other.price && Arrays.equals(tags, other.tags);
+        }
+
+        @Override
+        public int hashCode() {
+            return quantity;
+        }
+    }
+}
@@ -23,7 +23,6 @@ import org.apache.cxf.endpoint.EndpointException;
 import org.apache.cxf.endpoint.ManagedEndpoint;
 import org.apache.cxf.endpoint.Server;
 import org.apache.cxf.endpoint.ServerImpl;
-import org.apache.cxf.helpers.IOUtils;
 import org.apache.cxf.jaxrs.JAXRSServerFactoryBean;
 import org.apache.cxf.jaxrs.JAXRSServiceImpl;
 import org.apache.cxf.jaxrs.ext.ResourceComparator;
@@ -71,6 +70,7 @@ import org.apache.openejb.server.httpd.HttpRequest;
 import org.apache.openejb.server.httpd.HttpRequestImpl;
 import org.apache.openejb.server.httpd.HttpResponse;
 import org.apache.openejb.server.httpd.ServletRequestAdapter;
+import org.apache.openejb.server.httpd.StaticResourceCache;
 import org.apache.openejb.server.rest.EJBRestServiceInfo;
 import org.apache.openejb.server.rest.InternalApplication;
 import org.apache.openejb.server.rest.RsHttpListener;
@@ -112,8 +112,8 @@ import javax.enterprise.inject.spi.Bean;
 import javax.management.ObjectName;
 import javax.management.openmbean.TabularData;
 import javax.naming.Context;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
-import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.ConstrainedTo;
@@ -153,6 +153,7 @@ public class CxfRsHttpListener implements RsHttpListener {
     private String context = "";
     private String servlet = "";
     private final Collection<Pattern> staticResourcesList = new CopyOnWriteArrayList<>();
+    private final StaticResourceCache staticResources = new StaticResourceCache(STATIC_CONTENT_TYPES); // limits are per application
     private final List<ObjectName> jmxNames = new ArrayList<>();
     private final Collection<CreationalContext<?>> toRelease = new LinkedHashSet<>();
     private final Collection<CdiSingletonResourceProvider> singletons = new LinkedHashSet<>();
@@ -246,7 +247,48 @@ public class CxfRsHttpListener implements RsHttpListener {
         return false;
     }
 
+    /**
+     * @deprecated use {@link #hasStaticContent(HttpServletRequest, String[])}, the caller has to close the stream
+     */
+    @Deprecated
     public InputStream findStaticContent(final HttpServletRequest request, final String[] welcomeFiles) throws ServletException {
+        final URL url = lookupStaticResource(request, welcomeFiles);
+        if (url == null) {
+            return null;
+        }
+        try {
+            return url.openStream();
+        } catch (final IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Only resolves the resource, the container serves it (TomEE) so its content is not cached.
+     */
+    public boolean hasStaticContent(final HttpServletRequest request, final String[] welcomeFiles) throws ServletException {
+        return lookupStaticResource(request, welcomeFiles) != null;
+    }
+
+    private URL lookupStaticResource(final HttpServletRequest request, final String[] welcomeFiles) throws ServletException {
+        final String pathInfo = staticPath(request);
+        try {
+            return staticResources.lookup(staticKey(pathInfo, welcomeFiles), pathInfo, staticFinder(request, welcomeFiles));
+        } catch (final IOException e) {
+            throw new ServletException("Static resource " + pathInfo + " can not be read", e);
+        }
+    }
+
+    private StaticResourceCache.Resource findStaticResource(final HttpServletRequest request, final String[] welcomeFiles) throws ServletException {
+        final String pathInfo = staticPath(request);
+        try {
+            return staticResources.find(staticKey(pathInfo, welcomeFiles), pathInfo, staticFinder(request, welcomeFiles));
+        } catch (final IOException e) {
+            throw new ServletException("Static resource " + pathInfo + " can not be read", e);
+        }
+    }
+
+    private static String staticPath(final HttpServletRequest request) {
         String pathInfo = request.getRequestURI().substring(request.getContextPath().length());
         for (final char c : URL_SEP) {
             final int indexOf = pathInfo.indexOf(c);
@@ -254,38 +296,46 @@ public class CxfRsHttpListener implements RsHttpListener {
                 pathInfo = pathInfo.substring(0, indexOf);
             }
         }
-        InputStream is = request.getServletContext().getResourceAsStream(pathInfo);
-        if (is == null && ("/".equals(pathInfo) || pathInfo.isEmpty())) {
-            for (final String n : welcomeFiles) {
-                is = request.getServletContext().getResourceAsStream(n);
-                if (is != null) {
-                    break;
+        return pathInfo;
+    }
+
+    // the root resolves to a welcome file, it depends on the ones requested
+    private static String staticKey(final String pathInfo, final String[] welcomeFiles) {
+        return "/".equals(pathInfo) || pathInfo.isEmpty() ? pathInfo + Arrays.toString(welcomeFiles) : pathInfo;
+    }
+
+    private static StaticResourceCache.Finder staticFinder(final HttpServletRequest request, final String[] welcomeFiles) {
+        final ServletContext servletContext = request.getServletContext();
+        return new StaticResourceCache.Finder() {
+            @Override
+            public URL find(final String path) throws IOException {
+                URL url = servletContext.getResource(path);
+                if (url != null && StaticResourceCache.isDirectory(url)) {
+                    url = null;
+                }
+                if (url == null && ("/".equals(path) || path.isEmpty())) {
+                    for (final String n : welcomeFiles) {
+                        url = servletContext.getResource(n);
+                        if (url != null) {
+                            break;
+                        }
+                    }
                 }
+                return url;
             }
-        }
-        return is;
+        };
     }
 
     public boolean serveStaticContent(final HttpServletRequest request,
                                       final HttpServletResponse response,
                                       final String pathInfo) throws ServletException {
-        final InputStream is = findStaticContent(request, DEFAULT_WELCOME_FILES);
-        if (is == null) {
+        final StaticResourceCache.Resource resource = findStaticResource(request, DEFAULT_WELCOME_FILES);
+        if (resource == null) {
             return false;
         }
         try {
-            final int ind = pathInfo.lastIndexOf(".");
-            if (ind != -1 && ind < pathInfo.length()) {
-                final String type = STATIC_CONTENT_TYPES.get(pathInfo.substring(ind + 1));
-                if (type != null) {
-                    response.setContentType(type);
-                }
-            }
-
-            final ServletOutputStream os = response.getOutputStream();
-            IOUtils.copy(is, os);
-            os.flush();
-            response.setStatus(HttpURLConnection.HTTP_OK);
+            staticResources.serve(resource, request, response);
+            response.getOutputStream().flush();
         } catch (final IOException ex) {
             throw new ServletException("Static resource " + pathInfo + " can not be written to the output stream");
         }
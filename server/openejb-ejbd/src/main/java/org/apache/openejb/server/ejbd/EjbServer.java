@@ -49,7 +49,7 @@ public class EjbServer implements org.apache.openejb.server.ServerService, org.a
             props.setProperty("name", getName());
         }
         server.init(props);
-        keepAlive = new KeepAliveServer(this, server.isGzip());
+        keepAlive = KeepAliveServer.create(this, server.isGzip(), props);
     }
 
     @Override
@@ -18,49 +18,102 @@ package org.apache.openejb.server.ejbd;
 
 import org.apache.openejb.client.FlushableGZIPOutputStream;
 import org.apache.openejb.client.KeepAliveStyle;
+import org.apache.openejb.client.ProtocolMetaData;
+import org.apache.openejb.loader.Options;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.server.ServerService;
 import org.apache.openejb.server.ServiceException;
 import org.apache.openejb.server.ServicePool;
 import org.apache.openejb.server.context.RequestInfos;
+import org.apache.openejb.util.DaemonThreadFactory;
 import org.apache.openejb.util.LogCategory;
 import org.apache.openejb.util.Logger;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.zip.GZIPInputStream;
 
 /**
+ * Keeps client sockets open between requests.
+ * <p/>
+ * How an idle connection waits for its next request depends on the {@link Mode}:
+ * <ul>
+ * <li>THREAD: the pool thread which accepted the socket blocks on it until the client hangs up</li>
+ * <li>SELECTOR: idle sockets are parked on a selector and a worker is only used once a request arrived</li>
+ * <li>VIRTUAL: each connection is served by its own virtual thread (requires a JVM supporting them)</li>
+ * </ul>
+ * SELECTOR requires sockets accepted from a channel (see ServiceDaemon "channel" option) and no gzip,
+ * connections not matching these requirements are served using THREAD mode.
+ * <p/>
+ * Whatever the mode a client can ask for a multiplexed connection (see {@link KeepAliveStyle#MULTIPLEX}),
+ * such a connection gets its own reader thread and its requests are processed concurrently by the workers.
+ * At most as many multiplexed requests as workers are in progress for all the connections, a request
+ * frame bigger than the maximum frame size is answered with a MULTIPLEX_ERROR and closes the connection.
+ * Multiplexed connections without request in progress are closed after the keep alive timeout.
+ *
  * @version $Rev$ $Date$
  */
 public class KeepAliveServer implements ServerService {
 
+    public static final int DEFAULT_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
     private static final Logger logger = Logger.getInstance(LogCategory.OPENEJB_SERVER.createChild("keepalive"), KeepAliveServer.class);
     private final ServerService service;
     private final long timeout = (1000 * 10);
 
     private final AtomicBoolean running = new AtomicBoolean(false);
-    private final ConcurrentHashMap<Thread, Session> sessions = new ConcurrentHashMap<Thread, Session>();
+    private final Set<Session> sessions = Collections.newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
     private BlockingQueue<Runnable> threadQueue;
     private Timer timer;
     private final boolean gzip;
+    private final Mode mode;
+    private final int threads;
+    private final int maxFrameSize;
+    private volatile Semaphore multiplexRequests;
+    private volatile ExecutorService workers;
+    private volatile ExecutorService multiplexWorkers;
+    private volatile ExecutorService multiplexReaders;
+    private volatile SessionSelector selector;
+
+    public enum Mode {
+        THREAD, SELECTOR, VIRTUAL
+    }
 
     @SuppressWarnings("deprecation")
     public KeepAliveServer() {
@@ -73,8 +126,38 @@ public class KeepAliveServer implements ServerService {
     }
 
     public KeepAliveServer(final ServerService service, final boolean gzip) {
+        this(service, gzip, Mode.THREAD, 200);
+    }
+
+    /**
+     * @param service the service handling the requests
+     * @param gzip    are the streams compressed
+     * @param mode    how idle connections are handled
+     * @param threads number of workers handling the requests in SELECTOR mode and the multiplexed requests
+     */
+    public KeepAliveServer(final ServerService service, final boolean gzip, final Mode mode, final int threads) {
+        this(service, gzip, mode, threads, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * @param maxFrameSize the maximum size in bytes of a multiplexed request
+     */
+    public KeepAliveServer(final ServerService service, final boolean gzip, final Mode mode, final int threads, final int maxFrameSize) {
         this.service = service;
         this.gzip = gzip;
+        this.mode = mode;
+        this.threads = threads;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    public static KeepAliveServer create(final ServerService service, final boolean gzip, final Properties props) {
+        final Options options = new Options(props);
+        return new KeepAliveServer(service, gzip, options.get("keepAliveMode", Mode.THREAD), options.get("threads", 200),
+            options.get("maxFrameSize", DEFAULT_MAX_FRAME_SIZE));
+    }
+
+    public Mode getMode() {
+        return mode;
     }
 
     private void closeInactiveSessions() {
@@ -83,6 +166,8 @@ public class KeepAliveServer implements ServerService {
             return;
         }
 
+        this.closeInactiveMultiplexedSessions();
+
         final BlockingQueue<Runnable> queue = this.getQueue();
         if (queue == null) {
             return;
@@ -96,10 +181,15 @@ public class KeepAliveServer implements ServerService {
         final long now = System.currentTimeMillis();
 
         final List<Session> current = new ArrayList<Session>();
-        current.addAll(this.sessions.values());
+        current.addAll(this.sessions);
 
         for (final Session session : current) {
 
+            if (session.multiplexed) {
+                // see closeInactiveMultiplexedSessions
+                continue;
+            }
+
             final Lock l = session.lock;
 
             if (l.tryLock()) {
@@ -127,11 +217,23 @@ public class KeepAliveServer implements ServerService {
         }
     }
 
+    /**
+     * Multiplexed sessions don't hold a pool thread so they are closed once idle whatever the backlog.
+     */
+    private void closeInactiveMultiplexedSessions() {
+        final long now = System.currentTimeMillis();
+        for (final Session session : new ArrayList<Session>(this.sessions)) {
+            if (session.multiplexed && session.requests.get() == 0 && now - session.lastRequest.get() > this.timeout) {
+                session.close(); // the reader fails and removes the session
+            }
+        }
+    }
+
     public void closeSessions() {
 
         // Close the ones we can
         final List<Session> current = new ArrayList<Session>();
-        current.addAll(this.sessions.values());
+        current.addAll(this.sessions);
 
         for (final Session session : current) {
 
@@ -171,12 +273,12 @@ public class KeepAliveServer implements ServerService {
         return this.threadQueue;
     }
 
-    public Session addSession(final Session session) {
-        return this.sessions.put(session.thread, session);
+    public boolean addSession(final Session session) {
+        return this.sessions.add(session);
     }
 
-    public Session removeSession(final Session session) {
-        return this.sessions.remove(session.thread);
+    public boolean removeSession(final Session session) {
+        return this.sessions.remove(session);
     }
 
     public class KeepAliveTimer extends TimerTask {
@@ -195,21 +297,23 @@ public class KeepAliveServer implements ServerService {
 
     private class Session {
 
-        private final Thread thread;
         private final KeepAliveServer kas;
         private final Lock lock = new ReentrantLock();
+        private final ClassLoader loader;
 
         // only used inside the Lock
         private final AtomicLong lastRequest;
         private final Socket socket;
         private InputStream in = null;
         private OutputStream out = null;
+        private volatile boolean multiplexed;
+        private final AtomicInteger requests = new AtomicInteger(); // multiplexed requests in progress
 
         private Session(final KeepAliveServer kas, final Socket socket) {
             this.kas = kas;
             this.socket = socket;
             this.lastRequest = new AtomicLong(System.currentTimeMillis());
-            this.thread = Thread.currentThread();
+            this.loader = Thread.currentThread().getContextClassLoader();
         }
 
         @Override
@@ -221,29 +325,53 @@ public class KeepAliveServer implements ServerService {
             }
         }
 
-        private void service() throws ServiceException, IOException {
+        private void open() throws IOException {
             this.kas.addSession(this);
 
-            int i = -1;
+            final Lock l1 = this.lock;
+            l1.lock();
 
             try {
+                if (!KeepAliveServer.this.gzip) {
+                    in = new BufferedInputStream(socket.getInputStream());
+                    out = new BufferedOutputStream(socket.getOutputStream());
+                } else {
+                    in = new GZIPInputStream(new BufferedInputStream(socket.getInputStream()));
+                    out = new BufferedOutputStream(new FlushableGZIPOutputStream(socket.getOutputStream()));
+                }
+            } catch (IOException e) {
+                this.kas.removeSession(this);
+                close();
+                throw e;
+            } finally {
+                l1.unlock();
+            }
+        }
 
-                final Lock l1 = this.lock;
-                l1.lock();
+        private boolean service() throws ServiceException, IOException {
+            open();
+            return serve(false);
+        }
 
-                try {
-                    if (!KeepAliveServer.this.gzip) {
-                        in = new BufferedInputStream(socket.getInputStream());
-                        out = new BufferedOutputStream(socket.getOutputStream());
-                    } else {
-                        in = new GZIPInputStream(new BufferedInputStream(socket.getInputStream()));
-                        out = new BufferedOutputStream(new FlushableGZIPOutputStream(socket.getOutputStream()));
-                    }
-                } finally {
-                    l1.unlock();
-                }
+        /**
+         * Processes the requests of this session.
+         *
+         * @param park when true the session is handed to the selector as soon as no request data is buffered
+         * @return true if the session was parked or multiplexed (the socket is still in use), false if it is closed
+         */
+        private boolean serve(final boolean park) throws ServiceException, IOException {
+            boolean parked = false;
+            int i = -1;
+
+            try {
 
                 while (KeepAliveServer.this.running.get()) {
+                    if (park && in.available() <= 0) {
+                        final SessionSelector sessionSelector = KeepAliveServer.this.selector;
+                        parked = sessionSelector != null && sessionSelector.park(this);
+                        break;
+                    }
+
                     try {
                         i = in.read();
                     } catch (SocketException e) {
@@ -256,6 +384,11 @@ public class KeepAliveServer implements ServerService {
                     }
                     final KeepAliveStyle style = KeepAliveStyle.values()[i];
 
+                    if (style == KeepAliveStyle.MULTIPLEX) {
+                        parked = this.multiplex();
+                        break;
+                    }
+
                     final Lock l2 = this.lock;
                     l2.lock();
 
@@ -291,9 +424,172 @@ public class KeepAliveServer implements ServerService {
                 Thread.interrupted();
             } finally {
 
+                if (!parked) {
+                    close();
+
+                    this.kas.removeSession(this);
+                }
+            }
+
+            return parked;
+        }
+
+        /**
+         * Answers the MULTIPLEX handshake and starts reading request frames in a dedicated thread.
+         */
+        private boolean multiplex() throws IOException {
+            final ProtocolMetaData client = new ProtocolMetaData();
+            client.readExternal(in);
+            new ProtocolMetaData().writeExternal(out);
+
+            this.multiplexed = true;
+            this.lastRequest.set(System.currentTimeMillis());
+            KeepAliveServer.this.multiplexReaders().execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Thread thread = Thread.currentThread();
+                    final String name = thread.getName();
+                    thread.setName("KeepAlive." + KeepAliveServer.this.getName() + ".multiplex " + socket.getRemoteSocketAddress());
+                    try {
+                        Session.this.readFrames();
+                    } finally {
+                        thread.setName(name);
+                    }
+                }
+            });
+            return true;
+        }
+
+        private void readFrames() {
+            final DataInputStream frames = new DataInputStream(in);
+            final DataOutputStream replies = new DataOutputStream(out);
+
+            // stop reading once as many requests as workers are in progress, the clients then block on tcp
+            final Semaphore inProgress = KeepAliveServer.this.multiplexRequests;
+            try {
+                while (KeepAliveServer.this.running.get()) {
+                    final int id = frames.readInt();
+                    final int length = frames.readInt();
+                    if (length < 0 || length > KeepAliveServer.this.maxFrameSize) {
+                        this.reject(replies, id, "Invalid frame length " + length + ", the maximum is " + KeepAliveServer.this.maxFrameSize);
+                        break;
+                    }
+
+                    final byte[] request = new byte[length];
+                    frames.readFully(request);
+                    this.requests.incrementAndGet();
+                    this.lastRequest.set(System.currentTimeMillis());
+
+                    inProgress.acquire();
+                    try {
+                        KeepAliveServer.this.multiplexWorkers().execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    Session.this.reply(replies, id, request);
+                                } finally {
+                                    inProgress.release();
+                                    Session.this.lastRequest.set(System.currentTimeMillis());
+                                    Session.this.requests.decrementAndGet();
+                                }
+                            }
+                        });
+                    } catch (final RuntimeException e) {
+                        inProgress.release();
+                        this.requests.decrementAndGet();
+                        throw e;
+                    }
+                }
+            } catch (Throwable e) {
+                // client hung up or the server is stopping
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Multiplexed session closed " + socket.getInetAddress(), e);
+                }
+            } finally {
+                close();
+                this.kas.removeSession(this);
+            }
+        }
+
+        private void reject(final DataOutputStream replies, final int id, final String message) {
+            logger.warning("Closing multiplexed session " + socket.getInetAddress() + ": " + message);
+            try {
+                synchronized (replies) {
+                    replies.writeInt(id);
+                    replies.writeInt(KeepAliveStyle.MULTIPLEX_ERROR);
+                    replies.writeUTF(message);
+                    replies.flush();
+                }
+            } catch (IOException e) {
+                //Ignore, the session is closed anyway
+            }
+        }
+
+        private void reply(final DataOutputStream replies, final int id, final byte[] request) {
+            final ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+            final Thread thread = Thread.currentThread();
+            final ClassLoader old = thread.getContextClassLoader();
+            thread.setContextClassLoader(this.loader);
+            RequestInfos.initRequestInfo(socket);
+            String failure = null;
+            try {
+                KeepAliveServer.this.service.service(new ByteArrayInputStream(request), response);
+            } catch (Throwable e) {
+                failure = e.getClass().getName() + ": " + e.getMessage();
+                logger.error("Multiplexed request failed " + socket.getInetAddress(), e);
+            } finally {
+                RequestInfos.clearRequestInfo();
+                thread.setContextClassLoader(old);
+            }
+            if (failure == null && response.size() == 0) {
+                // the handler logged the error and gave up without answering
+                failure = "no response, see the server log";
+            }
+
+            try {
+                synchronized (replies) {
+                    replies.writeInt(id);
+                    if (failure == null) {
+                        replies.writeInt(response.size());
+                        response.writeTo(replies);
+                    } else {
+                        replies.writeInt(KeepAliveStyle.MULTIPLEX_ERROR);
+                        replies.writeUTF(failure);
+                    }
+                    replies.flush();
+                }
+            } catch (IOException e) {
                 close();
+            }
+        }
 
+        /**
+         * Runs the session outside of the ServicePool thread which accepted the socket.
+         *
+         * @param open true if the streams still need to be opened
+         * @param park see {@link #serve(boolean)}
+         */
+        private void resume(final boolean open, final boolean park) {
+            final Thread thread = Thread.currentThread();
+            final ClassLoader old = thread.getContextClassLoader();
+            thread.setContextClassLoader(this.loader);
+            RequestInfos.initRequestInfo(socket);
+            try {
+                if (open) {
+                    open();
+                }
+                serve(park);
+            } catch (Throwable e) {
+                close();
                 this.kas.removeSession(this);
+
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Session error " + socket.getInetAddress(), e);
+                }
+            } finally {
+                RequestInfos.clearRequestInfo();
+                thread.setContextClassLoader(old);
             }
         }
 
@@ -324,13 +620,150 @@ public class KeepAliveServer implements ServerService {
         }
     }
 
+    /**
+     * Waits for data on idle sessions and hands them to a worker once readable.
+     * <p/>
+     * Channels are only non blocking while registered, workers use the usual blocking streams.
+     */
+    private class SessionSelector implements Runnable {
+
+        private final Selector selector;
+        private final ConcurrentLinkedQueue<Session> pending = new ConcurrentLinkedQueue<Session>();
+
+        private SessionSelector() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        private boolean park(final Session session) {
+            if (!KeepAliveServer.this.running.get()) {
+                return false;
+            }
+
+            this.pending.add(session);
+            this.selector.wakeup();
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (KeepAliveServer.this.running.get()) {
+                try {
+                    this.selector.select();
+                    this.register();
+
+                    final Set<SelectionKey> keys = this.selector.selectedKeys();
+                    if (keys.isEmpty()) {
+                        continue;
+                    }
+
+                    final List<Session> ready = new ArrayList<Session>(keys.size());
+                    final Iterator<SelectionKey> iterator = keys.iterator();
+                    while (iterator.hasNext()) {
+                        final SelectionKey key = iterator.next();
+                        iterator.remove();
+                        key.cancel();
+                        ready.add(Session.class.cast(key.attachment()));
+                    }
+
+                    // flush the cancelled keys, a channel can't go back to blocking mode while registered
+                    this.selector.selectNow();
+
+                    for (final Session session : ready) {
+                        this.dispatch(session);
+                    }
+                } catch (ClosedSelectorException e) {
+                    break;
+                } catch (Throwable e) {
+                    logger.error("Unexpected error in keep alive selector", e);
+                }
+            }
+        }
+
+        private void register() {
+            Session session;
+            while ((session = this.pending.poll()) != null) {
+                try {
+                    final SocketChannel channel = session.socket.getChannel();
+                    channel.configureBlocking(false);
+                    channel.register(this.selector, SelectionKey.OP_READ, session);
+                } catch (Throwable e) {
+                    session.close();
+                    KeepAliveServer.this.removeSession(session);
+                }
+            }
+        }
+
+        private void dispatch(final Session session) {
+            try {
+                session.socket.getChannel().configureBlocking(true);
+                KeepAliveServer.this.workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        session.resume(false, true);
+                    }
+                });
+            } catch (Throwable e) {
+                session.close();
+                KeepAliveServer.this.removeSession(session);
+            }
+        }
+
+        private void close() {
+            try {
+                this.selector.close();
+            } catch (IOException e) {
+                //Ignore
+            }
+        }
+    }
+
+    private Mode mode(final Socket socket) {
+        switch (this.mode) {
+            case SELECTOR:
+                return this.selector != null && !this.gzip && socket.getChannel() != null ? Mode.SELECTOR : Mode.THREAD;
+            case VIRTUAL:
+                return this.workers != null ? Mode.VIRTUAL : Mode.THREAD;
+            default:
+                return Mode.THREAD;
+        }
+    }
+
     @Override
     public void service(final Socket socket) throws ServiceException, IOException {
-        RequestInfos.initRequestInfo(socket);
-        try {
-            new Session(this, socket).service();
-        } finally {
-            RequestInfos.clearRequestInfo();
+        final Session session = new Session(this, socket);
+        switch (this.mode(socket)) {
+            case SELECTOR: {
+                RequestInfos.initRequestInfo(socket);
+                try {
+                    session.open();
+                    if (session.serve(true)) {
+                        ServicePool.detachSocket();
+                    }
+                } finally {
+                    RequestInfos.clearRequestInfo();
+                }
+                break;
+            }
+            case VIRTUAL: {
+                this.workers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        session.resume(true, false);
+                    }
+                });
+                ServicePool.detachSocket();
+                break;
+            }
+            default: {
+                RequestInfos.initRequestInfo(socket);
+                try {
+                    if (session.service()) {
+                        ServicePool.detachSocket();
+                    }
+                } finally {
+                    RequestInfos.clearRequestInfo();
+                }
+            }
         }
     }
 
@@ -358,12 +791,83 @@ public class KeepAliveServer implements ServerService {
         if (!this.running.getAndSet(true)) {
             this.timer = new Timer("KeepAliveTimer", true);
             this.timer.scheduleAtFixedRate(new KeepAliveTimer(this), this.timeout, (this.timeout / 2));
+            this.multiplexRequests = new Semaphore(this.threads);
+
+            if (this.mode == Mode.SELECTOR) {
+                try {
+                    this.selector = new SessionSelector();
+                } catch (IOException e) {
+                    throw new ServiceException("Can't open keep alive selector", e);
+                }
+
+                final ThreadPoolExecutor executor = new ThreadPoolExecutor(this.threads, this.threads, 1, TimeUnit.MINUTES,
+                    new LinkedBlockingQueue<Runnable>(), new DaemonThreadFactory("KeepAlive." + this.getName() + ".worker"));
+                executor.allowCoreThreadTimeOut(true);
+                this.workers = executor;
+
+                final Thread thread = new Thread(this.selector, "KeepAlive." + this.getName() + ".selector");
+                thread.setDaemon(true);
+                thread.start();
+            } else if (this.mode == Mode.VIRTUAL) {
+                this.workers = newVirtualThreadExecutor();
+                if (this.workers == null) {
+                    logger.warning("Virtual threads are not supported by this JVM, using one thread per connection for " + this.getName());
+                }
+            }
+        }
+    }
+
+    private ExecutorService multiplexWorkers() {
+        final ExecutorService current = this.workers;
+        if (current != null) {
+            return current;
+        }
+
+        ExecutorService executor = this.multiplexWorkers;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.multiplexWorkers;
+                if (executor == null) {
+                    // when all the workers are busy the session reader runs the request itself and stops reading
+                    final ThreadPoolExecutor pool = new ThreadPoolExecutor(this.threads, this.threads, 1, TimeUnit.MINUTES,
+                        new LinkedBlockingQueue<Runnable>(this.threads), new DaemonThreadFactory("KeepAlive." + this.getName() + ".multiplex.worker"),
+                        new ThreadPoolExecutor.CallerRunsPolicy());
+                    pool.allowCoreThreadTimeOut(true);
+                    this.multiplexWorkers = executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private ExecutorService multiplexReaders() {
+        ExecutorService executor = this.multiplexReaders;
+        if (executor == null) {
+            synchronized (this) {
+                executor = this.multiplexReaders;
+                if (executor == null) {
+                    this.multiplexReaders = executor = Executors.newCachedThreadPool(new DaemonThreadFactory("KeepAlive." + this.getName() + ".multiplex.reader"));
+                }
+            }
+        }
+        return executor;
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return ExecutorService.class.cast(Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+        } catch (final Exception e) {
+            return null;
         }
     }
 
     @Override
     public void stop() throws ServiceException {
         if (this.running.getAndSet(false)) {
+            if (this.selector != null) {
+                this.selector.close();
+                this.selector = null;
+            }
             try {
                 this.closeSessions();
             } catch (Throwable e) {
@@ -374,6 +878,20 @@ public class KeepAliveServer implements ServerService {
             } catch (Throwable e) {
                 //Ignore
             }
+            if (this.workers != null) {
+                this.workers.shutdown();
+                this.workers = null;
+            }
+            synchronized (this) {
+                if (this.multiplexWorkers != null) {
+                    this.multiplexWorkers.shutdown();
+                    this.multiplexWorkers = null;
+                }
+                if (this.multiplexReaders != null) {
+                    this.multiplexReaders.shutdownNow(); // readers may wait for a free worker
+                    this.multiplexReaders = null;
+                }
+            }
         }
     }
 
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServerService;
+import org.apache.openejb.server.ServiceManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Opens a few thousand client connections, each one using its own client pool,
+ * against a server having only 10 threads. In selector mode idle connections
+ * don't hold a thread so all of them can be used again afterwards.
+ */
+public class KeepAliveSelectorTest {
+
+    private static final int CLIENTS = Integer.getInteger("openejb.test.keepalive.clients", 2000);
+    private static final int THREADS = 10;
+
+    private ServerService service;
+    private int port;
+
+    @Before
+    public void start() throws Exception {
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(KeepAilveTest.EchoBean.class));
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        final Properties p = new Properties();
+        p.put("server", "org.apache.openejb.server.ejbd.EjbServer");
+        p.put("bind", "127.0.0.1");
+        p.put("port", "0");
+        p.put("disabled", "false");
+        p.put("threads", Integer.toString(THREADS));
+        p.put("backlog", "1000");
+        p.put("keepAliveMode", "selector");
+        service = ServiceManager.manage("ejbd", p, new EjbServer());
+        service.init(p);
+        service.start();
+
+        port = Integer.parseInt(SystemInstance.get().getProperty("ejbd.port"));
+    }
+
+    @After
+    public void stop() throws Exception {
+        try {
+            service.stop();
+        } finally {
+            OpenEJB.destroy();
+        }
+    }
+
+    @Test
+    public void idleConnectionsDontHoldThreads() throws Exception {
+        final ExecutorService es = Executors.newFixedThreadPool(50);
+        try {
+            final List<Future<KeepAilveTest.Echo>> connected = new ArrayList<>(CLIENTS);
+            for (int i = 0; i < CLIENTS; i++) {
+                final int id = i;
+                connected.add(es.submit(new Callable<KeepAilveTest.Echo>() {
+                    @Override
+                    public KeepAilveTest.Echo call() throws Exception {
+                        final Properties props = new Properties();
+                        props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+                        props.put(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + port + "?" + id); // one client pool per id
+                        final KeepAilveTest.Echo echo = (KeepAilveTest.Echo) new InitialContext(props).lookup("EchoBeanRemote");
+                        assertEquals("1-olleh", echo.echo("hello-1"));
+                        return echo;
+                    }
+                }));
+            }
+
+            final List<KeepAilveTest.Echo> clients = new ArrayList<>(CLIENTS);
+            for (final Future<KeepAilveTest.Echo> future : connected) {
+                clients.add(future.get(1, TimeUnit.MINUTES));
+            }
+
+            // all connections are now open and idle, reuse them
+            final List<Future<String>> calls = new ArrayList<>(CLIENTS);
+            for (final KeepAilveTest.Echo echo : clients) {
+                calls.add(es.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return echo.echo("hello-2");
+                    }
+                }));
+            }
+            for (final Future<String> call : calls) {
+                assertEquals("2-olleh", call.get(1, TimeUnit.MINUTES));
+            }
+
+            int workers = 0;
+            for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().startsWith("KeepAlive.ejbd.worker")) {
+                    workers++;
+                }
+            }
+            assertTrue("workers: " + workers, workers <= THREADS);
+        } finally {
+            es.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import junit.framework.TestCase;
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.client.Client;
+import org.apache.openejb.client.ConnectionManager;
+import org.apache.openejb.client.LatencyAwareConnectionStrategy;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServerService;
+import org.apache.openejb.server.ServerServiceFilter;
+import org.apache.openejb.server.ServiceDaemon;
+import org.apache.openejb.server.ServiceException;
+import org.apache.openejb.server.ServicePool;
+
+import javax.ejb.Remote;
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Three ejbd servers in the same JVM, one of them slowed down then one failing.
+ */
+public class LatencyAwareConnectionStrategyTest extends TestCase {
+
+    private static final URI red = URI.create("red");
+    private static final URI green = URI.create("green");
+    private static final URI blue = URI.create("blue");
+
+    private static final List<URI> hits = Collections.synchronizedList(new ArrayList<URI>());
+    private static final Set<URI> slow = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
+    private static final Set<URI> broken = Collections.newSetFromMap(new ConcurrentHashMap<URI, Boolean>());
+
+    private final List<ServiceDaemon> daemons = new ArrayList<ServiceDaemon>();
+    private final LatencyAwareConnectionStrategy strategy = new LatencyAwareConnectionStrategy(60000, 1, 60000);
+
+    public void testSlowAndFailingServersAreAvoided() throws Exception {
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+
+        final EjbServer ejbServer = new EjbServer();
+        ejbServer.init(new Properties());
+
+        daemons.add(createServiceDaemon(ejbServer, red));
+        daemons.add(createServiceDaemon(ejbServer, green));
+        daemons.add(createServiceDaemon(ejbServer, blue));
+
+        final ConfigurationFactory config = new ConfigurationFactory();
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+
+        final StatelessBean bean = new StatelessBean(ColorBean.class);
+        bean.addBusinessRemote(Color.class.getName());
+
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(bean);
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        ConnectionManager.registerStrategy("latency-test", strategy);
+        System.setProperty("openejb.client.requestretry", "true");
+
+        final URI redUri = URI.create("ejbd://127.0.0.1:" + daemons.get(0).getPort() + "?red");
+        final URI greenUri = URI.create("ejbd://127.0.0.1:" + daemons.get(1).getPort() + "?green");
+        final URI blueUri = URI.create("ejbd://127.0.0.1:" + daemons.get(2).getPort() + "?blue");
+
+        final Properties props = new Properties();
+        props.put("java.naming.factory.initial", "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put("java.naming.provider.url", "failover:latency-test:" + redUri + "," + greenUri + "," + blueUri);
+        final Context context = new InitialContext(props);
+        final Color color = (Color) context.lookup("ColorBeanRemote");
+
+        // blue answers in 100ms, the others right away
+        slow.add(blue);
+        for (int i = 0; i < 40; i++) {
+            color.hit();
+        }
+        assertTrue(hits.contains(red));
+        assertTrue(hits.contains(green));
+        assertTrue("blue was used " + Collections.frequency(hits, blue) + " times", Collections.frequency(hits, blue) <= 3);
+        assertTrue(strategy.getLatency(blueUri) > strategy.getLatency(redUri));
+
+        // green drops the requests, retried on another server
+        broken.add(green);
+        hits.clear();
+        for (int i = 0; i < 40; i++) {
+            color.hit();
+        }
+        assertTrue(strategy.isEjected(greenUri));
+        assertFalse(strategy.isEjected(redUri));
+        assertTrue(Collections.frequency(hits, green) <= 1);
+        assertTrue(Collections.frequency(hits, red) >= 35);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+
+        System.clearProperty("openejb.client.requestretry");
+        ConnectionManager.unregisterStrategy("latency-test");
+        Client.removeEventObserver(strategy);
+        slow.clear();
+        broken.clear();
+        hits.clear();
+
+        for (final ServiceDaemon daemon : daemons) {
+            daemon.stop();
+        }
+
+        OpenEJB.destroy();
+    }
+
+    private ServiceDaemon createServiceDaemon(final EjbServer ejbServer, final URI uri) throws ServiceException {
+        final ServiceIdentifier serviceIdentifier = new ServiceIdentifier(ejbServer, uri);
+        final KeepAliveServer keepAliveServer = new KeepAliveServer(serviceIdentifier);
+        final ServicePool pool = new ServicePool(keepAliveServer, 10);
+        final ServiceDaemon daemon = new ServiceDaemon(pool, 0, "localhost");
+        daemon.start();
+        return daemon;
+    }
+
+    public static class ServiceIdentifier extends ServerServiceFilter {
+
+        private final URI me;
+
+        public ServiceIdentifier(final ServerService service, final URI me) {
+            super(service);
+            this.me = me;
+        }
+
+        @Override
+        public void service(final InputStream in, final OutputStream out) throws ServiceException, IOException {
+            if (broken.contains(me)) {
+                hits.add(me);
+                throw new IOException("injected failure of " + me);
+            }
+            if (slow.contains(me)) {
+                try {
+                    Thread.sleep(100);
+                } catch (final InterruptedException e) {
+                    Thread.interrupted();
+                }
+            }
+            hits.add(me);
+            super.service(in, out);
+        }
+    }
+
+    @Remote
+    public static interface Color {
+
+        void hit();
+    }
+
+    public static class ColorBean implements Color {
+
+        public void hit() {
+            // no-op
+        }
+    }
+}
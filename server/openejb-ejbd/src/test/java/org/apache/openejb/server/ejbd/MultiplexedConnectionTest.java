@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.openejb.server.ejbd;
+
+import org.apache.openejb.OpenEJB;
+import org.apache.openejb.assembler.classic.Assembler;
+import org.apache.openejb.client.KeepAliveStyle;
+import org.apache.openejb.client.ProtocolMetaData;
+import org.apache.openejb.client.SocketConnectionFactory;
+import org.apache.openejb.config.ConfigurationFactory;
+import org.apache.openejb.core.ServerFederation;
+import org.apache.openejb.jee.EjbJar;
+import org.apache.openejb.jee.StatelessBean;
+import org.apache.openejb.loader.SystemInstance;
+import org.apache.openejb.server.ServerService;
+import org.apache.openejb.server.ServiceManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.naming.Context;
+import javax.naming.InitialContext;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Many concurrent calls through a client pool of a single connection,
+ * all of them share one multiplexed socket.
+ */
+public class MultiplexedConnectionTest {
+
+    private ServerService service;
+    private int port;
+
+    @Before
+    public void start() throws Exception {
+        System.setProperty(SocketConnectionFactory.PROPERTY_MULTIPLEX, "true");
+        System.setProperty(SocketConnectionFactory.PROPERTY_POOL_SIZE, "1");
+
+        final Properties initProps = new Properties();
+        initProps.setProperty("openejb.deployments.classpath.include", "");
+        initProps.setProperty("openejb.deployments.classpath.filter.descriptors", "true");
+        OpenEJB.init(initProps, new ServerFederation());
+
+        final Assembler assembler = SystemInstance.get().getComponent(Assembler.class);
+        final ConfigurationFactory config = new ConfigurationFactory();
+        final EjbJar ejbJar = new EjbJar();
+        ejbJar.addEnterpriseBean(new StatelessBean(KeepAilveTest.EchoBean.class));
+        assembler.createApplication(config.configureApplication(ejbJar));
+
+        final Properties p = new Properties();
+        p.put("server", "org.apache.openejb.server.ejbd.EjbServer");
+        p.put("bind", "127.0.0.1");
+        p.put("port", "0");
+        p.put("disabled", "false");
+        p.put("threads", "10");
+        service = ServiceManager.manage("ejbd", p, new EjbServer());
+        service.init(p);
+        service.start();
+
+        port = Integer.parseInt(SystemInstance.get().getProperty("ejbd.port"));
+    }
+
+    @After
+    public void stop() throws Exception {
+        System.clearProperty(SocketConnectionFactory.PROPERTY_MULTIPLEX);
+        System.clearProperty(SocketConnectionFactory.PROPERTY_POOL_SIZE);
+        try {
+            service.stop();
+        } finally {
+            OpenEJB.destroy();
+        }
+    }
+
+    @Test
+    public void concurrentCallsShareOneConnection() throws Exception {
+        final Properties props = new Properties();
+        props.put(Context.INITIAL_CONTEXT_FACTORY, "org.apache.openejb.client.RemoteInitialContextFactory");
+        props.put(Context.PROVIDER_URL, "ejbd://127.0.0.1:" + port);
+        final KeepAilveTest.Echo echo = (KeepAilveTest.Echo) new InitialContext(props).lookup("EchoBeanRemote");
+
+        final ExecutorService es = Executors.newFixedThreadPool(50);
+        try {
+            final List<Future<String>> calls = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                final int id = i;
+                calls.add(es.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return echo.echo(id + "-hello");
+                    }
+                }));
+            }
+
+            for (int i = 0; i < calls.size(); i++) {
+                assertEquals(new StringBuilder(i + "-hello").reverse().toString(), calls.get(i).get(1, TimeUnit.MINUTES));
+            }
+        } finally {
+            es.shutdownNow();
+        }
+
+        int readers = 0;
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("KeepAlive.ejbd.multiplex /")) {
+                readers++;
+            }
+        }
+        assertEquals(1, readers);
+    }
+
+    @Test
+    public void oversizedFramesCloseTheConnection() throws Exception {
+        final Socket socket = new Socket("127.0.0.1", port);
+        try {
+            socket.setSoTimeout(60000);
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out.write(KeepAliveStyle.MULTIPLEX.ordinal());
+            new ProtocolMetaData().writeExternal(out);
+            out.flush();
+            new ProtocolMetaData().readExternal(in);
+
+            out.writeInt(7);
+            out.writeInt(Integer.MAX_VALUE);
+            out.flush();
+
+            assertEquals(7, in.readInt());
+            assertEquals(KeepAliveStyle.MULTIPLEX_ERROR, in.readInt());
+            assertTrue(in.readUTF().contains(Integer.toString(Integer.MAX_VALUE)));
+            assertEquals(-1, in.read());
+        } finally {
+            socket.close();
+        }
+    }
+}
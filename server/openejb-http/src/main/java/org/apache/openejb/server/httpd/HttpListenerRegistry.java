@@ -16,12 +16,11 @@
  */
 package org.apache.openejb.server.httpd;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.net.URL;
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -38,7 +37,6 @@ import org.apache.openejb.assembler.classic.WebAppBuilder;
 import org.apache.openejb.cdi.Proxys;
 import org.apache.openejb.core.ParentClassLoaderFinder;
 import org.apache.openejb.core.WebContext;
-import org.apache.openejb.loader.IO;
 import org.apache.openejb.loader.SystemInstance;
 import org.apache.openejb.util.AppFinder;
 import org.apache.openejb.web.LightweightWebAppBuilder;
@@ -50,14 +48,15 @@ import org.apache.openejb.web.LightweightWebAppBuilder;
 public class HttpListenerRegistry implements HttpListener {
     private final Map<String, HttpListener> registry = new LinkedHashMap<>();
     private final Map<String, Collection<HttpListener>> filterRegistry = new LinkedHashMap<>();
+    private volatile HttpRoutingTable<HttpListener> routes = new HttpRoutingTable<>(new ArrayList<Map.Entry<String, HttpListener>>());
+    private volatile HttpRoutingTable<HttpListener> filterRoutes = routes;
     private final ThreadLocal<FilterListener> currentFilterListener = new ThreadLocal<>();
     private final ThreadLocal<HttpRequest> request = new ThreadLocal<>();
     private final ClassLoader defaultClassLoader;
     private final File[] resourceBases;
     private final Map<String, String> defaultContextTypes = new HashMap<>();
     private final String welcomeFile = SystemInstance.get().getProperty("openejb.http.welcome", "index.html");
-    private final Map<String, byte[]> cache = new HashMap<>();
-    private final boolean cacheResources = "true".equals(SystemInstance.get().getProperty("openejb.http.resource.cache", "false"));
+    private final StaticResourceCache staticResources;
 
     public HttpListenerRegistry() {
         HttpServletRequest mock = null;
@@ -134,6 +133,12 @@ public class HttpListenerRegistry implements HttpListener {
         defaultContextTypes.put("jpg", "image/jpeg");
         defaultContextTypes.put("png", "image/png");
         defaultContextTypes.put("tiff", "image/tiff");
+
+        // the legacy flag kept the resources forever
+        staticResources = "true".equals(systemInstance.getProperty("openejb.http.resource.cache", "false")) ?
+                new StaticResourceCache(defaultContextTypes, systemInstance.getOptions().get(StaticResourceCache.PREFIX + "max-entries", 1000),
+                        1000, Long.MAX_VALUE, Long.MAX_VALUE, -1) :
+                new StaticResourceCache(defaultContextTypes);
     }
 
     @Override
@@ -147,86 +152,43 @@ public class HttpListenerRegistry implements HttpListener {
 
         final FilterListener currentFL = currentFilterListener.get();
 
-        // first look filters
-        Map<String, Collection<HttpListener>> filters;
-        synchronized (filterRegistry) {
-            filters = new HashMap<>(filterRegistry);
-        }
-
         final HttpRequest registered = this.request.get();
         final boolean reset = registered == null;
         try {
             if (reset) {
                 this.request.set(request);
             }
+
+            // first look filters
             boolean lastWasCurrent = false;
-            for (Map.Entry<String, Collection<HttpListener>> entry : filters.entrySet()) {
-                String pattern = entry.getKey();
-                for (HttpListener listener : entry.getValue()) {
-                    if ((lastWasCurrent || currentFL == null) && path.matches(pattern)) {
-                        listener.onMessage(request, response);
-                        return;
-                    }
-                    lastWasCurrent = listener == currentFL;
+            for (final HttpRoutingTable.Route<HttpListener> filter : filterRoutes.routes()) {
+                final HttpListener listener = filter.getTarget();
+                if ((lastWasCurrent || currentFL == null) && filter.matches(path)) {
+                    listener.onMessage(request, response);
+                    return;
                 }
+                lastWasCurrent = listener == currentFL;
             }
 
-
             // then others
-            Map<String, HttpListener> listeners;
-            synchronized (registry) {
-                listeners = new HashMap<>(registry);
-            }
-
-            boolean found = false;
-            for (final Map.Entry<String, HttpListener> entry : listeners.entrySet()) {
-                final String pattern = entry.getKey();
-                if (path.matches(pattern) || path.equals(pattern)) {
-                    if (pattern.contains("/.*\\.") && HttpRequestImpl.class.isInstance(request)) { // TODO: enhance it, basically servlet *.xxx
-                        HttpRequestImpl.class.cast(request).noPathInfo();
-                    }
-                    entry.getValue().onMessage(request, response);
-                    found = true;
-                    break;
+            final HttpRoutingTable.Route<HttpListener> route = routes.find(path);
+            if (route != null) {
+                if (route.getPattern().contains("/.*\\.") && HttpRequestImpl.class.isInstance(request)) { // TODO: enhance it, basically servlet *.xxx
+                    HttpRequestImpl.class.cast(request).noPathInfo();
                 }
-            }
-            if (!found) {
+                route.getTarget().onMessage(request, response);
+            } else {
                 final String servletPath = request.getServletPath();
                 if (servletPath != null) {
-                    URL url = SystemInstance.get().getComponent(ServletContext.class).getResource(servletPath);
-                    if (url != null) {
-                        serveResource(servletPath, response, url);
-                    } else {
-                        final String pathWithoutSlash = "/".equals(path) ? welcomeFile :
-                                (servletPath.startsWith("/") ? servletPath.substring(1) : servletPath);
-                        url = defaultClassLoader.getResource("META-INF/resources/" + pathWithoutSlash);
-                        if (url != null) {
-                            serveResource(servletPath, response, url);
-                        } else if (resourceBases.length > 0) {
-                            for (final File f : resourceBases) {
-                                final File file = new File(f, pathWithoutSlash);
-                                if (file.isFile()) {
-                                    url = file.toURI().toURL();
-                                    serveResource(servletPath, response, url);
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                    if (url != null) {
-                        final int dot = servletPath.lastIndexOf('.');
-                        if (dot > 0 && dot < servletPath.length() - 1) {
-                            final String ext = servletPath.substring(dot + 1);
-                            final String ct = defaultContextTypes.get(ext);
-                            if (ct != null) {
-                                response.setContentType(ct);
-                            } else {
-                                final String uct = SystemInstance.get().getProperty("openejb.embedded.http.content-type." + ext);
-                                if (uct != null) {
-                                    response.setContentType(uct);
-                                }
-                            }
+                    final boolean root = "/".equals(path);
+                    final StaticResourceCache.Resource resource = staticResources.find(servletPath, new StaticResourceCache.Finder() {
+                        @Override
+                        public URL find(final String resourcePath) throws IOException {
+                            return findResource(resourcePath, root && resourcePath.equals(servletPath));
                         }
+                    });
+                    if (resource != null) {
+                        staticResources.serve(resource, request, response);
                     }
                 } // TODO else 404
             }
@@ -240,29 +202,25 @@ public class HttpListenerRegistry implements HttpListener {
         }
     }
 
-    private void serveResource(final String key, final HttpResponse response, final URL url) throws IOException {
-        if (cacheResources) {
-            byte[] value = cache.get(key);
-            if (value == null) {
-                final InputStream from = url.openStream();
-                try {
-                    ByteArrayOutputStream to = new ByteArrayOutputStream();
-                    IO.copy(from, to);
-                    value = to.toByteArray();
-                    cache.put(key, value);
-                } finally {
-                    IO.close(from);
-                }
-            }
-            response.getOutputStream().write(value);
-        } else {
-            final InputStream from = url.openStream();
-            try {
-                IO.copy(from, response.getOutputStream());
-            } finally {
-                IO.close(from);
+    private URL findResource(final String servletPath, final boolean welcome) throws IOException {
+        final URL url = SystemInstance.get().getComponent(ServletContext.class).getResource(servletPath);
+        if (url != null && !StaticResourceCache.isDirectory(url)) {
+            return url;
+        }
+
+        final String pathWithoutSlash = welcome ? welcomeFile :
+                (servletPath.startsWith("/") ? servletPath.substring(1) : servletPath);
+        final URL resource = defaultClassLoader.getResource("META-INF/resources/" + pathWithoutSlash);
+        if (resource != null) {
+            return resource;
+        }
+        for (final File f : resourceBases) {
+            final File file = new File(f, pathWithoutSlash);
+            if (file.isFile()) {
+                return file.toURI().toURL();
             }
         }
+        return null;
     }
 
     private String getRequestHandledPath(final HttpRequest request) {
@@ -273,6 +231,7 @@ public class HttpListenerRegistry implements HttpListener {
     public void addHttpListener(HttpListener listener, String regex) {
         synchronized (registry) {
             registry.put(regex, listener);
+            routes = new HttpRoutingTable<>(registry.entrySet());
         }
     }
 
@@ -280,6 +239,7 @@ public class HttpListenerRegistry implements HttpListener {
         HttpListener listener;
         synchronized (registry) {
             listener = registry.remove(regex);
+            routes = new HttpRoutingTable<>(registry.entrySet());
         }
         return listener;
     }
@@ -290,13 +250,27 @@ public class HttpListenerRegistry implements HttpListener {
                 filterRegistry.put(regex, new ArrayList<HttpListener>());
             }
             filterRegistry.get(regex).add(listener);
+            filterRoutes = filterRoutes();
         }
     }
 
     public Collection<HttpListener> removeHttpFilter(String regex) {
         synchronized (filterRegistry) {
-            return filterRegistry.remove(regex);
+            final Collection<HttpListener> removed = filterRegistry.remove(regex);
+            filterRoutes = filterRoutes();
+            return removed;
+        }
+    }
+
+    // one route per filter, in registration order
+    private HttpRoutingTable<HttpListener> filterRoutes() {
+        final Collection<Map.Entry<String, HttpListener>> filters = new ArrayList<>();
+        for (final Map.Entry<String, Collection<HttpListener>> entry : filterRegistry.entrySet()) {
+            for (final HttpListener listener : entry.getValue()) {
+                filters.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), listener));
+            }
         }
+        return new HttpRoutingTable<>(filters);
     }
 
     public void setOrigin(final FilterListener origin) {
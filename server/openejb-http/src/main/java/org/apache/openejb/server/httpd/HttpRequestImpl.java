@@ -28,10 +28,6 @@ import org.apache.openejb.util.Logger;
 import org.apache.webbeans.config.WebBeansContext;
 
 import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
-import java.io.DataInput;
-import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
@@ -40,6 +36,7 @@ import java.lang.reflect.Proxy;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -77,8 +74,8 @@ import static java.util.Collections.singletonList;
  */
 public class HttpRequestImpl implements HttpRequest {
     private static final String FORM_URL_ENCODED = "application/x-www-form-urlencoded";
-    private static final String TRANSFER_ENCODING = "Transfer-Encoding";
-    private static final String CHUNKED = "chunked";
+    private static final int MAX_HEADER_SIZE = Integer.parseInt(SystemInstance.get().getProperty("openejb.http.max-header-size", "65536"));
+    private static final int READ_BUFFER_SIZE = 8192;
 
     public static final Class<?>[] SERVLET_CONTEXT_INTERFACES = new Class<?>[]{ServletContext.class};
     public static final InvocationHandler SERVLET_CONTEXT_HANDLER = new InvocationHandler() {
@@ -136,6 +133,7 @@ public class HttpRequestImpl implements HttpRequest {
     private ServletByteArrayIntputStream in;
     private int length;
     private String contentType;
+    private String version;
 
     /**
      * the address the request came in on
@@ -374,14 +372,45 @@ public class HttpRequestImpl implements HttpRequest {
      * @param input the data input for this page
      * @throws java.io.IOException if an exception is thrown
      */
-    protected boolean readMessage(InputStream input) throws IOException {
-        final DataInput di = new DataInputStream(input);
+    protected boolean readMessage(final InputStream input) throws IOException {
+        return readMessage(input, null);
+    }
 
-        if (!readRequestLine(di)) {
-            return false;
+    /**
+     * parses the request into the 3 different parts, request, headers, and body
+     *
+     * @param input   the data input for this page
+     * @param buffers the pool of read buffers, null to allocate one
+     * @throws java.io.IOException if an exception is thrown
+     */
+    protected boolean readMessage(final InputStream input, final ByteBufferPool buffers) throws IOException {
+        final HttpRequestParser parser = new HttpRequestParser(headers, MAX_HEADER_SIZE);
+        final ByteBuffer buffer = buffers == null ? ByteBuffer.allocate(READ_BUFFER_SIZE) : buffers.acquire();
+        try {
+            boolean complete = false;
+            while (!complete) {
+                final int read = input.read(buffer.array(), buffer.arrayOffset(), buffer.capacity());
+                if (read < 0) {
+                    if (!parser.endOfInput()) {
+                        return false;
+                    }
+                    break;
+                }
+                buffer.clear();
+                buffer.limit(read);
+                complete = parser.parse(buffer);
+            }
+        } finally {
+            if (buffers != null) {
+                buffers.release(buffer);
+            }
         }
-        readHeaders(di);
-        readBody(di);
+
+        parseMethod(parser.getMethod());
+        parseURI(parser.getTarget());
+        version = parser.getVersion();
+        updateHost();
+        readBody(parser.getBody());
 
         for (final Map.Entry<String, String> formParameters : getFormParameters().entrySet()) {
             parameters.put(formParameters.getKey(), singletonList(formParameters.getValue()));
@@ -430,78 +459,18 @@ public class HttpRequestImpl implements HttpRequest {
         }
     }
 
-    /**
-     * reads and parses the request line
-     *
-     * @param in the input to be read
-     * @throws java.io.IOException if an exception is thrown
-     */
-    private boolean readRequestLine(DataInput in) throws IOException {
-        String line;
-        try {
-            line = in.readLine();
-//            System.out.println(line);
-        } catch (Exception e) {
-            throw new IOException("Could not read the HTTP Request Line :"
-                + e.getClass().getName()
-                + " : "
-                + e.getMessage());
-        }
-        if (line == null) {
-            return false;
-        }
-
-        StringTokenizer lineParts = new StringTokenizer(line, " ");
-        /* [1] Parse the method */
-        parseMethod(lineParts);
-        /* [2] Parse the URI */
-        parseURI(lineParts);
-        return true;
-    }
-
     /**
      * parses the method for this page
      *
-     * @param lineParts a StringTokenizer of the request line
-     * @throws java.io.IOException if an exeption is thrown
+     * @param token the method of the request line
      */
-    private void parseMethod(StringTokenizer lineParts) throws IOException {
-        String token;
-        try {
-            token = lineParts.nextToken();
-        } catch (final Exception e) {
-            throw new IOException("Could not parse the HTTP Request Method :"
-                + e.getClass().getName()
-                + " : "
-                + e.getMessage());
-        }
-
+    private void parseMethod(final String token) {
         // in JAXRS you can create your own method
         try { // to control the case
             method = Method.valueOf(token.toUpperCase(Locale.ENGLISH)).name();
         } catch (final Exception e) {
             method = token;
         }
-        /*
-        if (token.equalsIgnoreCase("GET")) {
-            method = Method.GET.name();
-        } else if (token.equalsIgnoreCase("POST")) {
-            method = Method.POST.name();
-        } else if (token.equalsIgnoreCase("PUT")) {
-            method = Method.PUT.name();
-        } else if (token.equalsIgnoreCase("DELETE")) {
-            method = Method.DELETE.name();
-        } else if (token.equalsIgnoreCase("HEAD")) {
-            method = Method.HEAD.name();
-        } else if (token.equalsIgnoreCase("OPTIONS")) {
-            method = Method.HEAD.name();
-        } else if (token.equalsIgnoreCase("PATCH")) {
-            method = Method.PATCH.name();
-        } else {
-            method = Method.UNSUPPORTED.name();
-            throw new IOException("Unsupported HTTP Request Method :" + token);
-        }
-        */
     }
 
     /**
@@ -520,7 +489,10 @@ public class HttpRequestImpl implements HttpRequest {
                 + " : "
                 + e.getMessage());
         }
+        parseURI(token);
+    }
 
+    private void parseURI(final String token) throws IOException {
         try {
             uri = new URI(socketURI.toString() + token.replace("//", "/"));
         } catch (URISyntaxException e) {
@@ -568,46 +540,9 @@ public class HttpRequestImpl implements HttpRequest {
     }
 
     /**
-     * reads the headers from the data input sent from the browser
-     *
-     * @param in the data input sent from the browser
-     * @throws java.io.IOException if an exeption is thrown
+     * Updates the URI to be what the client sees the the server as.
      */
-    private void readHeaders(DataInput in) throws IOException {
-//        System.out.println("\nREQUEST");
-        while (true) {
-            // Header Field
-            String hf;
-
-            try {
-                hf = in.readLine();
-                //System.out.println(hf);
-            } catch (Exception e) {
-                throw new IOException("Could not read the HTTP Request Header Field :"
-                    + e.getClass().getName()
-                    + " : "
-                    + e.getMessage());
-            }
-
-            if (hf == null || hf.equals("")) {
-                break;
-            }
-
-            /* [1] parse the name */
-            int colonIndex = hf.indexOf((int) ':');
-            String name = hf.substring(0, colonIndex);
-            if (name == null)
-                break;
-
-            /* [2] Parse the Value */
-            String value = hf.substring(colonIndex + 1, hf.length());
-            if (value == null)
-                break;
-            value = value.trim();
-            headers.put(name, value);
-        }
-
-        // Update the URI to be what the client sees the the server as.
+    private void updateHost() {
         String host = headers.get("Host");
         if (host != null) {
             String hostName;
@@ -631,15 +566,6 @@ public class HttpRequestImpl implements HttpRequest {
             } catch (URISyntaxException ignore) {
             }
         }
-
-        //temp-debug-------------------------------------------
-        //java.util.Iterator myKeys = headers.keySet().iterator();
-        //String temp = null;
-        //while(myKeys.hasNext()) {
-        //    temp = (String)myKeys.next();
-        //    System.out.println("Test: " + temp + "=" + headers.get(temp));
-        //}
-        //end temp-debug---------------------------------------
     }
 
     private boolean hasBody() {
@@ -648,32 +574,23 @@ public class HttpRequestImpl implements HttpRequest {
     }
 
     /**
-     * reads the body from the data input passed in
+     * sets the body read by the parser, decoding form parameters
      *
-     * @param in the data input with the body of the page
+     * @param content the body of the request, chunks already decoded
      * @throws java.io.IOException if an exception is thrown
      */
-    private void readBody(DataInput in) throws IOException {
-        //System.out.println("Body Length: " + body.length);
+    private void readBody(final byte[] content) throws IOException {
         // Content-type: application/x-www-form-urlencoded
         // or multipart/form-data
         length = parseContentLength();
 
         contentType = getHeader(HttpRequest.HEADER_CONTENT_TYPE);
 
-        final boolean hasBody = hasBody();
-        if (hasBody && contentType != null && contentType.startsWith(FORM_URL_ENCODED)) {
-            String rawParams;
-
-            try {
-                body = readContent(in);
-                this.in = new ServletByteArrayIntputStream(body);
-                rawParams = new String(body);
-            } catch (Exception e) {
-                throw (IOException) new IOException("Could not read the HTTP Request Body: " + e.getMessage()).initCause(e);
-            }
+        body = content;
+        this.in = new ServletByteArrayIntputStream(body);
 
-            StringTokenizer parameters = new StringTokenizer(rawParams, "&");
+        if (hasBody() && contentType != null && contentType.startsWith(FORM_URL_ENCODED)) {
+            StringTokenizer parameters = new StringTokenizer(new String(body), "&");
             String name;
             String value;
 
@@ -696,77 +613,7 @@ public class HttpRequestImpl implements HttpRequest {
                     value = "";
 
                 formParams.put(name, value);
-                //System.out.println(name + ": " + value);
             }
-        } else if (hasBody && CHUNKED.equals(headers.get(TRANSFER_ENCODING))) {
-            try {
-                ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
-                for (String line = in.readLine(); line != null; line = in.readLine()) {
-                    // read the size line which is in hex
-                    String sizeString = line.split(";", 2)[0];
-                    int size = Integer.parseInt(sizeString, 16);
-
-                    // if size is 0 we are done
-                    if (size == 0) break;
-
-                    // read the chunk and append to byte array
-                    byte[] chunk = new byte[size];
-                    in.readFully(chunk);
-                    out.write(chunk);
-
-                    // read off the trailing new line characters after the chunk
-                    in.readLine();
-                }
-                body = out.toByteArray();
-                this.in = new ServletByteArrayIntputStream(body);
-            } catch (Exception e) {
-                throw (IOException) new IOException("Unable to read chunked body").initCause(e);
-            }
-        } else if (hasBody) {
-            // TODO This really is terrible
-            body = readContent(in);
-            this.in = new ServletByteArrayIntputStream(body);
-        } else {
-            body = new byte[0];
-            this.in = new ServletByteArrayIntputStream(body);
-        }
-
-    }
-
-    private byte[] readContent(DataInput in) throws IOException {
-        if (length >= 0) {
-            byte[] body = new byte[length];
-            in.readFully(body);
-            return body;
-        } else {
-            ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
-            try {
-                boolean atLineStart = true;
-                while (true) {
-                    byte b = in.readByte();
-
-                    if (b == '\r') {
-                        // read the next byte
-                        out.write(b);
-                        b = in.readByte();
-                    }
-
-                    if (b == '\n') {
-                        if (atLineStart) {
-                            // blank line signals end of data
-                            break;
-                        }
-                        atLineStart = true;
-                    } else {
-                        atLineStart = false;
-                    }
-                    out.write(b);
-                }
-            } catch (EOFException e) {
-                // done reading
-            }
-            byte[] body = out.toByteArray();
-            return body;
         }
     }
 
@@ -1060,6 +907,13 @@ public class HttpRequestImpl implements HttpRequest {
         return uri.getScheme();
     }
 
+    /**
+     * @return true if the client announced HTTP/1.1 and can read a chunked response
+     */
+    boolean isHttp11() {
+        return "HTTP/1.1".equals(version);
+    }
+
     @Override
     public BufferedReader getReader() throws IOException {
         return null;
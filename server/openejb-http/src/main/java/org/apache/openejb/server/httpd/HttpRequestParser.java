@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Incremental HTTP/1.x request parser: bytes are pushed as they come (whatever the split of the
+ * buffers) and the parser tells when the message is complete, it never reads nor blocks itself.
+ * <p/>
+ * Request line and headers are decoded in place from the bytes (ISO-8859-1 as the previous
+ * readLine() based parsing), common header names are shared instances. The body is copied once in
+ * an array of the announced Content-Length, chunked bodies are decoded on the fly. Without length
+ * nor chunked encoding the body goes until a blank line or the end of the stream, as it always did.
+ */
+final class HttpRequestParser {
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final byte[] EMPTY = new byte[0];
+    private static final String TRANSFER_ENCODING = "Transfer-Encoding";
+    private static final String CHUNKED = "chunked";
+
+    private static final String[] KNOWN_HEADERS = {
+        "Accept", "Accept-Charset", "Accept-Encoding", "Accept-Language", "Authorization", "Cache-Control",
+        "Connection", "Content-Encoding", "Content-Length", "Content-Type", "Cookie", "Expect", "Host",
+        "If-Modified-Since", "If-None-Match", "Origin", "Pragma", "Referer", "SOAPAction", TRANSFER_ENCODING,
+        "User-Agent", "X-Requested-With"
+    };
+    private static final byte[][] KNOWN_HEADER_BYTES = new byte[KNOWN_HEADERS.length][];
+
+    static {
+        for (int i = 0; i < KNOWN_HEADERS.length; i++) {
+            KNOWN_HEADER_BYTES[i] = KNOWN_HEADERS[i].getBytes(ISO_8859_1);
+        }
+    }
+
+    private enum State {
+        REQUEST_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, UNTIL_BLANK_LINE, DONE
+    }
+
+    private final Map<String, String> headers;
+    private final int maxHeaderSize;
+
+    private State state = State.REQUEST_LINE;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int headerSize;
+
+    private String method;
+    private String target;
+    private String version;
+
+    private byte[] body = EMPTY;
+    private int bodyLength;
+    private int remaining;
+    private boolean atLineStart = true;
+    private boolean afterCR;
+
+    /**
+     * @param headers       where headers are put, the last value of a repeated header wins
+     * @param maxHeaderSize the maximum size of the request line and headers (or of a chunk size line)
+     */
+    HttpRequestParser(final Map<String, String> headers, final int maxHeaderSize) {
+        this.headers = headers;
+        this.maxHeaderSize = maxHeaderSize;
+    }
+
+    /**
+     * Consumes the bytes of the buffer up to the end of the message.
+     *
+     * @return true if the message is complete, the bytes after it are left in the buffer
+     * @throws IOException if the message is malformed
+     */
+    boolean parse(final ByteBuffer buffer) throws IOException {
+        while (state != State.DONE && buffer.hasRemaining()) {
+            switch (state) {
+                case BODY:
+                case CHUNK_DATA:
+                    readBody(buffer);
+                    break;
+                case UNTIL_BLANK_LINE:
+                    readUntilBlankLine(buffer);
+                    break;
+                default:
+                    if (readLine(buffer)) {
+                        onLine();
+                    }
+            }
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * To call when the stream ended before {@link #parse(ByteBuffer)} returned true.
+     *
+     * @return false if there was no request at all, true if the message is complete anyway
+     * @throws IOException if the message is truncated
+     */
+    boolean endOfInput() throws IOException {
+        if (state == State.REQUEST_LINE || state == State.HEADERS) {
+            if (lineLength > 0) { // last line without line feed
+                onLine();
+            }
+            if (state == State.REQUEST_LINE) {
+                return false;
+            }
+            if (state == State.HEADERS) {
+                headersDone();
+            }
+        }
+        if (state == State.BODY || state == State.CHUNK_DATA) {
+            throw new EOFException("Request body truncated, " + remaining + " bytes missing");
+        }
+        state = State.DONE; // chunked bodies and bodies without length end with the stream
+        return true;
+    }
+
+    String getMethod() {
+        return method;
+    }
+
+    String getTarget() {
+        return target;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    byte[] getBody() {
+        return bodyLength == body.length ? body : Arrays.copyOf(body, bodyLength);
+    }
+
+    private boolean readLine(final ByteBuffer buffer) throws IOException {
+        final int start = buffer.position();
+        final int limit = buffer.limit();
+        for (int i = start; i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+                appendLine(buffer, start, i - start);
+                buffer.position(i + 1);
+                return true;
+            }
+        }
+        appendLine(buffer, start, limit - start);
+        buffer.position(limit);
+        return false;
+    }
+
+    private void appendLine(final ByteBuffer buffer, final int from, final int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+        if (state == State.REQUEST_LINE || state == State.HEADERS) {
+            headerSize += length;
+        }
+        if (headerSize > maxHeaderSize || lineLength + length > maxHeaderSize) {
+            throw new IOException("Request headers are bigger than " + maxHeaderSize + " bytes");
+        }
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        final ByteBuffer slice = buffer.duplicate();
+        slice.position(from);
+        slice.get(line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void onLine() throws IOException {
+        int length = lineLength;
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        lineLength = 0;
+
+        switch (state) {
+            case REQUEST_LINE:
+                if (length > 0) { // empty lines before the request are tolerated
+                    requestLine(length);
+                    state = State.HEADERS;
+                }
+                break;
+            case HEADERS:
+                if (length == 0) {
+                    headersDone();
+                } else {
+                    header(length);
+                }
+                break;
+            case CHUNK_SIZE:
+                chunkSize(length);
+                break;
+            case CHUNK_END:
+                state = State.CHUNK_SIZE;
+                break;
+            case TRAILERS:
+                if (length == 0) {
+                    state = State.DONE;
+                }
+                break;
+            default:
+                throw new IllegalStateException(state.name());
+        }
+    }
+
+    private void requestLine(final int length) throws IOException {
+        final String[] parts = new String[3];
+        int count = 0;
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            if (i == length || line[i] == ' ') {
+                if (start >= 0) {
+                    if (count == parts.length) {
+                        throw new IOException("Invalid HTTP request line: " + new String(line, 0, length, ISO_8859_1));
+                    }
+                    parts[count++] = new String(line, start, i - start, ISO_8859_1);
+                    start = -1;
+                }
+            } else if (start < 0) {
+                start = i;
+            }
+        }
+        if (count < 2) {
+            throw new IOException("Invalid HTTP request line: " + new String(line, 0, length, ISO_8859_1));
+        }
+        method = parts[0];
+        target = parts[1];
+        version = parts[2];
+    }
+
+    private void header(final int length) throws IOException {
+        int colon = -1;
+        for (int i = 0; i < length; i++) {
+            if (line[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        if (colon <= 0) {
+            throw new IOException("Invalid HTTP header: " + new String(line, 0, length, ISO_8859_1));
+        }
+
+        int valueStart = colon + 1;
+        int valueEnd = length;
+        while (valueStart < valueEnd && line[valueStart] <= ' ') {
+            valueStart++;
+        }
+        while (valueEnd > valueStart && line[valueEnd - 1] <= ' ') {
+            valueEnd--;
+        }
+        headers.put(headerName(colon), new String(line, valueStart, valueEnd - valueStart, ISO_8859_1));
+    }
+
+    private String headerName(final int length) {
+        for (int i = 0; i < KNOWN_HEADER_BYTES.length; i++) {
+            final byte[] known = KNOWN_HEADER_BYTES[i];
+            if (known.length == length && startsWith(known)) {
+                return KNOWN_HEADERS[i];
+            }
+        }
+        return new String(line, 0, length, ISO_8859_1);
+    }
+
+    private boolean startsWith(final byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            if (line[i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void headersDone() {
+        if (!hasBody()) {
+            state = State.DONE;
+            return;
+        }
+
+        if (CHUNKED.equals(headers.get(TRANSFER_ENCODING))) {
+            state = State.CHUNK_SIZE;
+            return;
+        }
+
+        final int length = contentLength();
+        if (length >= 0) {
+            body = length == 0 ? EMPTY : new byte[length];
+            remaining = length;
+            state = length == 0 ? State.DONE : State.BODY;
+        } else {
+            state = State.UNTIL_BLANK_LINE;
+        }
+    }
+
+    private boolean hasBody() {
+        final String upper = method.toUpperCase(Locale.ENGLISH);
+        return !"GET".equals(upper) && !"DELETE".equals(upper) && !"HEAD".equals(upper) && !"OPTIONS".equals(upper);
+    }
+
+    private int contentLength() {
+        final String length = headers.get(HttpRequest.HEADER_CONTENT_LENGTH);
+        if (length != null) {
+            try {
+                return Integer.parseInt(length);
+            } catch (final NumberFormatException e) {
+                // as before, read until the end
+            }
+        }
+        return -1;
+    }
+
+    private void chunkSize(final int length) throws IOException {
+        int size = 0;
+        boolean digits = false;
+        for (int i = 0; i < length; i++) {
+            final byte b = line[i];
+            if (b == ';') { // extensions are ignored
+                break;
+            }
+            final int digit = Character.digit(b, 16);
+            if (digit < 0) {
+                if (b == ' ' || b == '\t') {
+                    continue;
+                }
+                throw new IOException("Invalid chunk size: " + new String(line, 0, length, ISO_8859_1));
+            }
+            if (size > (Integer.MAX_VALUE >> 4)) {
+                throw new IOException("Chunk too big: " + new String(line, 0, length, ISO_8859_1));
+            }
+            size = (size << 4) + digit;
+            digits = true;
+        }
+        if (!digits) {
+            throw new IOException("Invalid chunk size: " + new String(line, 0, length, ISO_8859_1));
+        }
+
+        if (size == 0) {
+            state = State.TRAILERS;
+        } else {
+            ensureBodyCapacity(size);
+            remaining = size;
+            state = State.CHUNK_DATA;
+        }
+    }
+
+    private void readBody(final ByteBuffer buffer) {
+        final int length = Math.min(remaining, buffer.remaining());
+        buffer.get(body, bodyLength, length);
+        bodyLength += length;
+        remaining -= length;
+        if (remaining == 0) {
+            state = state == State.BODY ? State.DONE : State.CHUNK_END;
+        }
+    }
+
+    private void readUntilBlankLine(final ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            final byte b = buffer.get();
+            if (!afterCR && b == '\r') { // written and the next byte is taken as is
+                append(b);
+                afterCR = true;
+                continue;
+            }
+            afterCR = false;
+
+            if (b == '\n') {
+                if (atLineStart) { // blank line signals end of data
+                    state = State.DONE;
+                    return;
+                }
+                atLineStart = true;
+            } else {
+                atLineStart = false;
+            }
+            append(b);
+        }
+    }
+
+    private void append(final byte b) {
+        ensureBodyCapacity(1);
+        body[bodyLength++] = b;
+    }
+
+    private void ensureBodyCapacity(final int more) {
+        final int needed = bodyLength + more;
+        if (needed > body.length) {
+            body = Arrays.copyOf(body, Math.max(needed, Math.max(1024, body.length * 2)));
+        }
+    }
+}
@@ -33,6 +33,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.net.URLConnection;
+import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -46,6 +47,9 @@ import java.util.StringTokenizer;
 public class HttpResponseImpl implements HttpResponse {
     private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB_SERVER, HttpResponseImpl.class.getName());
     private static final String DEFAULT_CONTENT_TYPE = SystemInstance.get().getProperty("openejb.http.default-content-type", "text/html");
+    private static final int DEFAULT_BUFFER_SIZE = Integer.parseInt(SystemInstance.get().getProperty("openejb.http.response.buffer-size", "32768"));
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(ISO_8859_1);
 
     /**
      * Response string
@@ -71,6 +75,14 @@ public class HttpResponseImpl implements HttpResponse {
      */
     private transient ServletByteArrayOutputStream sosi;
 
+    /**
+     * where the body is streamed (chunked) once it is bigger than the buffer, null to always buffer it
+     */
+    private transient OutputStream output;
+    private transient ByteArrayOutputStream frame;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private boolean chunked;
+
     /**
      * the HTTP version
      */
@@ -247,7 +259,7 @@ public class HttpResponseImpl implements HttpResponse {
 
     @Override
     public boolean isCommitted() {
-        return commited;
+        return commited || chunked;
     }
 
     public void flushBuffer() throws IOException {
@@ -258,7 +270,7 @@ public class HttpResponseImpl implements HttpResponse {
 
     @Override
     public int getBufferSize() {
-        return sosi.getOutputStream().size();
+        return bufferSize;
     }
 
     @Override
@@ -336,17 +348,26 @@ public class HttpResponseImpl implements HttpResponse {
      * resets the data to be sent to the browser
      */
     public void reset() {
+        checkNotStreamed();
         initBody();
     }
 
     @Override
     public void resetBuffer() {
+        checkNotStreamed();
         sosi.getOutputStream().reset();
     }
 
     @Override
     public void setBufferSize(final int i) {
-        // no-op
+        checkNotStreamed();
+        bufferSize = Math.max(1, i);
+    }
+
+    private void checkNotStreamed() {
+        if (chunked) {
+            throw new IllegalStateException("response already committed");
+        }
     }
 
     @Override
@@ -424,25 +445,88 @@ public class HttpResponseImpl implements HttpResponse {
     protected void writeMessage(final OutputStream output, final boolean indent) throws IOException {
         flushBuffer();
 
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if (chunked) { // head and first chunks are already sent
+            writeChunk(true);
+            return;
+        }
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream(256 + sosi.getOutputStream().size());
         final DataOutputStream out = new DataOutputStream(baos);
         closeMessage();
         writeResponseLine(out);
         writeHeaders(out);
         writeBody(out, indent);
         out.flush();
-        output.write(baos.toByteArray());
+        baos.writeTo(output); // a single write, a separate head would wait for the ack of the body (nagle)
         output.flush();
     }
 
+    /**
+     * Lets the body be streamed to the client with a chunked transfer encoding once it doesn't fit
+     * in the buffer anymore, smaller bodies are still sent at once with a Content-Length.
+     *
+     * @param output the client connection, the request must be HTTP/1.1
+     */
+    void setOutput(final OutputStream output) {
+        this.output = output;
+    }
+
+    boolean isStreamed() {
+        return chunked;
+    }
+
     /**
      * initalizes the body
      */
     private void initBody() {
-        sosi = new ServletByteArrayOutputStream();
+        sosi = new ResponseOutputStream();
         writer = new PrintWriter(sosi);
     }
 
+    private void onWrite() throws IOException {
+        if (output != null && content == null && sosi.getOutputStream().size() >= bufferSize) {
+            writeChunk(false);
+        }
+    }
+
+    /**
+     * Sends the buffered body as a chunk, preceded by the head for the first one.
+     *
+     * @param last true to terminate the body
+     */
+    private void writeChunk(final boolean last) throws IOException {
+        final ByteArrayOutputStream buffer = sosi.getOutputStream();
+        if (frame == null) {
+            frame = new ByteArrayOutputStream(bufferSize + 512);
+        }
+        frame.reset();
+
+        if (!chunked) {
+            chunked = true;
+            setCookieHeader();
+            headers.remove("Content-Length");
+            headers.put("Transfer-Encoding", "chunked");
+            final DataOutputStream out = new DataOutputStream(frame);
+            writeResponseLine(out);
+            writeHeaders(out);
+            out.writeBytes(CRLF);
+            out.flush();
+        }
+        if (buffer.size() > 0) {
+            frame.write(Integer.toHexString(buffer.size()).getBytes(ISO_8859_1));
+            frame.write(CRLF.getBytes(ISO_8859_1));
+            buffer.writeTo(frame);
+            frame.write(CRLF.getBytes(ISO_8859_1));
+            buffer.reset();
+        }
+        if (last) {
+            frame.write(LAST_CHUNK);
+        }
+
+        frame.writeTo(output); // one write per chunk
+        output.flush();
+    }
+
     /**
      * Creates a string version of the response similar to:
      * <p/>
@@ -467,7 +551,7 @@ public class HttpResponseImpl implements HttpResponse {
         if (content == null) {
             writer.flush();
             writer.close();
-            final int length = sosi.getOutputStream().toByteArray().length;
+            final int length = sosi.getOutputStream().size();
             setHeader("Content-Length", length + "");
         } else {
             setHeader("Content-Length", content.getContentLength() + "");
@@ -530,14 +614,14 @@ public class HttpResponseImpl implements HttpResponse {
      * @param indent format xml
      * @throws java.io.IOException if an exception is thrown
      */
-    private void writeBody(final DataOutput out, final boolean indent) throws IOException {
+    private void writeBody(final DataOutputStream out, final boolean indent) throws IOException {
         out.writeBytes(CRLF);
         if (content == null) {
             if (indent && OpenEJBHttpServer.isTextXml(headers)) {
                 final String xml = new String(sosi.getOutputStream().toByteArray());
                 out.write(OpenEJBHttpServer.reformat(xml).getBytes());
             } else {
-                out.write(sosi.getOutputStream().toByteArray());
+                sosi.getOutputStream().writeTo(out);
             }
         } else {
             final InputStream in = content.getInputStream();
@@ -720,9 +804,8 @@ public class HttpResponseImpl implements HttpResponse {
         /** Response body */
         final byte[] body = (byte[]) in.readObject();
         //System.out.println("[] body "+body.length );
-        sosi = new ServletByteArrayOutputStream();
+        initBody();
         sosi.write(body);
-        writer = new PrintWriter(sosi);
 
     }
 
@@ -744,4 +827,30 @@ public class HttpResponseImpl implements HttpResponse {
     private String toEncoded(final String url) {
         return url; // should add ;JSESSIONID=xxx but breaks other things and here we don't need it that much
     }
-}
\ No newline at end of file
+
+    private class ResponseOutputStream extends ServletByteArrayOutputStream {
+        @Override
+        public void write(final int b) throws IOException {
+            super.write(b);
+            onWrite();
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            if (output == null || content != null) {
+                super.write(b, off, len);
+                return;
+            }
+
+            // big writes are sliced so the buffer never grows over its size
+            int position = off;
+            final int end = off + len;
+            while (position < end) {
+                final int length = Math.min(end - position, Math.max(1, bufferSize - getOutputStream().size()));
+                super.write(b, position, length);
+                position += length;
+                onWrite();
+            }
+        }
+    }
+}
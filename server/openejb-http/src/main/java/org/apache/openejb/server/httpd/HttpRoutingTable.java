@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable snapshot of the patterns of {@link HttpListenerRegistry}, rebuilt each time they change
+ * so requests never lock nor copy anything.
+ * <p/>
+ * Patterns are compiled once. Literal ones are found with a hash lookup, the others are indexed in
+ * a character trie by their literal prefix so a request only evaluates the patterns which can match it.
+ * When several patterns match, a literal one wins, else the first registered.
+ */
+final class HttpRoutingTable<T> {
+    private static final String REGEX_CHARS = "\\^$.|?*+()[]{}";
+    private static final String QUANTIFIERS = "?*+{";
+
+    private final Route<T>[] routes;
+    private final Map<String, Route<T>> literals = new HashMap<>();
+    private final Node<T> root;
+
+    @SuppressWarnings("unchecked")
+    HttpRoutingTable(final Collection<Map.Entry<String, T>> patterns) {
+        routes = new Route[patterns.size()];
+
+        final Builder<T> trie = new Builder<>();
+        int order = 0;
+        for (final Map.Entry<String, T> entry : patterns) {
+            final Route<T> route = new Route<>(entry.getKey(), entry.getValue(), order);
+            routes[order++] = route;
+
+            if (route.regex == null) {
+                if (!literals.containsKey(route.pattern)) {
+                    literals.put(route.pattern, route);
+                }
+            } else {
+                Builder<T> node = trie;
+                final String prefix = literalPrefix(route.pattern);
+                for (int i = 0; i < prefix.length(); i++) {
+                    node = node.child(prefix.charAt(i));
+                }
+                node.routes.add(route);
+            }
+        }
+        root = trie.build();
+    }
+
+    /**
+     * @return the route to use for this path or null if no pattern matches it
+     */
+    Route<T> find(final String path) {
+        final Route<T> literal = literals.get(path);
+        if (literal != null) {
+            return literal;
+        }
+
+        Route<T> found = null;
+        Node<T> node = root;
+        int i = 0;
+        while (node != null) {
+            for (final Route<T> route : node.routes) {
+                if (found != null && route.order > found.order) {
+                    break;
+                }
+                if (route.matches(path)) {
+                    found = route;
+                    break;
+                }
+            }
+            node = i < path.length() ? node.child(path.charAt(i++)) : null;
+        }
+        return found;
+    }
+
+    /**
+     * @return all the routes in registration order
+     */
+    Route<T>[] routes() {
+        return routes;
+    }
+
+    /**
+     * @return the beginning of the pattern any matching path starts with
+     */
+    static String literalPrefix(final String regex) {
+        if (regex.indexOf('|') >= 0) { // alternatives, we don't try to find a common prefix
+            return "";
+        }
+
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (REGEX_CHARS.indexOf(c) >= 0) {
+                // the previous char can be optional or repeated
+                final int end = QUANTIFIERS.indexOf(c) >= 0 && i > 0 ? i - 1 : i;
+                return regex.substring(0, end);
+            }
+        }
+        return regex;
+    }
+
+    static final class Route<T> {
+        private final String pattern;
+        private final Pattern regex;
+        private final T target;
+        private final int order;
+
+        private Route(final String pattern, final T target, final int order) {
+            this.pattern = pattern;
+            this.regex = compile(pattern);
+            this.target = target;
+            this.order = order;
+        }
+
+        boolean matches(final String path) {
+            return (regex != null && regex.matcher(path).matches()) || path.equals(pattern);
+        }
+
+        String getPattern() {
+            return pattern;
+        }
+
+        T getTarget() {
+            return target;
+        }
+
+        private static Pattern compile(final String pattern) {
+            if (literalPrefix(pattern).length() == pattern.length()) {
+                return null; // String.equals() is enough
+            }
+            try {
+                return Pattern.compile(pattern);
+            } catch (final PatternSyntaxException e) {
+                return null; // can only match itself
+            }
+        }
+    }
+
+    private static final class Node<T> {
+        private final char[] chars; // sorted
+        private final Node<T>[] children;
+        private final Route<T>[] routes;
+
+        private Node(final char[] chars, final Node<T>[] children, final Route<T>[] routes) {
+            this.chars = chars;
+            this.children = children;
+            this.routes = routes;
+        }
+
+        private Node<T> child(final char c) {
+            final int idx = Arrays.binarySearch(chars, c);
+            return idx < 0 ? null : children[idx];
+        }
+    }
+
+    private static final class Builder<T> {
+        private final Map<Character, Builder<T>> children = new TreeMap<>();
+        private final List<Route<T>> routes = new ArrayList<>();
+
+        private Builder<T> child(final char c) {
+            Builder<T> child = children.get(c);
+            if (child == null) {
+                child = new Builder<>();
+                children.put(c, child);
+            }
+            return child;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node<T> build() {
+            final char[] chars = new char[children.size()];
+            final Node<T>[] nodes = new Node[children.size()];
+            int i = 0;
+            for (final Map.Entry<Character, Builder<T>> entry : children.entrySet()) {
+                chars[i] = entry.getKey();
+                nodes[i++] = entry.getValue().build();
+            }
+
+            return new Node<>(chars, nodes, routes.toArray(new Route[routes.size()])); // added in registration order
+        }
+    }
+}
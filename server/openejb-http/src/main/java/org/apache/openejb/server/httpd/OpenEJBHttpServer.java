@@ -60,6 +60,7 @@ public class OpenEJBHttpServer implements HttpServer {
     private HttpListener listener;
     private Set<Output> print;
     private boolean indent;
+    private ByteBufferPool buffers = new ByteBufferPool(8192, 64);
 
     public OpenEJBHttpServer() {
         this(null);
@@ -162,7 +163,7 @@ public class OpenEJBHttpServer implements HttpServer {
         indent = print.size() > 0 && options.get("" +
             "" +
             ".xml", false);
-
+        buffers = new ByteBufferPool(options.get("buffer-size", 8192), options.get("pooled-buffers", 64));
     }
 
     public static enum Output {
@@ -205,11 +206,16 @@ public class OpenEJBHttpServer implements HttpServer {
      * @param out the output stream to the browser
      */
     private boolean processRequest(final Socket socket, final URI socketURI, final InputStream in, final OutputStream out) {
+        final HttpResponseImpl res = new HttpResponseImpl();
         HttpResponseImpl response = null;
         try {
-            response = process(socket, socketURI, in);
+            response = process(socket, socketURI, in, out, res);
             return response != null;
         } catch (Throwable t) {
+            if (res.isStreamed()) { // too late for an error page, closing the connection without the last chunk tells it
+                log.warning("Response failed after its first chunk was sent: " + t.getMessage());
+                return true;
+            }
             response = HttpResponseImpl.createError(t.getMessage(), t);
             return true;
         } finally {
@@ -235,12 +241,12 @@ public class OpenEJBHttpServer implements HttpServer {
         }
     }
 
-    private HttpResponseImpl process(final Socket socket, final URI socketURI, final InputStream in) throws OpenEJBException {
+    private HttpResponseImpl process(final Socket socket, final URI socketURI, final InputStream in, final OutputStream out,
+                                     final HttpResponseImpl res) throws OpenEJBException {
         final HttpRequestImpl req = new HttpRequestImpl(socketURI);
-        final HttpResponseImpl res = new HttpResponseImpl();
 
         try {
-            if (!req.readMessage(in)) {
+            if (!req.readMessage(in, buffers)) {
                 return res;
             }
 
@@ -249,6 +255,9 @@ public class OpenEJBHttpServer implements HttpServer {
             }
 
             res.setRequest(req);
+            if (req.isHttp11() && !print.contains(Output.RESPONSE)) { // the logged copy needs the whole body
+                res.setOutput(out);
+            }
         } catch (Throwable t) {
             res.setCode(400);
             res.setResponseString("Could not read the request");
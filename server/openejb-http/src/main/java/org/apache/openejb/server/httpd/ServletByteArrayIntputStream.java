@@ -36,6 +36,18 @@ public class ServletByteArrayIntputStream extends ServletInputStream {
         return read;
     }
 
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int read = intputStream.read(b, off, len);
+        finished = read == -1;
+        return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return intputStream.available();
+    }
+
     public ByteArrayInputStream getIntputStream() {
         return intputStream;
     }
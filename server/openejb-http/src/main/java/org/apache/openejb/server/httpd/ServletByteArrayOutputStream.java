@@ -44,6 +44,11 @@ public class ServletByteArrayOutputStream extends ServletOutputStream {
         outputStream.write(b);
     }
 
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        outputStream.write(b, off, len);
+    }
+
     public ByteArrayOutputStream getOutputStream() {
         return outputStream;
     }
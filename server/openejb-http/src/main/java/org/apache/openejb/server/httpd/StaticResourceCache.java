@@ -0,0 +1,598 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.apache.openejb.loader.IO;
+import org.apache.openejb.loader.Options;
+import org.apache.openejb.loader.SystemInstance;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.JarEntry;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the static resources served by the embedded http layer and the JAX-RS static-first lookup.
+ * <p/>
+ * A path is resolved once through a {@link Finder}: missing resources are remembered too (in their own
+ * smaller LRU so REST paths can't evict real resources), found ones keep their content type, validators
+ * and, when they are small enough, their bytes and a gzipped variant (a pre-gzipped sibling "foo.js.gz" or
+ * a compressed copy of textual content).
+ * <p/>
+ * File resources are checked again (and missing ones looked up again) after the revalidation delay,
+ * resources of jars are considered immutable while deployed.
+ * <p/>
+ * Callers only needing to know whether a resource exists use {@link #lookup(String, String, Finder)}:
+ * it remembers the url or the miss, without reading the content, for the revalidation delay.
+ * <p/>
+ * The limits apply per cache: the embedded http registry and each JAX-RS application have their own,
+ * so the resources of an application are dropped with it.
+ * <p/>
+ * Configuration (system properties):
+ * <ul>
+ * <li>openejb.http.static-cache.max-entries: found resources kept, default 1000</li>
+ * <li>openejb.http.static-cache.max-missing: missing paths kept, default 1000</li>
+ * <li>openejb.http.static-cache.max-size: bytes kept in memory for the resources of a cache, default 32MB</li>
+ * <li>openejb.http.static-cache.max-entry-size: bigger resources are streamed, default 512kB</li>
+ * <li>openejb.http.static-cache.revalidate: ms before checking a file again, default 2000, -1 to never check</li>
+ * </ul>
+ */
+public class StaticResourceCache {
+    public static final String PREFIX = "openejb.http.static-cache.";
+
+    private static final int COMPRESSION_THRESHOLD = 1024;
+    private static final String HTTP_DATE = "EEE, dd MMM yyyy HH:mm:ss zzz";
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+    private final Map<String, String> contentTypes;
+    private final int maxEntries;
+    private final int maxMissing;
+    private final long maxSize;
+    private final long maxEntrySize;
+    private final long revalidate;
+
+    private final LinkedHashMap<String, Resource> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Long> missing = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Located> located = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    /**
+     * Resolves a path to a resource.
+     */
+    public interface Finder {
+        /**
+         * @return the resource of this path or null if there is none
+         */
+        URL find(String path) throws IOException;
+    }
+
+    /**
+     * @param contentTypes content types by extension, openejb.embedded.http.content-type.&lt;ext&gt; is used for others
+     */
+    public StaticResourceCache(final Map<String, String> contentTypes) {
+        this(contentTypes, SystemInstance.get().getOptions());
+    }
+
+    public StaticResourceCache(final Map<String, String> contentTypes, final Options options) {
+        this(contentTypes,
+            options.get(PREFIX + "max-entries", 1000),
+            options.get(PREFIX + "max-missing", 1000),
+            options.get(PREFIX + "max-size", 32L * 1024 * 1024),
+            options.get(PREFIX + "max-entry-size", 512L * 1024),
+            options.get(PREFIX + "revalidate", 2000L));
+    }
+
+    public StaticResourceCache(final Map<String, String> contentTypes, final int maxEntries, final int maxMissing,
+                               final long maxSize, final long maxEntrySize, final long revalidate) {
+        this.contentTypes = new HashMap<>(contentTypes);
+        this.maxEntries = maxEntries;
+        this.maxMissing = maxMissing;
+        this.maxSize = maxSize;
+        this.maxEntrySize = maxEntrySize;
+        this.revalidate = revalidate;
+    }
+
+    /**
+     * @return the resource of this path, from the cache if it is still valid, null if there is none
+     */
+    public Resource find(final String path, final Finder finder) throws IOException {
+        return find(path, path, finder);
+    }
+
+    /**
+     * @param key the cache key, when the finder doesn't only depend on the path
+     * @return the resource of this path, from the cache if it is still valid, null if there is none
+     */
+    public Resource find(final String key, final String path, final Finder finder) throws IOException {
+        final long now = System.currentTimeMillis();
+
+        final Resource cached;
+        synchronized (this) {
+            final Long missed = missing.get(key);
+            if (missed != null) {
+                if (isRecent(missed, now)) {
+                    hits.incrementAndGet();
+                    return null;
+                }
+                missing.remove(key);
+            }
+            cached = entries.get(key);
+        }
+        if (cached != null && isValid(cached, now)) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        final Resource loaded = load(path, finder, now);
+        synchronized (this) {
+            remove(key);
+            if (loaded == null) {
+                missing.put(key, now);
+                if (missing.size() > maxMissing) {
+                    evict(missing);
+                }
+            } else {
+                entries.put(key, loaded);
+                size += loaded.memorySize();
+                while (!entries.isEmpty() && (entries.size() > maxEntries || size > maxSize)) {
+                    final Resource evicted = evict(entries);
+                    size -= evicted.memorySize();
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Resolves the resource without reading it, for callers which don't serve it themselves.
+     *
+     * @param key the cache key, when the finder doesn't only depend on the path
+     * @return the url of the resource, from the cache if it was resolved recently, null if there is none
+     */
+    public URL lookup(final String key, final String path, final Finder finder) throws IOException {
+        final long now = System.currentTimeMillis();
+
+        final Resource cached;
+        synchronized (this) {
+            final Long missed = missing.get(key);
+            if (missed != null && isRecent(missed, now)) {
+                hits.incrementAndGet();
+                return null;
+            }
+            final Located found = located.get(key);
+            if (found != null && isRecent(found.checked, now)) {
+                hits.incrementAndGet();
+                return found.url;
+            }
+            cached = entries.get(key);
+        }
+        if (cached != null && isValid(cached, now)) {
+            hits.incrementAndGet();
+            return cached.url;
+        }
+
+        misses.incrementAndGet();
+        URL url = finder.find(path);
+        if (url != null && isDirectory(url)) {
+            url = null;
+        }
+        synchronized (this) {
+            if (url == null) {
+                located.remove(key);
+                missing.put(key, now);
+                if (missing.size() > maxMissing) {
+                    evict(missing);
+                }
+            } else {
+                missing.remove(key);
+                located.put(key, new Located(url, now));
+                if (located.size() > maxEntries) {
+                    evict(located);
+                }
+            }
+        }
+        return url;
+    }
+
+    /**
+     * Writes the resource, answering 304 if the client already has it and the gzipped variant if the client accepts it.
+     */
+    public void serve(final Resource resource, final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        if (resource.contentType != null) {
+            response.setContentType(resource.contentType);
+        }
+        response.setHeader("ETag", resource.etag);
+        if (resource.lastModifiedHeader != null) {
+            response.setHeader("Last-Modified", resource.lastModifiedHeader);
+        }
+        if (resource.gzip != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+
+        if (isNotModified(resource, request)) {
+            notModified.incrementAndGet();
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        final OutputStream os = response.getOutputStream();
+        if (resource.gzip != null && acceptsGzip(request)) {
+            response.setHeader("Content-Encoding", "gzip");
+            response.setContentLength(resource.gzip.length);
+            os.write(resource.gzip);
+        } else if (resource.content != null) {
+            response.setContentLength(resource.content.length);
+            os.write(resource.content);
+        } else {
+            if (resource.file != null) {
+                response.setContentLengthLong(resource.length);
+            }
+            final InputStream is = resource.file != null ? new FileInputStream(resource.file) : resource.url.openStream();
+            try {
+                IO.copy(is, os);
+            } finally {
+                IO.close(is);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        missing.clear();
+        located.clear();
+        size = 0;
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized int getMissingSize() {
+        return missing.size();
+    }
+
+    public synchronized long getMemorySize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getNotModified() {
+        return notModified.get();
+    }
+
+    /**
+     * @return true if the url points to a directory, servlet contexts return them for paths like "/"
+     */
+    public static boolean isDirectory(final URL url) {
+        if ("file".equals(url.getProtocol())) {
+            final File file = toFile(url);
+            return file != null && file.isDirectory();
+        }
+        if ("jar".equals(url.getProtocol())) {
+            if (url.getPath().endsWith("/")) {
+                return true;
+            }
+            try {
+                final URLConnection connection = url.openConnection();
+                if (JarURLConnection.class.isInstance(connection)) {
+                    final JarEntry entry = JarURLConnection.class.cast(connection).getJarEntry();
+                    return entry != null && entry.isDirectory();
+                }
+            } catch (final IOException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private boolean isRecent(final long checked, final long now) {
+        return revalidate < 0 || now - checked < revalidate;
+    }
+
+    private boolean isValid(final Resource resource, final long now) {
+        if (resource.file == null || revalidate < 0 || now - resource.checked < revalidate) {
+            return true;
+        }
+        if (resource.file.lastModified() == resource.lastModified && resource.file.length() == resource.length) {
+            resource.checked = now;
+            return true;
+        }
+        return false;
+    }
+
+    private Resource load(final String path, final Finder finder, final long now) throws IOException {
+        final URL url = finder.find(path);
+        if (url == null || isDirectory(url)) {
+            return null;
+        }
+
+        final File file = "file".equals(url.getProtocol()) ? toFile(url) : null;
+        final long lastModified;
+        final long length;
+        if (file != null) {
+            lastModified = file.lastModified();
+            length = file.length();
+        } else {
+            final URLConnection connection = url.openConnection();
+            lastModified = connection.getLastModified();
+            length = connection.getContentLengthLong();
+            IO.close(connection.getInputStream()); // only wanted the headers, don't leak the jar entry stream
+        }
+
+        final String contentType = contentType(path, url);
+        final byte[] content = length <= maxEntrySize ? read(url, maxEntrySize) : null;
+        final byte[] gzip = content == null || path.isEmpty() || path.endsWith("/") ? null : gzip(path, finder, contentType, content);
+        final long actualLength = content != null ? content.length : length;
+        return new Resource(url, file, contentType, actualLength, lastModified, content, gzip, now);
+    }
+
+    private byte[] gzip(final String path, final Finder finder, final String contentType, final byte[] content) throws IOException {
+        final URL compressed = finder.find(path + ".gz");
+        if (compressed != null && !isDirectory(compressed)) {
+            final byte[] bytes = read(compressed, maxEntrySize);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+
+        if (content.length < COMPRESSION_THRESHOLD || !isCompressible(contentType)) {
+            return null;
+        }
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 2);
+        final GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(content);
+        gzip.close();
+        return out.size() < content.length * 9 / 10 ? out.toByteArray() : null; // not worth a second copy else
+    }
+
+    private String contentType(final String path, final URL url) {
+        String name = path;
+        if (name.isEmpty() || name.endsWith("/")) { // welcome file
+            name = url.getPath();
+        }
+        final int slash = name.lastIndexOf('/');
+        final int dot = name.lastIndexOf('.');
+        if (dot <= slash || dot == name.length() - 1) {
+            return null;
+        }
+        final String ext = name.substring(dot + 1);
+        final String type = contentTypes.get(ext);
+        if (type != null) {
+            return type;
+        }
+        return SystemInstance.get().getProperty("openejb.embedded.http.content-type." + ext);
+    }
+
+    private void remove(final String path) {
+        final Resource old = entries.remove(path);
+        if (old != null) {
+            size -= old.memorySize();
+        }
+    }
+
+    private <T> T evict(final LinkedHashMap<String, T> map) {
+        final Iterator<T> eldest = map.values().iterator();
+        final T value = eldest.next();
+        eldest.remove();
+        evictions.incrementAndGet();
+        return value;
+    }
+
+    private static boolean isCompressible(final String contentType) {
+        return contentType != null
+            && (contentType.startsWith("text/")
+            || contentType.contains("javascript")
+            || contentType.contains("json")
+            || contentType.contains("xml")
+            || contentType.contains("svg"));
+    }
+
+    private static boolean isNotModified(final Resource resource, final HttpServletRequest request) {
+        final String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) { // takes precedence over the date
+            if ("*".equals(ifNoneMatch.trim())) {
+                return true;
+            }
+            for (final String tag : ifNoneMatch.split(",")) {
+                if (weak(tag.trim()).equals(weak(resource.etag))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        final String ifModifiedSince = request.getHeader("If-Modified-Since");
+        if (ifModifiedSince == null || resource.lastModifiedHeader == null) {
+            return false;
+        }
+        if (ifModifiedSince.equals(resource.lastModifiedHeader)) { // browsers send back what we gave
+            return true;
+        }
+        try {
+            final SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE, Locale.US);
+            format.setTimeZone(GMT);
+            return resource.lastModified / 1000 <= format.parse(ifModifiedSince).getTime() / 1000;
+        } catch (final ParseException e) {
+            return false;
+        }
+    }
+
+    private static String weak(final String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    private static boolean acceptsGzip(final HttpServletRequest request) {
+        final String accept = request.getHeader("Accept-Encoding");
+        if (accept == null) {
+            return false;
+        }
+        for (final String encoding : accept.split(",")) {
+            final String[] parts = encoding.split(";");
+            final String name = parts[0].trim();
+            if (!"gzip".equalsIgnoreCase(name) && !"x-gzip".equalsIgnoreCase(name)) {
+                continue;
+            }
+            for (int i = 1; i < parts.length; i++) {
+                final String param = parts[i].replace(" ", "");
+                if (param.startsWith("q=")) {
+                    try {
+                        return Float.parseFloat(param.substring(2)) > 0;
+                    } catch (final NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static byte[] read(final URL url, final long max) throws IOException {
+        final InputStream is = url.openStream();
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+                if (out.size() > max) {
+                    return null;
+                }
+            }
+            return out.toByteArray();
+        } finally {
+            IO.close(is);
+        }
+    }
+
+    private static File toFile(final URL url) {
+        try {
+            return new File(url.toURI());
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static final class Located {
+        private final URL url;
+        private final long checked;
+
+        private Located(final URL url, final long checked) {
+            this.url = url;
+            this.checked = checked;
+        }
+    }
+
+    public static final class Resource {
+        private final URL url;
+        private final File file;
+        private final String contentType;
+        private final long length;
+        private final long lastModified;
+        private final String lastModifiedHeader;
+        private final String etag;
+        private final byte[] content;
+        private final byte[] gzip;
+        private volatile long checked;
+
+        private Resource(final URL url, final File file, final String contentType, final long length, final long lastModified,
+                         final byte[] content, final byte[] gzip, final long checked) {
+            this.url = url;
+            this.file = file;
+            this.contentType = contentType;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.content = content;
+            this.gzip = gzip;
+            this.checked = checked;
+            this.etag = "W/\"" + length + '-' + lastModified + '"';
+            if (lastModified > 0) {
+                final SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE, Locale.US);
+                format.setTimeZone(GMT);
+                this.lastModifiedHeader = format.format(new Date(lastModified));
+            } else {
+                this.lastModifiedHeader = null;
+            }
+        }
+
+        public URL getUrl() {
+            return url;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isInMemory() {
+            return content != null;
+        }
+
+        public boolean hasGzip() {
+            return gzip != null;
+        }
+
+        private long memorySize() {
+            return (content == null ? 0 : content.length) + (gzip == null ? 0 : gzip.length);
+        }
+    }
+}
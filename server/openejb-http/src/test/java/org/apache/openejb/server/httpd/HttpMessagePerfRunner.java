@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+
+/**
+ * Reads a POST request (10 headers, 2kB body) the way {@link HttpRequestImpl} did before (DataInputStream.readLine
+ * and StringTokenizer) and with {@link HttpRequestParser} over a pooled buffer, then writes a 256kB response
+ * fully buffered and streamed in chunks by {@link HttpResponseImpl}.
+ * <p/>
+ * Run the main method, the GC profiler shows the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+public class HttpMessagePerfRunner {
+    private final ByteBufferPool buffers = new ByteBufferPool(8192, 4);
+    private byte[] request;
+    private byte[] responseBody;
+
+    @Setup
+    public void setup() {
+        final StringBuilder body = new StringBuilder();
+        while (body.length() < 2048) {
+            body.append("<order><id>").append(body.length()).append("</id></order>");
+        }
+        request = ("POST /app/rest/orders HTTP/1.1\r\n"
+            + "Host: localhost:4204\r\n"
+            + "User-Agent: Apache-HttpClient/4.5\r\n"
+            + "Accept: application/xml\r\n"
+            + "Accept-Encoding: gzip, deflate\r\n"
+            + "Accept-Language: en-US\r\n"
+            + "Connection: keep-alive\r\n"
+            + "Cookie: EJBSESSIONID=2f0fa44a-2f47-4b47-b2e8-6c7d1d6cfa3b\r\n"
+            + "X-Request-Id: 7c9e6679-7425-40de-944b-e07fc1f90ae7\r\n"
+            + "Content-Type: application/xml\r\n"
+            + "Content-Length: " + body.length() + "\r\n"
+            + "\r\n"
+            + body).getBytes();
+
+        responseBody = new byte[256 * 1024];
+        for (int i = 0; i < responseBody.length; i++) {
+            responseBody[i] = (byte) ('a' + i % 26);
+        }
+    }
+
+    @Benchmark
+    public Object readLineParsing() throws IOException {
+        final DataInput in = new DataInputStream(new ByteArrayInputStream(request));
+        final StringTokenizer requestLine = new StringTokenizer(in.readLine(), " ");
+        final String method = requestLine.nextToken();
+        final String target = requestLine.nextToken();
+
+        final Map<String, String> headers = new HashMap<>();
+        for (String line = in.readLine(); line != null && !line.isEmpty(); line = in.readLine()) {
+            final int colon = line.indexOf(':');
+            headers.put(line.substring(0, colon), line.substring(colon + 1).trim());
+        }
+
+        final byte[] body = new byte[Integer.parseInt(headers.get("Content-Length"))];
+        in.readFully(body);
+        return method.length() + target.length() + body.length;
+    }
+
+    @Benchmark
+    public Object incrementalParsing() throws IOException {
+        final InputStream in = new ByteArrayInputStream(request);
+        final HttpRequestParser parser = new HttpRequestParser(new HashMap<String, String>(), 65536);
+        final ByteBuffer buffer = buffers.acquire();
+        try {
+            boolean complete = false;
+            while (!complete) {
+                final int read = in.read(buffer.array(), 0, buffer.capacity());
+                if (read < 0) {
+                    parser.endOfInput();
+                    break;
+                }
+                buffer.clear();
+                buffer.limit(read);
+                complete = parser.parse(buffer);
+            }
+        } finally {
+            buffers.release(buffer);
+        }
+        return parser.getMethod().length() + parser.getTarget().length() + parser.getBody().length;
+    }
+
+    @Benchmark
+    public Object bufferedResponse() throws IOException {
+        final HttpResponseImpl response = new HttpResponseImpl();
+        response.getOutputStream().write(responseBody);
+        final Sink sink = new Sink();
+        response.writeMessage(sink, false);
+        return sink.count;
+    }
+
+    @Benchmark
+    public Object streamedResponse() throws IOException {
+        final HttpResponseImpl response = new HttpResponseImpl();
+        final Sink sink = new Sink();
+        response.setOutput(sink);
+        response.getOutputStream().write(responseBody);
+        response.writeMessage(sink, false);
+        return sink.count;
+    }
+
+    private static class Sink extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HttpMessagePerfRunner.class.getSimpleName())
+                .forks(0)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpRequestParserTest {
+    private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+
+    @Test
+    public void requestSplitAnywhere() throws IOException {
+        final String request = "POST /app/rest/orders?id=1 HTTP/1.1\r\n"
+            + "Host: localhost:4204\r\n"
+            + "Content-Type: application/json\r\n"
+            + "X-Custom:   spaced value  \r\n"
+            + "Content-Length: 13\r\n"
+            + "\r\n"
+            + "{\"id\": \"1\"}\r\n";
+        final byte[] bytes = request.getBytes(ISO_8859_1);
+
+        for (int split = 1; split <= bytes.length; split++) {
+            final Map<String, String> headers = new HashMap<>();
+            final HttpRequestParser parser = new HttpRequestParser(headers, 1024);
+            boolean complete = false;
+            for (int i = 0; i < bytes.length && !complete; i += split) {
+                complete = parser.parse(ByteBuffer.wrap(bytes, i, Math.min(split, bytes.length - i)));
+            }
+            assertTrue(complete);
+            assertEquals("POST", parser.getMethod());
+            assertEquals("/app/rest/orders?id=1", parser.getTarget());
+            assertEquals("HTTP/1.1", parser.getVersion());
+            assertEquals("localhost:4204", headers.get("Host"));
+            assertEquals("spaced value", headers.get("X-Custom"));
+            assertEquals("{\"id\": \"1\"}\r\n", new String(parser.getBody(), ISO_8859_1));
+        }
+    }
+
+    @Test
+    public void commonHeaderNamesAreShared() throws IOException {
+        final Map<String, String> headers = new HashMap<>();
+        final HttpRequestParser parser = new HttpRequestParser(headers, 1024);
+        assertTrue(parser.parse(buffer("GET / HTTP/1.1\r\nContent-Type: text/plain\r\n\r\n")));
+        assertSame("Content-Type", headers.keySet().iterator().next());
+        assertEquals(0, parser.getBody().length);
+    }
+
+    @Test
+    public void bytesAfterTheMessageAreLeft() throws IOException {
+        final ByteBuffer buffer = buffer("GET /a HTTP/1.1\r\n\r\nGET /b HTTP/1.1\r\n\r\n");
+        assertTrue(new HttpRequestParser(new HashMap<String, String>(), 1024).parse(buffer));
+        assertEquals("GET /b HTTP/1.1\r\n\r\n", ISO_8859_1.decode(buffer).toString());
+    }
+
+    @Test
+    public void chunkedBody() throws IOException {
+        final HttpRequestParser parser = new HttpRequestParser(new HashMap<String, String>(), 1024);
+        assertFalse(parser.parse(buffer("PUT /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5;name=value\r\nhello\r\n")));
+        assertTrue(parser.parse(buffer("7\r\n, world\r\n0\r\nTrailer: ignored\r\n\r\n")));
+        assertEquals("hello, world", new String(parser.getBody(), ISO_8859_1));
+    }
+
+    @Test
+    public void bodyWithoutLengthEndsWithABlankLine() throws IOException {
+        final HttpRequestParser parser = new HttpRequestParser(new HashMap<String, String>(), 1024);
+        assertTrue(parser.parse(buffer("POST / HTTP/1.0\r\n\r\nline\r\n\r\n")));
+        assertEquals("line\r\n\r", new String(parser.getBody(), ISO_8859_1));
+
+        final HttpRequestParser untilEnd = new HttpRequestParser(new HashMap<String, String>(), 1024);
+        assertFalse(untilEnd.parse(buffer("POST / HTTP/1.0\r\n\r\nno blank line")));
+        assertTrue(untilEnd.endOfInput());
+        assertEquals("no blank line", new String(untilEnd.getBody(), ISO_8859_1));
+    }
+
+    @Test
+    public void endOfInput() throws IOException {
+        assertFalse(new HttpRequestParser(new HashMap<String, String>(), 1024).endOfInput());
+
+        final HttpRequestParser truncated = new HttpRequestParser(new HashMap<String, String>(), 1024);
+        assertFalse(truncated.parse(buffer("POST / HTTP/1.1\r\nContent-Length: 10\r\n\r\n12345")));
+        try {
+            truncated.endOfInput();
+            fail();
+        } catch (final EOFException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void invalidRequests() {
+        for (final String request : new String[]{
+            "GET\r\n\r\n", "GET / HTTP/1.1\r\nno colon\r\n\r\n", "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n",
+            "GET /" + new String(new char[2048]).replace('\0', 'a') + " HTTP/1.1\r\n\r\n"}) {
+            try {
+                new HttpRequestParser(new HashMap<String, String>(), 1024).parse(buffer(request));
+                fail(request);
+            } catch (final IOException e) {
+                // ok
+            }
+        }
+    }
+
+    private static ByteBuffer buffer(final String value) {
+        return ByteBuffer.wrap(value.getBytes(ISO_8859_1));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HttpResponseImplStreamingTest {
+    @Test
+    public void smallBodyIsSentWithItsLength() throws IOException {
+        final ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        final HttpResponseImpl response = new HttpResponseImpl();
+        response.setOutput(socket);
+        response.getWriter().print("hello");
+        response.getOutputStream().flush();
+        assertFalse(response.isCommitted());
+        assertTrue(socket.size() == 0);
+
+        response.writeMessage(socket, false);
+        final String raw = socket.toString("ISO-8859-1");
+        assertTrue(raw, raw.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(raw, raw.contains("Content-Length: 5\r\n"));
+        assertFalse(raw, raw.contains("Transfer-Encoding"));
+        assertTrue(raw, raw.endsWith("\r\n\r\nhello"));
+    }
+
+    @Test
+    public void bigBodyIsStreamedInChunks() throws IOException {
+        final byte[] data = new byte[3000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + i % 26);
+        }
+
+        final ByteArrayOutputStream socket = new ByteArrayOutputStream();
+        final HttpResponseImpl response = new HttpResponseImpl();
+        response.setBufferSize(1024);
+        response.setOutput(socket);
+        response.getOutputStream().write(data, 0, 1500);
+        assertTrue(response.isCommitted());
+        assertTrue(socket.size() > 1024); // sent before the end of the response
+
+        response.getOutputStream().write(data, 1500, 1500);
+        response.writeMessage(socket, false);
+
+        final byte[] raw = socket.toByteArray();
+        final String head = new String(raw, 0, indexOf(raw, "\r\n\r\n".getBytes(), 0), "ISO-8859-1");
+        assertTrue(head, head.contains("Transfer-Encoding: chunked"));
+        assertFalse(head, head.contains("Content-Length"));
+        assertArrayEquals(data, dechunk(raw, head.length() + 4));
+
+        try {
+            response.reset();
+            fail();
+        } catch (final IllegalStateException e) {
+            // ok
+        }
+    }
+
+    private static byte[] dechunk(final byte[] raw, final int start) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int position = start;
+        while (true) {
+            final int lineEnd = indexOf(raw, "\r\n".getBytes(), position);
+            final int size = Integer.parseInt(new String(raw, position, lineEnd - position), 16);
+            if (size == 0) {
+                assertTrue(Arrays.equals("\r\n\r\n".getBytes(), Arrays.copyOfRange(raw, lineEnd, raw.length)));
+                return out.toByteArray();
+            }
+            out.write(raw, lineEnd + 2, size);
+            position = lineEnd + 2 + size + 2;
+        }
+    }
+
+    private static int indexOf(final byte[] array, final byte[] value, final int from) {
+        for (int i = from; i <= array.length - value.length; i++) {
+            if (Arrays.equals(value, Arrays.copyOfRange(array, i, i + value.length))) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("not found");
+    }
+}
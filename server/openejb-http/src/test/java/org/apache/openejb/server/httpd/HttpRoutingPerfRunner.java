@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Finds the endpoint of a request among several hundred ones (per application: a JAX-RS
+ * prefix, 3 servlets and a *.jsp mapping) the way {@link HttpListenerRegistry} did before
+ * (copying the registry and evaluating each pattern with String.matches) and with {@link HttpRoutingTable}.
+ * <p/>
+ * Run the main method.
+ */
+@State(Scope.Benchmark)
+public class HttpRoutingPerfRunner {
+    @Param({"100", "500"})
+    private int endpoints;
+
+    private final Map<String, Object> registry = new LinkedHashMap<>();
+    private HttpRoutingTable<Object> table;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setup() {
+        registry.put("/ejb/?.*", new Object());
+        for (int app = 0; registry.size() < endpoints; app++) {
+            registry.put("/app" + app + "/rest/.*", new Object());
+            for (int servlet = 0; servlet < 3; servlet++) {
+                registry.put("/app" + app + "/servlet" + servlet, new Object());
+            }
+            registry.put("/app" + app + "/.*\\.jsp", new Object());
+        }
+        table = new HttpRoutingTable<>(registry.entrySet());
+
+        final int apps = endpoints / 5;
+        final Random random = new Random(1234);
+        paths = new String[1024];
+        for (int i = 0; i < paths.length; i++) {
+            final int app = random.nextInt(apps);
+            switch (i % 4) {
+                case 0:
+                    paths[i] = "/app" + app + "/rest/orders/" + i;
+                    break;
+                case 1:
+                    paths[i] = "/app" + app + "/servlet" + (i % 3);
+                    break;
+                case 2:
+                    paths[i] = "/app" + app + "/pages/index.jsp";
+                    break;
+                default:
+                    paths[i] = "/ejb";
+            }
+        }
+    }
+
+    @Benchmark
+    public Object copyAndMatch() {
+        final String path = path();
+        final Map<String, Object> listeners;
+        synchronized (registry) {
+            listeners = new HashMap<>(registry);
+        }
+        for (final Map.Entry<String, Object> entry : listeners.entrySet()) {
+            final String pattern = entry.getKey();
+            if (path.matches(pattern) || path.equals(pattern)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public Object routingTable() {
+        return table.find(path()).getTarget();
+    }
+
+    private String path() {
+        return paths[next++ & (paths.length - 1)];
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HttpRoutingPerfRunner.class.getSimpleName())
+                .forks(0)
+                .warmupIterations(5)
+                .measurementIterations(5)
+                .build())
+                .run();
+    }
+}
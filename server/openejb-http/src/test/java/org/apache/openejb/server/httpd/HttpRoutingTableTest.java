@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class HttpRoutingTableTest {
+    @Test
+    public void literalPrefix() {
+        assertEquals("/ejb", HttpRoutingTable.literalPrefix("/ejb/?.*"));
+        assertEquals("/app/rest/", HttpRoutingTable.literalPrefix("/app/rest/.*"));
+        assertEquals("/app/index", HttpRoutingTable.literalPrefix("/app/index.html"));
+        assertEquals("/servlet", HttpRoutingTable.literalPrefix("/servlet"));
+        assertEquals("", HttpRoutingTable.literalPrefix("/a|/b"));
+        assertEquals("", HttpRoutingTable.literalPrefix("^/a"));
+    }
+
+    @Test
+    public void firstRegisteredPatternWins() {
+        final Map<String, String> patterns = new LinkedHashMap<>();
+        patterns.put("/app/.*", "app");
+        patterns.put("/app/rest/.*", "rest");
+        patterns.put("/ejb/?.*", "ejb");
+        patterns.put("/other|/alternative", "alternatives");
+        final HttpRoutingTable<String> table = new HttpRoutingTable<>(patterns.entrySet());
+
+        assertEquals("app", table.find("/app/rest/orders").getTarget());
+        assertEquals("app", table.find("/app/").getTarget());
+        assertEquals("ejb", table.find("/ejb").getTarget());
+        assertEquals("ejb", table.find("/ejb/foo").getTarget());
+        assertEquals("alternatives", table.find("/alternative").getTarget());
+        assertNull(table.find("/app"));
+        assertNull(table.find("/nothing"));
+        assertNull(table.find(""));
+    }
+
+    @Test
+    public void literalPatternWins() {
+        final Map<String, String> patterns = new LinkedHashMap<>();
+        patterns.put("/app/.*", "app");
+        patterns.put("/app/servlet", "servlet");
+        patterns.put("/invalid[", "invalid");
+        final HttpRoutingTable<String> table = new HttpRoutingTable<>(patterns.entrySet());
+
+        assertEquals("servlet", table.find("/app/servlet").getTarget());
+        assertEquals("app", table.find("/app/servlets").getTarget());
+        assertEquals("invalid", table.find("/invalid[").getTarget());
+    }
+}
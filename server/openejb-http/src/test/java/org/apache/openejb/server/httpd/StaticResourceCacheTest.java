@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.openejb.server.httpd;
+
+import org.apache.openejb.loader.Files;
+import org.apache.openejb.loader.IO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StaticResourceCacheTest {
+    private File root;
+
+    @Before
+    public void createRoot() {
+        root = Files.tmpdir();
+    }
+
+    @After
+    public void deleteRoot() {
+        Files.delete(root);
+    }
+
+    @Test
+    public void missingResourcesAreRemembered() throws Exception {
+        final Folder finder = new Folder();
+        final StaticResourceCache cache = cache(10, 60000);
+
+        for (int i = 0; i < 5; i++) {
+            assertNull(cache.find("/api/orders", finder));
+        }
+        assertEquals(1, finder.lookups.get());
+        assertEquals(1, cache.getMissingSize());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void lookupDoesNotLoadTheContent() throws Exception {
+        final Folder finder = new Folder();
+        final File file = write("app.js", "var app = {};");
+        final StaticResourceCache cache = cache(10, 60000);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(file.toURI().toURL(), cache.lookup("/app.js", "/app.js", finder));
+            assertNull(cache.lookup("/api/orders", "/api/orders", finder));
+        }
+        assertEquals(2, finder.lookups.get());
+        assertEquals(1, cache.getMissingSize());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getMemorySize());
+
+        // serving still loads the content
+        assertTrue(cache.find("/app.js", finder).isInMemory());
+        final int lookups = finder.lookups.get();
+        assertEquals(file.toURI().toURL(), cache.lookup("/app.js", "/app.js", finder));
+        assertEquals(lookups, finder.lookups.get());
+    }
+
+    @Test
+    public void modifiedFilesAreReloaded() throws Exception {
+        final Folder finder = new Folder();
+        final File file = write("app.css", "body { color: red; }");
+        final StaticResourceCache cache = cache(10, 0);
+
+        final StaticResourceCache.Resource first = cache.find("/app.css", finder);
+        assertEquals("text/css", first.getContentType());
+        assertTrue(first.isInMemory());
+        assertEquals(first, cache.find("/app.css", finder));
+
+        IO.copy("body { color: blue; background: white; }".getBytes(), file);
+        assertTrue(file.setLastModified(first.getLastModified() + 2000));
+        final StaticResourceCache.Resource second = cache.find("/app.css", finder);
+        assertFalse(first.getETag().equals(second.getETag()));
+        assertEquals("body { color: blue; background: white; }", new String(serve(cache, second, Collections.<String, String>emptyMap()).body));
+    }
+
+    @Test
+    public void conditionalRequests() throws Exception {
+        final Folder finder = new Folder();
+        write("index.html", "<html />");
+        final StaticResourceCache cache = cache(10, 60000);
+        final StaticResourceCache.Resource resource = cache.find("/index.html", finder);
+
+        final Response full = serve(cache, resource, Collections.<String, String>emptyMap());
+        assertEquals(200, full.status);
+        assertEquals("<html />", new String(full.body));
+        assertNotNull(full.headers.get("Last-Modified"));
+
+        final Response byTag = serve(cache, resource, Collections.singletonMap("If-None-Match", full.headers.get("ETag")));
+        assertEquals(304, byTag.status);
+        assertEquals(0, byTag.body.length);
+
+        final Response byDate = serve(cache, resource, Collections.singletonMap("If-Modified-Since", full.headers.get("Last-Modified")));
+        assertEquals(304, byDate.status);
+
+        final Response otherTag = serve(cache, resource, Collections.singletonMap("If-None-Match", "W/\"0-0\""));
+        assertEquals(200, otherTag.status);
+        assertEquals(2, cache.getNotModified());
+    }
+
+    @Test
+    public void textIsGzipped() throws Exception {
+        final Folder finder = new Folder();
+        final StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            script.append("console.log('line ").append(i).append("');\n");
+        }
+        write("app.js", script.toString());
+        final StaticResourceCache cache = cache(10, 60000);
+        final StaticResourceCache.Resource resource = cache.find("/app.js", finder);
+        assertTrue(resource.hasGzip());
+
+        final Response gzip = serve(cache, resource, Collections.singletonMap("Accept-Encoding", "deflate, gzip"));
+        assertEquals("gzip", gzip.headers.get("Content-Encoding"));
+        assertEquals("Accept-Encoding", gzip.headers.get("Vary"));
+        assertEquals(script.toString(), IO.slurp(new GZIPInputStream(new ByteArrayInputStream(gzip.body))));
+
+        final Response plain = serve(cache, resource, Collections.<String, String>emptyMap());
+        assertNull(plain.headers.get("Content-Encoding"));
+        assertEquals(script.toString(), new String(plain.body));
+
+        for (final String refused : new String[]{"gzip;q=0", "deflate, gzip; q=0.0", "gzip;q=0.000, br"}) {
+            assertNull(refused, serve(cache, resource, Collections.singletonMap("Accept-Encoding", refused)).headers.get("Content-Encoding"));
+        }
+        assertEquals("gzip", serve(cache, resource, Collections.singletonMap("Accept-Encoding", "gzip;q=0.5")).headers.get("Content-Encoding"));
+    }
+
+    @Test
+    public void boundedInCountAndSize() throws Exception {
+        final Folder finder = new Folder();
+        final byte[] kb = new byte[1024];
+        for (int i = 0; i < 5; i++) {
+            IO.copy(kb, new File(root, i + ".png"));
+        }
+        final StaticResourceCache cache = new StaticResourceCache(types(), 3, 10, 2048, 1024, 60000);
+        for (int i = 0; i < 5; i++) {
+            assertNotNull(cache.find("/" + i + ".png", finder));
+        }
+        assertEquals(2, cache.getSize());
+        assertEquals(2048, cache.getMemorySize());
+        assertEquals(3, cache.getEvictions());
+
+        // too big to be kept in memory, still served from the file
+        IO.copy(new byte[4096], new File(root, "big.png"));
+        final StaticResourceCache.Resource big = cache.find("/big.png", finder);
+        assertFalse(big.isInMemory());
+        assertEquals(4096, serve(cache, big, Collections.<String, String>emptyMap()).body.length);
+    }
+
+    private StaticResourceCache cache(final int maxEntries, final long revalidate) {
+        return new StaticResourceCache(types(), maxEntries, 10, 1024 * 1024, 64 * 1024, revalidate);
+    }
+
+    private static Map<String, String> types() {
+        final Map<String, String> types = new HashMap<>();
+        types.put("css", "text/css");
+        types.put("html", "text/html");
+        types.put("js", "text/javascript");
+        types.put("png", "image/png");
+        return types;
+    }
+
+    private File write(final String name, final String content) throws IOException {
+        final File file = new File(root, name);
+        IO.copy(content.getBytes(), file);
+        return file;
+    }
+
+    private static Response serve(final StaticResourceCache cache, final StaticResourceCache.Resource resource,
+                                  final Map<String, String> requestHeaders) throws IOException {
+        final Response response = new Response();
+        final HttpServletRequest request = HttpServletRequest.class.cast(Proxy.newProxyInstance(
+            StaticResourceCacheTest.class.getClassLoader(), new Class<?>[]{HttpServletRequest.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                    return "getHeader".equals(method.getName()) ? requestHeaders.get(String.valueOf(args[0])) : null;
+                }
+            }));
+        final ServletByteArrayOutputStream out = new ServletByteArrayOutputStream();
+        cache.serve(resource, request, HttpServletResponse.class.cast(Proxy.newProxyInstance(
+            StaticResourceCacheTest.class.getClassLoader(), new Class<?>[]{HttpServletResponse.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) {
+                    switch (method.getName()) {
+                        case "getOutputStream":
+                            return out;
+                        case "setStatus":
+                            response.status = Integer.class.cast(args[0]);
+                            break;
+                        case "setHeader":
+                            response.headers.put(String.valueOf(args[0]), String.valueOf(args[1]));
+                            break;
+                        default:
+                    }
+                    return null;
+                }
+            })));
+        response.body = out.getOutputStream().toByteArray();
+        return response;
+    }
+
+    private static class Response {
+        private int status;
+        private final Map<String, String> headers = new HashMap<>();
+        private byte[] body;
+    }
+
+    private class Folder implements StaticResourceCache.Finder {
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        @Override
+        public URL find(final String path) throws IOException {
+            lookups.incrementAndGet();
+            final File file = new File(root, path.substring(1));
+            return file.exists() ? file.toURI().toURL() : null;
+        }
+    }
+}
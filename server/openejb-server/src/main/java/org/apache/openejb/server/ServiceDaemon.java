@@ -36,6 +36,7 @@ import java.net.SocketException;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.channels.ServerSocketChannel;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -69,6 +70,7 @@ public class ServiceDaemon implements ServerService {
     private String ip;
 
     private boolean secure;
+    private boolean channel;
     private StringTemplate discoveryUriFormat;
     private URI serviceUri;
     private Properties props;
@@ -125,6 +127,9 @@ public class ServiceDaemon implements ServerService {
 
         this.secure = options.get("secure", false);
 
+        // sockets accepted from a channel can be multiplexed on a selector
+        this.channel = options.get("channel", "selector".equalsIgnoreCase(props.getProperty("keepAliveMode")));
+
         this.timeout = options.get("timeout", this.timeout);
 
         this.enabledCipherSuites = options.get("enabledCipherSuites", "SSL_DH_anon_WITH_RC4_128_MD5").split(",");
@@ -149,7 +154,7 @@ public class ServiceDaemon implements ServerService {
                     serverSocket = factory.createServerSocket(this.port, this.backlog, this.inetAddress);
                     ((SSLServerSocket) serverSocket).setEnabledCipherSuites(this.enabledCipherSuites);
                 } else {
-                    serverSocket = new ServerSocket();
+                    serverSocket = this.channel ? ServerSocketChannel.open().socket() : new ServerSocket();
                     serverSocket.setReuseAddress(true);
 
                     try {
@@ -40,6 +40,7 @@ public class ServicePool extends ServerServiceFilter {
 
     private static final Logger log = Logger.getInstance(LogCategory.SERVICEPOOL, "org.apache.openejb.util.resources");
     private static final int KEEP_ALIVE_TIME = 1000 * 60 * 1;
+    private static final ThreadLocal<Boolean> DETACHED = new ThreadLocal<Boolean>();
 
     private final ThreadPoolExecutor threadPool;
     private final AtomicBoolean stop = new AtomicBoolean();
@@ -176,6 +177,15 @@ public class ServicePool extends ServerServiceFilter {
         return threadPool;
     }
 
+    /**
+     * Called by a service which keeps using the socket after returning,
+     * typically to wait for the next request without holding a pool thread.
+     * The pool will then not close the socket, the service is responsible for it.
+     */
+    public static void detachSocket() {
+        DETACHED.set(Boolean.TRUE);
+    }
+
     @Override
     public void service(final InputStream in, final OutputStream out) throws ServiceException, IOException {
     }
@@ -231,10 +241,13 @@ public class ServicePool extends ServerServiceFilter {
 
                 } finally {
 
-                    //Ensure delegated socket is closed here
+                    //Ensure delegated socket is closed here, unless it was detached
+
+                    final boolean detached = Boolean.TRUE.equals(DETACHED.get());
+                    DETACHED.remove();
 
                     try {
-                        if (forceSocketClose && socket != null) {
+                        if (forceSocketClose && socket != null && !detached) {
                             socket.close();
                         }
                     } catch (Throwable t) {
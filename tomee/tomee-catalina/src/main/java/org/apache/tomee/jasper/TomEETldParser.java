@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.jasper;
+
+import org.apache.openejb.config.TldCache;
+import org.apache.openejb.jee.Function;
+import org.apache.openejb.jee.Icon;
+import org.apache.openejb.jee.Listener;
+import org.apache.openejb.jee.ParamValue;
+import org.apache.openejb.jee.Tag;
+import org.apache.openejb.jee.TagFile;
+import org.apache.openejb.jee.TldAttribute;
+import org.apache.openejb.jee.TldTaglib;
+import org.apache.openejb.jee.Validator;
+import org.apache.openejb.jee.Variable;
+import org.apache.openejb.util.LogCategory;
+import org.apache.openejb.util.Logger;
+import org.apache.tomcat.util.descriptor.tld.TagFileXml;
+import org.apache.tomcat.util.descriptor.tld.TagXml;
+import org.apache.tomcat.util.descriptor.tld.TaglibXml;
+import org.apache.tomcat.util.descriptor.tld.TldParser;
+import org.apache.tomcat.util.descriptor.tld.TldResourcePath;
+import org.apache.tomcat.util.descriptor.tld.ValidatorXml;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.net.URL;
+import javax.servlet.jsp.tagext.FunctionInfo;
+import javax.servlet.jsp.tagext.TagAttributeInfo;
+import javax.servlet.jsp.tagext.TagVariableInfo;
+import javax.servlet.jsp.tagext.VariableInfo;
+
+/**
+ * Reads TLDs with the generated openejb-jee readers (StAX, no digester rules nor reflection)
+ * and converts them to the tomcat model following the defaults of tomcat TldRuleSet.
+ * Parsed TLDs come from the {@link TldCache} shared with the deployment so the jars
+ * of a shared lib folder are parsed once for all webapps.
+ * <p/>
+ * Validating parsers and descriptors the readers can't handle go through the default tomcat parser.
+ */
+public class TomEETldParser extends TldParser {
+    private static final Logger LOGGER = Logger.getInstance(LogCategory.OPENEJB, TomEETldParser.class);
+
+    private static final String FRAGMENT_TYPE = "javax.servlet.jsp.tagext.JspFragment";
+    private static final String VALUE_EXPRESSION_TYPE = "javax.el.ValueExpression";
+    private static final String METHOD_EXPRESSION_TYPE = "javax.el.MethodExpression";
+
+    private final boolean validate;
+
+    public TomEETldParser(final boolean namespaceAware, final boolean validate, final boolean blockExternal) {
+        super(namespaceAware, validate, blockExternal);
+        this.validate = validate;
+    }
+
+    @Override
+    public TaglibXml parse(final TldResourcePath path) throws IOException, SAXException {
+        if (validate) {
+            return super.parse(path);
+        }
+
+        final TldTaglib taglib;
+        try {
+            taglib = TldCache.taglib(new URL(path.toExternalForm()));
+        } catch (final Exception e) {
+            LOGGER.debug("Can't read " + path.toExternalForm() + " without digester: " + e.getMessage());
+            return super.parse(path);
+        }
+        return toTaglibXml(taglib);
+    }
+
+    static TaglibXml toTaglibXml(final TldTaglib taglib) {
+        final TaglibXml taglibXml = new TaglibXml();
+        taglibXml.setTlibVersion(taglib.getTlibVersion());
+        // JSP 2.x TLDs only have the version attribute, jsp-version is a JSP 1.2 element
+        taglibXml.setJspVersion(taglib.getJspVersion() != null ? taglib.getJspVersion() : taglib.getVersion());
+        taglibXml.setShortName(taglib.getShortName());
+        taglibXml.setUri(taglib.getUri());
+        taglibXml.setInfo(taglib.getDescription());
+
+        final Validator validator = taglib.getValidator();
+        if (validator != null) {
+            final ValidatorXml validatorXml = new ValidatorXml();
+            validatorXml.setValidatorClass(validator.getValidatorClass());
+            for (final ParamValue param : validator.getInitParam()) {
+                validatorXml.addInitParam(param.getParamName(), param.getParamValue());
+            }
+            taglibXml.setValidator(validatorXml);
+        }
+
+        for (final Listener listener : taglib.getListener()) {
+            taglibXml.getListeners().add(listener.getListenerClass());
+        }
+
+        for (final Tag tag : taglib.getTag()) {
+            final TagXml tagXml = new TagXml();
+            tagXml.setName(tag.getName());
+            tagXml.setTagClass(tag.getTagClass());
+            tagXml.setTeiClass(tag.getTeiClass());
+            if (tag.getBodyContent() != null) {
+                tagXml.setBodyContent(tag.getBodyContent().value());
+            }
+            tagXml.setDisplayName(tag.getDisplayName());
+            final Icon icon = tag.getIcons().isEmpty() ? null : tag.getIcon();
+            if (icon != null) {
+                tagXml.setSmallIcon(icon.getSmallIcon());
+                tagXml.setLargeIcon(icon.getLargeIcon());
+            }
+            tagXml.setInfo(tag.getDescription());
+            tagXml.setDynamicAttributes(isTrue(tag.getDynamicAttributes()));
+            for (final TldAttribute attribute : tag.getAttribute()) {
+                tagXml.getAttributes().add(toTagAttributeInfo(attribute));
+            }
+            for (final Variable variable : tag.getVariable()) {
+                tagXml.getVariables().add(toTagVariableInfo(variable));
+            }
+            taglibXml.addTag(tagXml);
+        }
+
+        for (final TagFile tagFile : taglib.getTagFile()) {
+            final TagFileXml tagFileXml = new TagFileXml();
+            tagFileXml.setName(tagFile.getName());
+            tagFileXml.setPath(tagFile.getPath());
+            tagFileXml.setDisplayName(tagFile.getDisplayName());
+            final Icon icon = tagFile.getIcons().isEmpty() ? null : tagFile.getIcon();
+            if (icon != null) {
+                tagFileXml.setSmallIcon(icon.getSmallIcon());
+                tagFileXml.setLargeIcon(icon.getLargeIcon());
+            }
+            tagFileXml.setInfo(tagFile.getDescription());
+            taglibXml.getTagFiles().add(tagFileXml);
+        }
+
+        for (final Function function : taglib.getFunction()) {
+            taglibXml.getFunctions().add(new FunctionInfo(function.getName(), function.getFunctionClass(), function.getFunctionSignature()));
+        }
+
+        return taglibXml;
+    }
+
+    private static TagAttributeInfo toTagAttributeInfo(final TldAttribute attribute) {
+        String type = attribute.getType();
+        boolean requestTime = isTrue(attribute.getRtexprvalue());
+        final boolean fragment = isTrue(attribute.getFragment());
+        final boolean deferredValue = attribute.getDeferredValue() != null;
+        final boolean deferredMethod = attribute.getDeferredMethod() != null;
+        String expectedTypeName = null;
+        String methodSignature = null;
+
+        if (fragment) {
+            type = FRAGMENT_TYPE;
+            requestTime = true;
+        } else if (deferredValue) {
+            type = VALUE_EXPRESSION_TYPE;
+            expectedTypeName = attribute.getDeferredValue().getType();
+            if (expectedTypeName == null) {
+                expectedTypeName = "java.lang.Object";
+            }
+        } else if (deferredMethod) {
+            type = METHOD_EXPRESSION_TYPE;
+            methodSignature = attribute.getDeferredMethod().getMethodSignature();
+            if (methodSignature == null) {
+                methodSignature = "java.lang.Object method()";
+            }
+        }
+
+        // static values are strings (JSP spec)
+        if (!requestTime && type == null) {
+            type = "java.lang.String";
+        }
+
+        return new TagAttributeInfo(
+            attribute.getName(), isTrue(attribute.getRequired()), type, requestTime, fragment, attribute.getDescription(),
+            deferredValue, deferredMethod, expectedTypeName, methodSignature);
+    }
+
+    private static TagVariableInfo toTagVariableInfo(final Variable variable) {
+        final String variableClass = variable.getVariableClass();
+        final String declare = variable.getDeclare();
+        return new TagVariableInfo(
+            variable.getNameGiven(), variable.getNameFromAttribute(),
+            variableClass == null ? "java.lang.String" : variableClass,
+            declare == null || isTrue(declare), scope(variable.getScope()));
+    }
+
+    private static int scope(final String scope) {
+        if ("AT_BEGIN".equals(scope)) {
+            return VariableInfo.AT_BEGIN;
+        }
+        if ("AT_END".equals(scope)) {
+            return VariableInfo.AT_END;
+        }
+        return VariableInfo.NESTED;
+    }
+
+    private static boolean isTrue(final String value) {
+        return value != null && ("true".equalsIgnoreCase(value.trim()) || "yes".equalsIgnoreCase(value.trim()));
+    }
+}
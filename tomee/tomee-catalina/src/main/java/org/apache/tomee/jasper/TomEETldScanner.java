@@ -52,6 +52,7 @@ public class TomEETldScanner extends TldScanner {
 
     public TomEETldScanner(final ServletContext context, final boolean namespaceAware, final boolean validate, final boolean blockExternal) {
         super(context, namespaceAware, validate, blockExternal);
+        Reflections.set(this, "tldParser", new TomEETldParser(namespaceAware, validate, blockExternal));
         uriTldResourcePathMapParent = (Map<String, TldResourcePath>) Reflections.get(this, "uriTldResourcePathMap");
         tldResourcePathTaglibXmlMapParent = (Map<TldResourcePath, TaglibXml>) Reflections.get(this, "tldResourcePathTaglibXmlMap");
         // we don't care about listeners since we add it ourself
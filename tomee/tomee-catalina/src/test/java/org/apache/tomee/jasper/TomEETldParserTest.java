@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomee.jasper;
+
+import org.apache.openejb.config.TldCache;
+import org.apache.tomcat.util.descriptor.tld.TagFileXml;
+import org.apache.tomcat.util.descriptor.tld.TagXml;
+import org.apache.tomcat.util.descriptor.tld.TaglibXml;
+import org.apache.tomcat.util.descriptor.tld.TldParser;
+import org.apache.tomcat.util.descriptor.tld.TldResourcePath;
+import org.junit.After;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.List;
+import javax.servlet.jsp.tagext.FunctionInfo;
+import javax.servlet.jsp.tagext.TagAttributeInfo;
+import javax.servlet.jsp.tagext.TagVariableInfo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * The conversion has to give jasper what the digester based tomcat parser gives.
+ */
+public class TomEETldParserTest {
+    @After
+    public void clearCache() {
+        TldCache.clear();
+    }
+
+    @Test
+    public void sameTaglibAsTomcat() throws Exception {
+        final URL tld = TomEETldParserTest.class.getResource("test.tld");
+        final TaglibXml expected = new TldParser(true, false, true).parse(new TldResourcePath(tld, null));
+        final TaglibXml actual = new TomEETldParser(true, false, true).parse(new TldResourcePath(tld, null));
+
+        assertEquals("1.1", expected.getTlibVersion()); // the digester read the descriptor
+        assertEquals(expected.getTlibVersion(), actual.getTlibVersion());
+        assertEquals(expected.getJspVersion(), actual.getJspVersion());
+        assertEquals(expected.getShortName(), actual.getShortName());
+        assertEquals(expected.getUri(), actual.getUri());
+        assertEquals(expected.getInfo(), actual.getInfo());
+
+        assertNotNull(actual.getValidator());
+        assertEquals(expected.getValidator().getValidatorClass(), actual.getValidator().getValidatorClass());
+        assertEquals(expected.getValidator().getInitParams(), actual.getValidator().getInitParams());
+        assertEquals(expected.getListeners(), actual.getListeners());
+
+        assertEquals(expected.getTags().size(), actual.getTags().size());
+        for (int i = 0; i < expected.getTags().size(); i++) {
+            assertTag(expected.getTags().get(i), actual.getTags().get(i));
+        }
+
+        assertEquals(expected.getTagFiles().size(), actual.getTagFiles().size());
+        for (int i = 0; i < expected.getTagFiles().size(); i++) {
+            assertTagFile(expected.getTagFiles().get(i), actual.getTagFiles().get(i));
+        }
+
+        assertEquals(expected.getFunctions().size(), actual.getFunctions().size());
+        for (int i = 0; i < expected.getFunctions().size(); i++) {
+            final FunctionInfo expectedFunction = expected.getFunctions().get(i);
+            final FunctionInfo actualFunction = actual.getFunctions().get(i);
+            assertEquals(expectedFunction.getName(), actualFunction.getName());
+            assertEquals(expectedFunction.getFunctionClass(), actualFunction.getFunctionClass());
+            assertEquals(expectedFunction.getFunctionSignature(), actualFunction.getFunctionSignature());
+        }
+    }
+
+    private static void assertTag(final TagXml expected, final TagXml actual) {
+        final String tag = expected.getName();
+        assertEquals(tag, actual.getName());
+        assertEquals(tag, expected.getTagClass(), actual.getTagClass());
+        assertEquals(tag, expected.getTeiClass(), actual.getTeiClass());
+        assertEquals(tag, expected.getBodyContent(), actual.getBodyContent());
+        assertEquals(tag, expected.getDisplayName(), actual.getDisplayName());
+        assertEquals(tag, expected.getSmallIcon(), actual.getSmallIcon());
+        assertEquals(tag, expected.getLargeIcon(), actual.getLargeIcon());
+        assertEquals(tag, expected.getInfo(), actual.getInfo());
+        assertEquals(tag, expected.hasDynamicAttributes(), actual.hasDynamicAttributes());
+
+        final List<TagAttributeInfo> attributes = expected.getAttributes();
+        assertEquals(tag, attributes.size(), actual.getAttributes().size());
+        for (int i = 0; i < attributes.size(); i++) {
+            final TagAttributeInfo e = attributes.get(i);
+            final TagAttributeInfo a = actual.getAttributes().get(i);
+            final String attribute = tag + "@" + e.getName();
+            assertEquals(attribute, e.getName(), a.getName());
+            assertEquals(attribute, e.isRequired(), a.isRequired());
+            assertEquals(attribute, e.getTypeName(), a.getTypeName());
+            assertEquals(attribute, e.canBeRequestTime(), a.canBeRequestTime());
+            assertEquals(attribute, e.isFragment(), a.isFragment());
+            assertEquals(attribute, e.isDeferredValue(), a.isDeferredValue());
+            assertEquals(attribute, e.isDeferredMethod(), a.isDeferredMethod());
+            assertEquals(attribute, e.getExpectedTypeName(), a.getExpectedTypeName());
+            assertEquals(attribute, e.getMethodSignature(), a.getMethodSignature());
+        }
+
+        final List<TagVariableInfo> variables = expected.getVariables();
+        assertEquals(tag, variables.size(), actual.getVariables().size());
+        for (int i = 0; i < variables.size(); i++) {
+            final TagVariableInfo e = variables.get(i);
+            final TagVariableInfo a = actual.getVariables().get(i);
+            final String variable = tag + " variable " + i;
+            assertEquals(variable, e.getNameGiven(), a.getNameGiven());
+            assertEquals(variable, e.getNameFromAttribute(), a.getNameFromAttribute());
+            assertEquals(variable, e.getClassName(), a.getClassName());
+            assertEquals(variable, e.getDeclare(), a.getDeclare());
+            assertEquals(variable, e.getScope(), a.getScope());
+        }
+    }
+
+    private static void assertTagFile(final TagFileXml expected, final TagFileXml actual) {
+        final String tagFile = expected.getName();
+        assertEquals(tagFile, actual.getName());
+        assertEquals(tagFile, expected.getPath(), actual.getPath());
+        assertEquals(tagFile, expected.getDisplayName(), actual.getDisplayName());
+        assertEquals(tagFile, expected.getSmallIcon(), actual.getSmallIcon());
+        assertEquals(tagFile, expected.getLargeIcon(), actual.getLargeIcon());
+        assertEquals(tagFile, expected.getInfo(), actual.getInfo());
+    }
+}
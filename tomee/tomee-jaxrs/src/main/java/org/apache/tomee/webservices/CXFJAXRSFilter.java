@@ -33,7 +33,6 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -83,8 +82,7 @@ public class CXFJAXRSFilter implements Filter {
                 chain.doFilter(request, response);
                 return;
             }
-            final InputStream staticContent = delegate.findStaticContent(httpServletRequest, welcomeFiles);
-            if (staticContent != null) {
+            if (delegate.hasStaticContent(httpServletRequest, welcomeFiles)) {
                 chain.doFilter(request, response);
                 return;
             }